@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina;
+
+import java.io.IOException;
+
+/**
+ * A {@link Store} that can save several Sessions more cheaply than saving
+ * them one at a time, for example by using a single database round trip or a
+ * single pass of file system synchronisation for the whole group.
+ */
+public interface BatchStore extends Store {
+
+    /**
+     * Save the specified Sessions into this Store. Any previously saved
+     * information for the associated session identifiers is replaced. The
+     * Store may write the Sessions in any order. If an exception is thrown,
+     * some of the Sessions may have been saved and others not.
+     *
+     * @param sessions Sessions to be saved
+     * @throws IOException if an input/output error occurs
+     */
+    public void saveAll(Session[] sessions) throws IOException;
+}
@@ -1899,4 +1899,28 @@ public interface Context extends Container, ContextBind {
      * otherwise {@code false}
      */
     public boolean getCreateUploadTargets();
+
+
+    /**
+     * Configure whether this web application is started when the first request
+     * is mapped to it rather than when it is added to its parent Host. A web
+     * application started on demand is registered with the Mapper before it
+     * has started and is stopped and started again on demand rather than
+     * removed from the Mapper when it is stopped.
+     *
+     * @param startOnDemand {@code true} if the web application should be
+     *                      started by the first request mapped to it,
+     *                      otherwise {@code false}
+     */
+    public void setStartOnDemand(boolean startOnDemand);
+
+
+    /**
+     * Is this web application started when the first request is mapped to it
+     * rather than when it is added to its parent Host?
+     *
+     * @return {@code true} if the web application is started on demand,
+     *         otherwise {@code false}
+     */
+    public boolean getStartOnDemand();
 }
@@ -268,6 +268,15 @@ public final class Globals {
     public static final String JASPER_XML_BLOCK_EXTERNAL_INIT_PARAM = "org.apache.jasper.XML_BLOCK_EXTERNAL";
 
 
+    /**
+     * Name of the ServletContext init-param that determines if the JSP engine
+     * should cache the TLDs it parses from JARs in the work directory.
+     * <p>
+     * This must be kept in sync with org.apache.jasper.Constants
+     */
+    public static final String JASPER_CACHE_JAR_TLDS_INIT_PARAM = "org.apache.jasper.CACHE_JAR_TLDS";
+
+
     // --------------------------------------------------- System property names
 
     /**
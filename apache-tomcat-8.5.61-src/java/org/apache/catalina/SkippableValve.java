@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina;
+
+import org.apache.catalina.connector.Request;
+
+/**
+ * Optional interface for a {@link Valve} that, for some requests, does
+ * nothing other than pass the request to the next Valve. A {@link Pipeline}
+ * may use this to call the next Valve directly and avoid invoking this Valve
+ * at all.
+ */
+public interface SkippableValve extends Valve {
+
+    /**
+     * Can this Valve be skipped for the given request? Implementations must
+     * be cheap and must not have side effects since they are called on every
+     * request before {@link #invoke(Request, org.apache.catalina.connector.Response)}.
+     *
+     * @param request The request about to be processed
+     *
+     * @return {@code true} if invoking this Valve for the request would do
+     *         nothing other than invoke the next Valve
+     */
+    public boolean isSkippable(Request request);
+}
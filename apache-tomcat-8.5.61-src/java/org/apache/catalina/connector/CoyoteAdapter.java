@@ -32,6 +32,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.catalina.Authenticator;
 import org.apache.catalina.Context;
 import org.apache.catalina.Host;
+import org.apache.catalina.LifecycleException;
 import org.apache.catalina.Wrapper;
 import org.apache.catalina.authenticator.AuthenticatorBase;
 import org.apache.catalina.core.AsyncContextImpl;
@@ -681,6 +682,7 @@ public class CoyoteAdapter implements Adapter {
         String version = null;
         Context versionContext = null;
         boolean mapRequired = true;
+        boolean startAttempted = false;
 
         if (response.isError()) {
             // An error this early means the URI is invalid. Ensure invalid data
@@ -709,6 +711,22 @@ public class CoyoteAdapter implements Adapter {
                 return true;
             }
 
+            // A Context that is started on demand is mapped before it has
+            // started. Start it now and then map the request again.
+            Context context = request.getContext();
+            if (context.getStartOnDemand() && !context.getState().isAvailable()) {
+                if (startAttempted) {
+                    // The start failed and left the Context mapped
+                    response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    connector.getService().getContainer().logAccess(request, response, 0, true);
+                    return false;
+                }
+                startAttempted = true;
+                startOnDemand(context);
+                request.getMappingData().recycle();
+                continue;
+            }
+
             // Now we have the context, we can parse the session ID from the URL
             // (if any). Need to do this before we redirect in case we need to
             // include the session id in the redirect
@@ -986,6 +1004,30 @@ public class CoyoteAdapter implements Adapter {
     }
 
 
+    /**
+     * Start a Context that is started by the first request mapped to it.
+     * Requests that are mapped to the Context while it is starting wait for the
+     * start to complete.
+     *
+     * @param context The Context to start
+     */
+    private void startOnDemand(Context context) {
+        // Lifecycle transitions of a Context are synchronized on the Context
+        synchronized (context) {
+            if (context.getState().isAvailable()) {
+                // Started by a concurrent request
+                return;
+            }
+            try {
+                context.start();
+            } catch (LifecycleException e) {
+                log.error(sm.getString("coyoteAdapter.startOnDemandFail",
+                        context.getName()), e);
+            }
+        }
+    }
+
+
     /**
      * Look for SSL session ID if required. Only look for SSL Session ID if it
      * is the only tracking method enabled.
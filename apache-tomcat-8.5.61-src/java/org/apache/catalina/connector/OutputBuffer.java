@@ -422,8 +422,10 @@ public class OutputBuffer extends Writer {
             return;
         }
 
+        // append() consumes the buffer so obtain the length first
+        int len = from.remaining();
         append(from);
-        bytesWritten += from.remaining();
+        bytesWritten += len;
 
         // if called from within flush(), then immediately flush
         // remaining bytes
@@ -450,6 +452,46 @@ public class OutputBuffer extends Writer {
     }
 
 
+    /**
+     * Write characters that have already been encoded. The bytes are only
+     * written if the writer has been obtained, it uses the given character set
+     * and it is not part way through encoding a surrogate pair.
+     *
+     * @param b       The encoded characters
+     * @param off     The offset of the first byte to write
+     * @param len     The number of bytes to write
+     * @param charset The character set the bytes were encoded with
+     *
+     * @return <code>true</code> if the bytes were written, otherwise
+     *         <code>false</code>
+     *
+     * @throws IOException An underlying IOException occurred
+     */
+    public boolean writeEncoded(byte b[], int off, int len, Charset charset)
+            throws IOException {
+
+        if (suspended) {
+            return true;
+        }
+
+        if (conv == null || !conv.getCharset().equals(charset)) {
+            return false;
+        }
+
+        // Keep the order of the output
+        if (cb.remaining() > 0) {
+            flushCharBuffer();
+        }
+        if (conv.isUndeflow()) {
+            return false;
+        }
+
+        writeBytes(b, off, len);
+        return true;
+
+    }
+
+
     // ------------------------------------------------- Chars Handling Methods
 
 
@@ -825,7 +867,14 @@ public class OutputBuffer extends Writer {
         int limit = bb.capacity();
         int fromLimit = from.limit();
         while (from.remaining() >= limit) {
-            from.limit(from.position() + limit);
+            // Direct buffers, such as cached static content, may be written
+            // to the network without being copied so pass on as much as
+            // possible in a single write
+            int len = limit;
+            if (from.isDirect()) {
+                len = from.remaining() - from.remaining() % limit;
+            }
+            from.limit(from.position() + len);
             realWriteBytes(from.slice());
             from.position(from.limit());
             from.limit(fromLimit);
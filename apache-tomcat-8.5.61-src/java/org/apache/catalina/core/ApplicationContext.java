@@ -305,6 +305,10 @@ public class ApplicationContext implements ServletContext {
                 return "false";
             }
         }
+        if (Globals.JASPER_CACHE_JAR_TLDS_INIT_PARAM.equals(name) &&
+                context.getCacheJarDescriptors()) {
+            return "true";
+        }
         return parameters.get(name);
     }
 
@@ -320,6 +324,9 @@ public class ApplicationContext implements ServletContext {
         if (!context.getXmlBlockExternal()) {
             names.add(Globals.JASPER_XML_BLOCK_EXTERNAL_INIT_PARAM);
         }
+        if (context.getCacheJarDescriptors()) {
+            names.add(Globals.JASPER_CACHE_JAR_TLDS_INIT_PARAM);
+        }
         return Collections.enumeration(names);
     }
 
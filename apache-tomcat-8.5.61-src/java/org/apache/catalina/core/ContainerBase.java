@@ -606,6 +606,56 @@ public abstract class ContainerBase extends LifecycleMBeanBase
     }
 
 
+    /**
+     * @return {@code true} if invocation counts and timings are being recorded
+     *         for the Valves in this Container's pipeline
+     */
+    public boolean getPipelineInstrumented() {
+        if (pipeline instanceof StandardPipeline) {
+            return ((StandardPipeline) pipeline).isInstrumented();
+        }
+        return false;
+    }
+
+
+    /**
+     * Enable or disable the recording of invocation counts and timings for
+     * the Valves in this Container's pipeline.
+     *
+     * @param pipelineInstrumented {@code true} to record statistics
+     */
+    public void setPipelineInstrumented(boolean pipelineInstrumented) {
+        if (pipeline instanceof StandardPipeline) {
+            ((StandardPipeline) pipeline).setInstrumented(pipelineInstrumented);
+        }
+    }
+
+
+    /**
+     * @return the statistics recorded for each Valve in this Container's
+     *         pipeline
+     *
+     * @see StandardPipeline#getValveStatistics()
+     */
+    public String[] findPipelineValveStatistics() {
+        if (pipeline instanceof StandardPipeline) {
+            return ((StandardPipeline) pipeline).getValveStatistics();
+        }
+        return new String[0];
+    }
+
+
+    /**
+     * Reset the statistics recorded for each Valve in this Container's
+     * pipeline.
+     */
+    public void resetPipelineValveStatistics() {
+        if (pipeline instanceof StandardPipeline) {
+            ((StandardPipeline) pipeline).resetValveStatistics();
+        }
+    }
+
+
     /**
      * Return the Realm with which this Container is associated.  If there is
      * no associated Realm, return the Realm associated with our parent
@@ -735,7 +785,7 @@ public abstract class ContainerBase extends LifecycleMBeanBase
         try {
             if ((getState().isAvailable() ||
                     LifecycleState.STARTING_PREP.equals(getState())) &&
-                    startChildren) {
+                    startChildren && !isStartOnDemand(child)) {
                 child.start();
             }
         } catch (LifecycleException e) {
@@ -747,6 +797,16 @@ public abstract class ContainerBase extends LifecycleMBeanBase
     }
 
 
+    /*
+     * A Context that is started on demand is not started with its parent. The
+     * MapperListener maps it anyway and it is started by the first request
+     * mapped to it.
+     */
+    private static boolean isStartOnDemand(Container child) {
+        return child instanceof Context && ((Context) child).getStartOnDemand();
+    }
+
+
     /**
      * Add a container event listener to this component.
      *
@@ -919,6 +979,10 @@ public abstract class ContainerBase extends LifecycleMBeanBase
         Container children[] = findChildren();
         List<Future<Void>> results = new ArrayList<>();
         for (Container child : children) {
+            if (isStartOnDemand(child)) {
+                // Started by the first request mapped to it
+                continue;
+            }
             // 启动子节点
             results.add(startStopExecutor.submit(new StartChild(child)));
         }
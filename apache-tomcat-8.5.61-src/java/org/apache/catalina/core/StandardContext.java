@@ -39,9 +39,12 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -111,6 +114,7 @@ import org.apache.catalina.webresources.StandardRoot;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.naming.ContextBindings;
+import org.apache.tomcat.ContextBind;
 import org.apache.tomcat.InstanceManager;
 import org.apache.tomcat.InstanceManagerBindings;
 import org.apache.tomcat.JarScanner;
@@ -825,6 +829,20 @@ public class StandardContext extends ContainerBase
 
     private boolean createUploadTargets = false;
 
+    private boolean parallelAnnotationScanning = false;
+
+    private boolean cacheAnnotationScanResults = false;
+
+    private boolean cacheJarDescriptors = false;
+
+    private boolean parallelLoadOnStartup = false;
+
+    private boolean startOnDemand = false;
+
+    private boolean startOnDemandSet = false;
+
+    private boolean useStartupSnapshot = false;
+
 
     // ----------------------------------------------------- Context Properties
 
@@ -840,6 +858,153 @@ public class StandardContext extends ContainerBase
     }
 
 
+    @Override
+    public void setStartOnDemand(boolean startOnDemand) {
+        this.startOnDemand = startOnDemand;
+        this.startOnDemandSet = true;
+    }
+
+
+    @Override
+    public boolean getStartOnDemand() {
+        return startOnDemand;
+    }
+
+
+    /**
+     * Has {@link #setStartOnDemand(boolean)} been called for this web
+     * application? The Host only applies its default to web applications
+     * that have not been configured explicitly.
+     *
+     * @return {@code true} if the start on demand flag has been set,
+     *         otherwise {@code false}
+     */
+    public boolean isStartOnDemandSet() {
+        return startOnDemandSet;
+    }
+
+
+    /**
+     * Configure whether the JARs of this web application are scanned for
+     * annotations and {@link javax.servlet.annotation.HandlesTypes} matches in
+     * parallel when the web application starts.
+     *
+     * @param parallelAnnotationScanning <code>true</code> to scan JARs in
+     *                                   parallel
+     */
+    public void setParallelAnnotationScanning(boolean parallelAnnotationScanning) {
+        this.parallelAnnotationScanning = parallelAnnotationScanning;
+    }
+
+
+    /**
+     * @return <code>true</code> if JARs are scanned for annotations in
+     *         parallel. The default value is <code>false</code>.
+     */
+    public boolean getParallelAnnotationScanning() {
+        return parallelAnnotationScanning;
+    }
+
+
+    /**
+     * Configure whether the results of scanning JARs for annotations are
+     * stored in the work directory of this web application so that JARs that
+     * have not changed do not have to be scanned again the next time the web
+     * application starts.
+     *
+     * @param cacheAnnotationScanResults <code>true</code> to store and reuse
+     *                                   the results of annotation scans
+     */
+    public void setCacheAnnotationScanResults(boolean cacheAnnotationScanResults) {
+        this.cacheAnnotationScanResults = cacheAnnotationScanResults;
+    }
+
+
+    /**
+     * @return <code>true</code> if the results of scanning JARs for
+     *         annotations are stored and reused. The default value is
+     *         <code>false</code>.
+     */
+    public boolean getCacheAnnotationScanResults() {
+        return cacheAnnotationScanResults;
+    }
+
+
+    /**
+     * Configure whether the web-fragment.xml files and TLDs parsed from the
+     * JARs of this web application are stored in the work directory so that
+     * JARs that have not changed do not have to be parsed again the next time
+     * the web application starts.
+     *
+     * @param cacheJarDescriptors <code>true</code> to store and reuse the
+     *                            parsed descriptors
+     */
+    public void setCacheJarDescriptors(boolean cacheJarDescriptors) {
+        this.cacheJarDescriptors = cacheJarDescriptors;
+    }
+
+
+    /**
+     * @return <code>true</code> if the descriptors parsed from JARs are stored
+     *         and reused. The default value is <code>false</code>.
+     */
+    public boolean getCacheJarDescriptors() {
+        return cacheJarDescriptors;
+    }
+
+
+    /**
+     * Configure whether the servlets of this web application that have the
+     * same load on startup value are loaded concurrently using the start stop
+     * threads of this context. Servlets with a lower load on startup value are
+     * always loaded before servlets with a higher value. The number of
+     * servlets loaded at the same time is limited by
+     * {@link #getStartStopThreads()}.
+     *
+     * @param parallelLoadOnStartup <code>true</code> to load servlets with the
+     *                              same load on startup value concurrently
+     */
+    public void setParallelLoadOnStartup(boolean parallelLoadOnStartup) {
+        this.parallelLoadOnStartup = parallelLoadOnStartup;
+    }
+
+
+    /**
+     * @return <code>true</code> if servlets with the same load on startup
+     *         value are loaded concurrently. The default value is
+     *         <code>false</code>.
+     */
+    public boolean getParallelLoadOnStartup() {
+        return parallelLoadOnStartup;
+    }
+
+
+    /**
+     * Configure whether the effective web.xml and the scan results recorded in
+     * <code>/WEB-INF/tomcat-startup.snapshot</code> are used in place of
+     * scanning the web application when it starts. The snapshot is created at
+     * build time with {@link org.apache.catalina.startup.StartupSnapshotGenerator}.
+     * If the snapshot is missing or no longer matches the web application, the
+     * web application is scanned as usual.
+     *
+     * @param useStartupSnapshot <code>true</code> to configure the web
+     *                           application from its startup snapshot
+     */
+    public void setUseStartupSnapshot(boolean useStartupSnapshot) {
+        this.useStartupSnapshot = useStartupSnapshot;
+    }
+
+
+    /**
+     * @return <code>true</code> if the web application is configured from its
+     *         startup snapshot when one is available. The default value is
+     *         <code>false</code>.
+     */
+    public boolean getUseStartupSnapshot() {
+        return useStartupSnapshot;
+    }
+
+
     @Override
     public void incrementInProgressAsyncCount() {
         inProgressAsyncCount.incrementAndGet();
@@ -4863,6 +5028,12 @@ public class StandardContext extends ContainerBase
 
         // 加载收集到的启动时加载的servlet
         for (ArrayList<Wrapper> list : map.values()) {
+            if (getParallelLoadOnStartup() && list.size() > 1) {
+                if (!loadOnStartupParallel(list)) {
+                    return false;
+                }
+                continue;
+            }
             for (Wrapper wrapper : list) {
                 try {
                     // load StandardWrapper
@@ -4884,6 +5055,53 @@ public class StandardContext extends ContainerBase
     }
 
 
+    /*
+     * Loads the given servlets, which all have the same load on startup value,
+     * concurrently. Waits for every servlet to be loaded, or to fail to load,
+     * before returning so that servlets with a higher load on startup value
+     * are never loaded before these.
+     */
+    private boolean loadOnStartupParallel(List<Wrapper> wrappers) {
+        List<Future<Void>> results = new ArrayList<>(wrappers.size());
+        for (Wrapper wrapper : wrappers) {
+            results.add(startStopExecutor.submit(new LoadOnStartup(wrapper)));
+        }
+
+        boolean failed = false;
+        Throwable unexpected = null;
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                results.get(i).get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof ServletException) {
+                    getLogger().error(sm.getString("standardContext.loadOnStartup.loadException",
+                            getName(), wrappers.get(i).getName()),
+                            StandardWrapper.getRootCause((ServletException) cause));
+                    // As for serial loading, load errors are only fatal to
+                    // application startup if failCtxIfServletStartFails="true"
+                    failed = true;
+                } else if (unexpected == null) {
+                    unexpected = cause;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+        // Report any other failure the way the caller would have seen it had
+        // the servlet been loaded on this thread
+        if (unexpected instanceof RuntimeException) {
+            throw (RuntimeException) unexpected;
+        } else if (unexpected instanceof Error) {
+            throw (Error) unexpected;
+        } else if (unexpected != null) {
+            throw new IllegalStateException(unexpected);
+        }
+        return !(failed && getComputedFailCtxIfServletStartFails());
+    }
+
+
     /**
      * Start this component and implement the requirements
      * of {@link org.apache.catalina.util.LifecycleBase#startInternal()}.
@@ -5130,6 +5348,25 @@ public class StandardContext extends ContainerBase
                         InstanceManager.class.getName(), getInstanceManager());
                 InstanceManagerBindings.bind(getLoader().getClassLoader(), getInstanceManager());
 
+                // Allow components that do not depend on Catalina, such as
+                // Jasper, to bind the web application to their own threads
+                getServletContext().setAttribute(
+                        ContextBind.class.getName(), new ContextBind() {
+                            @Override
+                            public ClassLoader bind(boolean usePrivilegedAction,
+                                    ClassLoader originalClassLoader) {
+                                return StandardContext.this.bind(
+                                        usePrivilegedAction, originalClassLoader);
+                            }
+
+                            @Override
+                            public void unbind(boolean usePrivilegedAction,
+                                    ClassLoader originalClassLoader) {
+                                StandardContext.this.unbind(
+                                        usePrivilegedAction, originalClassLoader);
+                            }
+                        });
+
                 // Create context attributes that will be required
                 getServletContext().setAttribute(
                         JarScanner.class.getName(), getJarScanner());
@@ -6389,6 +6626,32 @@ public class StandardContext extends ContainerBase
     }
 
 
+    /*
+     * Loads a servlet on a start stop thread with that thread bound to this
+     * web application as it would be had the servlet been loaded on the thread
+     * that is starting the web application.
+     */
+    private class LoadOnStartup implements Callable<Void> {
+
+        private final Wrapper wrapper;
+
+        LoadOnStartup(Wrapper wrapper) {
+            this.wrapper = wrapper;
+        }
+
+        @Override
+        public Void call() throws ServletException {
+            ClassLoader oldCCL = bindThread();
+            try {
+                wrapper.load();
+            } finally {
+                unbindThread(oldCCL);
+            }
+            return null;
+        }
+    }
+
+
     private static class NoPluggabilityServletContext implements ServletContext {
 
         private final ServletContext sc;
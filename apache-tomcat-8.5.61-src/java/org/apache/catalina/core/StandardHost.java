@@ -137,6 +137,21 @@ public class StandardHost extends ContainerBase implements Host {
     private boolean copyXML = false;
 
 
+    /**
+     * Should web applications deployed by HostConfig be started by the first
+     * request mapped to them rather than when they are deployed?
+     */
+    private boolean startContextsOnDemand = false;
+
+
+    /**
+     * The time in seconds without any requests after which a web application
+     * that was started on demand is stopped. A value of zero or less disables
+     * stopping idle web applications.
+     */
+    private int contextIdleTimeout = -1;
+
+
     /**
      * The Java class name of the default error reporter implementation class
      * for deployed web applications.
@@ -476,6 +491,50 @@ public class StandardHost extends ContainerBase implements Host {
     }
 
 
+    /**
+     * @return <code>true</code> if web applications deployed by this Host are
+     * started by the first request mapped to them rather than when they are
+     * deployed.
+     */
+    public boolean isStartContextsOnDemand() {
+        return startContextsOnDemand;
+    }
+
+
+    /**
+     * Configure whether web applications deployed by this Host are started by
+     * the first request mapped to them rather than when they are deployed.
+     *
+     * @param startContextsOnDemand <code>true</code> if web applications
+     *        should be started on demand
+     */
+    public void setStartContextsOnDemand(boolean startContextsOnDemand) {
+        this.startContextsOnDemand = startContextsOnDemand;
+    }
+
+
+    /**
+     * @return the time in seconds without any requests after which a web
+     * application that was started on demand is stopped.
+     */
+    public int getContextIdleTimeout() {
+        return contextIdleTimeout;
+    }
+
+
+    /**
+     * Set the time in seconds without any requests after which a web
+     * application that was started on demand is stopped. It will be started
+     * again by the next request mapped to it.
+     *
+     * @param contextIdleTimeout The new idle timeout in seconds. A value of
+     *        zero or less disables stopping idle web applications
+     */
+    public void setContextIdleTimeout(int contextIdleTimeout) {
+        this.contextIdleTimeout = contextIdleTimeout;
+    }
+
+
     /**
      * @return the Java class name of the error report valve class
      * for new web applications.
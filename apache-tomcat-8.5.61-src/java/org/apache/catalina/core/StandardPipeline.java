@@ -17,7 +17,9 @@
 package org.apache.catalina.core;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.management.ObjectName;
@@ -29,6 +31,7 @@ import org.apache.catalina.Lifecycle;
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleState;
 import org.apache.catalina.Pipeline;
+import org.apache.catalina.SkippableValve;
 import org.apache.catalina.Valve;
 import org.apache.catalina.util.LifecycleBase;
 import org.apache.juli.logging.Log;
@@ -102,6 +105,26 @@ public class StandardPipeline extends LifecycleBase
     protected Valve first = null;
 
 
+    /**
+     * The Valve that requests enter the pipeline through. This is either the
+     * first Valve or, if that Valve is skippable or the pipeline is
+     * instrumented, the link in front of it.
+     */
+    private volatile Valve entry = null;
+
+
+    /**
+     * The links currently in the pipeline, in pipeline order.
+     */
+    private volatile ValveLink[] links = new ValveLink[0];
+
+
+    /**
+     * Should the time spent in each Valve be recorded?
+     */
+    private volatile boolean instrumented = false;
+
+
     // --------------------------------------------------------- Public Methods
 
     @Override
@@ -110,7 +133,7 @@ public class StandardPipeline extends LifecycleBase
         boolean supported = true;
         while (supported && valve != null) {
             supported = supported & valve.isAsyncSupported();
-            valve = valve.getNext();
+            valve = next(valve);
         }
         return supported;
     }
@@ -123,11 +146,100 @@ public class StandardPipeline extends LifecycleBase
             if (!valve.isAsyncSupported()) {
                 result.add(valve.getClass().getName());
             }
-            valve = valve.getNext();
+            valve = next(valve);
+        }
+    }
+
+
+    /**
+     * @return {@code true} if per-Valve invocation counts and timings are
+     *         being recorded
+     */
+    public boolean isInstrumented() {
+        return instrumented;
+    }
+
+
+    /**
+     * Enable or disable the recording of per-Valve invocation counts and
+     * timings. Changing this value discards any statistics collected so far.
+     * Like adding or removing a Valve, this should not be changed while
+     * requests are being processed.
+     *
+     * @param instrumented {@code true} to record statistics
+     */
+    public void setInstrumented(boolean instrumented) {
+        if (this.instrumented == instrumented) {
+            return;
+        }
+        this.instrumented = instrumented;
+        link();
+    }
+
+
+    /**
+     * Obtain the statistics recorded for each Valve, in pipeline order. Each
+     * entry contains the Valve, the number of invocations, the number of
+     * times it was skipped, the total and self time (the time not spent in
+     * subsequent instrumented Valves) in milliseconds, the maximum self time
+     * and a histogram of self times.
+     *
+     * @return the statistics or an empty array if the pipeline is not
+     *         instrumented
+     */
+    public String[] getValveStatistics() {
+        List<String> result = new ArrayList<>();
+        for (ValveLink link : links) {
+            if (!link.isInstrumented()) {
+                continue;
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append(link.getValve());
+            sb.append(": invocations=").append(link.getInvocationCount());
+            sb.append(", skipped=").append(link.getSkipCount());
+            sb.append(", totalTime=").append(toMillis(link.getTotalTime()));
+            sb.append(", selfTime=").append(toMillis(link.getSelfTime()));
+            sb.append(", maxSelfTime=").append(toMillis(link.getMaxSelfTime()));
+            sb.append(", histogram={");
+            long[] histogram = link.getHistogram();
+            boolean firstBucket = true;
+            for (int i = 0; i < histogram.length; i++) {
+                if (histogram[i] == 0) {
+                    continue;
+                }
+                if (!firstBucket) {
+                    sb.append(", ");
+                }
+                firstBucket = false;
+                if (i == histogram.length - 1) {
+                    sb.append(">=").append(1L << (i - 1));
+                } else {
+                    sb.append('<').append(1L << i);
+                }
+                sb.append("us=").append(histogram[i]);
+            }
+            sb.append('}');
+            result.add(sb.toString());
+        }
+        return result.toArray(new String[0]);
+    }
+
+
+    /**
+     * Reset the statistics recorded for each Valve.
+     */
+    public void resetValveStatistics() {
+        for (ValveLink link : links) {
+            link.resetStatistics();
         }
     }
 
 
+    private static String toMillis(long nanos) {
+        return String.valueOf(nanos / 1000000.0);
+    }
+
+
     // ------------------------------------------------------ Contained Methods
 
     /**
@@ -174,7 +286,7 @@ public class StandardPipeline extends LifecycleBase
         while (current != null) {
             if (current instanceof Lifecycle)
                 ((Lifecycle) current).start();
-            current = current.getNext();
+            current = next(current);
         }
 
         setState(LifecycleState.STARTING);
@@ -201,7 +313,7 @@ public class StandardPipeline extends LifecycleBase
         while (current != null) {
             if (current instanceof Lifecycle)
                 ((Lifecycle) current).stop();
-            current = current.getNext();
+            current = next(current);
         }
     }
 
@@ -296,14 +408,15 @@ public class StandardPipeline extends LifecycleBase
         // Update the pipeline
         Valve current = first;
         while (current != null) {
-            if (current.getNext() == oldBasic) {
+            if (next(current) == oldBasic) {
                 current.setNext(valve);
                 break;
             }
-            current = current.getNext();
+            current = next(current);
         }
 
         this.basic = valve;
+        link();
 
     }
 
@@ -351,15 +464,17 @@ public class StandardPipeline extends LifecycleBase
         } else {
             Valve current = first;
             while (current != null) {
-                if (current.getNext() == basic) {
+                if (next(current) == basic) {
                     current.setNext(valve);
                     valve.setNext(basic);
                     break;
                 }
-                current = current.getNext();
+                current = next(current);
             }
         }
 
+        link();
+
         container.fireContainerEvent(Container.ADD_VALVE_EVENT, valve);
     }
 
@@ -379,7 +494,7 @@ public class StandardPipeline extends LifecycleBase
         }
         while (current != null) {
             valveList.add(current);
-            current = current.getNext();
+            current = next(current);
         }
 
         return valveList.toArray(new Valve[0]);
@@ -397,7 +512,7 @@ public class StandardPipeline extends LifecycleBase
             if (current instanceof JmxEnabled) {
                 valveList.add(((JmxEnabled) current).getObjectName());
             }
-            current = current.getNext();
+            current = next(current);
         }
 
         return valveList.toArray(new ObjectName[0]);
@@ -417,21 +532,23 @@ public class StandardPipeline extends LifecycleBase
 
         Valve current;
         if (first == valve) {
-            first = first.getNext();
+            first = next(first);
             current = null;
         } else {
             current = first;
         }
         while (current != null) {
-            if (current.getNext() == valve) {
-                current.setNext(valve.getNext());
+            if (next(current) == valve) {
+                current.setNext(next(valve));
                 break;
             }
-            current = current.getNext();
+            current = next(current);
         }
 
         if (first == basic) first = null;
 
+        link();
+
         if (valve instanceof Contained)
             ((Contained) valve).setContainer(null);
 
@@ -457,10 +574,65 @@ public class StandardPipeline extends LifecycleBase
 
     @Override
     public Valve getFirst() {
+        Valve entry = this.entry;
+        if (entry != null) {
+            return entry;
+        }
+
         if (first != null) {
             return first;
         }
 
         return basic;
     }
+
+
+    /*
+     * Returns the Valve after the given one, ignoring any link that has been
+     * placed between them.
+     */
+    private static Valve next(Valve valve) {
+        Valve next = valve.getNext();
+        if (next instanceof ValveLink) {
+            return ((ValveLink) next).getValve();
+        }
+        return next;
+    }
+
+
+    /*
+     * Rebuild the chain of Valves so that each skippable Valve, and every
+     * Valve if the pipeline is instrumented, is reached through a link.
+     * Existing links (and their statistics) are retained where possible.
+     */
+    private synchronized void link() {
+        Valve[] valves = getValves();
+
+        Map<Valve,ValveLink> existing = new IdentityHashMap<>();
+        for (ValveLink link : links) {
+            existing.put(link.getValve(), link);
+        }
+
+        List<ValveLink> newLinks = new ArrayList<>();
+        Valve next = null;
+        for (int i = valves.length - 1; i >= 0; i--) {
+            Valve valve = valves[i];
+            if (i < valves.length - 1) {
+                valve.setNext(next);
+            }
+            if (instrumented || valve instanceof SkippableValve) {
+                ValveLink link = existing.get(valve);
+                if (link == null || link.isInstrumented() != instrumented) {
+                    link = new ValveLink(valve, instrumented);
+                }
+                newLinks.add(0, link);
+                next = link;
+            } else {
+                next = valve;
+            }
+        }
+
+        links = newLinks.toArray(new ValveLink[0]);
+        entry = next;
+    }
 }
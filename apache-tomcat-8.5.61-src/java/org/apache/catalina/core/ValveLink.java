@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.core;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.servlet.ServletException;
+
+import org.apache.catalina.SkippableValve;
+import org.apache.catalina.Valve;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+
+/**
+ * Link placed by {@link StandardPipeline} in front of a Valve that is either
+ * {@link SkippableValve skippable} or, when the pipeline is instrumented,
+ * needs to be timed. The link is what the previous Valve sees as its next
+ * Valve. Everything other than {@link #invoke(Request, Response)} is
+ * delegated to the wrapped Valve.
+ */
+final class ValveLink implements Valve {
+
+    /**
+     * Number of histogram buckets. Bucket <i>n</i> counts invocations that
+     * took less than 2<sup>n</sup> microseconds (bucket 0 is &lt; 1&micro;s),
+     * with the last bucket holding everything slower.
+     */
+    static final int HISTOGRAM_BUCKETS = 24;
+
+    /**
+     * Time spent by the current thread in instrumented Valves nested inside
+     * the Valve currently being timed. Used to compute self time.
+     */
+    private static final ThreadLocal<long[]> nestedTime = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    private final Valve valve;
+    private final SkippableValve skippable;
+    private final boolean instrumented;
+
+    private final AtomicLong invocationCount = new AtomicLong();
+    private final AtomicLong skipCount = new AtomicLong();
+    private final AtomicLong totalTime = new AtomicLong();
+    private final AtomicLong selfTime = new AtomicLong();
+    private final AtomicLong maxSelfTime = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+
+    ValveLink(Valve valve, boolean instrumented) {
+        this.valve = valve;
+        if (valve instanceof SkippableValve) {
+            skippable = (SkippableValve) valve;
+        } else {
+            skippable = null;
+        }
+        this.instrumented = instrumented;
+    }
+
+
+    Valve getValve() {
+        return valve;
+    }
+
+
+    boolean isInstrumented() {
+        return instrumented;
+    }
+
+
+    @Override
+    public Valve getNext() {
+        return valve.getNext();
+    }
+
+
+    @Override
+    public void setNext(Valve next) {
+        valve.setNext(next);
+    }
+
+
+    @Override
+    public void backgroundProcess() {
+        valve.backgroundProcess();
+    }
+
+
+    @Override
+    public boolean isAsyncSupported() {
+        return valve.isAsyncSupported();
+    }
+
+
+    @Override
+    public void invoke(Request request, Response response) throws IOException, ServletException {
+        if (skippable != null) {
+            Valve next = valve.getNext();
+            if (next != null && skippable.isSkippable(request)) {
+                if (instrumented) {
+                    skipCount.incrementAndGet();
+                }
+                next.invoke(request, response);
+                return;
+            }
+        }
+
+        if (!instrumented) {
+            valve.invoke(request, response);
+            return;
+        }
+
+        long[] nested = nestedTime.get();
+        long outerNested = nested[0];
+        nested[0] = 0;
+        long start = System.nanoTime();
+        try {
+            valve.invoke(request, response);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            long self = elapsed - nested[0];
+            nested[0] = outerNested + elapsed;
+            record(elapsed, self);
+        }
+    }
+
+
+    private void record(long elapsed, long self) {
+        invocationCount.incrementAndGet();
+        totalTime.addAndGet(elapsed);
+        selfTime.addAndGet(self);
+        long max = maxSelfTime.get();
+        while (self > max && !maxSelfTime.compareAndSet(max, self)) {
+            max = maxSelfTime.get();
+        }
+        long micros = TimeUnit.NANOSECONDS.toMicros(self);
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        if (bucket >= HISTOGRAM_BUCKETS) {
+            bucket = HISTOGRAM_BUCKETS - 1;
+        }
+        histogram.incrementAndGet(bucket);
+    }
+
+
+    void resetStatistics() {
+        invocationCount.set(0);
+        skipCount.set(0);
+        totalTime.set(0);
+        selfTime.set(0);
+        maxSelfTime.set(0);
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            histogram.set(i, 0);
+        }
+    }
+
+
+    long getInvocationCount() {
+        return invocationCount.get();
+    }
+
+
+    long getSkipCount() {
+        return skipCount.get();
+    }
+
+
+    /**
+     * @return Time, in nanoseconds, from entering this Valve until it returned,
+     *         including all Valves (and the application) called after it.
+     */
+    long getTotalTime() {
+        return totalTime.get();
+    }
+
+
+    /**
+     * @return Time, in nanoseconds, spent in this Valve excluding time spent in
+     *         subsequent instrumented Valves.
+     */
+    long getSelfTime() {
+        return selfTime.get();
+    }
+
+
+    long getMaxSelfTime() {
+        return maxSelfTime.get();
+    }
+
+
+    long[] getHistogram() {
+        long[] result = new long[HISTOGRAM_BUCKETS];
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            result[i] = histogram.get(i);
+        }
+        return result;
+    }
+}
@@ -171,6 +171,7 @@ public abstract class ClusterManagerBase extends ManagerBase implements ClusterM
             }
         }
         copy.setRecordAllActions(isRecordAllActions());
+        copy.setSessionSerializerClass(getSessionSerializerClass());
     }
 
     /**
@@ -40,7 +40,9 @@ import org.apache.catalina.ha.CatalinaCluster;
 import org.apache.catalina.ha.ClusterManager;
 import org.apache.catalina.ha.ClusterMessage;
 import org.apache.catalina.ha.ClusterSession;
+import org.apache.catalina.session.JavaSessionSerializer;
 import org.apache.catalina.session.ManagerBase;
+import org.apache.catalina.session.SessionSerializer;
 import org.apache.catalina.session.StandardSession;
 import org.apache.catalina.tribes.io.ReplicationStream;
 import org.apache.catalina.tribes.tipis.ReplicatedMapEntry;
@@ -353,7 +355,7 @@ public class DeltaSession extends StandardSession implements Externalizable, Clu
 
 
     public void setMaxInactiveInterval(int interval, boolean addDeltaRequest) {
-        super.maxInactiveInterval = interval;
+        super.setMaxInactiveInterval(interval);
         if (addDeltaRequest) {
             lockInternal();
             try {
@@ -800,35 +802,45 @@ public class DeltaSession extends StandardSession implements Externalizable, Clu
 
     private void doReadObject(ObjectInput stream) throws ClassNotFoundException, IOException {
 
+        // Sessions written by a named serializer start with its name. Those
+        // written using Java serialization start with the creation time.
+        SessionSerializer serializer = JavaSessionSerializer.INSTANCE;
+        Object first = stream.readObject();
+        if (first instanceof String) {
+            serializer = getSessionSerializer((String) first);
+            creationTime = serializer.readLong(stream);
+        } else {
+            creationTime = ((Long) first).longValue();
+        }
+
         // Deserialize the scalar instance variables (except Manager)
         authType = null; // Transient only
-        creationTime = ((Long) stream.readObject()).longValue();
-        lastAccessedTime = ((Long) stream.readObject()).longValue();
-        maxInactiveInterval = ((Integer) stream.readObject()).intValue();
-        isNew = ((Boolean) stream.readObject()).booleanValue();
-        isValid = ((Boolean) stream.readObject()).booleanValue();
-        thisAccessedTime = ((Long) stream.readObject()).longValue();
-        version = ((Long) stream.readObject()).longValue();
+        lastAccessedTime = serializer.readLong(stream);
+        maxInactiveInterval = serializer.readInt(stream);
+        isNew = serializer.readBoolean(stream);
+        isValid = serializer.readBoolean(stream);
+        thisAccessedTime = serializer.readLong(stream);
+        version = serializer.readLong(stream);
         boolean hasPrincipal = stream.readBoolean();
         principal = null;
         if (hasPrincipal) {
-            principal = (Principal) stream.readObject();
+            principal = (Principal) serializer.readObject(stream);
         }
 
         //        setId((String) stream.readObject());
-        id = (String) stream.readObject();
+        id = serializer.readString(stream);
         if (log.isDebugEnabled()) log.debug(sm.getString("deltaSession.readSession", id));
 
         // Deserialize the attribute count and attribute values
         if (attributes == null) attributes = new ConcurrentHashMap<>();
-        int n = ((Integer) stream.readObject()).intValue();
+        int n = serializer.readInt(stream);
         boolean isValidSave = isValid;
         isValid = true;
         for (int i = 0; i < n; i++) {
-            String name = (String) stream.readObject();
+            String name = serializer.readString(stream);
             final Object value;
             try {
-                value = stream.readObject();
+                value = serializer.readObject(stream);
             } catch (WriteAbortedException wae) {
                 if (wae.getCause() instanceof NotSerializableException) {
                     // Skip non serializable attributes
@@ -848,12 +860,12 @@ public class DeltaSession extends StandardSession implements Externalizable, Clu
         isValid = isValidSave;
 
         // Session listeners
-        n = ((Integer) stream.readObject()).intValue();
+        n = serializer.readInt(stream);
         if (listeners == null || n > 0) {
             listeners = new ArrayList<>();
         }
         for (int i = 0; i < n; i++) {
-            SessionListener listener = (SessionListener) stream.readObject();
+            SessionListener listener = (SessionListener) serializer.readObject(stream);
             listeners.add(listener);
         }
 
@@ -898,20 +910,25 @@ public class DeltaSession extends StandardSession implements Externalizable, Clu
     }
 
     private void doWriteObject(ObjectOutput stream) throws IOException {
+        SessionSerializer serializer = getSessionSerializer();
+        if (serializer.getName() != null) {
+            stream.writeObject(serializer.getName());
+        }
+
         // Write the scalar instance variables (except Manager)
-        stream.writeObject(Long.valueOf(creationTime));
-        stream.writeObject(Long.valueOf(lastAccessedTime));
-        stream.writeObject(Integer.valueOf(maxInactiveInterval));
-        stream.writeObject(Boolean.valueOf(isNew));
-        stream.writeObject(Boolean.valueOf(isValid));
-        stream.writeObject(Long.valueOf(thisAccessedTime));
-        stream.writeObject(Long.valueOf(version));
+        serializer.writeLong(stream, creationTime);
+        serializer.writeLong(stream, lastAccessedTime);
+        serializer.writeInt(stream, maxInactiveInterval);
+        serializer.writeBoolean(stream, isNew);
+        serializer.writeBoolean(stream, isValid);
+        serializer.writeLong(stream, thisAccessedTime);
+        serializer.writeLong(stream, version);
         stream.writeBoolean(getPrincipal() instanceof Serializable);
         if (getPrincipal() instanceof Serializable) {
-            stream.writeObject(getPrincipal());
+            serializer.writeObject(stream, getPrincipal());
         }
 
-        stream.writeObject(id);
+        serializer.writeString(stream, id);
         if (log.isDebugEnabled()) log.debug(sm.getString("deltaSession.writeSession", id));
 
         // Accumulate the names of serializable and non-serializable attributes
@@ -930,11 +947,11 @@ public class DeltaSession extends StandardSession implements Externalizable, Clu
 
         // Serialize the attribute count and the Serializable attributes
         int n = saveNames.size();
-        stream.writeObject(Integer.valueOf(n));
+        serializer.writeInt(stream, n);
         for (int i = 0; i < n; i++) {
-            stream.writeObject(saveNames.get(i));
+            serializer.writeString(stream, saveNames.get(i));
             try {
-                stream.writeObject(saveValues.get(i));
+                serializer.writeObject(stream, saveValues.get(i));
             } catch (NotSerializableException e) {
                 log.error(sm.getString("standardSession.notSerializable", saveNames.get(i), id), e);
             }
@@ -947,9 +964,9 @@ public class DeltaSession extends StandardSession implements Externalizable, Clu
                 saveListeners.add(listener);
             }
         }
-        stream.writeObject(Integer.valueOf(saveListeners.size()));
+        serializer.writeInt(stream, saveListeners.size());
         for (SessionListener listener : saveListeners) {
-            stream.writeObject(listener);
+            serializer.writeObject(stream, listener);
         }
     }
 
@@ -166,12 +166,21 @@ public class MapperListener extends LifecycleMBeanBase
                         registerWrapper((Wrapper) child);
                     }
                 }
+            } else if (child instanceof Context &&
+                    ((Context) child).getStartOnDemand() &&
+                    child.getParent().getState().isAvailable()) {
+                // Map it now so the first request can start it
+                registerContextOnDemand((Context) child);
             }
         } else if (Container.REMOVE_CHILD_EVENT.equals(event.getType())) {
             Container child = (Container) event.getData();
             removeListeners(child);
             // No need to unregister - life-cycle listener will handle this when
-            // the child stops
+            // the child stops - unless the child is a Context started on demand
+            // since that remains mapped when it stops
+            if (child instanceof Context && ((Context) child).getStartOnDemand()) {
+                removeContextOnDemand((Context) child);
+            }
         } else if (Host.ADD_ALIAS_EVENT.equals(event.getType())) {
             // Handle dynamically adding host aliases
             mapper.addHostAlias(((Host) event.getSource()).getName(),
@@ -305,6 +314,8 @@ public class MapperListener extends LifecycleMBeanBase
         for (Container container : host.findChildren()) {
             if (container.getState().isAvailable()) {
                 registerContext((Context) container);
+            } else if (((Context) container).getStartOnDemand()) {
+                registerContextOnDemand((Context) container);
             }
         }
 
@@ -417,6 +428,18 @@ public class MapperListener extends LifecycleMBeanBase
                         contextPath, service));
             }
 
+            mapper.pauseContextVersion(context, hostName, contextPath,
+                    context.getWebappVersion());
+        } else if (context.getStartOnDemand() &&
+                !LifecycleState.FAILED.equals(context.getState())) {
+            // Keep the Context mapped so the next request starts it again. A
+            // Context that failed to start is removed so requests do not keep
+            // trying to start it.
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("mapperListener.registerContextOnDemand",
+                        contextPath, service));
+            }
+
             mapper.pauseContextVersion(context, hostName, contextPath,
                     context.getWebappVersion());
         } else {
@@ -431,6 +454,51 @@ public class MapperListener extends LifecycleMBeanBase
     }
 
 
+    /**
+     * Register a context that has not started but is started by the first
+     * request mapped to it. It is registered without any wrappers and paused
+     * so requests are mapped to the context only.
+     */
+    private void registerContextOnDemand(Context context) {
+
+        String contextPath = context.getPath();
+        if ("/".equals(contextPath)) {
+            contextPath = "";
+        }
+        Host host = (Host) context.getParent();
+
+        mapper.addContextVersion(host.getName(), host, contextPath,
+                context.getWebappVersion(), context, new String[0], null, null);
+        mapper.pauseContextVersion(context, host.getName(), contextPath,
+                context.getWebappVersion());
+
+        if (log.isDebugEnabled()) {
+            log.debug(sm.getString("mapperListener.registerContextOnDemand",
+                    contextPath, service));
+        }
+    }
+
+
+    /**
+     * Remove a context started on demand that has been removed from its host.
+     */
+    private void removeContextOnDemand(Context context) {
+
+        String contextPath = context.getPath();
+        if ("/".equals(contextPath)) {
+            contextPath = "";
+        }
+
+        mapper.removeContextVersion(context, context.getParent().getName(),
+                contextPath, context.getWebappVersion());
+
+        if (log.isDebugEnabled()) {
+            log.debug(sm.getString("mapperListener.unregisterContext",
+                    contextPath, service));
+        }
+    }
+
+
     /**
      * Register wrapper.
      */
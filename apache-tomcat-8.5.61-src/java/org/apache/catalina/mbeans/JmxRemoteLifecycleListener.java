@@ -38,6 +38,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 
+import javax.management.MBeanServer;
 import javax.management.remote.JMXConnectorServer;
 import javax.management.remote.JMXServiceURL;
 import javax.management.remote.rmi.RMIConnectorServer;
@@ -53,6 +54,7 @@ import org.apache.catalina.LifecycleEvent;
 import org.apache.catalina.LifecycleListener;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.modeler.Registry;
 import org.apache.tomcat.util.res.StringManager;
 
 /**
@@ -331,12 +333,21 @@ public class JmxRemoteLifecycleListener implements LifecycleListener {
             return null;
         }
 
+        // When the registration of components is deferred, remote clients
+        // need to go through the Registry to see them
+        MBeanServer mbeanServer;
+        Registry registry = Registry.getRegistry(null, null);
+        if (registry.getDeferRegistration()) {
+            mbeanServer = registry.getMBeanServer();
+        } else {
+            mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        }
+
         RMIConnectorServer cs = null;
         try {
             RMIJRMPServerImpl server = new RMIJRMPServerImpl(
                     rmiServerPortPlatform, serverCsf, serverSsf, theEnv);
-            cs = new RMIConnectorServer(serviceUrl, theEnv, server,
-                    ManagementFactory.getPlatformMBeanServer());
+            cs = new RMIConnectorServer(serviceUrl, theEnv, server, mbeanServer);
             cs.start();
             Remote jmxServer = server.toStub();
             // Create the RMI registry
@@ -33,6 +33,7 @@ import java.io.Serializable;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.security.AccessController;
@@ -71,6 +72,7 @@ import org.apache.catalina.Context;
 import org.apache.catalina.Globals;
 import org.apache.catalina.WebResource;
 import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.connector.CoyoteOutputStream;
 import org.apache.catalina.connector.RequestFacade;
 import org.apache.catalina.connector.ResponseFacade;
 import org.apache.catalina.util.IOTools;
@@ -1132,16 +1134,27 @@ public class DefaultServlet extends HttpServlet {
                                 // implementations as that could trigger loading
                                 // the contents of a very large file into memory
                                 byte[] resourceBody = null;
+                                ByteBuffer resourceBuffer = null;
                                 if (resource instanceof CachedResource) {
                                     resourceBody = resource.getContent();
+                                    if (resourceBody == null &&
+                                            ostream instanceof CoyoteOutputStream) {
+                                        // Larger content may be cached
+                                        // off-heap
+                                        resourceBuffer = ((CachedResource) resource).getContentBuffer();
+                                    }
                                 }
-                                if (resourceBody == null) {
+                                if (resourceBody != null) {
+                                    // Use the resource content directly
+                                    ostream.write(resourceBody);
+                                } else if (resourceBuffer != null) {
+                                    // Write the cached buffer without copying
+                                    // it into the response buffer
+                                    ((CoyoteOutputStream) ostream).write(resourceBuffer);
+                                } else {
                                     // Resource content not directly available,
                                     // use InputStream
                                     renderResult = resource.getInputStream();
-                                } else {
-                                    // Use the resource content directly
-                                    ostream.write(resourceBody);
                                 }
                             }
                         }
@@ -2569,6 +2582,17 @@ public class DefaultServlet extends HttpServlet {
                         Range range)
             throws IOException {
 
+        if (resource instanceof CachedResource && ostream instanceof CoyoteOutputStream) {
+            ByteBuffer resourceBuffer = ((CachedResource) resource).getContentBuffer();
+            if (resourceBuffer != null) {
+                // Write the requested range of the cached buffer directly
+                resourceBuffer.position((int) range.start);
+                resourceBuffer.limit((int) range.end + 1);
+                ((CoyoteOutputStream) ostream).write(resourceBuffer);
+                return;
+            }
+        }
+
         IOException exception = null;
 
         InputStream resourceInputStream = resource.getInputStream();
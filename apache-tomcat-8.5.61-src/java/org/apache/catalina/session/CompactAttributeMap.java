@@ -0,0 +1,368 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link ConcurrentMap} for the small attribute sets typical of HTTP
+ * sessions. Up to {@link #MAX_FLAT_SIZE} mappings are held in a single flat
+ * array of alternating keys and values that is replaced on every update, so
+ * reads need no locking and an empty map costs one object plus a shared empty
+ * array. Once the map grows beyond that it switches to a
+ * {@link ConcurrentHashMap}, and only switches back when it is cleared.
+ * <p>
+ * As with {@link ConcurrentHashMap}, <code>null</code> keys and values are not
+ * permitted. Iterators work on a snapshot and never throw
+ * {@link java.util.ConcurrentModificationException}.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+final class CompactAttributeMap<K,V> extends AbstractMap<K,V>
+        implements ConcurrentMap<K,V>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The largest number of mappings held in the flat array.
+     */
+    static final int MAX_FLAT_SIZE = 8;
+
+    private static final Object[] EMPTY = new Object[0];
+
+
+    /**
+     * Either an <code>Object[]</code> of alternating keys and values that is
+     * never modified once published, or the {@link ConcurrentHashMap} that
+     * replaced it. Holding both forms in one field means a reader always sees
+     * a complete view, whichever form it finds.
+     */
+    private volatile Object state = EMPTY;
+
+
+    // ---------------------------------------------------------- Map methods
+
+    @Override
+    public int size() {
+        Object s = state;
+        if (s instanceof Object[]) {
+            return ((Object[]) s).length >> 1;
+        }
+        return large(s).size();
+    }
+
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+
+    @Override
+    public V get(Object key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        Object s = state;
+        if (s instanceof Object[]) {
+            Object[] table = (Object[]) s;
+            int i = indexOf(table, key);
+            return i < 0 ? null : value(table, i);
+        }
+        return large(s).get(key);
+    }
+
+
+    @Override
+    public V put(K key, V value) {
+        return put(key, value, false);
+    }
+
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return put(key, value, true);
+    }
+
+
+    @Override
+    public V remove(Object key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        synchronized (this) {
+            Object s = state;
+            if (s instanceof Object[]) {
+                Object[] table = (Object[]) s;
+                int i = indexOf(table, key);
+                if (i < 0) {
+                    return null;
+                }
+                V old = value(table, i);
+                state = without(table, i);
+                return old;
+            }
+            return large(s).remove(key);
+        }
+    }
+
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        if (value == null) {
+            return false;
+        }
+        synchronized (this) {
+            Object s = state;
+            if (s instanceof Object[]) {
+                Object[] table = (Object[]) s;
+                int i = indexOf(table, key);
+                if (i < 0 || !value.equals(table[i + 1])) {
+                    return false;
+                }
+                state = without(table, i);
+                return true;
+            }
+            return large(s).remove(key, value);
+        }
+    }
+
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (key == null || oldValue == null || newValue == null) {
+            throw new NullPointerException();
+        }
+        synchronized (this) {
+            Object s = state;
+            if (s instanceof Object[]) {
+                Object[] table = (Object[]) s;
+                int i = indexOf(table, key);
+                if (i < 0 || !oldValue.equals(table[i + 1])) {
+                    return false;
+                }
+                state = with(table, i, newValue);
+                return true;
+            }
+            return large(s).replace(key, oldValue, newValue);
+        }
+    }
+
+
+    @Override
+    public V replace(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        synchronized (this) {
+            Object s = state;
+            if (s instanceof Object[]) {
+                Object[] table = (Object[]) s;
+                int i = indexOf(table, key);
+                if (i < 0) {
+                    return null;
+                }
+                V old = value(table, i);
+                state = with(table, i, value);
+                return old;
+            }
+            return large(s).replace(key, value);
+        }
+    }
+
+
+    @Override
+    public synchronized void clear() {
+        state = EMPTY;
+    }
+
+
+    @Override
+    public Set<Map.Entry<K,V>> entrySet() {
+        return new EntrySet();
+    }
+
+
+    // ------------------------------------------------------ Private methods
+
+    private V put(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        synchronized (this) {
+            Object s = state;
+            if (s instanceof Object[]) {
+                Object[] table = (Object[]) s;
+                int i = indexOf(table, key);
+                if (i >= 0) {
+                    V old = value(table, i);
+                    if (!onlyIfAbsent) {
+                        state = with(table, i, value);
+                    }
+                    return old;
+                }
+                if (table.length >> 1 < MAX_FLAT_SIZE) {
+                    Object[] grown = Arrays.copyOf(table, table.length + 2);
+                    grown[table.length] = key;
+                    grown[table.length + 1] = value;
+                    state = grown;
+                    return null;
+                }
+                ConcurrentHashMap<K,V> map = new ConcurrentHashMap<>(MAX_FLAT_SIZE * 4);
+                for (int j = 0; j < table.length; j += 2) {
+                    map.put(key(table, j), value(table, j));
+                }
+                map.put(key, value);
+                state = map;
+                return null;
+            }
+            if (onlyIfAbsent) {
+                return large(s).putIfAbsent(key, value);
+            }
+            return large(s).put(key, value);
+        }
+    }
+
+
+    private static int indexOf(Object[] table, Object key) {
+        for (int i = 0; i < table.length; i += 2) {
+            Object k = table[i];
+            if (k == key || k.equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    private static Object[] with(Object[] table, int i, Object value) {
+        Object[] copy = table.clone();
+        copy[i + 1] = value;
+        return copy;
+    }
+
+
+    private static Object[] without(Object[] table, int i) {
+        if (table.length == 2) {
+            return EMPTY;
+        }
+        Object[] shrunk = new Object[table.length - 2];
+        System.arraycopy(table, 0, shrunk, 0, i);
+        System.arraycopy(table, i + 2, shrunk, i, table.length - i - 2);
+        return shrunk;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private K key(Object[] table, int i) {
+        return (K) table[i];
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private V value(Object[] table, int i) {
+        return (V) table[i + 1];
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private ConcurrentHashMap<K,V> large(Object s) {
+        return (ConcurrentHashMap<K,V>) s;
+    }
+
+
+    // -------------------------------------------------------- Inner classes
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+
+        @Override
+        public Iterator<Map.Entry<K,V>> iterator() {
+            Object s = state;
+            if (s instanceof Object[]) {
+                return new FlatIterator((Object[]) s);
+            }
+            return large(s).entrySet().iterator();
+        }
+
+        @Override
+        public int size() {
+            return CompactAttributeMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            CompactAttributeMap.this.clear();
+        }
+    }
+
+
+    private final class FlatIterator implements Iterator<Map.Entry<K,V>> {
+
+        private final Object[] table;
+        private int next = 0;
+        private K lastKey = null;
+
+        FlatIterator(Object[] table) {
+            this.table = table;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < table.length;
+        }
+
+        @Override
+        public Map.Entry<K,V> next() {
+            if (next >= table.length) {
+                throw new NoSuchElementException();
+            }
+            lastKey = key(table, next);
+            Map.Entry<K,V> entry =
+                    new AbstractMap.SimpleImmutableEntry<>(lastKey, value(table, next));
+            next += 2;
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            if (lastKey == null) {
+                throw new IllegalStateException();
+            }
+            CompactAttributeMap.this.remove(lastKey);
+            lastKey = null;
+        }
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * A {@link SessionSerializer} that writes a compact binary encoding.
+ * <ul>
+ * <li>Numbers are written as variable length integers, so the typical
+ *     timestamps and intervals of a session take a few bytes each rather than
+ *     a serialized {@link Long} or {@link Integer}.</li>
+ * <li>Values of a fixed table of common attribute types (strings, boxed
+ *     primitives, {@link Date}, {@link BigInteger}, {@link BigDecimal} and
+ *     arrays of bytes, ints, longs and strings) are written as a one byte type
+ *     tag followed by their content, with no class descriptor.</li>
+ * <li>Any other value falls back to Java serialization. As all the sessions
+ *     written to one stream share the stream, the class descriptor of each
+ *     such type is written once per stream and referenced after that.</li>
+ * </ul>
+ * Only the exact types in the table are encoded directly. Subclasses, such as
+ * {@link java.sql.Timestamp}, fall back to Java serialization so that they are
+ * read back as the same type.
+ */
+public class CompactSessionSerializer implements SessionSerializer {
+
+    private static final StringManager sm = StringManager.getManager(CompactSessionSerializer.class);
+
+    /**
+     * The name written ahead of each session.
+     */
+    public static final String NAME = "compact";
+
+    public static final CompactSessionSerializer INSTANCE = new CompactSessionSerializer();
+
+    private static final int TYPE_NULL = 0;
+    private static final int TYPE_STRING = 1;
+    private static final int TYPE_TRUE = 2;
+    private static final int TYPE_FALSE = 3;
+    private static final int TYPE_INTEGER = 4;
+    private static final int TYPE_LONG = 5;
+    private static final int TYPE_SHORT = 6;
+    private static final int TYPE_BYTE = 7;
+    private static final int TYPE_CHARACTER = 8;
+    private static final int TYPE_FLOAT = 9;
+    private static final int TYPE_DOUBLE = 10;
+    private static final int TYPE_DATE = 11;
+    private static final int TYPE_BIG_INTEGER = 12;
+    private static final int TYPE_BIG_DECIMAL = 13;
+    private static final int TYPE_BYTE_ARRAY = 14;
+    private static final int TYPE_INT_ARRAY = 15;
+    private static final int TYPE_LONG_ARRAY = 16;
+    private static final int TYPE_STRING_ARRAY = 17;
+    private static final int TYPE_SERIALIZED = 127;
+
+    private static final Map<Class<?>,Integer> types = new HashMap<>();
+
+    static {
+        types.put(String.class, Integer.valueOf(TYPE_STRING));
+        types.put(Boolean.class, Integer.valueOf(TYPE_TRUE));
+        types.put(Integer.class, Integer.valueOf(TYPE_INTEGER));
+        types.put(Long.class, Integer.valueOf(TYPE_LONG));
+        types.put(Short.class, Integer.valueOf(TYPE_SHORT));
+        types.put(Byte.class, Integer.valueOf(TYPE_BYTE));
+        types.put(Character.class, Integer.valueOf(TYPE_CHARACTER));
+        types.put(Float.class, Integer.valueOf(TYPE_FLOAT));
+        types.put(Double.class, Integer.valueOf(TYPE_DOUBLE));
+        types.put(Date.class, Integer.valueOf(TYPE_DATE));
+        types.put(BigInteger.class, Integer.valueOf(TYPE_BIG_INTEGER));
+        types.put(BigDecimal.class, Integer.valueOf(TYPE_BIG_DECIMAL));
+        types.put(byte[].class, Integer.valueOf(TYPE_BYTE_ARRAY));
+        types.put(int[].class, Integer.valueOf(TYPE_INT_ARRAY));
+        types.put(long[].class, Integer.valueOf(TYPE_LONG_ARRAY));
+        types.put(String[].class, Integer.valueOf(TYPE_STRING_ARRAY));
+    }
+
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+
+    // ---------------------------------------------------------------- Writing
+
+    @Override
+    public void writeBoolean(ObjectOutput out, boolean value) throws IOException {
+        out.writeBoolean(value);
+    }
+
+
+    @Override
+    public void writeInt(ObjectOutput out, int value) throws IOException {
+        writeVarLong(out, value);
+    }
+
+
+    @Override
+    public void writeLong(ObjectOutput out, long value) throws IOException {
+        writeVarLong(out, value);
+    }
+
+
+    @Override
+    public void writeString(ObjectOutput out, String value) throws IOException {
+        if (value == null) {
+            writeUnsigned(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeUnsigned(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+
+    @Override
+    public void writeObject(ObjectOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+            return;
+        }
+        Integer type = types.get(value.getClass());
+        if (type == null) {
+            out.writeByte(TYPE_SERIALIZED);
+            out.writeObject(value);
+            return;
+        }
+        switch (type.intValue()) {
+            case TYPE_STRING:
+                out.writeByte(TYPE_STRING);
+                writeString(out, (String) value);
+                break;
+            case TYPE_TRUE:
+                out.writeByte(((Boolean) value).booleanValue() ? TYPE_TRUE : TYPE_FALSE);
+                break;
+            case TYPE_INTEGER:
+                out.writeByte(TYPE_INTEGER);
+                writeVarLong(out, ((Integer) value).intValue());
+                break;
+            case TYPE_LONG:
+                out.writeByte(TYPE_LONG);
+                writeVarLong(out, ((Long) value).longValue());
+                break;
+            case TYPE_SHORT:
+                out.writeByte(TYPE_SHORT);
+                writeVarLong(out, ((Short) value).shortValue());
+                break;
+            case TYPE_BYTE:
+                out.writeByte(TYPE_BYTE);
+                out.writeByte(((Byte) value).byteValue());
+                break;
+            case TYPE_CHARACTER:
+                out.writeByte(TYPE_CHARACTER);
+                out.writeChar(((Character) value).charValue());
+                break;
+            case TYPE_FLOAT:
+                out.writeByte(TYPE_FLOAT);
+                out.writeFloat(((Float) value).floatValue());
+                break;
+            case TYPE_DOUBLE:
+                out.writeByte(TYPE_DOUBLE);
+                out.writeDouble(((Double) value).doubleValue());
+                break;
+            case TYPE_DATE:
+                out.writeByte(TYPE_DATE);
+                writeVarLong(out, ((Date) value).getTime());
+                break;
+            case TYPE_BIG_INTEGER:
+                out.writeByte(TYPE_BIG_INTEGER);
+                writeBytes(out, ((BigInteger) value).toByteArray());
+                break;
+            case TYPE_BIG_DECIMAL:
+                out.writeByte(TYPE_BIG_DECIMAL);
+                writeBytes(out, ((BigDecimal) value).unscaledValue().toByteArray());
+                writeVarLong(out, ((BigDecimal) value).scale());
+                break;
+            case TYPE_BYTE_ARRAY:
+                out.writeByte(TYPE_BYTE_ARRAY);
+                writeBytes(out, (byte[]) value);
+                break;
+            case TYPE_INT_ARRAY: {
+                int[] array = (int[]) value;
+                out.writeByte(TYPE_INT_ARRAY);
+                writeUnsigned(out, array.length);
+                for (int i : array) {
+                    writeVarLong(out, i);
+                }
+                break;
+            }
+            case TYPE_LONG_ARRAY: {
+                long[] array = (long[]) value;
+                out.writeByte(TYPE_LONG_ARRAY);
+                writeUnsigned(out, array.length);
+                for (long l : array) {
+                    writeVarLong(out, l);
+                }
+                break;
+            }
+            case TYPE_STRING_ARRAY: {
+                String[] array = (String[]) value;
+                out.writeByte(TYPE_STRING_ARRAY);
+                writeUnsigned(out, array.length);
+                for (String s : array) {
+                    writeString(out, s);
+                }
+                break;
+            }
+        }
+    }
+
+
+    // ---------------------------------------------------------------- Reading
+
+    @Override
+    public boolean readBoolean(ObjectInput in) throws IOException {
+        return in.readBoolean();
+    }
+
+
+    @Override
+    public int readInt(ObjectInput in) throws IOException {
+        long value = readVarLong(in);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new StreamCorruptedException(sm.getString("compactSessionSerializer.invalidLength"));
+        }
+        return (int) value;
+    }
+
+
+    @Override
+    public long readLong(ObjectInput in) throws IOException {
+        return readVarLong(in);
+    }
+
+
+    @Override
+    public String readString(ObjectInput in) throws IOException {
+        int length = readLength(in, true);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    @Override
+    public Object readObject(ObjectInput in) throws ClassNotFoundException, IOException {
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_SERIALIZED:
+                return in.readObject();
+            case TYPE_STRING:
+                return readString(in);
+            case TYPE_TRUE:
+                return Boolean.TRUE;
+            case TYPE_FALSE:
+                return Boolean.FALSE;
+            case TYPE_INTEGER:
+                return Integer.valueOf(readInt(in));
+            case TYPE_LONG:
+                return Long.valueOf(readVarLong(in));
+            case TYPE_SHORT:
+                return Short.valueOf((short) readVarLong(in));
+            case TYPE_BYTE:
+                return Byte.valueOf(in.readByte());
+            case TYPE_CHARACTER:
+                return Character.valueOf(in.readChar());
+            case TYPE_FLOAT:
+                return Float.valueOf(in.readFloat());
+            case TYPE_DOUBLE:
+                return Double.valueOf(in.readDouble());
+            case TYPE_DATE:
+                return new Date(readVarLong(in));
+            case TYPE_BIG_INTEGER:
+                return new BigInteger(readBytes(in));
+            case TYPE_BIG_DECIMAL: {
+                BigInteger unscaled = new BigInteger(readBytes(in));
+                return new BigDecimal(unscaled, readInt(in));
+            }
+            case TYPE_BYTE_ARRAY:
+                return readBytes(in);
+            case TYPE_INT_ARRAY: {
+                int[] array = new int[readLength(in, false)];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = readInt(in);
+                }
+                return array;
+            }
+            case TYPE_LONG_ARRAY: {
+                long[] array = new long[readLength(in, false)];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = readVarLong(in);
+                }
+                return array;
+            }
+            case TYPE_STRING_ARRAY: {
+                String[] array = new String[readLength(in, false)];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = readString(in);
+                }
+                return array;
+            }
+            default:
+                throw new StreamCorruptedException(
+                        sm.getString("compactSessionSerializer.invalidType", Integer.toString(type)));
+        }
+    }
+
+
+    // -------------------------------------------------------- Private methods
+
+    private static void writeBytes(ObjectOutput out, byte[] bytes) throws IOException {
+        writeUnsigned(out, bytes.length);
+        out.write(bytes);
+    }
+
+
+    private static byte[] readBytes(ObjectInput in) throws IOException {
+        byte[] bytes = new byte[readLength(in, false)];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+
+    /**
+     * Write a signed value using zig-zag encoding, so that small negative
+     * values such as an interval of -1 are as short as small positive ones.
+     */
+    private static void writeVarLong(ObjectOutput out, long value) throws IOException {
+        writeUnsigned(out, (value << 1) ^ (value >> 63));
+    }
+
+
+    private static long readVarLong(ObjectInput in) throws IOException {
+        long value = readUnsigned(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+
+    /**
+     * Write seven bits per byte, least significant first, with the top bit of
+     * each byte set if more bytes follow.
+     */
+    private static void writeUnsigned(ObjectOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+
+    private static long readUnsigned(ObjectInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException(sm.getString("compactSessionSerializer.invalidLength"));
+    }
+
+
+    /**
+     * Read a length. If <code>nullable</code>, a length of zero represents
+     * <code>null</code> and is returned as -1, and other lengths are offset by
+     * one.
+     */
+    private static int readLength(ObjectInput in, boolean nullable) throws IOException {
+        long length = readUnsigned(in);
+        if (nullable) {
+            length--;
+        }
+        if (length < -1 || length > Integer.MAX_VALUE || length == -1 && !nullable) {
+            throw new StreamCorruptedException(sm.getString("compactSessionSerializer.invalidLength"));
+        }
+        return (int) length;
+    }
+}
@@ -378,6 +378,44 @@ public class DataSourceStore extends JDBCStore {
     }
 
 
+    /**
+     * Save the specified sessions to the Store with one batch of deletes and
+     * one batch of inserts rather than a pair of statements per session.
+     *
+     * @param sessions the sessions to be stored
+     * @throws IOException if no connection is available, the last attempt
+     *                     to save the sessions fails or one or more of the
+     *                     sessions could not be serialized
+     */
+    @Override
+    public void saveAll(Session[] sessions) throws IOException {
+        byte[][] data = serialize(sessions);
+
+        SQLException error = null;
+        int numberOfTries = 2;
+        while (numberOfTries > 0) {
+            Connection _conn = getConnection();
+            if (_conn == null) {
+                break;
+            }
+
+            try {
+                saveAll(sessions, data, _conn);
+                checkSerialized(data);
+                return;
+            } catch (SQLException e) {
+                manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
+                error = e;
+            } finally {
+                release(_conn);
+            }
+            numberOfTries--;
+        }
+        throw new IOException(sm.getString(getStoreName() + ".saveAllError",
+                Integer.valueOf(sessions.length), sessionTable), error);
+    }
+
+
     // --------------------------------------------------------- Protected Methods
 
     /**
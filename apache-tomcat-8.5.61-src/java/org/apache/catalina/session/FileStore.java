@@ -29,6 +29,7 @@ import java.util.List;
 
 import javax.servlet.ServletContext;
 
+import org.apache.catalina.BatchStore;
 import org.apache.catalina.Context;
 import org.apache.catalina.Globals;
 import org.apache.catalina.Session;
@@ -43,7 +44,7 @@ import org.apache.tomcat.util.res.StringManager;
  *
  * @author Craig R. McClanahan
  */
-public final class FileStore extends StoreBase {
+public final class FileStore extends StoreBase implements BatchStore {
 
     private static final Log log = LogFactory.getLog(FileStore.class);
     private static final StringManager sm = StringManager.getManager(FileStore.class);
@@ -57,6 +58,13 @@ public final class FileStore extends StoreBase {
     private static final String FILE_EXT = ".session";
 
 
+    /**
+     * The maximum number of files {@link #saveAll(Session[])} holds open while
+     * it saves a group of sessions.
+     */
+    private static final int SAVE_GROUP_SIZE = 64;
+
+
     // ----------------------------------------------------- Instance Variables
 
     /**
@@ -296,8 +304,94 @@ public final class FileStore extends StoreBase {
     }
 
 
+    /**
+     * Save the specified Sessions to this Store. The sessions are saved in
+     * groups of at most {@link #SAVE_GROUP_SIZE}. Every file of a group is
+     * written before any of them is synchronised to the storage device, so
+     * that the device can service the group together rather than one file at
+     * a time, while the number of files open at once stays bounded.
+     *
+     * @param sessions the sessions to be stored
+     * @throws IOException if an input/output error occurs. The first error is
+     *         reported after an attempt has been made to save every session.
+     */
+    @Override
+    public void saveAll(Session[] sessions) throws IOException {
+        IOException error = null;
+        for (int start = 0; start < sessions.length; start += SAVE_GROUP_SIZE) {
+            IOException e = saveGroup(sessions, start,
+                    Math.min(start + SAVE_GROUP_SIZE, sessions.length));
+            if (error == null) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+
     // -------------------------------------------------------- Private Methods
 
+    /**
+     * Save the sessions from <code>start</code> (inclusive) to
+     * <code>end</code> (exclusive), then synchronise and close their files.
+     *
+     * @return the first error that occurred, or <code>null</code> if there was
+     *         none
+     */
+    private IOException saveGroup(Session[] sessions, int start, int end) {
+        IOException error = null;
+        List<FileOutputStream> written = new ArrayList<>(end - start);
+        try {
+            for (int i = start; i < end; i++) {
+                Session session = sessions[i];
+                try {
+                    File file = file(session.getIdInternal());
+                    if (file == null) {
+                        continue;
+                    }
+                    if (manager.getContext().getLogger().isDebugEnabled()) {
+                        manager.getContext().getLogger().debug(sm.getString(getStoreName() + ".saving",
+                                session.getIdInternal(), file.getAbsolutePath()));
+                    }
+                    FileOutputStream fos = new FileOutputStream(file.getAbsolutePath());
+                    written.add(fos);
+                    // Not closed here as that would close fos before the sync
+                    ObjectOutputStream oos =
+                            new ObjectOutputStream(new BufferedOutputStream(fos));
+                    ((StandardSession) session).writeObjectData(oos);
+                    oos.flush();
+                } catch (IOException e) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+            }
+            for (FileOutputStream fos : written) {
+                try {
+                    fos.getFD().sync();
+                } catch (IOException e) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+            }
+        } finally {
+            for (FileOutputStream fos : written) {
+                try {
+                    fos.close();
+                } catch (IOException e) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+            }
+        }
+        return error;
+    }
+
+
     /**
      * Return a File object representing the pathname to our
      * session persistence directory, if any.  The directory will be
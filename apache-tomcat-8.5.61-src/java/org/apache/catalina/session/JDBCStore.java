@@ -38,6 +38,7 @@ import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 
+import org.apache.catalina.BatchStore;
 import org.apache.catalina.Container;
 import org.apache.catalina.Globals;
 import org.apache.catalina.LifecycleException;
@@ -56,7 +57,7 @@ import org.apache.tomcat.util.ExceptionUtils;
  * with removal of legacy JDBC code
  */
 @Deprecated
-public class JDBCStore extends StoreBase {
+public class JDBCStore extends StoreBase implements BatchStore {
 
     /**
      * Context name associated with this Store
@@ -846,8 +847,158 @@ public class JDBCStore extends StoreBase {
     }
 
 
+    /**
+     * Save the specified sessions to the Store with one batch of deletes and
+     * one batch of inserts rather than a pair of statements per session.
+     *
+     * @param sessions the sessions to be stored
+     * @throws IOException if no connection is available, the last attempt
+     *                     to save the sessions fails or one or more of the
+     *                     sessions could not be serialized. The sessions that
+     *                     could be serialized are saved in the last case.
+     */
+    @Override
+    public void saveAll(Session[] sessions) throws IOException {
+        byte[][] data = serialize(sessions);
+
+        synchronized (this) {
+            SQLException error = null;
+            int numberOfTries = 2;
+            while (numberOfTries > 0) {
+                Connection _conn = getConnection();
+                if (_conn == null) {
+                    break;
+                }
+
+                try {
+                    saveAll(sessions, data, _conn);
+                    checkSerialized(data);
+                    return;
+                } catch (SQLException e) {
+                    manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
+                    error = e;
+                    if (dbConnection != null)
+                        close(dbConnection);
+                } finally {
+                    release(_conn);
+                }
+                numberOfTries--;
+            }
+            throw new IOException(sm.getString(getStoreName() + ".saveAllError",
+                    Integer.valueOf(sessions.length), sessionTable), error);
+        }
+    }
+
+
     // --------------------------------------------------------- Protected Methods
 
+    /**
+     * Serialize the specified sessions ready to be saved by
+     * {@link #saveAll(Session[], byte[][], Connection)}.
+     *
+     * @param sessions the sessions to serialize
+     * @return the serialized form of each session, or <code>null</code> for
+     *         any session that could not be serialized. The failure is logged
+     *         and reported by {@link #checkSerialized(byte[][])} once the
+     *         other sessions have been saved.
+     */
+    protected byte[][] serialize(Session[] sessions) {
+        byte[][] data = new byte[sessions.length][];
+        for (int i = 0; i < sessions.length; i++) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos =
+                         new ObjectOutputStream(new BufferedOutputStream(bos))) {
+                ((StandardSession) sessions[i]).writeObjectData(oos);
+            } catch (IOException e) {
+                manager.getContext().getLogger().warn(sm.getString(getStoreName() + ".serializeError",
+                        sessions[i].getIdInternal()), e);
+                continue;
+            }
+            data[i] = bos.toByteArray();
+        }
+        return data;
+    }
+
+
+    /**
+     * Check that every session of a batch was serialized by
+     * {@link #serialize(Session[])}.
+     *
+     * @param data the serialized form of each session
+     * @throws IOException if one or more of the sessions could not be
+     *                     serialized and so were not saved
+     */
+    protected void checkSerialized(byte[][] data) throws IOException {
+        int failed = 0;
+        for (byte[] bytes : data) {
+            if (bytes == null) {
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            throw new IOException(sm.getString(getStoreName() + ".serializeAllError",
+                    Integer.valueOf(failed), Integer.valueOf(data.length)));
+        }
+    }
+
+
+    /**
+     * Save the specified sessions using the given connection. Any existing
+     * rows for the sessions are removed with a single batch of deletes and
+     * the sessions are then added with a single batch of inserts.
+     *
+     * @param sessions the sessions to be stored
+     * @param data     the serialized form of each session, as returned by
+     *                 {@link #serialize(Session[])}
+     * @param _conn    open connection to be used
+     * @throws SQLException if an error occurs while talking to the database
+     */
+    protected void saveAll(Session[] sessions, byte[][] data, Connection _conn)
+            throws SQLException {
+        String removeSql = "DELETE FROM " + sessionTable
+                + " WHERE " + sessionIdCol + " = ?  AND "
+                + sessionAppCol + " = ?";
+        String saveSql = "INSERT INTO " + sessionTable + " ("
+                + sessionIdCol + ", " + sessionAppCol + ", "
+                + sessionDataCol + ", " + sessionValidCol
+                + ", " + sessionMaxInactiveCol + ", "
+                + sessionLastAccessedCol
+                + ") VALUES (?, ?, ?, ?, ?, ?)";
+
+        try (PreparedStatement batchRemoveSql = _conn.prepareStatement(removeSql);
+             PreparedStatement batchSaveSql = _conn.prepareStatement(saveSql)) {
+            int count = 0;
+            for (int i = 0; i < sessions.length; i++) {
+                if (data[i] == null) {
+                    continue;
+                }
+                Session session = sessions[i];
+                batchRemoveSql.setString(1, session.getIdInternal());
+                batchRemoveSql.setString(2, getName());
+                batchRemoveSql.addBatch();
+
+                batchSaveSql.setString(1, session.getIdInternal());
+                batchSaveSql.setString(2, getName());
+                batchSaveSql.setBinaryStream(3, new ByteArrayInputStream(data[i]), data[i].length);
+                batchSaveSql.setString(4, session.isValid() ? "1" : "0");
+                batchSaveSql.setInt(5, session.getMaxInactiveInterval());
+                batchSaveSql.setLong(6, session.getLastAccessedTime());
+                batchSaveSql.addBatch();
+                count++;
+
+                if (manager.getContext().getLogger().isDebugEnabled()) {
+                    manager.getContext().getLogger().debug(sm.getString(getStoreName() + ".saving",
+                            session.getIdInternal(), sessionTable));
+                }
+            }
+            if (count > 0) {
+                batchRemoveSql.executeBatch();
+                batchSaveSql.executeBatch();
+            }
+        }
+    }
+
+
     /**
      * Check the connection associated with this store, if it's
      * <code>null</code> or closed try to reopen it.
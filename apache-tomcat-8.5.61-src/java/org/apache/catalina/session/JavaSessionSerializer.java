@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * The default {@link SessionSerializer}. Every value is written as an object
+ * using Java serialization, which is the format that sessions have always
+ * been written in. Sessions written by earlier versions can be read, and
+ * sessions written by this serializer can be read by earlier versions.
+ */
+public class JavaSessionSerializer implements SessionSerializer {
+
+    public static final JavaSessionSerializer INSTANCE = new JavaSessionSerializer();
+
+
+    @Override
+    public String getName() {
+        return null;
+    }
+
+
+    @Override
+    public void writeBoolean(ObjectOutput out, boolean value) throws IOException {
+        out.writeObject(Boolean.valueOf(value));
+    }
+
+
+    @Override
+    public void writeInt(ObjectOutput out, int value) throws IOException {
+        out.writeObject(Integer.valueOf(value));
+    }
+
+
+    @Override
+    public void writeLong(ObjectOutput out, long value) throws IOException {
+        out.writeObject(Long.valueOf(value));
+    }
+
+
+    @Override
+    public void writeString(ObjectOutput out, String value) throws IOException {
+        out.writeObject(value);
+    }
+
+
+    @Override
+    public void writeObject(ObjectOutput out, Object value) throws IOException {
+        out.writeObject(value);
+    }
+
+
+    @Override
+    public boolean readBoolean(ObjectInput in) throws ClassNotFoundException, IOException {
+        return ((Boolean) in.readObject()).booleanValue();
+    }
+
+
+    @Override
+    public int readInt(ObjectInput in) throws ClassNotFoundException, IOException {
+        return ((Integer) in.readObject()).intValue();
+    }
+
+
+    @Override
+    public long readLong(ObjectInput in) throws ClassNotFoundException, IOException {
+        return ((Long) in.readObject()).longValue();
+    }
+
+
+    @Override
+    public String readString(ObjectInput in) throws ClassNotFoundException, IOException {
+        return (String) in.readObject();
+    }
+
+
+    @Override
+    public Object readObject(ObjectInput in) throws ClassNotFoundException, IOException {
+        return in.readObject();
+    }
+}
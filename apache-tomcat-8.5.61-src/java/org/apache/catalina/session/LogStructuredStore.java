@@ -0,0 +1,1274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import javax.servlet.ServletContext;
+
+import org.apache.catalina.BatchStore;
+import org.apache.catalina.Context;
+import org.apache.catalina.Globals;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Session;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.buf.ByteBufferUtils;
+
+/**
+ * Concrete implementation of the <b>Store</b> interface that appends saved
+ * Sessions to a log held in a small number of large segment files in a
+ * configured directory, rather than using a file per Session as
+ * {@link FileStore} does.
+ * <p>
+ * Every save or remove is appended to the active segment as a checksummed
+ * record. An in-memory index maps each session identifier to the location of
+ * its latest record, so {@link #getSize()}, {@link #keys()} and
+ * {@link #expiredKeys()} never touch the file system. When the active segment
+ * reaches <code>segmentSize</code> bytes it is sealed and memory-mapped, and
+ * Sessions are read from the mapping from then on.
+ * <p>
+ * Records that have been superseded or removed are dead space. Once dead
+ * records make up <code>compactionThreshold</code> percent of the sealed
+ * segments, the background thread copies the live records into new segments
+ * and deletes the old ones.
+ * <p>
+ * When the Store is opened, the index is rebuilt by replaying every segment.
+ * A record that is incomplete or fails its checksum, as may be left behind by
+ * a crash, ends the replay of that segment and is discarded. Sessions that
+ * are saved are still subject to being expired based on inactivity.
+ */
+public final class LogStructuredStore extends StoreBase implements BatchStore {
+
+    private static final Log log = LogFactory.getLog(LogStructuredStore.class);
+
+
+    // ----------------------------------------------------- Constants
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_EXT = ".log";
+    private static final String TEMP_EXT = ".tmp";
+
+    /**
+     * Segment header: magic, version, count of superseded segments, followed
+     * by the IDs of the superseded segments.
+     */
+    private static final int SEGMENT_MAGIC = 0x54434c53;
+    private static final int SEGMENT_VERSION = 1;
+
+    /**
+     * Record header: magic, body length, CRC-32 of the body. The body is the
+     * type, sequence number, last accessed time, maximum inactive interval,
+     * the length of the UTF-8 session ID, the ID and then the session data.
+     */
+    private static final int RECORD_MAGIC = 0x53455353;
+    private static final int RECORD_HEADER_LENGTH = 12;
+    private static final int RECORD_BODY_MIN_LENGTH = 1 + 8 + 8 + 4 + 2;
+
+    private static final byte TYPE_SAVE = 1;
+    private static final byte TYPE_REMOVE = 2;
+
+    /**
+     * The largest segment that can be memory-mapped in one piece.
+     */
+    private static final int MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+
+    // ----------------------------------------------------- Instance Variables
+
+    /**
+     * The pathname of the directory in which the segments are stored.
+     * This may be an absolute pathname, or a relative path that is
+     * resolved against the temporary work directory for this application.
+     */
+    private String directory = "sessions";
+
+
+    /**
+     * The size in bytes at which the active segment is sealed.
+     */
+    private int segmentSize = 64 * 1024 * 1024;
+
+
+    /**
+     * The percentage of the sealed segments that must be dead records before
+     * they are compacted.
+     */
+    private int compactionThreshold = 50;
+
+
+    /**
+     * Should every save be forced to the storage device before returning?
+     */
+    private boolean syncWrites = false;
+
+
+    /**
+     * Name to register for this Store, used for logging.
+     */
+    private static final String storeName = "logStructuredStore";
+
+
+    /**
+     * Name to register for the background thread.
+     */
+    private static final String threadName = "LogStructuredStore";
+
+
+    /**
+     * Guards all of the state below. Reads of mapped segments must hold at
+     * least the read lock, as segments are unmapped under the write lock.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile boolean open = false;
+    private File directoryFile = null;
+    private final Map<String,Location> index = new HashMap<>();
+    private final TreeMap<Integer,Segment> segments = new TreeMap<>();
+    private Segment active = null;
+    private int nextSegmentId = 0;
+    private long nextSequence = 0;
+    private boolean compacting = false;
+    // Incremented by clear() so a compaction in progress discards its output
+    private int clearCount = 0;
+
+
+    // ------------------------------------------------------------- Properties
+
+    /**
+     * @return The directory path for this Store.
+     */
+    public String getDirectory() {
+        return directory;
+    }
+
+
+    /**
+     * Set the directory path for this Store. Takes effect the next time the
+     * Store is opened.
+     *
+     * @param path The new directory path
+     */
+    public void setDirectory(String path) {
+        String oldDirectory = this.directory;
+        this.directory = path;
+        support.firePropertyChange("directory", oldDirectory, this.directory);
+    }
+
+
+    /**
+     * @return The size in bytes at which the active segment is sealed and a
+     *         new one started.
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+
+    /**
+     * Set the size in bytes at which the active segment is sealed and a new
+     * one started. A single record larger than this is written to a segment
+     * of its own.
+     *
+     * @param segmentSize The new segment size
+     */
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = Math.max(segmentSize, 4096);
+    }
+
+
+    /**
+     * @return The percentage of the sealed segments that must be dead
+     *         records before they are compacted.
+     */
+    public int getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+
+    /**
+     * Set the percentage of the sealed segments that must be dead records
+     * before they are compacted. Lower values use less disk space at the cost
+     * of copying live records more often.
+     *
+     * @param compactionThreshold The new threshold, from 1 to 100
+     */
+    public void setCompactionThreshold(int compactionThreshold) {
+        this.compactionThreshold = Math.min(Math.max(compactionThreshold, 1), 100);
+    }
+
+
+    /**
+     * @return {@code true} if every save is forced to the storage device
+     *         before returning
+     */
+    public boolean getSyncWrites() {
+        return syncWrites;
+    }
+
+
+    /**
+     * Configure whether every save is forced to the storage device before
+     * returning. When saving a batch, the segment is forced once for the
+     * whole batch.
+     *
+     * @param syncWrites {@code true} to force each save to the storage device
+     */
+    public void setSyncWrites(boolean syncWrites) {
+        this.syncWrites = syncWrites;
+    }
+
+
+    /**
+     * @return The thread name for this Store.
+     */
+    public String getThreadName() {
+        return threadName;
+    }
+
+
+    /**
+     * Return the name for this Store, used for logging.
+     */
+    @Override
+    public String getStoreName() {
+        return storeName;
+    }
+
+
+    /**
+     * @return the number of segment files currently in use
+     * @throws IOException if the Store cannot be opened
+     */
+    public int getSegmentCount() throws IOException {
+        ensureOpen();
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * @return the number of bytes of live records across all segments
+     * @throws IOException if the Store cannot be opened
+     */
+    public long getLiveBytes() throws IOException {
+        ensureOpen();
+        lock.readLock().lock();
+        try {
+            long live = 0;
+            for (Segment segment : segments.values()) {
+                live += segment.liveBytes;
+            }
+            return live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * @return the number of bytes of records, live or dead, across all
+     *         segments
+     * @throws IOException if the Store cannot be opened
+     */
+    public long getTotalBytes() throws IOException {
+        ensureOpen();
+        lock.readLock().lock();
+        try {
+            long total = 0;
+            for (Segment segment : segments.values()) {
+                total += segment.size - segment.headerLength;
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Return the number of Sessions present in this Store.
+     *
+     * @throws IOException if an input/output error occurs
+     */
+    @Override
+    public int getSize() throws IOException {
+        ensureOpen();
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+    /**
+     * Remove all of the Sessions in this Store.
+     *
+     * @throws IOException if an input/output error occurs
+     */
+    @Override
+    public void clear() throws IOException {
+        ensureOpen();
+        lock.writeLock().lock();
+        try {
+            clearCount++;
+            for (Segment segment : segments.values()) {
+                segment.close();
+                delete(segment.file);
+            }
+            segments.clear();
+            index.clear();
+            active = createSegment(nextSegmentId++, new int[0], false);
+            // The deleted segments must not reappear after a crash
+            syncDirectory(directory());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Return an array containing the session identifiers of all Sessions
+     * currently saved in this Store.  If there are no such Sessions, a
+     * zero-length array is returned.
+     *
+     * @throws IOException if an input/output error occurred
+     */
+    @Override
+    public String[] keys() throws IOException {
+        ensureOpen();
+        lock.readLock().lock();
+        try {
+            return index.keySet().toArray(new String[0]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The index records when each Session was last accessed, so only the
+     * Sessions that may have expired are returned.
+     */
+    @Override
+    public String[] expiredKeys() throws IOException {
+        ensureOpen();
+        long timeNow = System.currentTimeMillis();
+        List<String> expired = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String,Location> entry : index.entrySet()) {
+                Location location = entry.getValue();
+                if (location.maxInactive > 0 &&
+                        (timeNow - location.lastAccessed) / 1000L >= location.maxInactive) {
+                    expired.add(entry.getKey());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return expired.toArray(new String[0]);
+    }
+
+
+    /**
+     * Load and return the Session associated with the specified session
+     * identifier from this Store, without removing it.  If there is no
+     * such stored Session, return <code>null</code>.
+     *
+     * @param id Session identifier of the session to load
+     * @throws ClassNotFoundException if a deserialization error occurs
+     * @throws IOException            if an input/output error occurs
+     */
+    @Override
+    public Session load(String id) throws ClassNotFoundException, IOException {
+        ensureOpen();
+
+        byte[] record;
+        String segmentName;
+        lock.readLock().lock();
+        try {
+            Location location = index.get(id);
+            if (location == null) {
+                return null;
+            }
+            record = location.segment.read(location.offset, location.length);
+            segmentName = location.segment.file.getName();
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Context context = getManager().getContext();
+        Log contextLog = context.getLogger();
+
+        if (contextLog.isDebugEnabled()) {
+            contextLog.debug(sm.getString(getStoreName() + ".loading", id, segmentName));
+        }
+
+        int bodyLength = checkRecord(ByteBuffer.wrap(record), 0, record.length);
+        if (bodyLength < 0) {
+            throw new IOException(sm.getString(getStoreName() + ".corrupt", id));
+        }
+        ByteBuffer body = ByteBuffer.wrap(record, RECORD_HEADER_LENGTH, bodyLength);
+        body.position(RECORD_HEADER_LENGTH + RECORD_BODY_MIN_LENGTH - 2);
+        int idLength = body.getShort() & 0xffff;
+        int dataOffset = body.position() + idLength;
+
+        ClassLoader oldThreadContextCL = context.bind(Globals.IS_SECURITY_ENABLED, null);
+
+        try (ByteArrayInputStream bis = new ByteArrayInputStream(
+                    record, dataOffset, record.length - dataOffset);
+             ObjectInputStream ois = getObjectInputStream(bis)) {
+
+            StandardSession session = (StandardSession) manager.createEmptySession();
+            session.readObjectData(ois);
+            session.setManager(manager);
+            return session;
+        } finally {
+            context.unbind(Globals.IS_SECURITY_ENABLED, oldThreadContextCL);
+        }
+    }
+
+
+    /**
+     * Remove the Session with the specified session identifier from
+     * this Store, if present.  If no such Session is present, this method
+     * takes no action.
+     *
+     * @param id Session identifier of the Session to be removed
+     * @throws IOException if an input/output error occurs
+     */
+    @Override
+    public void remove(String id) throws IOException {
+        ensureOpen();
+        lock.writeLock().lock();
+        try {
+            Location location = index.remove(id);
+            if (location == null) {
+                return;
+            }
+            location.segment.liveBytes -= location.length;
+            // The removal must be recorded while the saved record may still
+            // be replayed
+            byte[] record = encode(TYPE_REMOVE, nextSequence++, id, 0, 0, null);
+            Segment segment = append(record);
+            if (syncWrites) {
+                segment.force();
+            }
+            if (manager.getContext().getLogger().isDebugEnabled()) {
+                manager.getContext().getLogger().debug(sm.getString(getStoreName() + ".removing",
+                        id, segment.file.getName()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Save the specified Session into this Store.  Any previously saved
+     * information for the associated session identifier is replaced.
+     *
+     * @param session Session to be saved
+     * @throws IOException if an input/output error occurs
+     */
+    @Override
+    public void save(Session session) throws IOException {
+        saveAll(new Session[] { session });
+    }
+
+
+    /**
+     * Save the specified Sessions to this Store. The records are appended to
+     * the active segment together and, if <code>syncWrites</code> is set, the
+     * segment is forced to the storage device once for the whole group.
+     *
+     * @param sessions the sessions to be stored
+     * @throws IOException if an input/output error occurs
+     */
+    @Override
+    public void saveAll(Session[] sessions) throws IOException {
+        ensureOpen();
+
+        // Serialize outside of the lock
+        byte[][] data = new byte[sessions.length][];
+        for (int i = 0; i < sessions.length; i++) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(bos))) {
+                ((StandardSession) sessions[i]).writeObjectData(oos);
+            }
+            data[i] = bos.toByteArray();
+        }
+
+        lock.writeLock().lock();
+        try {
+            List<Segment> written = new ArrayList<>(2);
+            for (int i = 0; i < sessions.length; i++) {
+                StandardSession session = (StandardSession) sessions[i];
+                String id = session.getIdInternal();
+                long sequence = nextSequence++;
+                byte[] record = encode(TYPE_SAVE, sequence, id,
+                        session.getThisAccessedTimeInternal(), session.getMaxInactiveInterval(),
+                        data[i]);
+                Segment segment = append(record);
+                long offset = segment.size - record.length;
+                if (!written.contains(segment)) {
+                    written.add(segment);
+                }
+                Location previous = index.put(id, new Location(segment, offset, record.length,
+                        sequence, session.getThisAccessedTimeInternal(),
+                        session.getMaxInactiveInterval()));
+                if (previous != null) {
+                    previous.segment.liveBytes -= previous.length;
+                }
+                segment.liveBytes += record.length;
+
+                if (manager.getContext().getLogger().isDebugEnabled()) {
+                    manager.getContext().getLogger().debug(sm.getString(getStoreName() + ".saving",
+                            id, segment.file.getName()));
+                }
+            }
+            if (syncWrites) {
+                for (Segment segment : written) {
+                    segment.force();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Once expired Sessions have been removed, the sealed segments are
+     * compacted if enough of them is dead records.
+     */
+    @Override
+    public void processExpires() {
+        super.processExpires();
+        if (!getState().isAvailable()) {
+            return;
+        }
+        try {
+            compact(false);
+        } catch (IOException e) {
+            log.warn(sm.getString(getStoreName() + ".compactFailed", directoryFile), e);
+        }
+    }
+
+
+    /**
+     * Copy the live records of the sealed segments into new segments and
+     * delete the sealed segments.
+     *
+     * @param force {@code true} to compact regardless of the proportion of
+     *              dead records
+     *
+     * @return {@code true} if the segments were compacted
+     * @throws IOException if an input/output error occurs
+     */
+    public boolean compact(boolean force) throws IOException {
+        ensureOpen();
+
+        List<Segment> victims = new ArrayList<>();
+        List<Map.Entry<String,Location>> live = new ArrayList<>();
+        int[] victimIds;
+        int firstId;
+        int clears;
+        lock.writeLock().lock();
+        try {
+            if (compacting) {
+                return false;
+            }
+            long total = 0;
+            long liveBytes = 0;
+            for (Segment segment : segments.values()) {
+                if (segment != active) {
+                    victims.add(segment);
+                    total += segment.size - segment.headerLength;
+                    liveBytes += segment.liveBytes;
+                }
+            }
+            if (victims.isEmpty() || total == 0) {
+                return false;
+            }
+            if (!force && (total - liveBytes) * 100 < total * compactionThreshold) {
+                return false;
+            }
+            for (Map.Entry<String,Location> entry : index.entrySet()) {
+                if (entry.getValue().segment != active) {
+                    live.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+                }
+            }
+            victimIds = new int[victims.size()];
+            for (int i = 0; i < victimIds.length; i++) {
+                victimIds[i] = victims.get(i).id;
+            }
+            // Reserve enough IDs for the worst case of one output per victim
+            firstId = nextSegmentId;
+            nextSegmentId += victims.size();
+            clears = clearCount;
+            compacting = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        List<Segment> outputs = new ArrayList<>();
+        Map<Location,Location> moved = new HashMap<>();
+        long before = 0;
+        long after = 0;
+        try {
+            for (Segment victim : victims) {
+                before += victim.size;
+            }
+            // Only the last output lists the victims as superseded, so that
+            // they are deleted by recovery only once every output is in place
+            Segment output = null;
+            for (int i = 0; i < live.size(); i++) {
+                Location location = live.get(i).getValue();
+                byte[] record;
+                lock.readLock().lock();
+                try {
+                    if (!open || clearCount != clears) {
+                        throw new EOFException();
+                    }
+                    record = location.segment.read(location.offset, location.length);
+                } finally {
+                    lock.readLock().unlock();
+                }
+                if (output != null && output.size + record.length > segmentSize) {
+                    output.seal();
+                    outputs.add(output);
+                    output = null;
+                }
+                if (output == null) {
+                    output = createSegment(firstId + outputs.size(), new int[0], true);
+                }
+                long offset = output.size;
+                output.write(record);
+                moved.put(location, new Location(output, offset, record.length,
+                        location.sequence, location.lastAccessed, location.maxInactive));
+            }
+            // The last output always exists, even if there were no live
+            // records, to record the victims as superseded
+            if (output != null) {
+                output.seal();
+                outputs.add(output);
+            }
+            Segment last = createSegment(firstId + outputs.size(), victimIds, true);
+            last.seal();
+            outputs.add(last);
+            for (Segment segment : outputs) {
+                after += segment.size;
+                segment.commit();
+            }
+        } catch (IOException | RuntimeException e) {
+            for (Segment segment : outputs) {
+                segment.close();
+                delete(segment.file);
+            }
+            lock.writeLock().lock();
+            try {
+                compacting = false;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (e instanceof EOFException) {
+                // Closed or cleared during compaction
+                return false;
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            compacting = false;
+            if (!open) {
+                // Closed once the copy was complete. The next recovery
+                // deletes the victims.
+                for (Segment segment : outputs) {
+                    segment.close();
+                }
+                return false;
+            }
+            if (clearCount != clears) {
+                // Cleared once the copy was complete. The outputs hold the
+                // sessions that were removed.
+                for (Segment segment : outputs) {
+                    segment.close();
+                    delete(segment.file);
+                }
+                syncDirectory(directory());
+                return false;
+            }
+            for (Segment segment : outputs) {
+                segments.put(Integer.valueOf(segment.id), segment);
+            }
+            for (Map.Entry<String,Location> entry : live) {
+                Location current = index.get(entry.getKey());
+                Location copy = moved.get(entry.getValue());
+                if (current == entry.getValue() && copy != null) {
+                    index.put(entry.getKey(), copy);
+                    copy.segment.liveBytes += copy.length;
+                }
+            }
+            for (Segment victim : victims) {
+                segments.remove(Integer.valueOf(victim.id));
+                victim.close();
+                delete(victim.file);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug(sm.getString(getStoreName() + ".compacted", Integer.valueOf(victims.size()),
+                    Long.valueOf(before), Long.valueOf(after)));
+        }
+        return true;
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+    /**
+     * Stop this component and close all of the segments.
+     *
+     * @throws LifecycleException if this component detects a fatal error
+     *                            that prevents this component from being used
+     */
+    @Override
+    protected synchronized void stopInternal() throws LifecycleException {
+        super.stopInternal();
+        close();
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+    /**
+     * Open the Store, replaying the existing segments, if that has not
+     * already been done.
+     */
+    private void ensureOpen() throws IOException {
+        if (open) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!open) {
+                recover();
+                open = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    private void close() {
+        lock.writeLock().lock();
+        try {
+            if (!open) {
+                return;
+            }
+            open = false;
+            for (Segment segment : segments.values()) {
+                if (segment == active) {
+                    try {
+                        segment.force();
+                    } catch (IOException e) {
+                        log.warn(sm.getString(getStoreName() + ".closeFailed", segment.file), e);
+                    }
+                }
+                segment.close();
+            }
+            segments.clear();
+            index.clear();
+            active = null;
+            directoryFile = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Rebuild the index by replaying every segment in the directory, then
+     * start a new active segment. Must be called holding the write lock.
+     */
+    private void recover() throws IOException {
+        File dir = directory();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IOException(sm.getString(getStoreName() + ".createFailed", dir));
+        }
+
+        // Remove the remains of an interrupted compaction, and then any
+        // segments that a completed compaction superseded
+        TreeMap<Integer,File> found = new TreeMap<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(TEMP_EXT)) {
+                delete(file);
+            } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_EXT)) {
+                try {
+                    found.put(Integer.valueOf(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_EXT.length())), file);
+                } catch (NumberFormatException e) {
+                    log.warn(sm.getString(getStoreName() + ".invalidSegment", file));
+                }
+            }
+        }
+        List<Segment> opened = new ArrayList<>();
+        for (Map.Entry<Integer,File> entry : found.entrySet()) {
+            Segment segment = Segment.open(entry.getKey().intValue(), entry.getValue());
+            if (segment == null) {
+                log.warn(sm.getString(getStoreName() + ".invalidSegment", entry.getValue()));
+                continue;
+            }
+            opened.add(segment);
+        }
+        Set<Integer> superseded = new HashSet<>();
+        for (Segment segment : opened) {
+            for (int id : segment.supersedes) {
+                superseded.add(Integer.valueOf(id));
+            }
+        }
+
+        Map<String,Location> replayed = new HashMap<>();
+        int maxId = -1;
+        long maxSequence = -1;
+        for (Segment segment : opened) {
+            maxId = Math.max(maxId, segment.id);
+            if (superseded.contains(Integer.valueOf(segment.id))) {
+                segment.close();
+                delete(segment.file);
+                continue;
+            }
+            maxSequence = Math.max(maxSequence, replay(segment, replayed));
+            if (segment.size == segment.headerLength) {
+                // Holds no records, and any segments it superseded have
+                // already been deleted
+                segment.close();
+                delete(segment.file);
+                continue;
+            }
+            segment.seal();
+            segments.put(Integer.valueOf(segment.id), segment);
+        }
+
+        for (Map.Entry<String,Location> entry : replayed.entrySet()) {
+            Location location = entry.getValue();
+            if (location.segment != null) {
+                index.put(entry.getKey(), location);
+                location.segment.liveBytes += location.length;
+            }
+        }
+
+        nextSegmentId = maxId + 1;
+        nextSequence = maxSequence + 1;
+        active = createSegment(nextSegmentId++, new int[0], false);
+
+        if (log.isDebugEnabled()) {
+            log.debug(sm.getString(getStoreName() + ".recovered", Integer.valueOf(index.size()),
+                    Integer.valueOf(segments.size() - 1), dir));
+        }
+    }
+
+
+    /**
+     * Replay the records of a segment into the given map, keeping the record
+     * with the highest sequence number for each session. A removal is kept
+     * as a location with no segment. The segment is truncated at the first
+     * record that is incomplete or corrupt.
+     *
+     * @return the highest sequence number seen
+     */
+    private long replay(Segment segment, Map<String,Location> replayed) throws IOException {
+        long maxSequence = -1;
+        ByteBuffer buffer = ByteBuffer.allocate((int) (segment.size - segment.headerLength));
+        segment.channel.read(buffer, segment.headerLength);
+        buffer.flip();
+
+        int position = 0;
+        while (position < buffer.limit()) {
+            int bodyLength = checkRecord(buffer, position, buffer.limit() - position);
+            if (bodyLength < 0) {
+                log.warn(sm.getString(getStoreName() + ".truncated", segment.file,
+                        Long.valueOf(segment.headerLength + position)));
+                segment.truncate(segment.headerLength + position);
+                break;
+            }
+            int recordLength = RECORD_HEADER_LENGTH + bodyLength;
+            buffer.position(position + RECORD_HEADER_LENGTH);
+            byte type = buffer.get();
+            long sequence = buffer.getLong();
+            long lastAccessed = buffer.getLong();
+            int maxInactive = buffer.getInt();
+            int idLength = buffer.getShort() & 0xffff;
+            String id = new String(buffer.array(), buffer.position(), idLength,
+                    StandardCharsets.UTF_8);
+
+            Location previous = replayed.get(id);
+            if (previous == null || previous.sequence < sequence) {
+                replayed.put(id, new Location(type == TYPE_SAVE ? segment : null,
+                        segment.headerLength + position, recordLength, sequence,
+                        lastAccessed, maxInactive));
+            }
+            maxSequence = Math.max(maxSequence, sequence);
+            position += recordLength;
+        }
+        return maxSequence;
+    }
+
+
+    /**
+     * Check that a complete, uncorrupted record starts at the given position.
+     *
+     * @return the length of the record body, or -1 if the record is not valid
+     */
+    private static int checkRecord(ByteBuffer buffer, int position, int available) {
+        if (available < RECORD_HEADER_LENGTH + RECORD_BODY_MIN_LENGTH ||
+                buffer.getInt(position) != RECORD_MAGIC) {
+            return -1;
+        }
+        int bodyLength = buffer.getInt(position + 4);
+        if (bodyLength < RECORD_BODY_MIN_LENGTH || bodyLength > available - RECORD_HEADER_LENGTH) {
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), buffer.arrayOffset() + position + RECORD_HEADER_LENGTH,
+                bodyLength);
+        if ((int) crc.getValue() != buffer.getInt(position + 8)) {
+            return -1;
+        }
+        return bodyLength;
+    }
+
+
+    private static byte[] encode(byte type, long sequence, String id, long lastAccessed,
+            int maxInactive, byte[] data) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        int dataLength = data == null ? 0 : data.length;
+        int bodyLength = RECORD_BODY_MIN_LENGTH + idBytes.length + dataLength;
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_LENGTH + bodyLength);
+        buffer.putInt(RECORD_MAGIC);
+        buffer.putInt(bodyLength);
+        buffer.putInt(0);
+        buffer.put(type);
+        buffer.putLong(sequence);
+        buffer.putLong(lastAccessed);
+        buffer.putInt(maxInactive);
+        buffer.putShort((short) idBytes.length);
+        buffer.put(idBytes);
+        if (data != null) {
+            buffer.put(data);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), RECORD_HEADER_LENGTH, bodyLength);
+        buffer.putInt(8, (int) crc.getValue());
+        return buffer.array();
+    }
+
+
+    /**
+     * Append a record to the active segment, sealing it and starting a new
+     * one first if the record would take it over the segment size. Must be
+     * called holding the write lock.
+     *
+     * @return the segment the record was written to
+     */
+    private Segment append(byte[] record) throws IOException {
+        if (active.size > active.headerLength && active.size + record.length > segmentSize) {
+            active.seal();
+            active = createSegment(nextSegmentId++, new int[0], false);
+        }
+        active.write(record);
+        return active;
+    }
+
+
+    private Segment createSegment(int id, int[] supersedes, boolean temporary)
+            throws IOException {
+        Segment segment = Segment.create(id, new File(directory(),
+                SEGMENT_PREFIX + id + SEGMENT_EXT), supersedes, temporary);
+        if (!temporary) {
+            segments.put(Integer.valueOf(id), segment);
+        }
+        return segment;
+    }
+
+
+    private void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            log.warn(sm.getString(getStoreName() + ".deleteFailed", file));
+        }
+    }
+
+
+    /*
+     * Force the entries of the directory to the storage device so that
+     * renamed and deleted segments are not lost in a crash. Platforms that
+     * can not open a directory, such as Windows, are skipped.
+     */
+    private static void syncDirectory(File dir) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+
+    private File directory() throws IOException {
+        if (this.directoryFile != null) {
+            return this.directoryFile;
+        }
+        File file = new File(this.directory);
+        if (!file.isAbsolute()) {
+            Context context = manager.getContext();
+            ServletContext servletContext = context.getServletContext();
+            File work = (File) servletContext.getAttribute(ServletContext.TEMPDIR);
+            file = new File(work, this.directory);
+        }
+        if (!file.isDirectory() && !file.mkdirs() && !file.isDirectory()) {
+            throw new IOException(sm.getString(getStoreName() + ".createFailed", file));
+        }
+        this.directoryFile = file;
+        return file;
+    }
+
+
+    // ---------------------------------------------------------- Inner classes
+
+    /**
+     * The location of the latest record for a session.
+     */
+    private static final class Location {
+
+        private final Segment segment;
+        private final long offset;
+        private final int length;
+        private final long sequence;
+        private final long lastAccessed;
+        private final int maxInactive;
+
+        Location(Segment segment, long offset, int length, long sequence,
+                long lastAccessed, int maxInactive) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.sequence = sequence;
+            this.lastAccessed = lastAccessed;
+            this.maxInactive = maxInactive;
+        }
+    }
+
+
+    /**
+     * A segment file. The active segment is written through its channel.
+     * Sealed segments are read through a read-only mapping.
+     */
+    private static final class Segment {
+
+        private final int id;
+        private File file;
+        private final int[] supersedes;
+        private final int headerLength;
+        private FileChannel channel;
+        private MappedByteBuffer mapped = null;
+        private long size;
+        private long liveBytes = 0;
+
+        private Segment(int id, File file, int[] supersedes, FileChannel channel, long size) {
+            this.id = id;
+            this.file = file;
+            this.supersedes = supersedes;
+            this.headerLength = 12 + 4 * supersedes.length;
+            this.channel = channel;
+            this.size = size;
+        }
+
+        static Segment create(int id, File file, int[] supersedes, boolean temporary)
+                throws IOException {
+            if (temporary) {
+                file = new File(file.getParentFile(), file.getName() + TEMP_EXT);
+            }
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(12 + 4 * supersedes.length);
+            header.putInt(SEGMENT_MAGIC);
+            header.putInt(SEGMENT_VERSION);
+            header.putInt(supersedes.length);
+            for (int superseded : supersedes) {
+                header.putInt(superseded);
+            }
+            Segment segment = new Segment(id, file, supersedes, channel, 0);
+            segment.write(header.array());
+            return segment;
+        }
+
+        /**
+         * @return the segment, or {@code null} if the file does not start
+         *         with a valid segment header
+         */
+        static Segment open(int id, File file) throws IOException {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(12);
+            if (size < 12 || channel.read(header, 0) < 12 ||
+                    header.getInt(0) != SEGMENT_MAGIC || header.getInt(4) != SEGMENT_VERSION) {
+                channel.close();
+                return null;
+            }
+            int count = header.getInt(8);
+            if (count < 0 || size < 12 + 4L * count) {
+                channel.close();
+                return null;
+            }
+            ByteBuffer ids = ByteBuffer.allocate(4 * count);
+            channel.read(ids, 12);
+            ids.flip();
+            int[] supersedes = new int[count];
+            for (int i = 0; i < count; i++) {
+                supersedes[i] = ids.getInt();
+            }
+            return new Segment(id, file, supersedes, channel, size);
+        }
+
+        void write(byte[] bytes) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            long position = size;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            size = position;
+        }
+
+        byte[] read(long offset, int length) throws IOException {
+            byte[] bytes = new byte[length];
+            if (mapped != null) {
+                ByteBuffer buffer = mapped.duplicate();
+                buffer.position((int) offset);
+                buffer.get(bytes);
+            } else {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                long position = offset;
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, position);
+                    if (read < 0) {
+                        throw new EOFException();
+                    }
+                    position += read;
+                }
+            }
+            return bytes;
+        }
+
+        void force() throws IOException {
+            channel.force(false);
+        }
+
+        void truncate(long length) throws IOException {
+            channel.truncate(length);
+            size = length;
+        }
+
+        /**
+         * Map the segment for reading. No further records may be written.
+         */
+        void seal() throws IOException {
+            if (mapped == null && size <= MAX_SEGMENT_SIZE) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+
+        /**
+         * Force a temporary segment to the storage device and give it its
+         * final name.
+         */
+        void commit() throws IOException {
+            channel.force(true);
+            String name = file.getName();
+            if (name.endsWith(TEMP_EXT)) {
+                File target = new File(file.getParentFile(),
+                        name.substring(0, name.length() - TEMP_EXT.length()));
+                if (!file.renameTo(target)) {
+                    throw new IOException(sm.getString("logStructuredStore.renameFailed",
+                            file, target));
+                }
+                file = target;
+                syncDirectory(file.getParentFile());
+            }
+        }
+
+        void close() {
+            if (mapped != null) {
+                ByteBufferUtils.cleanDirectBuffer(mapped);
+                mapped = null;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+}
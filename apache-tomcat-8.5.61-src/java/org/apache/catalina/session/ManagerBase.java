@@ -21,6 +21,7 @@ import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Deque;
 import java.util.Enumeration;
@@ -28,6 +29,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
@@ -198,6 +200,51 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
      */
     private boolean persistAuthentication = false;
 
+    /**
+     * Should new sessions be created as {@link CompactSession}s?
+     */
+    private boolean compactSessions = false;
+
+    /**
+     * The name of the {@link SessionSerializer} class used to write sessions,
+     * or <code>null</code> to use Java serialization.
+     */
+    protected String sessionSerializerClass = null;
+
+    private volatile SessionSerializer sessionSerializer = null;
+
+
+    /**
+     * Width, in milliseconds, of each bucket in the expiry index.
+     */
+    private static final long EXPIRY_INDEX_TICK = 1000;
+
+    /**
+     * Number of buckets in the expiry index. Sessions due further in the
+     * future than this many ticks are re-checked each time the index wraps.
+     */
+    private static final int EXPIRY_INDEX_BUCKETS = 4096;
+
+    /**
+     * The index of sessions by expiry time or {@code null} if every session
+     * is checked by {@link #processExpires()}.
+     */
+    private volatile SessionExpiryIndex expiryIndex = null;
+
+    /**
+     * Sessions that cannot be placed in the expiry index because they are not
+     * {@link StandardSession}s. These are always checked by
+     * {@link #processExpires()}.
+     */
+    private final Set<Session> unindexedSessions =
+            Collections.newSetFromMap(new ConcurrentHashMap<Session,Boolean>());
+
+    /**
+     * Number of sessions examined by the last run of
+     * {@link #processExpires()}.
+     */
+    private volatile int lastExpiryCheckCount = 0;
+
 
     // ------------------------------------------------------------ Constructors
 
@@ -544,6 +591,228 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
     }
 
 
+    /**
+     * Are new sessions created in the compact form that trades a little CPU
+     * for a smaller memory footprint?
+     *
+     * @return {@code true} if new sessions are {@link CompactSession}s
+     */
+    public boolean getCompactSessions() {
+        return compactSessions;
+    }
+
+
+    /**
+     * Configure whether new sessions are created in the compact form. A
+     * compact session holds small attribute sets in a flat array rather than a
+     * hash table and only allocates its notes and listener structures when
+     * they are first used. Existing sessions are not affected. Managers that
+     * create their own session implementation ignore this setting.
+     *
+     * @param compactSessions {@code true} to create compact sessions
+     */
+    public void setCompactSessions(boolean compactSessions) {
+        this.compactSessions = compactSessions;
+    }
+
+
+    /**
+     * @return The name of the {@link SessionSerializer} class used to write
+     *         sessions, or <code>null</code> if Java serialization is used
+     */
+    public String getSessionSerializerClass() {
+        return sessionSerializerClass;
+    }
+
+
+    /**
+     * Set the {@link SessionSerializer} class used when sessions are written
+     * to a file, to a Store or to other cluster members. Sessions are always
+     * read with the serializer that wrote them, so changing this does not
+     * prevent previously persisted sessions from being read.
+     *
+     * @param sessionSerializerClass The name of the class, or
+     *        <code>null</code> to use Java serialization
+     */
+    public void setSessionSerializerClass(String sessionSerializerClass) {
+        String oldSessionSerializerClass = this.sessionSerializerClass;
+        this.sessionSerializerClass = sessionSerializerClass;
+        this.sessionSerializer = null;
+        support.firePropertyChange("sessionSerializerClass", oldSessionSerializerClass,
+                this.sessionSerializerClass);
+    }
+
+
+    /**
+     * @return The {@link SessionSerializer} used to write sessions
+     */
+    public SessionSerializer getSessionSerializer() {
+        SessionSerializer result = sessionSerializer;
+        if (result == null) {
+            result = JavaSessionSerializer.INSTANCE;
+            if (sessionSerializerClass != null) {
+                try {
+                    Class<?> clazz = Class.forName(sessionSerializerClass);
+                    result = (SessionSerializer) clazz.getConstructor().newInstance();
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    log.error(sm.getString("managerBase.sessionSerializer", sessionSerializerClass), e);
+                }
+            }
+            sessionSerializer = result;
+        }
+        return result;
+    }
+
+
+    /**
+     * Set the {@link SessionSerializer} used to write sessions.
+     *
+     * @param sessionSerializer The serializer, or <code>null</code> to use
+     *        Java serialization
+     */
+    public void setSessionSerializer(SessionSerializer sessionSerializer) {
+        this.sessionSerializer = sessionSerializer;
+        this.sessionSerializerClass =
+                sessionSerializer == null ? null : sessionSerializer.getClass().getName();
+    }
+
+
+    /**
+     * Are sessions indexed by expiry time so that {@link #processExpires()}
+     * only needs to examine the sessions that may have expired?
+     *
+     * @return {@code true} if the expiry index is in use
+     */
+    public boolean getUseExpiryIndex() {
+        return expiryIndex != null;
+    }
+
+
+    /**
+     * Configure whether sessions are indexed by expiry time. Without the index
+     * every session is examined each time {@link #processExpires()} runs. With
+     * the index a session is examined only when it falls due, at the cost of
+     * maintaining the index as sessions are added and removed.
+     *
+     * @param useExpiryIndex {@code true} to use the expiry index
+     */
+    public synchronized void setUseExpiryIndex(boolean useExpiryIndex) {
+        if (useExpiryIndex == (expiryIndex != null)) {
+            return;
+        }
+        if (useExpiryIndex) {
+            expiryIndex = new SessionExpiryIndex(EXPIRY_INDEX_TICK, EXPIRY_INDEX_BUCKETS,
+                    System.currentTimeMillis());
+            for (Session session : findSessions()) {
+                updateExpiryIndex(session);
+            }
+        } else {
+            SessionExpiryIndex index = expiryIndex;
+            expiryIndex = null;
+            index.clear();
+            unindexedSessions.clear();
+        }
+    }
+
+
+    /**
+     * @return the number of sessions examined by the last run of
+     *         {@link #processExpires()}
+     */
+    public int getLastExpiryCheckCount() {
+        return lastExpiryCheckCount;
+    }
+
+
+    /**
+     * @return the number of sessions in the expiry index
+     */
+    public int getExpiryIndexSize() {
+        int result = 0;
+        for (int bucketSize : getExpiryIndexOccupancy()) {
+            result += bucketSize;
+        }
+        return result;
+    }
+
+
+    /**
+     * @return the number of sessions in the fullest bucket of the expiry index
+     */
+    public int getExpiryIndexMaxBucketSize() {
+        int result = 0;
+        for (int bucketSize : getExpiryIndexOccupancy()) {
+            if (bucketSize > result) {
+                result = bucketSize;
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * For debugging.
+     *
+     * @return A space separated list of the occupied buckets of the expiry
+     *         index in the form <code>seconds:count</code> where seconds is
+     *         the approximate time until the bucket falls due
+     */
+    public String listExpiryIndexOccupancy() {
+        SessionExpiryIndex index = expiryIndex;
+        if (index == null) {
+            return "";
+        }
+        int[] occupancy = index.getOccupancy();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < occupancy.length; i++) {
+            if (occupancy[i] > 0) {
+                sb.append(i * index.getTickMillis() / 1000).append(':');
+                sb.append(occupancy[i]).append(' ');
+            }
+        }
+        return sb.toString();
+    }
+
+
+    private int[] getExpiryIndexOccupancy() {
+        SessionExpiryIndex index = expiryIndex;
+        if (index == null) {
+            return new int[0];
+        }
+        return index.getOccupancy();
+    }
+
+
+    /**
+     * File the session in the expiry index, if in use, according to its
+     * current idle time and maximum inactive interval. Must be called whenever
+     * a session is added to {@link #sessions} or the maximum inactive
+     * interval of a managed session changes.
+     *
+     * @param session The session to file
+     */
+    protected void updateExpiryIndex(Session session) {
+        SessionExpiryIndex index = expiryIndex;
+        if (index == null) {
+            return;
+        }
+        if (!(session instanceof StandardSession)) {
+            unindexedSessions.add(session);
+            return;
+        }
+        StandardSession standardSession = (StandardSession) session;
+        int maxInactiveInterval = standardSession.getMaxInactiveInterval();
+        if (maxInactiveInterval > 0) {
+            long expiryTime = System.currentTimeMillis() - standardSession.getIdleTimeInternal() +
+                    maxInactiveInterval * 1000L;
+            index.file(standardSession, expiryTime);
+        } else {
+            // Never expires
+            index.remove(standardSession);
+        }
+    }
+
+
     // --------------------------------------------------------- Public Methods
 
     /**
@@ -564,6 +833,29 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
     public void processExpires() {
 
         long timeNow = System.currentTimeMillis();
+        int expireHere = expireSessions(timeNow);
+        long timeEnd = System.currentTimeMillis();
+        if (log.isDebugEnabled())
+            log.debug("End expire sessions " + getName() + " processingTime " + (timeEnd - timeNow) + " expired sessions: " + expireHere);
+        processingTime += (timeEnd - timeNow);
+
+    }
+
+
+    /**
+     * Invalidate the sessions in memory that have expired. If the expiry
+     * index is in use only the sessions that have fallen due are examined,
+     * otherwise every session is.
+     *
+     * @param timeNow The time at which expiry processing started
+     *
+     * @return the number of sessions that were found to have expired
+     */
+    protected int expireSessions(long timeNow) {
+        SessionExpiryIndex index = expiryIndex;
+        if (index != null) {
+            return expireSessions(index, timeNow);
+        }
         Session sessions[] = findSessions();
         int expireHere = 0;
 
@@ -574,11 +866,40 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
                 expireHere++;
             }
         }
-        long timeEnd = System.currentTimeMillis();
-        if (log.isDebugEnabled())
-            log.debug("End expire sessions " + getName() + " processingTime " + (timeEnd - timeNow) + " expired sessions: " + expireHere);
-        processingTime += (timeEnd - timeNow);
+        lastExpiryCheckCount = sessions.length;
+        return expireHere;
+    }
+
+
+    private int expireSessions(SessionExpiryIndex index, long timeNow) {
+        List<StandardSession> due = index.pollDue(timeNow);
+        int expireHere = 0;
 
+        if (log.isDebugEnabled())
+            log.debug("Start expire sessions " + getName() + " at " + timeNow + " due sessioncount " + due.size());
+        for (StandardSession session : due) {
+            // Sessions that have left this manager since they were filed, e.g.
+            // by being swapped out, are simply dropped from the index
+            String id = session.getIdInternal();
+            if (id == null || sessions.get(id) != session) {
+                continue;
+            }
+            if (!session.isValid()) {
+                expireHere++;
+            } else {
+                // Accessed since it was filed
+                updateExpiryIndex(session);
+            }
+        }
+        int checkCount = due.size();
+        for (Session session : unindexedSessions) {
+            if (!session.isValid()) {
+                expireHere++;
+            }
+            checkCount++;
+        }
+        lastExpiryCheckCount = checkCount;
+        return expireHere;
     }
 
 
@@ -643,6 +964,7 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
     @Override
     public void add(Session session) {
         sessions.put(session.getIdInternal(), session);
+        updateExpiryIndex(session);
         int size = getActiveSessions();
         if (size > maxActive) {
             synchronized (maxActiveUpdateLock) {
@@ -742,6 +1064,15 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
         if (session.getIdInternal() != null) {
             sessions.remove(session.getIdInternal());
         }
+
+        SessionExpiryIndex index = expiryIndex;
+        if (index != null) {
+            if (session instanceof StandardSession) {
+                index.remove((StandardSession) session);
+            } else {
+                unindexedSessions.remove(session);
+            }
+        }
     }
 
 
@@ -835,6 +1166,9 @@ public abstract class ManagerBase extends LifecycleMBeanBase implements Manager
      * @return a new session for use with this manager
      */
     protected StandardSession getNewSession() {
+        if (compactSessions) {
+            return new CompactSession(this);
+        }
         return new StandardSession(this);
     }
 
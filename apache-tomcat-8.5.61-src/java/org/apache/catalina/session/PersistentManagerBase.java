@@ -20,12 +20,15 @@ import java.io.IOException;
 import java.security.AccessController;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.catalina.BatchStore;
 import org.apache.catalina.Lifecycle;
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleState;
@@ -116,6 +119,22 @@ public abstract class PersistentManagerBase extends ManagerBase
         }
     }
 
+    private class PrivilegedStoreSaveAll
+            implements PrivilegedExceptionAction<Void> {
+
+        private Session[] sessions;
+
+        PrivilegedStoreSaveAll(Session[] sessions) {
+            this.sessions = sessions;
+        }
+
+        @Override
+        public Void run() throws Exception {
+            ((BatchStore) store).saveAll(sessions);
+            return null;
+        }
+    }
+
     private class PrivilegedStoreKeys
             implements PrivilegedExceptionAction<String[]> {
 
@@ -192,6 +211,42 @@ public abstract class PersistentManagerBase extends ManagerBase
     private final ThreadLocal<Session> sessionToSwapIn = new ThreadLocal<>();
 
 
+    /**
+     * Should sessions be written to the Store asynchronously, in batches, by
+     * a dedicated thread rather than one at a time by the background thread?
+     */
+    protected boolean writeBehind = false;
+
+
+    /**
+     * The maximum number of sessions written to the Store in one batch when
+     * write-behind is enabled.
+     */
+    protected int writeBehindBatchSize = 100;
+
+
+    /**
+     * The maximum time in milliseconds that a session waits to be written
+     * when fewer than a batch of sessions are waiting.
+     */
+    protected int writeBehindFlushInterval = 1000;
+
+
+    /**
+     * The maximum number of sessions that may be waiting to be written.
+     * Beyond that, sessions are written directly as if write-behind were
+     * disabled.
+     */
+    protected int writeBehindMaxPending = 10000;
+
+
+    /**
+     * The write-behind queue, present while the Manager is started with
+     * write-behind enabled.
+     */
+    private volatile WriteBehindQueue writeBehindQueue = null;
+
+
     // ------------------------------------------------------------- Properties
 
 
@@ -304,6 +359,147 @@ public abstract class PersistentManagerBase extends ManagerBase
     }
 
 
+    /**
+     * @return {@code true} if sessions are written to the Store
+     * asynchronously, in batches
+     */
+    public boolean getWriteBehind() {
+        return writeBehind;
+    }
+
+
+    /**
+     * Configure whether sessions that are swapped out or backed up are
+     * written to the Store asynchronously, in batches, by a dedicated thread.
+     * A session that is saved again before it has been written is only
+     * written once. If the Store implements {@link BatchStore} each batch is
+     * written with a single call, otherwise the sessions are written one at a
+     * time. Changes take effect when the Manager is next started.
+     *
+     * @param writeBehind {@code true} to write sessions asynchronously
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        boolean oldWriteBehind = this.writeBehind;
+        this.writeBehind = writeBehind;
+        support.firePropertyChange("writeBehind",
+                Boolean.valueOf(oldWriteBehind),
+                Boolean.valueOf(this.writeBehind));
+    }
+
+
+    /**
+     * @return the maximum number of sessions written to the Store in one
+     * batch when write-behind is enabled
+     */
+    public int getWriteBehindBatchSize() {
+        return writeBehindBatchSize;
+    }
+
+
+    /**
+     * Set the maximum number of sessions written to the Store in one batch
+     * when write-behind is enabled. Changes take effect when the Manager is
+     * next started.
+     *
+     * @param writeBehindBatchSize the maximum batch size
+     */
+    public void setWriteBehindBatchSize(int writeBehindBatchSize) {
+        this.writeBehindBatchSize = writeBehindBatchSize;
+    }
+
+
+    /**
+     * @return the maximum time in milliseconds that a session waits to be
+     * written when fewer than a batch of sessions are waiting
+     */
+    public int getWriteBehindFlushInterval() {
+        return writeBehindFlushInterval;
+    }
+
+
+    /**
+     * Set the maximum time in milliseconds that a session waits to be
+     * written when fewer than a batch of sessions are waiting. Changes take
+     * effect when the Manager is next started.
+     *
+     * @param writeBehindFlushInterval the flush interval in milliseconds
+     */
+    public void setWriteBehindFlushInterval(int writeBehindFlushInterval) {
+        this.writeBehindFlushInterval = writeBehindFlushInterval;
+    }
+
+
+    /**
+     * @return the maximum number of sessions that may be waiting to be
+     * written when write-behind is enabled
+     */
+    public int getWriteBehindMaxPending() {
+        return writeBehindMaxPending;
+    }
+
+
+    /**
+     * Set the maximum number of sessions that may be waiting to be written
+     * when write-behind is enabled. This bounds the memory held by sessions
+     * that have been swapped out but not yet written. Once the limit is
+     * reached, further sessions are written directly by the background
+     * thread. Changes take effect when the Manager is next started.
+     *
+     * @param writeBehindMaxPending the maximum number of waiting sessions
+     */
+    public void setWriteBehindMaxPending(int writeBehindMaxPending) {
+        this.writeBehindMaxPending = writeBehindMaxPending;
+    }
+
+
+    /**
+     * @return the number of sessions currently waiting to be written
+     */
+    public int getWriteBehindPending() {
+        WriteBehindQueue queue = writeBehindQueue;
+        return queue == null ? 0 : queue.size();
+    }
+
+
+    /**
+     * @return the number of batches written since the Manager was started
+     */
+    public long getWriteBehindBatchCount() {
+        WriteBehindQueue queue = writeBehindQueue;
+        return queue == null ? 0 : queue.getBatchCount();
+    }
+
+
+    /**
+     * @return the number of sessions written by the write-behind thread since
+     * the Manager was started
+     */
+    public long getWriteBehindWriteCount() {
+        WriteBehindQueue queue = writeBehindQueue;
+        return queue == null ? 0 : queue.getWriteCount();
+    }
+
+
+    /**
+     * @return the number of writes avoided because a session was saved again
+     * before it had been written, since the Manager was started
+     */
+    public long getWriteBehindCoalescedCount() {
+        WriteBehindQueue queue = writeBehindQueue;
+        return queue == null ? 0 : queue.getCoalescedCount();
+    }
+
+
+    /**
+     * @return the number of sessions written directly because too many
+     * sessions were already waiting, since the Manager was started
+     */
+    public long getWriteBehindRejectedCount() {
+        WriteBehindQueue queue = writeBehindQueue;
+        return queue == null ? 0 : queue.getRejectedCount();
+    }
+
+
     /**
      * Check, whether a session is loaded in memory
      *
@@ -399,6 +595,11 @@ public abstract class PersistentManagerBase extends ManagerBase
         if (store == null)
             return;
 
+        WriteBehindQueue queue = writeBehindQueue;
+        if (queue != null) {
+            queue.clear();
+        }
+
         try {
             if (SecurityUtil.isPackageProtectionEnabled()) {
                 try {
@@ -425,16 +626,8 @@ public abstract class PersistentManagerBase extends ManagerBase
     public void processExpires() {
 
         long timeNow = System.currentTimeMillis();
-        Session sessions[] = findSessions();
-        int expireHere = 0;
-        if (log.isDebugEnabled())
-            log.debug("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + sessions.length);
-        for (Session session : sessions) {
-            if (!session.isValid()) {
-                expiredSessions.incrementAndGet();
-                expireHere++;
-            }
-        }
+        int expireHere = expireSessions(timeNow);
+        expiredSessions.addAndGet(expireHere);
         processPersistenceChecks();
         if (getStore() instanceof StoreBase) {
             ((StoreBase) getStore()).processExpires();
@@ -584,6 +777,10 @@ public abstract class PersistentManagerBase extends ManagerBase
      * @param id Session's id to be removed
      */
     protected void removeSession(String id) {
+        WriteBehindQueue queue = writeBehindQueue;
+        if (queue != null) {
+            queue.cancel(id);
+        }
         try {
             if (SecurityUtil.isPackageProtectionEnabled()) {
                 try {
@@ -630,6 +827,11 @@ public abstract class PersistentManagerBase extends ManagerBase
                 // This is logged in writeSession()
             }
 
+        WriteBehindQueue queue = writeBehindQueue;
+        if (queue != null) {
+            queue.flush();
+        }
+
     }
 
 
@@ -654,6 +856,11 @@ public abstract class PersistentManagerBase extends ManagerBase
         try {
             // Store session ID list
             sessionIds.addAll(Arrays.asList(getStore().keys()));
+            // Sessions swapped out but not yet written to the Store
+            WriteBehindQueue queue = writeBehindQueue;
+            if (queue != null) {
+                sessionIds.addAll(queue.getSwappedIds());
+            }
         } catch (IOException e) {
             log.warn(sm.getString("persistentManager.storeKeysException"));
         }
@@ -708,7 +915,13 @@ public abstract class PersistentManagerBase extends ManagerBase
                 Session currentSwapInSession = sessionToSwapIn.get();
                 try {
                     if (currentSwapInSession == null || !id.equals(currentSwapInSession.getId())) {
-                        session = loadSessionFromStore(id);
+                        WriteBehindQueue queue = writeBehindQueue;
+                        if (queue != null) {
+                            session = queue.takeSwapped(id);
+                        }
+                        if (session == null) {
+                            session = loadSessionFromStore(id);
+                        }
                         sessionToSwapIn.set(session);
 
                         if (session != null && !session.isValid()) {
@@ -804,6 +1017,12 @@ public abstract class PersistentManagerBase extends ManagerBase
         }
 
         ((StandardSession) session).passivate();
+        WriteBehindQueue queue = writeBehindQueue;
+        if (queue != null && queue.offer(session, true)) {
+            // The queue recycles the session once it has been written
+            super.remove(session, true);
+            return;
+        }
         writeSession(session);
         super.remove(session, true);
         session.recycle();
@@ -848,6 +1067,73 @@ public abstract class PersistentManagerBase extends ManagerBase
     }
 
 
+    /**
+     * Write the provided sessions to the Store without modifying the copies
+     * in memory or triggering passivation events. Sessions that are invalid
+     * or past their expiration are skipped. Used by the write-behind thread.
+     *
+     * @param sessions The sessions that should be written
+     * @throws IOException an IO error occurred
+     */
+    protected void writeSessions(Session[] sessions) throws IOException {
+
+        if (store == null) {
+            return;
+        }
+
+        if (!(store instanceof BatchStore)) {
+            IOException error = null;
+            for (Session session : sessions) {
+                try {
+                    writeSession(session);
+                } catch (IOException e) {
+                    // This is logged in writeSession()
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+            return;
+        }
+
+        List<Session> valid = new ArrayList<>(sessions.length);
+        for (Session session : sessions) {
+            if (session.isValid()) {
+                valid.add(session);
+            }
+        }
+        if (valid.isEmpty()) {
+            return;
+        }
+        Session[] batch = valid.toArray(new Session[0]);
+
+        try {
+            if (SecurityUtil.isPackageProtectionEnabled()) {
+                try {
+                    AccessController.doPrivileged(new PrivilegedStoreSaveAll(batch));
+                } catch (PrivilegedActionException ex) {
+                    Exception exception = ex.getException();
+                    if (exception instanceof IOException) {
+                        throw (IOException) exception;
+                    }
+                    log.error(sm.getString("persistentManager.serializeBatchError",
+                            Integer.valueOf(batch.length), exception));
+                }
+            } else {
+                ((BatchStore) store).saveAll(batch);
+            }
+        } catch (IOException e) {
+            log.error(sm.getString("persistentManager.serializeBatchError",
+                    Integer.valueOf(batch.length), e));
+            throw e;
+        }
+
+    }
+
+
     /**
      * Start this component and implement the requirements
      * of {@link org.apache.catalina.util.LifecycleBase#startInternal()}.
@@ -865,6 +1151,13 @@ public abstract class PersistentManagerBase extends ManagerBase
         else if (store instanceof Lifecycle)
             ((Lifecycle) store).start();
 
+        if (store != null && writeBehind) {
+            WriteBehindQueue queue = new WriteBehindQueue(this, writeBehindBatchSize,
+                    writeBehindFlushInterval, writeBehindMaxPending);
+            queue.start("PersistentManager-WriteBehind[" + getContext().getName() + "]");
+            writeBehindQueue = queue;
+        }
+
         setState(LifecycleState.STARTING);
     }
 
@@ -897,6 +1190,12 @@ public abstract class PersistentManagerBase extends ManagerBase
             }
         }
 
+        WriteBehindQueue queue = writeBehindQueue;
+        if (queue != null) {
+            queue.stop();
+            writeBehindQueue = null;
+        }
+
         if (getStore() instanceof Lifecycle) {
             ((Lifecycle) getStore()).stop();
         }
@@ -1034,10 +1333,13 @@ public abstract class PersistentManagerBase extends ManagerBase
                                             session.getIdInternal(),
                                             Integer.valueOf(timeIdle)));
 
-                        try {
-                            writeSession(session);
-                        } catch (IOException e) {
-                            // This is logged in writeSession()
+                        WriteBehindQueue queue = writeBehindQueue;
+                        if (queue == null || !queue.offer(session, false)) {
+                            try {
+                                writeSession(session);
+                            } catch (IOException e) {
+                                // This is logged in writeSession()
+                            }
                         }
                         session.setNote(PERSISTED_LAST_ACCESSED_TIME,
                                 Long.valueOf(lastAccessedTime));
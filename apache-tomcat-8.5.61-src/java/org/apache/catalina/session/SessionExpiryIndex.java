@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Timing wheel of {@link StandardSession}s, bucketed by the time at which they
+ * are next due to be checked for expiry. This allows
+ * {@link ManagerBase#processExpires()} to examine only the sessions that may
+ * have expired rather than every session in the Manager.
+ * <p>
+ * Accessing a session does not move it. When a bucket falls due each session
+ * in it is checked and, if it is still valid because it was accessed since it
+ * was filed, re-filed in the bucket for its new expiry time. Sessions due
+ * beyond the span of the wheel are filed in the bucket they map to when the
+ * wheel wraps and are re-filed in the same way. A session is therefore
+ * examined roughly once per inactive interval rather than once per
+ * background process run.
+ * <p>
+ * The bucket a session is filed in is recorded in the session so it can be
+ * removed when the session leaves the Manager. Each bucket is guarded by its
+ * own monitor so filing only contends with other sessions in the same bucket.
+ */
+final class SessionExpiryIndex {
+
+    private final long tickMillis;
+    private final int bucketCount;
+    private final List<Set<StandardSession>> buckets;
+
+    /**
+     * The first tick that has not yet been processed. Sessions are never
+     * filed in an earlier tick.
+     */
+    private volatile long nextTick;
+
+
+    SessionExpiryIndex(long tickMillis, int bucketCount, long now) {
+        this.tickMillis = tickMillis;
+        this.bucketCount = bucketCount;
+        buckets = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new HashSet<StandardSession>());
+        }
+        nextTick = now / tickMillis;
+    }
+
+
+    /**
+     * File the session in the bucket for the given expiry time, removing it
+     * from any bucket it was previously filed in.
+     *
+     * @param session    The session to file
+     * @param expiryTime The time at which the session should next be checked
+     */
+    void file(StandardSession session, long expiryTime) {
+        long tick = Math.max(expiryTime / tickMillis, nextTick);
+        int bucket = (int) (tick % bucketCount);
+        int oldBucket = session.expiryIndexBucket - 1;
+        if (oldBucket == bucket) {
+            return;
+        }
+        session.expiryIndexBucket = bucket + 1;
+        Set<StandardSession> target = buckets.get(bucket);
+        synchronized (target) {
+            target.add(session);
+        }
+        if (oldBucket >= 0) {
+            removeFromBucket(session, oldBucket);
+        }
+    }
+
+
+    /**
+     * Remove the session from the index.
+     *
+     * @param session The session to remove
+     */
+    void remove(StandardSession session) {
+        int oldBucket = session.expiryIndexBucket - 1;
+        session.expiryIndexBucket = 0;
+        if (oldBucket >= 0) {
+            removeFromBucket(session, oldBucket);
+        }
+    }
+
+
+    private void removeFromBucket(StandardSession session, int bucket) {
+        Set<StandardSession> source = buckets.get(bucket);
+        synchronized (source) {
+            source.remove(session);
+        }
+    }
+
+
+    /**
+     * Remove every session filed in a bucket that has fallen due. Each
+     * returned session is no longer in the index and must be re-filed by the
+     * caller if it is still active.
+     *
+     * @param now The current time
+     *
+     * @return The sessions that were due
+     */
+    List<StandardSession> pollDue(long now) {
+        long nowTick = now / tickMillis;
+        long tick = nextTick;
+        if (nowTick - tick >= bucketCount) {
+            // Processing has fallen more than a full turn behind. Every
+            // bucket is due, but only needs processing once.
+            tick = nowTick - bucketCount + 1;
+        }
+        List<StandardSession> result = new ArrayList<>();
+        for (; tick <= nowTick; tick++) {
+            // Advance first so that nothing is re-filed in a bucket while it
+            // is being processed
+            nextTick = tick + 1;
+            int bucket = (int) (tick % bucketCount);
+            Set<StandardSession> source = buckets.get(bucket);
+            synchronized (source) {
+                for (StandardSession session : source) {
+                    // A concurrent re-file may have left a stale entry here
+                    if (session.expiryIndexBucket == bucket + 1) {
+                        session.expiryIndexBucket = 0;
+                        result.add(session);
+                    }
+                }
+                source.clear();
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Remove every session from the index.
+     */
+    void clear() {
+        for (Set<StandardSession> bucket : buckets) {
+            synchronized (bucket) {
+                for (StandardSession session : bucket) {
+                    session.expiryIndexBucket = 0;
+                }
+                bucket.clear();
+            }
+        }
+    }
+
+
+    /**
+     * @return The number of sessions in each bucket, starting with the bucket
+     *         that will be processed next
+     */
+    int[] getOccupancy() {
+        int[] result = new int[bucketCount];
+        long first = nextTick;
+        for (int i = 0; i < bucketCount; i++) {
+            Set<StandardSession> bucket = buckets.get((int) ((first + i) % bucketCount));
+            synchronized (bucket) {
+                result[i] = bucket.size();
+            }
+        }
+        return result;
+    }
+
+
+    long getTickMillis() {
+        return tickMillis;
+    }
+}
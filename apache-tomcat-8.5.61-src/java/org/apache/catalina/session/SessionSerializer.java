@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Encodes the state of a session when it is written by
+ * {@link StandardSession#writeObjectData(java.io.ObjectOutputStream)}, which
+ * is the path used by the Managers to persist sessions, by the Stores and by
+ * cluster replication of whole sessions.
+ * <p>
+ * The session decides what is written and in what order. The serializer
+ * decides how each value is encoded. Unless {@link #getName()} returns
+ * <code>null</code>, the name of the serializer is written ahead of each
+ * session so that the session can be read back whichever serializer the
+ * reading Manager is configured to use.
+ * <p>
+ * Implementations must be thread safe and must have a public no-argument
+ * constructor.
+ */
+public interface SessionSerializer {
+
+    /**
+     * @return the name written ahead of each session, or <code>null</code>
+     *         if sessions are written in the original Java serialization
+     *         format that has no such header. Serializers that are not built
+     *         in must use their fully qualified class name.
+     */
+    public String getName();
+
+
+    public void writeBoolean(ObjectOutput out, boolean value) throws IOException;
+
+
+    public void writeInt(ObjectOutput out, int value) throws IOException;
+
+
+    public void writeLong(ObjectOutput out, long value) throws IOException;
+
+
+    /**
+     * Write a string, which may be <code>null</code>.
+     *
+     * @param out   The stream to write to
+     * @param value The string to write
+     *
+     * @throws IOException if an input/output error occurs
+     */
+    public void writeString(ObjectOutput out, String value) throws IOException;
+
+
+    /**
+     * Write an object, such as a session attribute value, which may be
+     * <code>null</code>.
+     *
+     * @param out   The stream to write to
+     * @param value The object to write
+     *
+     * @throws java.io.NotSerializableException if the object cannot be
+     *         written. The stream remains usable.
+     * @throws IOException if an input/output error occurs
+     */
+    public void writeObject(ObjectOutput out, Object value) throws IOException;
+
+
+    public boolean readBoolean(ObjectInput in) throws ClassNotFoundException, IOException;
+
+
+    public int readInt(ObjectInput in) throws ClassNotFoundException, IOException;
+
+
+    public long readLong(ObjectInput in) throws ClassNotFoundException, IOException;
+
+
+    public String readString(ObjectInput in) throws ClassNotFoundException, IOException;
+
+
+    /**
+     * Read an object written by {@link #writeObject(ObjectOutput, Object)}.
+     *
+     * @param in The stream to read from
+     *
+     * @return the object
+     *
+     * @throws java.io.WriteAbortedException if the object could not be
+     *         written. The stream remains usable.
+     * @throws ClassNotFoundException if the class of the object cannot be
+     *         found
+     * @throws IOException if an input/output error occurs
+     */
+    public Object readObject(ObjectInput in) throws ClassNotFoundException, IOException;
+}
@@ -18,6 +18,10 @@ package org.apache.catalina.session;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -25,11 +29,22 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.AccessController;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 
 import javax.servlet.ServletContext;
 
@@ -43,6 +58,7 @@ import org.apache.catalina.util.CustomObjectInputStream;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.threads.TaskThreadFactory;
 
 /**
  * Standard implementation of the <b>Manager</b> interface that provides
@@ -53,6 +69,12 @@ import org.apache.tomcat.util.ExceptionUtils;
  * <b>IMPLEMENTATION NOTE</b>:  Correct behavior of session storing and
  * reloading depends upon external calls to the <code>start()</code> and
  * <code>stop()</code> methods of this class at the correct times.
+ * <p>
+ * If more than one persistence thread is configured, sessions are written
+ * in chunks of {@link #getSessionsPerChunk()} sessions. Each chunk is an
+ * independent, checksummed object stream so that the chunks can be written
+ * and read in parallel, and so that only the chunks being processed need to
+ * be held in memory. The format of the file is detected when it is read.
  *
  * @author Craig R. McClanahan
  */
@@ -111,6 +133,41 @@ public class StandardManager extends ManagerBase {
     protected String pathname = "SESSIONS.ser";
 
 
+    /**
+     * The number of threads used to write and read the persisted sessions.
+     * With a single thread, sessions are written as one object stream.
+     */
+    private int persistenceThreads = 1;
+
+
+    /**
+     * The maximum number of sessions written to each chunk when sessions are
+     * written using more than one thread.
+     */
+    private int sessionsPerChunk = 1000;
+
+
+    /**
+     * The number of sessions in the current or most recent load or unload.
+     */
+    private volatile long persistenceSessionCount = 0;
+
+
+    /**
+     * The number of sessions processed so far by the current or most recent
+     * load or unload.
+     */
+    private final AtomicLong persistenceSessionsProcessed = new AtomicLong();
+
+
+    /**
+     * The first eight bytes of a chunked persistence file: "TCCHUNK1". A file
+     * written as a single object stream starts with the object stream magic
+     * number instead.
+     */
+    private static final long CHUNKED_MAGIC = 0x54434348554E4B31L;
+
+
     // ------------------------------------------------------------- Properties
 
     @Override
@@ -140,6 +197,96 @@ public class StandardManager extends ManagerBase {
     }
 
 
+    /**
+     * @return The number of threads used to write and read the persisted
+     *         sessions
+     */
+    public int getPersistenceThreads() {
+        return persistenceThreads;
+    }
+
+
+    /**
+     * Set the number of threads used to write and read the persisted
+     * sessions. Zero means one thread per available processor and negative
+     * values are subtracted from the number of available processors. If this
+     * resolves to a single thread, sessions are written in the original
+     * single object stream format.
+     *
+     * @param persistenceThreads The number of threads
+     */
+    public void setPersistenceThreads(int persistenceThreads) {
+        int oldPersistenceThreads = this.persistenceThreads;
+        this.persistenceThreads = persistenceThreads;
+        support.firePropertyChange("persistenceThreads", oldPersistenceThreads,
+                this.persistenceThreads);
+    }
+
+
+    /**
+     * Handles the special values.
+     */
+    private int getPersistenceThreadsInternal() {
+        int result = getPersistenceThreads();
+
+        // Positive values are unchanged
+        if (result > 0) {
+            return result;
+        }
+
+        // Zero == Runtime.getRuntime().availableProcessors()
+        // -ve  == Runtime.getRuntime().availableProcessors() + value
+        result = Runtime.getRuntime().availableProcessors() + result;
+        if (result < 1) {
+            result = 1;
+        }
+        return result;
+    }
+
+
+    /**
+     * @return The maximum number of sessions written to each chunk
+     */
+    public int getSessionsPerChunk() {
+        return sessionsPerChunk;
+    }
+
+
+    /**
+     * Set the maximum number of sessions written to each chunk when sessions
+     * are written using more than one thread.
+     *
+     * @param sessionsPerChunk The number of sessions
+     */
+    public void setSessionsPerChunk(int sessionsPerChunk) {
+        if (sessionsPerChunk < 1) {
+            sessionsPerChunk = 1;
+        }
+        int oldSessionsPerChunk = this.sessionsPerChunk;
+        this.sessionsPerChunk = sessionsPerChunk;
+        support.firePropertyChange("sessionsPerChunk", oldSessionsPerChunk,
+                this.sessionsPerChunk);
+    }
+
+
+    /**
+     * @return The number of sessions in the current or most recent load or
+     *         unload
+     */
+    public long getPersistenceSessionCount() {
+        return persistenceSessionCount;
+    }
+
+
+    /**
+     * @return The number of sessions loaded or unloaded so far by the current
+     *         or most recent load or unload
+     */
+    public long getPersistenceSessionsProcessed() {
+        return persistenceSessionsProcessed.get();
+    }
+
+
     // --------------------------------------------------------- Public Methods
 
     @Override
@@ -206,33 +353,40 @@ public class StandardManager extends ManagerBase {
 
             // Load the previously unloaded active sessions
             synchronized (sessions) {
-                try (ObjectInputStream ois = new CustomObjectInputStream(bis, classLoader, logger,
-                        getSessionAttributeValueClassNamePattern(),
-                        getWarnOnSessionAttributeFilterFailure())) {
-                    Integer count = (Integer) ois.readObject();
-                    int n = count.intValue();
-                    if (log.isDebugEnabled())
-                        log.debug("Loading " + n + " persisted sessions");
-                    for (int i = 0; i < n; i++) {
-                        StandardSession session = getNewSession();
-                        session.readObjectData(ois);
-                        session.setManager(this);
-                        sessions.put(session.getIdInternal(), session);
-                        session.activate();
-                        if (!session.isValidInternal()) {
-                            // If session is already invalid,
-                            // expire session to prevent memory leak.
-                            session.setValid(true);
-                            session.expire();
-                        }
-                        sessionCounter++;
+                persistenceSessionsProcessed.set(0);
+                if (isChunked(bis)) {
+                    try {
+                        loadChunks(new DataInputStream(bis), classLoader, logger);
+                    } finally {
+                        deletePersistedFile(file);
                     }
-                } finally {
-                    // Delete the persistent storage file
-                    if (file.exists()) {
-                        if (!file.delete()) {
-                            log.warn(sm.getString("standardManager.deletePersistedFileFail", file));
+                } else {
+                    try (ObjectInputStream ois = new CustomObjectInputStream(bis, classLoader, logger,
+                            getSessionAttributeValueClassNamePattern(),
+                            getWarnOnSessionAttributeFilterFailure())) {
+                        Integer count = (Integer) ois.readObject();
+                        int n = count.intValue();
+                        persistenceSessionCount = n;
+                        if (log.isDebugEnabled())
+                            log.debug("Loading " + n + " persisted sessions");
+                        for (int i = 0; i < n; i++) {
+                            StandardSession session = getNewSession();
+                            session.readObjectData(ois);
+                            session.setManager(this);
+                            sessions.put(session.getIdInternal(), session);
+                            updateExpiryIndex(session);
+                            session.activate();
+                            if (!session.isValidInternal()) {
+                                // If session is already invalid,
+                                // expire session to prevent memory leak.
+                                session.setValid(true);
+                                session.expire();
+                            }
+                            sessionCounter++;
+                            persistenceSessionsProcessed.incrementAndGet();
                         }
+                    } finally {
+                        deletePersistedFile(file);
                     }
                 }
             }
@@ -298,21 +452,40 @@ public class StandardManager extends ManagerBase {
         // Keep a note of sessions that are expired
         List<StandardSession> list = new ArrayList<>();
 
-        try (FileOutputStream fos = new FileOutputStream(file.getAbsolutePath());
-             BufferedOutputStream bos = new BufferedOutputStream(fos);
-             ObjectOutputStream oos = new ObjectOutputStream(bos)) {
-
+        if (getPersistenceThreadsInternal() > 1) {
             synchronized (sessions) {
+                for (Session s : sessions.values()) {
+                    list.add((StandardSession) s);
+                }
                 if (log.isDebugEnabled()) {
-                    log.debug("Unloading " + sessions.size() + " sessions");
+                    log.debug("Unloading " + list.size() + " sessions");
                 }
-                // Write the number of active sessions, followed by the details
-                oos.writeObject(Integer.valueOf(sessions.size()));
-                for (Session s : sessions.values()) {
-                    StandardSession session = (StandardSession) s;
-                    list.add(session);
-                    session.passivate();
-                    session.writeObjectData(oos);
+                persistenceSessionCount = list.size();
+                persistenceSessionsProcessed.set(0);
+                try (FileOutputStream fos = new FileOutputStream(file.getAbsolutePath())) {
+                    unloadChunks(fos.getChannel(), list);
+                }
+            }
+        } else {
+            try (FileOutputStream fos = new FileOutputStream(file.getAbsolutePath());
+                 BufferedOutputStream bos = new BufferedOutputStream(fos);
+                 ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+
+                synchronized (sessions) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Unloading " + sessions.size() + " sessions");
+                    }
+                    persistenceSessionCount = sessions.size();
+                    persistenceSessionsProcessed.set(0);
+                    // Write the number of active sessions, followed by the details
+                    oos.writeObject(Integer.valueOf(sessions.size()));
+                    for (Session s : sessions.values()) {
+                        StandardSession session = (StandardSession) s;
+                        list.add(session);
+                        session.passivate();
+                        session.writeObjectData(oos);
+                        persistenceSessionsProcessed.incrementAndGet();
+                    }
                 }
             }
         }
@@ -406,6 +579,223 @@ public class StandardManager extends ManagerBase {
     }
 
 
+    // -------------------------------------------------------- Private Methods
+
+    private void deletePersistedFile(File file) {
+        // Delete the persistent storage file
+        if (file.exists()) {
+            if (!file.delete()) {
+                log.warn(sm.getString("standardManager.deletePersistedFileFail", file));
+            }
+        }
+    }
+
+
+    private static boolean isChunked(BufferedInputStream bis) throws IOException {
+        bis.mark(8);
+        DataInputStream dis = new DataInputStream(bis);
+        try {
+            if (dis.readLong() == CHUNKED_MAGIC) {
+                return true;
+            }
+        } catch (EOFException e) {
+            // Too short to be chunked
+        }
+        bis.reset();
+        return false;
+    }
+
+
+    private ExecutorService createPersistenceExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, new TaskThreadFactory(
+                getContext().getName() + "-sessionPersistence-", true, Thread.NORM_PRIORITY));
+    }
+
+
+    /**
+     * Write the sessions as a header followed by one record per chunk. The
+     * header is the magic number, the number of sessions and the number of
+     * chunks. Each record is the length of the chunk, the number of sessions
+     * in it and the CRC-32 of the chunk, followed by the chunk itself. The
+     * records are written in whatever order the chunks are completed.
+     */
+    private void unloadChunks(final FileChannel channel, List<StandardSession> list)
+            throws IOException {
+        int chunkCount = (list.size() + sessionsPerChunk - 1) / sessionsPerChunk;
+        ByteBuffer header = ByteBuffer.allocate(16);
+        header.putLong(CHUNKED_MAGIC).putInt(list.size()).putInt(chunkCount).flip();
+        write(channel, header);
+
+        int threads = Math.min(getPersistenceThreadsInternal(), chunkCount);
+        ExecutorService executor = createPersistenceExecutor(threads);
+        try {
+            List<Future<Void>> results = new ArrayList<>(chunkCount);
+            for (int i = 0; i < list.size(); i += sessionsPerChunk) {
+                final List<StandardSession> chunk =
+                        list.subList(i, Math.min(i + sessionsPerChunk, list.size()));
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        unloadChunk(channel, chunk);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                waitFor(result);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    private void unloadChunk(FileChannel channel, List<StandardSession> chunk) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Context context = getContext();
+        ClassLoader oldCL = context.bind(false, null);
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            for (StandardSession session : chunk) {
+                session.passivate();
+                session.writeObjectData(oos);
+            }
+        } finally {
+            context.unbind(false, oldCL);
+        }
+        byte[] body = baos.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        ByteBuffer record = ByteBuffer.allocate(12 + body.length);
+        record.putInt(body.length).putInt(chunk.size()).putInt((int) crc.getValue()).put(body).flip();
+        synchronized (channel) {
+            write(channel, record);
+        }
+        persistenceSessionsProcessed.addAndGet(chunk.size());
+    }
+
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+
+    /**
+     * Read the chunks in turn on the current thread and decode them on the
+     * persistence threads. At most two chunks per thread are held in memory
+     * at once, and the sessions of each chunk are added to the sessions map as
+     * soon as that chunk has been decoded. A chunk that cannot be decoded is
+     * logged and skipped without affecting the others.
+     */
+    private void loadChunks(DataInputStream dis, final ClassLoader classLoader, final Log logger)
+            throws IOException {
+        int sessionCount = dis.readInt();
+        int chunkCount = dis.readInt();
+        persistenceSessionCount = sessionCount;
+        if (log.isDebugEnabled()) {
+            log.debug("Loading " + sessionCount + " persisted sessions from " + chunkCount + " chunks");
+        }
+
+        int threads = Math.max(1, Math.min(getPersistenceThreadsInternal(), chunkCount));
+        final Semaphore inFlight = new Semaphore(threads * 2);
+        ExecutorService executor = createPersistenceExecutor(threads);
+        try {
+            List<Future<Void>> results = new ArrayList<>(chunkCount);
+            long total = 0;
+            for (int i = 0; i < chunkCount; i++) {
+                final int chunkIndex = i;
+                int length = dis.readInt();
+                final int count = dis.readInt();
+                final int checksum = dis.readInt();
+                if (length < 0 || count < 0) {
+                    throw new StreamCorruptedException(
+                            sm.getString("standardManager.chunkInvalid", Integer.toString(i)));
+                }
+                final byte[] body = new byte[length];
+                dis.readFully(body);
+                total += count;
+
+                inFlight.acquireUninterruptibly();
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        try {
+                            loadChunk(body, count, checksum, classLoader, logger);
+                        } catch (Throwable t) {
+                            ExceptionUtils.handleThrowable(t);
+                            log.error(sm.getString("standardManager.chunkLoadFail",
+                                    Integer.toString(chunkIndex)), t);
+                        } finally {
+                            inFlight.release();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                waitFor(result);
+            }
+            sessionCounter += persistenceSessionsProcessed.get();
+            if (total != sessionCount) {
+                throw new StreamCorruptedException(sm.getString("standardManager.chunkCountMismatch",
+                        Long.toString(total), Integer.toString(sessionCount)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    private void loadChunk(byte[] body, int count, int checksum, ClassLoader classLoader,
+            Log logger) throws ClassNotFoundException, IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        if ((int) crc.getValue() != checksum) {
+            throw new StreamCorruptedException(sm.getString("standardManager.chunkChecksum"));
+        }
+        Context context = getContext();
+        ClassLoader oldCL = context.bind(false, null);
+        try (ObjectInputStream ois = new CustomObjectInputStream(new ByteArrayInputStream(body),
+                classLoader, logger, getSessionAttributeValueClassNamePattern(),
+                getWarnOnSessionAttributeFilterFailure())) {
+            for (int i = 0; i < count; i++) {
+                StandardSession session = getNewSession();
+                session.readObjectData(ois);
+                session.setManager(this);
+                sessions.put(session.getIdInternal(), session);
+                updateExpiryIndex(session);
+                session.activate();
+                if (!session.isValidInternal()) {
+                    // If session is already invalid,
+                    // expire session to prevent memory leak.
+                    session.setValid(true);
+                    session.expire();
+                }
+                persistenceSessionsProcessed.incrementAndGet();
+            }
+        } finally {
+            context.unbind(false, oldCL);
+        }
+    }
+
+
+    private static void waitFor(Future<Void> result) throws IOException {
+        try {
+            result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+
     // ------------------------------------------------------ Protected Methods
 
     /**
@@ -18,6 +18,7 @@ package org.apache.catalina.session;
 
 import java.beans.PropertyChangeSupport;
 import java.io.IOException;
+import java.io.InvalidClassException;
 import java.io.NotSerializableException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -144,7 +145,7 @@ public class StandardSession implements HttpSession, Session, Serializable {
     /**
      * The collection of user data attributes associated with this Session.
      */
-    protected ConcurrentMap<String, Object> attributes = new ConcurrentHashMap<>();
+    protected ConcurrentMap<String, Object> attributes = createAttributes();
 
 
     /**
@@ -192,7 +193,7 @@ public class StandardSession implements HttpSession, Session, Serializable {
     /**
      * The session event listeners for this Session.
      */
-    protected transient ArrayList<SessionListener> listeners = new ArrayList<>();
+    protected transient volatile ArrayList<SessionListener> listeners = createListeners();
 
 
     /**
@@ -226,7 +227,7 @@ public class StandardSession implements HttpSession, Session, Serializable {
      * and event listeners.  <b>IMPLEMENTATION NOTE:</b> This object is
      * <em>not</em> saved and restored across session serializations!
      */
-    protected transient Map<String, Object> notes = new Hashtable<>();
+    protected transient volatile Map<String, Object> notes = createNotes();
 
 
     /**
@@ -271,6 +272,14 @@ public class StandardSession implements HttpSession, Session, Serializable {
     protected transient AtomicInteger accessCount = null;
 
 
+    /**
+     * The bucket of the Manager's expiry index this session is filed in, plus
+     * one, so that zero (including the default after deserialization) means
+     * the session is not in the index.
+     */
+    transient volatile int expiryIndexBucket = 0;
+
+
     // ----------------------------------------------------- Session Properties
 
 
@@ -572,6 +581,10 @@ public class StandardSession implements HttpSession, Session, Serializable {
     @Override
     public void setMaxInactiveInterval(int interval) {
         this.maxInactiveInterval = interval;
+        // The session may now expire sooner than the index expects
+        if (id != null && manager instanceof ManagerBase) {
+            ((ManagerBase) manager).updateExpiryIndex(this);
+        }
     }
 
 
@@ -736,6 +749,16 @@ public class StandardSession implements HttpSession, Session, Serializable {
     @Override
     public void addSessionListener(SessionListener listener) {
 
+        ArrayList<SessionListener> listeners = this.listeners;
+        if (listeners == null) {
+            synchronized (this) {
+                listeners = this.listeners;
+                if (listeners == null) {
+                    listeners = new ArrayList<>();
+                    this.listeners = listeners;
+                }
+            }
+        }
         listeners.add(listener);
 
     }
@@ -941,6 +964,10 @@ public class StandardSession implements HttpSession, Session, Serializable {
      */
     @Override
     public Object getNote(String name) {
+        Map<String, Object> notes = this.notes;
+        if (notes == null) {
+            return null;
+        }
         return notes.get(name);
     }
 
@@ -951,6 +978,10 @@ public class StandardSession implements HttpSession, Session, Serializable {
      */
     @Override
     public Iterator<String> getNoteNames() {
+        Map<String, Object> notes = this.notes;
+        if (notes == null) {
+            return Collections.emptyIterator();
+        }
         return notes.keySet().iterator();
     }
 
@@ -970,7 +1001,9 @@ public class StandardSession implements HttpSession, Session, Serializable {
         id = null;
         lastAccessedTime = 0L;
         maxInactiveInterval = -1;
-        notes.clear();
+        if (notes != null) {
+            notes.clear();
+        }
         setPrincipal(null);
         isNew = false;
         isValid = false;
@@ -988,7 +1021,10 @@ public class StandardSession implements HttpSession, Session, Serializable {
     @Override
     public void removeNote(String name) {
 
-        notes.remove(name);
+        Map<String, Object> notes = this.notes;
+        if (notes != null) {
+            notes.remove(name);
+        }
 
     }
 
@@ -999,7 +1035,10 @@ public class StandardSession implements HttpSession, Session, Serializable {
     @Override
     public void removeSessionListener(SessionListener listener) {
 
-        listeners.remove(listener);
+        ArrayList<SessionListener> listeners = this.listeners;
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
 
     }
 
@@ -1014,6 +1053,16 @@ public class StandardSession implements HttpSession, Session, Serializable {
     @Override
     public void setNote(String name, Object value) {
 
+        Map<String, Object> notes = this.notes;
+        if (notes == null) {
+            synchronized (this) {
+                notes = this.notes;
+                if (notes == null) {
+                    notes = new Hashtable<>();
+                    this.notes = notes;
+                }
+            }
+        }
         notes.put(name, value);
 
     }
@@ -1534,52 +1583,59 @@ public class StandardSession implements HttpSession, Session, Serializable {
     protected void doReadObject(ObjectInputStream stream)
             throws ClassNotFoundException, IOException {
 
+        // Sessions written by a named serializer start with its name. Those
+        // written using Java serialization start with the creation time.
+        SessionSerializer serializer = JavaSessionSerializer.INSTANCE;
+        Object first = stream.readObject();
+        if (first instanceof String) {
+            serializer = getSessionSerializer((String) first);
+            creationTime = serializer.readLong(stream);
+        } else {
+            creationTime = ((Long) first).longValue();
+        }
+
         // Deserialize the scalar instance variables (except Manager)
         authType = null;        // Transient (may be set later)
-        creationTime = ((Long) stream.readObject()).longValue();
-        lastAccessedTime = ((Long) stream.readObject()).longValue();
-        maxInactiveInterval = ((Integer) stream.readObject()).intValue();
-        isNew = ((Boolean) stream.readObject()).booleanValue();
-        isValid = ((Boolean) stream.readObject()).booleanValue();
-        thisAccessedTime = ((Long) stream.readObject()).longValue();
+        lastAccessedTime = serializer.readLong(stream);
+        maxInactiveInterval = serializer.readInt(stream);
+        isNew = serializer.readBoolean(stream);
+        isValid = serializer.readBoolean(stream);
+        thisAccessedTime = serializer.readLong(stream);
         principal = null;        // Transient (may be set later)
         //        setId((String) stream.readObject());
-        id = (String) stream.readObject();
+        id = serializer.readString(stream);
         if (manager.getContext().getLogger().isDebugEnabled())
             manager.getContext().getLogger().debug
                     ("readObject() loading session " + id);
 
-        // The next object read could either be the number of attributes (Integer) or the session's
-        // authType followed by a Principal object (not an Integer)
-        Object nextObject = stream.readObject();
-        if (!(nextObject instanceof Integer)) {
-            setAuthType((String) nextObject);
-            try {
-                setPrincipal((Principal) stream.readObject());
-            } catch (ClassNotFoundException | ObjectStreamException e) {
-                String msg = sm.getString("standardSession.principalNotDeserializable", id);
-                if (manager.getContext().getLogger().isDebugEnabled()) {
-                    manager.getContext().getLogger().debug(msg, e);
-                } else {
-                    manager.getContext().getLogger().warn(msg);
-                }
-                throw e;
+        int n;
+        if (serializer.getName() == null) {
+            // The next object read could either be the number of attributes (Integer) or the session's
+            // authType followed by a Principal object (not an Integer)
+            Object nextObject = stream.readObject();
+            if (!(nextObject instanceof Integer)) {
+                setAuthType((String) nextObject);
+                readPrincipal(stream, serializer);
+                // After that, the next object read should be the number of attributes (Integer)
+                nextObject = stream.readObject();
             }
-            // After that, the next object read should be the number of attributes (Integer)
-            nextObject = stream.readObject();
+            n = ((Integer) nextObject).intValue();
+        } else {
+            setAuthType(serializer.readString(stream));
+            readPrincipal(stream, serializer);
+            n = serializer.readInt(stream);
         }
 
         // Deserialize the attribute count and attribute values
         if (attributes == null)
-            attributes = new ConcurrentHashMap<>();
-        int n = ((Integer) nextObject).intValue();
+            attributes = createAttributes();
         boolean isValidSave = isValid;
         isValid = true;
         for (int i = 0; i < n; i++) {
-            String name = (String) stream.readObject();
+            String name = serializer.readString(stream);
             final Object value;
             try {
-                value = stream.readObject();
+                value = serializer.readObject(stream);
             } catch (WriteAbortedException wae) {
                 if (wae.getCause() instanceof NotSerializableException) {
                     String msg = sm.getString("standardSession.notDeserializable", name, id);
@@ -1608,11 +1664,11 @@ public class StandardSession implements HttpSession, Session, Serializable {
         isValid = isValidSave;
 
         if (listeners == null) {
-            listeners = new ArrayList<>();
+            listeners = createListeners();
         }
 
         if (notes == null) {
-            notes = new Hashtable<>();
+            notes = createNotes();
         }
     }
 
@@ -1637,14 +1693,19 @@ public class StandardSession implements HttpSession, Session, Serializable {
      */
     protected void doWriteObject(ObjectOutputStream stream) throws IOException {
 
+        SessionSerializer serializer = getSessionSerializer();
+        if (serializer.getName() != null) {
+            stream.writeObject(serializer.getName());
+        }
+
         // Write the scalar instance variables (except Manager)
-        stream.writeObject(Long.valueOf(creationTime));
-        stream.writeObject(Long.valueOf(lastAccessedTime));
-        stream.writeObject(Integer.valueOf(maxInactiveInterval));
-        stream.writeObject(Boolean.valueOf(isNew));
-        stream.writeObject(Boolean.valueOf(isValid));
-        stream.writeObject(Long.valueOf(thisAccessedTime));
-        stream.writeObject(id);
+        serializer.writeLong(stream, creationTime);
+        serializer.writeLong(stream, lastAccessedTime);
+        serializer.writeInt(stream, maxInactiveInterval);
+        serializer.writeBoolean(stream, isNew);
+        serializer.writeBoolean(stream, isValid);
+        serializer.writeLong(stream, thisAccessedTime);
+        serializer.writeString(stream, id);
         if (manager.getContext().getLogger().isDebugEnabled())
             manager.getContext().getLogger().debug
                     ("writeObject() storing session " + id);
@@ -1663,9 +1724,9 @@ public class StandardSession implements HttpSession, Session, Serializable {
         }
 
         // Write authentication information (may be null values)
-        stream.writeObject(sessionAuthType);
+        serializer.writeString(stream, sessionAuthType);
         try {
-            stream.writeObject(sessionPrincipal);
+            serializer.writeObject(stream, sessionPrincipal);
         } catch (NotSerializableException e) {
             manager.getContext().getLogger().warn(
                     sm.getString("standardSession.principalNotSerializable", id), e);
@@ -1689,11 +1750,11 @@ public class StandardSession implements HttpSession, Session, Serializable {
 
         // Serialize the attribute count and the Serializable attributes
         int n = saveNames.size();
-        stream.writeObject(Integer.valueOf(n));
+        serializer.writeInt(stream, n);
         for (int i = 0; i < n; i++) {
-            stream.writeObject(saveNames.get(i));
+            serializer.writeString(stream, saveNames.get(i));
             try {
-                stream.writeObject(saveValues.get(i));
+                serializer.writeObject(stream, saveValues.get(i));
                 if (manager.getContext().getLogger().isDebugEnabled())
                     manager.getContext().getLogger().debug(
                             "  storing attribute '" + saveNames.get(i) + "' with value '" + saveValues.get(i) + "'");
@@ -1705,6 +1766,74 @@ public class StandardSession implements HttpSession, Session, Serializable {
 
     }
 
+
+    private void readPrincipal(ObjectInputStream stream, SessionSerializer serializer)
+            throws ClassNotFoundException, IOException {
+        try {
+            setPrincipal((Principal) serializer.readObject(stream));
+        } catch (ClassNotFoundException | ObjectStreamException e) {
+            String msg = sm.getString("standardSession.principalNotDeserializable", id);
+            if (manager.getContext().getLogger().isDebugEnabled()) {
+                manager.getContext().getLogger().debug(msg, e);
+            } else {
+                manager.getContext().getLogger().warn(msg);
+            }
+            throw e;
+        }
+    }
+
+
+    /**
+     * @return the serializer used to write this session. This is the one
+     *         configured on the Manager, or Java serialization if there is
+     *         no Manager or it does not support the configuration of one.
+     */
+    protected SessionSerializer getSessionSerializer() {
+        if (manager instanceof ManagerBase) {
+            return ((ManagerBase) manager).getSessionSerializer();
+        }
+        return JavaSessionSerializer.INSTANCE;
+    }
+
+
+    /**
+     * Obtain the serializer that wrote a session.
+     *
+     * @param name The name written ahead of the session
+     *
+     * @return the serializer
+     *
+     * @throws InvalidClassException if no serializer with the given name is
+     *         available
+     */
+    protected SessionSerializer getSessionSerializer(String name) throws InvalidClassException {
+        SessionSerializer serializer = getSessionSerializer();
+        if (name.equals(serializer.getName())) {
+            return serializer;
+        }
+        if (CompactSessionSerializer.NAME.equals(name)) {
+            return CompactSessionSerializer.INSTANCE;
+        }
+        Exception cause = null;
+        try {
+            // Don't initialise anything that is not a serializer
+            Class<?> clazz = Class.forName(name, false, StandardSession.class.getClassLoader());
+            if (SessionSerializer.class.isAssignableFrom(clazz)) {
+                serializer = (SessionSerializer) clazz.getConstructor().newInstance();
+                if (name.equals(serializer.getName())) {
+                    return serializer;
+                }
+            }
+        } catch (ReflectiveOperationException e) {
+            cause = e;
+        }
+        InvalidClassException ice = new InvalidClassException(name,
+                sm.getString("standardSession.unknownSerializer"));
+        ice.initCause(cause);
+        throw ice;
+    }
+
+
     /**
      * Return whether authentication information shall be persisted or not.
      *
@@ -1755,6 +1884,43 @@ public class StandardSession implements HttpSession, Session, Serializable {
 
     // ------------------------------------------------------ Protected Methods
 
+    /**
+     * Create the map that will hold the attributes of this session. This is
+     * called during construction, before any subclass fields are initialised.
+     *
+     * @return a new, empty attribute map
+     */
+    protected ConcurrentMap<String, Object> createAttributes() {
+        return new ConcurrentHashMap<>();
+    }
+
+
+    /**
+     * Create the list that will hold the session event listeners of this
+     * session. This is called during construction, before any subclass fields
+     * are initialised. If <code>null</code> is returned, the list is created
+     * when the first listener is added.
+     *
+     * @return a new, empty listener list or <code>null</code>
+     */
+    protected ArrayList<SessionListener> createListeners() {
+        return new ArrayList<>();
+    }
+
+
+    /**
+     * Create the map that will hold the internal notes of this session. This
+     * is called during construction, before any subclass fields are
+     * initialised. If <code>null</code> is returned, the map is created when
+     * the first note is set.
+     *
+     * @return a new, empty notes map or <code>null</code>
+     */
+    protected Map<String, Object> createNotes() {
+        return new Hashtable<>();
+    }
+
+
     /**
      * Notify all session event listeners that a particular event has
      * occurred for this Session.  The default implementation performs
@@ -1764,7 +1930,8 @@ public class StandardSession implements HttpSession, Session, Serializable {
      * @param data Event data
      */
     public void fireSessionEvent(String type, Object data) {
-        if (listeners.size() < 1)
+        ArrayList<SessionListener> listeners = this.listeners;
+        if (listeners == null || listeners.size() < 1)
             return;
         SessionEvent event = new SessionEvent(this, type, data);
         SessionListener list[] = new SessionListener[0];
@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.catalina.Session;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Queue of sessions waiting to be written to the Store of a
+ * {@link PersistentManagerBase} by a dedicated writer thread.
+ * <p>
+ * Sessions are written in batches of up to <code>batchSize</code>, as soon as
+ * a full batch is waiting or <code>flushInterval</code> milliseconds after the
+ * writer last ran. A session queued again before it has been written replaces
+ * the earlier entry, so it is written once. At most <code>maxPending</code>
+ * sessions are held; once that many are waiting, {@link #offer(Session, boolean)}
+ * refuses further sessions and the caller must write them itself.
+ * <p>
+ * A session that has been swapped out stays in the queue until it has been
+ * written, so that it can always be found either here or in the Store. It can
+ * be reclaimed with {@link #takeSwapped(String)} until then.
+ */
+final class WriteBehindQueue implements Runnable {
+
+    private static final Log log = LogFactory.getLog(WriteBehindQueue.class);
+    private static final StringManager sm = StringManager.getManager(WriteBehindQueue.class);
+
+    private final PersistentManagerBase manager;
+    private final int batchSize;
+    private final long flushInterval;
+    private final int maxPending;
+
+    /**
+     * Sessions waiting to be written, keyed by session ID, oldest first.
+     * Guarded by this.
+     */
+    private final LinkedHashMap<String,Entry> pending = new LinkedHashMap<>();
+
+    private boolean running = false;
+    private Thread thread = null;
+
+    private long batchCount = 0;
+    private long writeCount = 0;
+    private long coalescedCount = 0;
+    private long rejectedCount = 0;
+
+
+    WriteBehindQueue(PersistentManagerBase manager, int batchSize, long flushInterval,
+            int maxPending) {
+        this.manager = manager;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushInterval = Math.max(1, flushInterval);
+        this.maxPending = Math.max(this.batchSize, maxPending);
+    }
+
+
+    // --------------------------------------------------------- Queue methods
+
+    /**
+     * Queue a session to be written.
+     *
+     * @param session The session to write
+     * @param swap    {@code true} if the session is being swapped out of
+     *                memory rather than backed up
+     *
+     * @return {@code true} if the session was queued, {@code false} if the
+     *         queue is full and the caller must write the session itself
+     */
+    synchronized boolean offer(Session session, boolean swap) {
+        String id = session.getIdInternal();
+        Entry previous = pending.get(id);
+        if (previous == null && pending.size() >= maxPending) {
+            rejectedCount++;
+            return false;
+        }
+        if (previous != null) {
+            coalescedCount++;
+        }
+        // Replacing an existing entry keeps its place in the queue
+        pending.put(id, new Entry(session, swap));
+        if (pending.size() >= batchSize) {
+            notifyAll();
+        }
+        return true;
+    }
+
+
+    /**
+     * Remove a swapped out session from the queue so that it can be returned
+     * to memory.
+     *
+     * @param id The ID of the session
+     *
+     * @return the session, or {@code null} if no swapped out session with that
+     *         ID is waiting to be written
+     */
+    synchronized Session takeSwapped(String id) {
+        Entry entry = pending.get(id);
+        if (entry == null || !entry.swap) {
+            return null;
+        }
+        pending.remove(id);
+        return entry.session;
+    }
+
+
+    /**
+     * Discard any queued write for the given session.
+     *
+     * @param id The ID of the session
+     */
+    synchronized void cancel(String id) {
+        pending.remove(id);
+    }
+
+
+    /**
+     * Discard all queued writes.
+     */
+    synchronized void clear() {
+        pending.clear();
+    }
+
+
+    synchronized int size() {
+        return pending.size();
+    }
+
+
+    /**
+     * @return the IDs of the swapped out sessions waiting to be written
+     */
+    synchronized Set<String> getSwappedIds() {
+        Set<String> ids = new HashSet<>();
+        for (Entry entry : pending.values()) {
+            if (entry.swap) {
+                ids.add(entry.session.getIdInternal());
+            }
+        }
+        return ids;
+    }
+
+
+    synchronized long getBatchCount() {
+        return batchCount;
+    }
+
+
+    synchronized long getWriteCount() {
+        return writeCount;
+    }
+
+
+    synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+
+    synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+
+    // ---------------------------------------------------------- Writer thread
+
+    /**
+     * Start the writer thread.
+     *
+     * @param threadName The name for the writer thread
+     */
+    void start(String threadName) {
+        synchronized (this) {
+            running = true;
+        }
+        thread = new Thread(this, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    /**
+     * Stop the writer thread and write any sessions that are still queued.
+     */
+    void stop() {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                // Ignore
+            }
+            thread = null;
+        }
+        flush();
+    }
+
+
+    @Override
+    public void run() {
+        while (true) {
+            synchronized (this) {
+                long deadline = System.currentTimeMillis() + flushInterval;
+                while (running && pending.size() < batchSize) {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        break;
+                    }
+                    try {
+                        wait(wait);
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+            }
+            flush();
+        }
+    }
+
+
+    /**
+     * Write all queued sessions, one batch at a time, until the queue is
+     * empty.
+     */
+    void flush() {
+        while (true) {
+            List<Entry> batch = new ArrayList<>();
+            synchronized (this) {
+                Iterator<Entry> iter = pending.values().iterator();
+                while (iter.hasNext() && batch.size() < batchSize) {
+                    batch.add(iter.next());
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            write(batch);
+        }
+    }
+
+
+    private void write(List<Entry> batch) {
+        Session[] sessions = new Session[batch.size()];
+        for (int i = 0; i < sessions.length; i++) {
+            sessions[i] = batch.get(i).session;
+        }
+
+        boolean failed = false;
+        try {
+            manager.writeSessions(sessions);
+        } catch (IOException e) {
+            // This is logged in writeSessions()
+            failed = true;
+        } catch (RuntimeException e) {
+            log.error(sm.getString("writeBehindQueue.writeError",
+                    Integer.valueOf(sessions.length), manager.getContext().getName()), e);
+            failed = true;
+        }
+
+        // Entries replaced or reclaimed while the batch was being written are
+        // left alone. The replacement is written by a later batch.
+        List<Entry> done = new ArrayList<>(batch.size());
+        synchronized (this) {
+            batchCount++;
+            for (Entry entry : batch) {
+                String id = entry.session.getIdInternal();
+                if (id != null && pending.get(id) == entry) {
+                    pending.remove(id);
+                    done.add(entry);
+                }
+            }
+            if (!failed) {
+                writeCount += done.size();
+            }
+        }
+
+        for (Entry entry : batch) {
+            StandardSession session = (StandardSession) entry.session;
+            if (!failed && (session.expiring || !session.isValid)) {
+                // Invalidated while it was being written, after it had been
+                // removed from the Store. Don't leave it there.
+                String id = session.getIdInternal();
+                if (id != null) {
+                    manager.removeSession(id);
+                }
+            }
+        }
+
+        for (Entry entry : done) {
+            if (!entry.swap) {
+                continue;
+            }
+            if (failed) {
+                // Keep the session in memory rather than lose it. It was
+                // passivated when it was swapped out.
+                manager.add(entry.session);
+                ((StandardSession) entry.session).activate();
+            } else {
+                entry.session.recycle();
+            }
+        }
+    }
+
+
+    // ---------------------------------------------------------- Inner classes
+
+    private static final class Entry {
+
+        private final Session session;
+        private final boolean swap;
+
+        Entry(Session session, boolean swap) {
+            this.session = session;
+            this.swap = swap;
+        }
+    }
+}
@@ -19,13 +19,19 @@ package org.apache.catalina.startup;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -37,7 +43,11 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import javax.servlet.MultipartConfigElement;
 import javax.servlet.ServletContainerInitializer;
@@ -65,6 +75,7 @@ import org.apache.catalina.core.StandardContext;
 import org.apache.catalina.core.StandardHost;
 import org.apache.catalina.util.ContextName;
 import org.apache.catalina.util.Introspection;
+import org.apache.catalina.util.ServerInfo;
 import org.apache.jasper.servlet.JasperInitializer;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
@@ -80,8 +91,10 @@ import org.apache.tomcat.util.bcel.classfile.ClassParser;
 import org.apache.tomcat.util.bcel.classfile.ElementValue;
 import org.apache.tomcat.util.bcel.classfile.ElementValuePair;
 import org.apache.tomcat.util.bcel.classfile.JavaClass;
+import org.apache.tomcat.util.buf.HexUtils;
 import org.apache.tomcat.util.buf.UriUtil;
 import org.apache.tomcat.util.descriptor.InputSourceUtil;
+import org.apache.tomcat.util.descriptor.JarDescriptorCache;
 import org.apache.tomcat.util.descriptor.XmlErrorHandler;
 import org.apache.tomcat.util.descriptor.web.ContextEjb;
 import org.apache.tomcat.util.descriptor.web.ContextEnvironment;
@@ -102,11 +115,13 @@ import org.apache.tomcat.util.descriptor.web.SecurityRoleRef;
 import org.apache.tomcat.util.descriptor.web.ServletDef;
 import org.apache.tomcat.util.descriptor.web.SessionConfig;
 import org.apache.tomcat.util.descriptor.web.WebXml;
+import org.apache.tomcat.util.descriptor.web.WebXmlCodec;
 import org.apache.tomcat.util.descriptor.web.WebXmlParser;
 import org.apache.tomcat.util.digester.Digester;
 import org.apache.tomcat.util.digester.RuleSet;
 import org.apache.tomcat.util.res.StringManager;
 import org.apache.tomcat.util.scan.JarFactory;
+import org.apache.tomcat.util.scan.SharedJarFiles;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXParseException;
 
@@ -172,6 +187,10 @@ public class ContextConfig implements LifecycleListener {
      */
     private static final Set<ServletContainerInitializer> EMPTY_SCI_SET = Collections.emptySet();
 
+    private static final String ANNOTATION_SCAN_CACHE_DIR = "annotation-scan";
+
+    private static final String WEB_FRAGMENT_CACHE_DIR = "web-fragment-cache";
+
 
     // ----------------------------------------------------- Instance Variables
     /**
@@ -211,6 +230,14 @@ public class ContextConfig implements LifecycleListener {
     private File antiLockingDocBase = null;
 
 
+    /**
+     * The file the startup snapshot of the web application is written to. If
+     * set, the configuration of the web application is written to the file
+     * rather than applied to the context.
+     */
+    private File startupSnapshotFile = null;
+
+
     /**
      * Map of ServletContainerInitializer to classes they expressed interest in.
      */
@@ -276,6 +303,22 @@ public class ContextConfig implements LifecycleListener {
     }
 
 
+    /**
+     * Configure this listener to write the startup snapshot of the web
+     * application to the given file rather than applying the configuration to
+     * the context. The context then starts without any of the servlets,
+     * filters, listeners or initializers of the web application so no
+     * application code is executed in this mode.
+     *
+     * @param startupSnapshotFile The file to write the snapshot to
+     *
+     * @see StandardContext#setUseStartupSnapshot(boolean)
+     */
+    public void setStartupSnapshotFile(File startupSnapshotFile) {
+        this.startupSnapshotFile = startupSnapshotFile;
+    }
+
+
     // --------------------------------------------------------- Public Methods
 
 
@@ -780,6 +823,15 @@ public class ContextConfig implements LifecycleListener {
         }
         //配置Web
         webConfig();
+        if (startupSnapshotFile != null) {
+            // Only the configuration was required. It was not applied so the
+            // context starts without any application components.
+            if (!ok) {
+                log.error(sm.getString("contextConfig.unavailable"));
+            }
+            context.setConfigured(ok);
+            return;
+        }
         //初始化，引入下面一行代码
         context.addServletContainerInitializer(new JasperInitializer(), null);
         if (!context.getIgnoreAnnotations()) {
@@ -1062,8 +1114,16 @@ public class ContextConfig implements LifecycleListener {
         WebXmlParser webXmlParser = new WebXmlParser(context.getXmlNamespaceAware(),
                 context.getXmlValidation(), context.getXmlBlockExternal());
 
+        WebXml defaultWebXml = getDefaultWebXmlFragment(webXmlParser);
         Set<WebXml> defaults = new HashSet<>();
-        defaults.add(getDefaultWebXmlFragment(webXmlParser));
+        defaults.add(defaultWebXml);
+
+        if (startupSnapshotFile == null && context instanceof StandardContext &&
+                ((StandardContext) context).getUseStartupSnapshot() &&
+                processStartupSnapshot(defaultWebXml)) {
+            return;
+        }
+
         // Web.xml对象
         WebXml webXml = createWebXml();
 
@@ -1118,13 +1178,15 @@ public class ContextConfig implements LifecycleListener {
             }
 
             // Step 9. Apply merged web.xml to Context
-            if (ok) {
+            if (ok && startupSnapshotFile == null) {
                 configureContext(webXml);
             }
         } else {
             webXml.merge(defaults);
             convertJsps(webXml);
-            configureContext(webXml);
+            if (startupSnapshotFile == null) {
+                configureContext(webXml);
+            }
         }
 
         if (context.getLogEffectiveWebXml()) {
@@ -1142,26 +1204,275 @@ public class ContextConfig implements LifecycleListener {
                     resourceJars.add(fragment);
                 }
             }
-            processResourceJARs(resourceJars);
+            if (startupSnapshotFile == null) {
+                processResourceJARs(resourceJars);
+            } else {
+                writeStartupSnapshot(defaultWebXml, webXml, resourceJars);
+            }
             // See also StandardContext.resourcesStart() for
             // WEB-INF/classes/META-INF/resources configuration
         }
 
+        if (startupSnapshotFile != null) {
+            return;
+        }
+
         // Step 11. Apply the ServletContainerInitializer config to the
         // context
         if (ok) {
-            for (Map.Entry<ServletContainerInitializer,
-                    Set<Class<?>>> entry :
-                    initializerClassMap.entrySet()) {
-                if (entry.getValue().isEmpty()) {
-                    context.addServletContainerInitializer(
-                            entry.getKey(), null);
+            addServletContainerInitializers();
+        }
+    }
+
+
+    private void addServletContainerInitializers() {
+        for (Map.Entry<ServletContainerInitializer,
+                Set<Class<?>>> entry :
+                initializerClassMap.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                context.addServletContainerInitializer(
+                        entry.getKey(), null);
+            } else {
+                context.addServletContainerInitializer(
+                        entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+
+    /**
+     * Configure the context from the startup snapshot packaged with the web
+     * application instead of scanning it.
+     *
+     * @param defaultWebXml The global and host defaults
+     * @return <code>true</code> if the context was configured from the
+     *         snapshot, <code>false</code> if the snapshot is missing or stale
+     *         and the web application has to be scanned
+     */
+    private boolean processStartupSnapshot(WebXml defaultWebXml) {
+        WebResource resource = context.getResources().getResource(StartupSnapshot.PATH);
+        if (!resource.isFile()) {
+            log.info(sm.getString("contextConfig.startupSnapshotMissing",
+                    StartupSnapshot.PATH, context.getName()));
+            return false;
+        }
+
+        StartupSnapshot snapshot;
+        WebXml webXml;
+        String fingerprint;
+        try (InputStream is = resource.getInputStream()) {
+            snapshot = StartupSnapshot.read(is);
+            webXml = WebXmlCodec.decode(snapshot.getWebXml());
+            fingerprint = getStartupSnapshotFingerprint(defaultWebXml);
+        } catch (IOException e) {
+            log.warn(sm.getString("contextConfig.startupSnapshotReadFail",
+                    StartupSnapshot.PATH, context.getName()), e);
+            return false;
+        }
+        if (!fingerprint.equals(snapshot.getFingerprint())) {
+            log.info(sm.getString("contextConfig.startupSnapshotStale",
+                    StartupSnapshot.PATH, context.getName()));
+            return false;
+        }
+
+        ServletContext sContext = context.getServletContext();
+        List<URL> resourceJarUrls = new ArrayList<>();
+        for (String location : snapshot.getResourceJars()) {
+            URL url = null;
+            try {
+                if (location.startsWith("/")) {
+                    url = sContext.getResource(location);
                 } else {
-                    context.addServletContainerInitializer(
-                            entry.getKey(), entry.getValue());
+                    url = new URL(location);
                 }
+            } catch (MalformedURLException e) {
+                // Treat as missing
+            }
+            if (url == null) {
+                log.info(sm.getString("contextConfig.startupSnapshotStale",
+                        StartupSnapshot.PATH, context.getName()));
+                return false;
             }
+            resourceJarUrls.add(url);
+        }
+
+        // Container JARs are not covered by the fingerprint so the
+        // initializers are always detected. This also ensures the ordering
+        // is in place before the initializers are loaded.
+        sContext.setAttribute(ServletContext.ORDERED_LIBS, snapshot.getOrderedLibs());
+        processServletContainerInitializers();
+        if (!ok) {
+            return false;
+        }
+        Map<String,List<String>> initializers = snapshot.getInitializers();
+        boolean matched = initializers.size() == initializerClassMap.size();
+        for (Map.Entry<ServletContainerInitializer,Set<Class<?>>> entry :
+                initializerClassMap.entrySet()) {
+            if (!matched) {
+                break;
+            }
+            List<String> classNames = initializers.get(entry.getKey().getClass().getName());
+            if (classNames == null) {
+                matched = false;
+                break;
+            }
+            for (String className : classNames) {
+                Class<?> clazz = Introspection.loadClass(context, className);
+                if (clazz == null) {
+                    matched = false;
+                    break;
+                }
+                entry.getValue().add(clazz);
+            }
+        }
+        if (!matched) {
+            log.info(sm.getString("contextConfig.startupSnapshotStale",
+                    StartupSnapshot.PATH, context.getName()));
+            initializerClassMap.clear();
+            typeInitializerMap.clear();
+            handlesTypesAnnotations = false;
+            handlesTypesNonAnnotations = false;
+            return false;
+        }
+
+        log.info(sm.getString("contextConfig.startupSnapshotHit",
+                StartupSnapshot.PATH, context.getName()));
+
+        configureContext(webXml);
+
+        if (context.getLogEffectiveWebXml()) {
+            log.info("web.xml:\n" + webXml.toXml());
+        }
+
+        for (URL url : resourceJarUrls) {
+            processResourceJAR(url);
+        }
+
+        if (ok) {
+            addServletContainerInitializers();
         }
+        return true;
+    }
+
+
+    private void writeStartupSnapshot(WebXml defaultWebXml, WebXml webXml,
+            Set<WebXml> resourceJars) {
+        Map<String,List<String>> initializers = new LinkedHashMap<>();
+        for (Map.Entry<ServletContainerInitializer,Set<Class<?>>> entry :
+                initializerClassMap.entrySet()) {
+            List<String> classNames = new ArrayList<>();
+            for (Class<?> clazz : entry.getValue()) {
+                classNames.add(clazz.getName());
+            }
+            initializers.put(entry.getKey().getClass().getName(), classNames);
+        }
+
+        // Only record the JARs that provide static resources so they don't
+        // have to be opened to check
+        List<String> resourceJarLocations = new ArrayList<>();
+        for (WebXml fragment : resourceJars) {
+            if (processResourceJAR(fragment.getURL())) {
+                if (fragment.getWebappJar()) {
+                    resourceJarLocations.add("/WEB-INF/lib/" + fragment.getJarName());
+                } else {
+                    resourceJarLocations.add(fragment.getURL().toString());
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        List<String> orderedLibs = (List<String>) context.getServletContext().getAttribute(
+                ServletContext.ORDERED_LIBS);
+
+        try (OutputStream os = new FileOutputStream(startupSnapshotFile)) {
+            StartupSnapshot snapshot = new StartupSnapshot(
+                    getStartupSnapshotFingerprint(defaultWebXml), WebXmlCodec.encode(webXml),
+                    orderedLibs, initializers, resourceJarLocations);
+            snapshot.write(os);
+        } catch (IOException e) {
+            log.error(sm.getString("contextConfig.startupSnapshotWriteFail",
+                    startupSnapshotFile.getAbsolutePath(), context.getName()), e);
+            ok = false;
+        }
+    }
+
+
+    /**
+     * Identify the content that the result of {@link #webConfig()} depends on:
+     * the Tomcat version, the settings of the parser, the defaults, the
+     * application web.xml and the content of <code>/WEB-INF/lib</code> and
+     * <code>/WEB-INF/classes</code>.
+     */
+    private String getStartupSnapshotFingerprint(WebXml defaultWebXml) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        updateDigest(digest, ServerInfo.getServerNumber());
+        updateDigest(digest, Boolean.toString(context.getXmlNamespaceAware()));
+        updateDigest(digest, Boolean.toString(context.getXmlValidation()));
+        updateDigest(digest, Boolean.toString(context.getXmlBlockExternal()));
+        updateDigest(digest, defaultWebXml.toXml());
+
+        InputSource contextWebXml = getContextWebXmlSource();
+        if (contextWebXml != null) {
+            try (InputStream is = contextWebXml.getByteStream()) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = is.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+        }
+
+        WebResourceRoot resources = context.getResources();
+        String[] libs = resources.list("/WEB-INF/lib");
+        Arrays.sort(libs);
+        for (String lib : libs) {
+            WebResource jar = resources.getResource("/WEB-INF/lib/" + lib);
+            if (!jar.isFile() || !lib.endsWith(".jar")) {
+                continue;
+            }
+            String key = null;
+            if (jar.getCanonicalPath() != null) {
+                key = SharedJarFiles.getContentKey(new File(jar.getCanonicalPath()));
+            }
+            if (key == null) {
+                key = Long.toString(jar.getContentLength()) + '-' + jar.getLastModified();
+            }
+            updateDigest(digest, jar.getWebappPath());
+            updateDigest(digest, key);
+        }
+
+        updateDigest(digest, resources, "/WEB-INF/classes");
+
+        return HexUtils.toHexString(digest.digest());
+    }
+
+
+    private static void updateDigest(MessageDigest digest, WebResourceRoot resources,
+            String path) {
+        String[] names = resources.list(path);
+        Arrays.sort(names);
+        for (String name : names) {
+            WebResource resource = resources.getResource(path + "/" + name);
+            if (resource.isDirectory()) {
+                updateDigest(digest, resources, resource.getWebappPath());
+            } else {
+                updateDigest(digest, resource.getWebappPath() + '-' +
+                        resource.getContentLength() + '-' + resource.getLastModified());
+            }
+        }
+    }
+
+
+    private static void updateDigest(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        // Separator so adjacent values can't run together
+        digest.update((byte) 0);
     }
 
 
@@ -1656,40 +1967,53 @@ public class ContextConfig implements LifecycleListener {
      */
     protected void processResourceJARs(Set<WebXml> fragments) {
         for (WebXml fragment : fragments) {
-            URL url = fragment.getURL();
-            try {
-                if ("jar".equals(url.getProtocol()) || url.toString().endsWith(".jar")) {
-                    try (Jar jar = JarFactory.newInstance(url)) {
-                        jar.nextEntry();
-                        String entryName = jar.getEntryName();
-                        while (entryName != null) {
-                            if (entryName.startsWith("META-INF/resources/")) {
-                                context.getResources().createWebResourceSet(
-                                        WebResourceRoot.ResourceSetType.RESOURCE_JAR,
-                                        "/", url, "/META-INF/resources");
-                                break;
-                            }
-                            jar.nextEntry();
-                            entryName = jar.getEntryName();
+            processResourceJAR(fragment.getURL());
+        }
+    }
+
+
+    /**
+     * Add the static resources of the JAR or directory at the given URL to
+     * the context, if it contains any.
+     *
+     * @param url The location of the JAR or directory
+     * @return <code>true</code> if static resources were added
+     */
+    private boolean processResourceJAR(URL url) {
+        try {
+            if ("jar".equals(url.getProtocol()) || url.toString().endsWith(".jar")) {
+                try (Jar jar = JarFactory.newInstance(url)) {
+                    jar.nextEntry();
+                    String entryName = jar.getEntryName();
+                    while (entryName != null) {
+                        if (entryName.startsWith("META-INF/resources/")) {
+                            context.getResources().createWebResourceSet(
+                                    WebResourceRoot.ResourceSetType.RESOURCE_JAR,
+                                    "/", url, "/META-INF/resources");
+                            return true;
                         }
-                    }
-                } else if ("file".equals(url.getProtocol())) {
-                    File file = new File(url.toURI());
-                    File resources = new File(file, "META-INF/resources/");
-                    if (resources.isDirectory()) {
-                        context.getResources().createWebResourceSet(
-                                WebResourceRoot.ResourceSetType.RESOURCE_JAR,
-                                "/", resources.getAbsolutePath(), null, "/");
+                        jar.nextEntry();
+                        entryName = jar.getEntryName();
                     }
                 }
-            } catch (IOException ioe) {
-                log.error(sm.getString("contextConfig.resourceJarFail", url,
-                        context.getName()));
-            } catch (URISyntaxException e) {
-                log.error(sm.getString("contextConfig.resourceJarFail", url,
-                        context.getName()));
+            } else if ("file".equals(url.getProtocol())) {
+                File file = new File(url.toURI());
+                File resources = new File(file, "META-INF/resources/");
+                if (resources.isDirectory()) {
+                    context.getResources().createWebResourceSet(
+                            WebResourceRoot.ResourceSetType.RESOURCE_JAR,
+                            "/", resources.getAbsolutePath(), null, "/");
+                    return true;
+                }
             }
+        } catch (IOException ioe) {
+            log.error(sm.getString("contextConfig.resourceJarFail", url,
+                    context.getName()));
+        } catch (URISyntaxException e) {
+            log.error(sm.getString("contextConfig.resourceJarFail", url,
+                    context.getName()));
         }
+        return false;
     }
 
 
@@ -1860,8 +2184,16 @@ public class ContextConfig implements LifecycleListener {
 
         JarScanner jarScanner = context.getJarScanner();
         boolean delegate = false;
+        JarDescriptorCache jarDescriptorCache = null;
         if (context instanceof StandardContext) {
-            delegate = ((StandardContext) context).getDelegate();
+            StandardContext standardContext = (StandardContext) context;
+            delegate = standardContext.getDelegate();
+            String workPath = standardContext.getWorkPath();
+            if (standardContext.getCacheJarDescriptors() && workPath != null) {
+                jarDescriptorCache = JarDescriptorCache.create(
+                        new File(workPath, WEB_FRAGMENT_CACHE_DIR), ".fragment",
+                        context.getXmlValidation(), context.getXmlBlockExternal());
+            }
         }
         boolean parseRequired = true;
         Set<String> absoluteOrder = application.getAbsoluteOrdering();
@@ -1874,18 +2206,35 @@ public class ContextConfig implements LifecycleListener {
 
         FragmentJarScannerCallback callback =
                 new FragmentJarScannerCallback(webXmlParser, delegate, parseRequired);
+        callback.setJarDescriptorCache(jarDescriptorCache);
 
         jarScanner.scan(JarScanType.PLUGGABILITY,
                 context.getServletContext(), callback);
 
         if (!callback.isOk()) {
             ok = false;
+        } else if (jarDescriptorCache != null) {
+            jarDescriptorCache.removeUnused();
         }
         return callback.getFragments();
     }
 
     protected void processAnnotations(Set<WebXml> fragments,
                                       boolean handlesTypesOnly, Map<String, JavaClassCacheEntry> javaClassCache) {
+        if (context instanceof StandardContext) {
+            StandardContext standardContext = (StandardContext) context;
+            boolean parallel = standardContext.getParallelAnnotationScanning();
+            File cacheDir = null;
+            if (standardContext.getCacheAnnotationScanResults()) {
+                cacheDir = getAnnotationScanCacheDir(standardContext);
+            }
+            if (parallel || cacheDir != null) {
+                processAnnotationsScanned(fragments, handlesTypesOnly, javaClassCache,
+                        parallel, cacheDir);
+                return;
+            }
+        }
+
         for (WebXml fragment : fragments) {
             // Only need to scan for @HandlesTypes matches if any of the
             // following are true:
@@ -1908,6 +2257,175 @@ public class ContextConfig implements LifecycleListener {
         }
     }
 
+    /*
+     * Scans the fragments, in parallel and/or using the results cached by a
+     * previous start, and then processes the results in fragment order so the
+     * outcome is the same as that of processing each fragment in turn.
+     */
+    private void processAnnotationsScanned(Set<WebXml> fragments, boolean handlesTypesOnly,
+            Map<String, JavaClassCacheEntry> javaClassCache, boolean parallel, File cacheDir) {
+
+        List<WebXml> scannedFragments = new ArrayList<>(fragments.size());
+        List<AnnotationScanTask> tasks = new ArrayList<>(fragments.size());
+        for (WebXml fragment : fragments) {
+            // See processAnnotations() for when only @HandlesTypes matches
+            // are required
+            boolean htOnly = handlesTypesOnly || !fragment.getWebappJar() ||
+                    fragment.isMetadataComplete();
+            if (fragment.getURL() == null || htOnly && typeInitializerMap.isEmpty()) {
+                // Nothing to find
+                continue;
+            }
+            scannedFragments.add(fragment);
+            tasks.add(new AnnotationScanTask(fragment.getURL(), cacheDir));
+        }
+
+        ForkJoinPool pool = null;
+        List<Future<List<ScannedClass>>> futures = null;
+        if (parallel && tasks.size() > 1) {
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                    new SafeForkJoinWorkerThreadFactory(), null, false);
+            futures = new ArrayList<>(tasks.size());
+            for (AnnotationScanTask task : tasks) {
+                futures.add(pool.submit(task));
+            }
+        }
+
+        try {
+            for (int i = 0; i < scannedFragments.size(); i++) {
+                List<ScannedClass> scannedClasses;
+                if (futures == null) {
+                    scannedClasses = tasks.get(i).call();
+                } else {
+                    try {
+                        scannedClasses = futures.get(i).get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        ok = false;
+                        return;
+                    } catch (ExecutionException e) {
+                        Throwable t = e.getCause();
+                        if (t instanceof RuntimeException) {
+                            throw (RuntimeException) t;
+                        }
+                        if (t instanceof Error) {
+                            throw (Error) t;
+                        }
+                        throw new IllegalStateException(t);
+                    }
+                }
+
+                WebXml fragment = scannedFragments.get(i);
+                boolean htOnly = handlesTypesOnly || !fragment.getWebappJar() ||
+                        fragment.isMetadataComplete();
+                WebXml annotations = new WebXml();
+                // no impact on distributable
+                annotations.setDistributable(true);
+                processScannedClasses(fragment.getURL(), scannedClasses, annotations, htOnly,
+                        javaClassCache);
+                Set<WebXml> set = new HashSet<>();
+                set.add(annotations);
+                // Merge annotations into fragment - fragment takes priority
+                fragment.merge(set);
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+
+        if (cacheDir != null) {
+            removeUnusedAnnotationScanResults(cacheDir, tasks);
+        }
+    }
+
+
+    private void processScannedClasses(URL url, List<ScannedClass> scannedClasses,
+            WebXml fragment, boolean handlesTypesOnly,
+            Map<String, JavaClassCacheEntry> javaClassCache) {
+        Jar jar = null;
+        try {
+            for (ScannedClass scannedClass : scannedClasses) {
+                checkHandlesTypes(scannedClass, javaClassCache);
+
+                if (handlesTypesOnly || !scannedClass.hasWebAnnotation()) {
+                    continue;
+                }
+                JavaClass javaClass = scannedClass.getJavaClass();
+                if (javaClass == null) {
+                    // Read from the cache. Only the classes with annotations
+                    // that need to be processed have to be parsed again.
+                    String entryName = scannedClass.getEntryName();
+                    try {
+                        if (jar == null) {
+                            jar = JarFactory.newInstance(url);
+                        }
+                        try (InputStream is = jar.getInputStream(entryName)) {
+                            if (is == null) {
+                                throw new FileNotFoundException(entryName);
+                            }
+                            javaClass = new ClassParser(is).parse();
+                        }
+                    } catch (IOException e) {
+                        log.error(sm.getString("contextConfig.inputStreamJar", entryName, url), e);
+                        continue;
+                    } catch (ClassFormatException e) {
+                        log.error(sm.getString("contextConfig.inputStreamJar", entryName, url), e);
+                        continue;
+                    }
+                }
+                processClass(fragment, javaClass);
+            }
+        } finally {
+            if (jar != null) {
+                jar.close();
+            }
+        }
+    }
+
+
+    private File getAnnotationScanCacheDir(StandardContext standardContext) {
+        String workPath = standardContext.getWorkPath();
+        if (workPath == null) {
+            return null;
+        }
+        File cacheDir = new File(workPath, ANNOTATION_SCAN_CACHE_DIR);
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            log.warn(sm.getString("contextConfig.annotationScanCacheDirFail",
+                    cacheDir.getAbsolutePath()));
+            return null;
+        }
+        return cacheDir;
+    }
+
+
+    /*
+     * Results for JARs that have been removed or changed since they were
+     * cached would otherwise accumulate.
+     */
+    private void removeUnusedAnnotationScanResults(File cacheDir, List<AnnotationScanTask> tasks) {
+        Set<String> used = new HashSet<>();
+        for (AnnotationScanTask task : tasks) {
+            File cacheFile = task.getCacheFile();
+            if (cacheFile != null) {
+                used.add(cacheFile.getName());
+            }
+        }
+        String[] names = cacheDir.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            if (!used.contains(name)) {
+                File file = new File(cacheDir, name);
+                if (!file.delete() && log.isDebugEnabled()) {
+                    log.debug(sm.getString("contextConfig.annotationScanCacheDeleteFail",
+                            file.getAbsolutePath()));
+                }
+            }
+        }
+    }
+
     protected void processAnnotationsWebResource(WebResource webResource,
                                                  WebXml fragment, boolean handlesTypesOnly,
                                                  Map<String, JavaClassCacheEntry> javaClassCache) {
@@ -2077,18 +2595,31 @@ public class ContextConfig implements LifecycleListener {
             return;
         }
 
-        if ((javaClass.getAccessFlags() &
+        checkHandlesTypes(new ScannedClass(javaClass, null), javaClassCache);
+    }
+
+
+    private void checkHandlesTypes(ScannedClass scannedClass,
+                                   Map<String, JavaClassCacheEntry> javaClassCache) {
+
+        // Skip this if we can
+        if (typeInitializerMap.size() == 0) {
+            return;
+        }
+
+        if ((scannedClass.getAccessFlags() &
                 org.apache.tomcat.util.bcel.Const.ACC_ANNOTATION) != 0) {
             // Skip annotations.
             return;
         }
 
-        String className = javaClass.getClassName();
+        String className = scannedClass.getClassName();
 
         Class<?> clazz = null;
         if (handlesTypesNonAnnotations) {
             // This *might* be match for a HandlesType.
-            populateJavaClassCache(className, javaClass, javaClassCache);
+            populateJavaClassCache(className, scannedClass.getSuperclassName(),
+                    scannedClass.getInterfaceNames(), javaClassCache);
             JavaClassCacheEntry entry = javaClassCache.get(className);
             if (entry.getSciSet() == null) {
                 try {
@@ -2120,15 +2651,14 @@ public class ContextConfig implements LifecycleListener {
         }
 
         if (handlesTypesAnnotations) {
-            AnnotationEntry[] annotationEntries = javaClass.getAnnotationEntries();
-            if (annotationEntries != null) {
+            String[] annotationTypes = scannedClass.getAnnotationTypes();
+            if (annotationTypes.length > 0) {
                 for (Map.Entry<Class<?>, Set<ServletContainerInitializer>> entry :
                         typeInitializerMap.entrySet()) {
                     if (entry.getKey().isAnnotation()) {
                         String entryClassName = entry.getKey().getName();
-                        for (AnnotationEntry annotationEntry : annotationEntries) {
-                            if (entryClassName.equals(
-                                    getClassName(annotationEntry.getAnnotationType()))) {
+                        for (String annotationType : annotationTypes) {
+                            if (entryClassName.equals(getClassName(annotationType))) {
                                 if (clazz == null) {
                                     clazz = Introspection.loadClass(
                                             context, className);
@@ -2175,18 +2705,19 @@ public class ContextConfig implements LifecycleListener {
         return msg.toString();
     }
 
-    private void populateJavaClassCache(String className, JavaClass javaClass,
+    private void populateJavaClassCache(String className, String superclassName,
+                                        String[] interfaceNames,
                                         Map<String, JavaClassCacheEntry> javaClassCache) {
         if (javaClassCache.containsKey(className)) {
             return;
         }
 
         // Add this class to the cache
-        javaClassCache.put(className, new JavaClassCacheEntry(javaClass));
+        javaClassCache.put(className, new JavaClassCacheEntry(superclassName, interfaceNames));
 
-        populateJavaClassCache(javaClass.getSuperclassName(), javaClassCache);
+        populateJavaClassCache(superclassName, javaClassCache);
 
-        for (String interfaceName : javaClass.getInterfaceNames()) {
+        for (String interfaceName : interfaceNames) {
             populateJavaClassCache(interfaceName, javaClassCache);
         }
     }
@@ -2201,7 +2732,8 @@ public class ContextConfig implements LifecycleListener {
                 }
                 ClassParser parser = new ClassParser(is);
                 JavaClass clazz = parser.parse();
-                populateJavaClassCache(clazz.getClassName(), clazz, javaClassCache);
+                populateJavaClassCache(clazz.getClassName(), clazz.getSuperclassName(),
+                        clazz.getInterfaceNames(), javaClassCache);
             } catch (ClassFormatException e) {
                 log.debug(sm.getString("contextConfig.invalidSciHandlesTypes",
                         className), e);
@@ -2611,6 +3143,180 @@ public class ContextConfig implements LifecycleListener {
         }
     }
 
+    /**
+     * Scans a JAR or a directory for the information required to process its
+     * classes for annotations and {@link HandlesTypes} matches. If a cache
+     * directory is configured, the results for a JAR are stored in a file
+     * named after the content of the JAR and are reused while the JAR is
+     * unchanged.
+     */
+    private static class AnnotationScanTask implements Callable<List<ScannedClass>> {
+
+        private final URL url;
+        private final File cacheDir;
+        private volatile File cacheFile = null;
+
+        AnnotationScanTask(URL url, File cacheDir) {
+            this.url = url;
+            this.cacheDir = cacheDir;
+        }
+
+
+        File getCacheFile() {
+            return cacheFile;
+        }
+
+
+        @Override
+        public List<ScannedClass> call() {
+            File cacheFile = null;
+            if (cacheDir != null) {
+                cacheFile = createCacheFile();
+                this.cacheFile = cacheFile;
+            }
+            if (cacheFile != null && cacheFile.isFile()) {
+                try {
+                    List<ScannedClass> result = ScannedClass.read(cacheFile);
+                    if (log.isDebugEnabled()) {
+                        log.debug(sm.getString("contextConfig.annotationScanCacheHit",
+                                cacheFile.getAbsolutePath(), url));
+                    }
+                    return result;
+                } catch (IOException e) {
+                    log.warn(sm.getString("contextConfig.annotationScanCacheReadFail",
+                            cacheFile.getAbsolutePath(), url), e);
+                }
+            }
+
+            List<ScannedClass> result = new ArrayList<>();
+            boolean complete = false;
+            if ("jar".equals(url.getProtocol()) || url.toString().endsWith(".jar")) {
+                complete = scanJar(result);
+            } else if ("file".equals(url.getProtocol())) {
+                try {
+                    complete = scanFile(new File(url.toURI()), result);
+                } catch (URISyntaxException e) {
+                    log.error(sm.getString("contextConfig.fileUrl", url), e);
+                }
+            } else {
+                log.error(sm.getString("contextConfig.unknownUrlProtocol",
+                        url.getProtocol(), url));
+            }
+
+            // Don't cache partial results
+            if (cacheFile != null && complete) {
+                writeCacheFile(cacheFile, result);
+            }
+            return result;
+        }
+
+
+        private File createCacheFile() {
+            if (!"file".equals(url.getProtocol()) || !url.getPath().endsWith(".jar")) {
+                return null;
+            }
+            try {
+                String key = SharedJarFiles.getContentKey(new File(url.toURI()));
+                if (key == null) {
+                    return null;
+                }
+                return new File(cacheDir, key + ".scan");
+            } catch (IOException | URISyntaxException e) {
+                log.warn(sm.getString("contextConfig.annotationScanCacheKeyFail", url), e);
+                return null;
+            }
+        }
+
+
+        private void writeCacheFile(File cacheFile, List<ScannedClass> result) {
+            File tmp = null;
+            try {
+                // A JAR may be present more than once
+                tmp = File.createTempFile(cacheFile.getName(), ".tmp", cacheDir);
+                ScannedClass.write(tmp, result);
+                if (!tmp.renameTo(cacheFile) && !cacheFile.isFile()) {
+                    throw new IOException(tmp.getAbsolutePath());
+                }
+            } catch (IOException e) {
+                log.warn(sm.getString("contextConfig.annotationScanCacheWriteFail",
+                        url, cacheFile.getAbsolutePath()), e);
+            } finally {
+                if (tmp != null && tmp.exists() && !tmp.delete()) {
+                    tmp.deleteOnExit();
+                }
+            }
+        }
+
+
+        private boolean scanJar(List<ScannedClass> result) {
+            boolean complete = true;
+            try (Jar jar = JarFactory.newInstance(url)) {
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString(
+                            "contextConfig.processAnnotationsJar.debug", url));
+                }
+
+                jar.nextEntry();
+                String entryName = jar.getEntryName();
+                while (entryName != null) {
+                    if (entryName.endsWith(".class")) {
+                        try (InputStream is = jar.getEntryInputStream()) {
+                            ClassParser parser = new ClassParser(is);
+                            result.add(new ScannedClass(parser.parse(), entryName));
+                        } catch (IOException e) {
+                            log.error(sm.getString("contextConfig.inputStreamJar",
+                                    entryName, url), e);
+                            complete = false;
+                        } catch (ClassFormatException e) {
+                            log.error(sm.getString("contextConfig.inputStreamJar",
+                                    entryName, url), e);
+                            complete = false;
+                        }
+                    }
+                    jar.nextEntry();
+                    entryName = jar.getEntryName();
+                }
+            } catch (IOException e) {
+                log.error(sm.getString("contextConfig.jarFile", url), e);
+                complete = false;
+            }
+            return complete;
+        }
+
+
+        private boolean scanFile(File file, List<ScannedClass> result) {
+            boolean complete = true;
+            if (file.isDirectory()) {
+                // Returns null if directory is not readable
+                String[] dirs = file.list();
+                if (dirs != null) {
+                    if (log.isDebugEnabled()) {
+                        log.debug(sm.getString(
+                                "contextConfig.processAnnotationsDir.debug", file));
+                    }
+                    for (String dir : dirs) {
+                        complete &= scanFile(new File(file, dir), result);
+                    }
+                }
+            } else if (file.getName().endsWith(".class") && file.canRead()) {
+                try (FileInputStream fis = new FileInputStream(file)) {
+                    ClassParser parser = new ClassParser(fis);
+                    result.add(new ScannedClass(parser.parse(), null));
+                } catch (IOException e) {
+                    log.error(sm.getString("contextConfig.inputStreamFile",
+                            file.getAbsolutePath()), e);
+                    complete = false;
+                } catch (ClassFormatException e) {
+                    log.error(sm.getString("contextConfig.inputStreamFile",
+                            file.getAbsolutePath()), e);
+                    complete = false;
+                }
+            }
+            return complete;
+        }
+    }
+
+
     static class JavaClassCacheEntry {
         public final String superclassName;
 
@@ -2619,8 +3325,12 @@ public class ContextConfig implements LifecycleListener {
         private Set<ServletContainerInitializer> sciSet = null;
 
         public JavaClassCacheEntry(JavaClass javaClass) {
-            superclassName = javaClass.getSuperclassName();
-            interfaceNames = javaClass.getInterfaceNames();
+            this(javaClass.getSuperclassName(), javaClass.getInterfaceNames());
+        }
+
+        public JavaClassCacheEntry(String superclassName, String[] interfaceNames) {
+            this.superclassName = superclassName;
+            this.interfaceNames = interfaceNames;
         }
 
         public String getSuperclassName() {
@@ -1193,4 +1193,12 @@ public class FailedContext extends LifecycleMBeanBase implements Context {
     public boolean getCreateUploadTargets() {
         return false;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void setStartOnDemand(boolean startOnDemand) { /* NO-OP */ }
+
+    @Override
+    public boolean getStartOnDemand() {
+        return false;
+    }
+}
@@ -58,6 +58,7 @@ import org.apache.catalina.Globals;
 import org.apache.catalina.Host;
 import org.apache.catalina.Lifecycle;
 import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleListener;
 import org.apache.catalina.Manager;
 import org.apache.catalina.core.StandardContext;
@@ -136,6 +137,20 @@ public class HostConfig implements LifecycleListener {
     protected boolean unpackWARs = false;
 
 
+    /**
+     * Should deployed web applications be started by the first request mapped
+     * to them rather than when they are deployed?
+     */
+    protected boolean startContextsOnDemand = false;
+
+
+    /**
+     * The time in seconds without any requests after which a web application
+     * started on demand is stopped. Zero or less disables the check.
+     */
+    protected int contextIdleTimeout = -1;
+
+
     /**
      * Map of deployed applications.
      */
@@ -274,6 +289,47 @@ public class HostConfig implements LifecycleListener {
     }
 
 
+    /**
+     * @return <code>true</code> if deployed web applications are started by the
+     * first request mapped to them.
+     */
+    public boolean isStartContextsOnDemand() {
+        return startContextsOnDemand;
+    }
+
+
+    /**
+     * Set whether deployed web applications are started by the first request
+     * mapped to them rather than when they are deployed.
+     *
+     * @param startContextsOnDemand The new start on demand flag
+     */
+    public void setStartContextsOnDemand(boolean startContextsOnDemand) {
+        this.startContextsOnDemand = startContextsOnDemand;
+    }
+
+
+    /**
+     * @return the time in seconds without any requests after which a web
+     * application started on demand is stopped.
+     */
+    public int getContextIdleTimeout() {
+        return contextIdleTimeout;
+    }
+
+
+    /**
+     * Set the time in seconds without any requests after which a web
+     * application started on demand is stopped.
+     *
+     * @param contextIdleTimeout The new idle timeout in seconds. Zero or less
+     *        disables stopping idle web applications
+     */
+    public void setContextIdleTimeout(int contextIdleTimeout) {
+        this.contextIdleTimeout = contextIdleTimeout;
+    }
+
+
     // --------------------------------------------------------- Public Methods
 
 
@@ -293,6 +349,8 @@ public class HostConfig implements LifecycleListener {
                 setDeployXML(((StandardHost) host).isDeployXML());
                 setUnpackWARs(((StandardHost) host).isUnpackWARs());
                 setContextClass(((StandardHost) host).getContextClass());
+                setStartContextsOnDemand(((StandardHost) host).isStartContextsOnDemand());
+                setContextIdleTimeout(((StandardHost) host).getContextIdleTimeout());
             }
         } catch (ClassCastException e) {
             log.error(sm.getString("hostConfig.cce", event.getLifecycle()), e);
@@ -625,6 +683,7 @@ public class HostConfig implements LifecycleListener {
                 }
             }
 
+            setStartOnDemand(context);
             host.addChild(context);
         } catch (Throwable t) {
             ExceptionUtils.handleThrowable(t);
@@ -984,6 +1043,7 @@ public class HostConfig implements LifecycleListener {
             context.setPath(cn.getPath());
             context.setWebappVersion(cn.getVersion());
             context.setDocBase(cn.getBaseName() + ".war");
+            setStartOnDemand(context);
             host.addChild(context);
         } catch (Throwable t) {
             ExceptionUtils.handleThrowable(t);
@@ -1142,6 +1202,7 @@ public class HostConfig implements LifecycleListener {
             context.setPath(cn.getPath());
             context.setWebappVersion(cn.getVersion());
             context.setDocBase(cn.getBaseName());
+            setStartOnDemand(context);
             // 将创建的Context添加到Host节点。
             host.addChild(context);
         } catch (Throwable t) {
@@ -1200,6 +1261,22 @@ public class HostConfig implements LifecycleListener {
     }
 
 
+    /**
+     * Apply the Host's start on demand setting to a Context that is about to
+     * be deployed unless the Context's own configuration, such as its
+     * context.xml file, has already set it.
+     *
+     * @param context web application context
+     */
+    protected void setStartOnDemand(Context context) {
+        if (context instanceof StandardContext &&
+                ((StandardContext) context).isStartOnDemandSet()) {
+            return;
+        }
+        context.setStartOnDemand(startContextsOnDemand);
+    }
+
+
     /**
      * Check if a webapp is already deployed in this host.
      *
@@ -1614,6 +1691,10 @@ public class HostConfig implements LifecycleListener {
      */
     protected void check() {
 
+        if (contextIdleTimeout > 0) {
+            checkIdle();
+        }
+
         if (host.getAutoDeploy()) {
             // Check for resources modification to trigger redeployment
             DeployedApplication[] apps =
@@ -1634,6 +1715,44 @@ public class HostConfig implements LifecycleListener {
     }
 
 
+    /**
+     * Stop web applications started on demand that have not received a request
+     * for at least {@link #contextIdleTimeout} seconds. They remain mapped and
+     * are started again by the next request mapped to them.
+     */
+    protected void checkIdle() {
+        long now = System.currentTimeMillis();
+        for (DeployedApplication app : deployed.values()) {
+            Container container = host.findChild(app.name);
+            if (!(container instanceof StandardContext)) {
+                continue;
+            }
+            StandardContext context = (StandardContext) container;
+            if (!context.getStartOnDemand() || !context.getState().isAvailable()) {
+                // Request counts restart from zero when the context restarts
+                app.requestCount = -1;
+                continue;
+            }
+            int requestCount = context.getRequestCount();
+            if (requestCount != app.requestCount) {
+                app.requestCount = requestCount;
+                app.lastRequestTime = now;
+            } else if (now - app.lastRequestTime >= contextIdleTimeout * 1000L &&
+                    !isServiced(app.name)) {
+                if (log.isInfoEnabled()) {
+                    log.info(sm.getString("hostConfig.stopIdle", app.name,
+                            Integer.valueOf(contextIdleTimeout)));
+                }
+                try {
+                    context.stop();
+                } catch (LifecycleException e) {
+                    log.warn(sm.getString("hostConfig.context.stop", app.name), e);
+                }
+            }
+        }
+    }
+
+
     /**
      * Check status of a specific web application and reload, redeploy or deploy
      * it as necessary. This method is for use with functionality such as
@@ -1824,6 +1943,18 @@ public class HostConfig implements LifecycleListener {
          * run of the auto deployer.
          */
         public boolean loggedDirWarning = false;
+
+        /**
+         * The request count of the application when it was last checked for
+         * being idle or -1 if it has not been checked since it started.
+         */
+        public int requestCount = -1;
+
+        /**
+         * Instant where the request count of the application was last seen to
+         * change.
+         */
+        public long lastRequestTime = 0;
     }
 
     private static class DeployDescriptor implements Runnable {
@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.startup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.tomcat.util.bcel.classfile.AnnotationEntry;
+import org.apache.tomcat.util.bcel.classfile.JavaClass;
+
+/**
+ * The information about a class found while scanning a JAR for annotations
+ * that is required to determine which {@link
+ * javax.servlet.annotation.HandlesTypes} it matches. Classes with
+ * {@link javax.servlet.annotation.WebServlet}, {@link
+ * javax.servlet.annotation.WebFilter} or {@link
+ * javax.servlet.annotation.WebListener} annotations also record the name of
+ * their JAR entry so the full class can be parsed again when the results of a
+ * scan are read from a cache file.
+ */
+final class ScannedClass {
+
+    private static final int CACHE_FILE_VERSION = 1;
+    private static final String[] EMPTY = new String[0];
+
+    private final String className;
+    private final int accessFlags;
+    private final String superclassName;
+    private final String[] interfaceNames;
+    private final String[] annotationTypes;
+    private final String entryName;
+    // Only retained for classes with web annotations. Never written to the
+    // cache file.
+    private final JavaClass javaClass;
+
+
+    ScannedClass(JavaClass javaClass, String entryName) {
+        className = javaClass.getClassName();
+        accessFlags = javaClass.getAccessFlags();
+        superclassName = javaClass.getSuperclassName();
+        interfaceNames = javaClass.getInterfaceNames();
+        AnnotationEntry[] annotationEntries = javaClass.getAnnotationEntries();
+        if (annotationEntries == null || annotationEntries.length == 0) {
+            annotationTypes = EMPTY;
+        } else {
+            annotationTypes = new String[annotationEntries.length];
+            for (int i = 0; i < annotationEntries.length; i++) {
+                annotationTypes[i] = annotationEntries[i].getAnnotationType();
+            }
+        }
+        if (hasWebAnnotation(annotationTypes)) {
+            this.entryName = entryName;
+            this.javaClass = javaClass;
+        } else {
+            this.entryName = null;
+            this.javaClass = null;
+        }
+    }
+
+
+    private ScannedClass(String className, int accessFlags, String superclassName,
+            String[] interfaceNames, String[] annotationTypes, String entryName) {
+        this.className = className;
+        this.accessFlags = accessFlags;
+        this.superclassName = superclassName;
+        this.interfaceNames = interfaceNames;
+        this.annotationTypes = annotationTypes;
+        this.entryName = entryName;
+        this.javaClass = null;
+    }
+
+
+    String getClassName() {
+        return className;
+    }
+
+
+    int getAccessFlags() {
+        return accessFlags;
+    }
+
+
+    String getSuperclassName() {
+        return superclassName;
+    }
+
+
+    String[] getInterfaceNames() {
+        return interfaceNames;
+    }
+
+
+    /**
+     * @return The types of the runtime visible annotations of the class in
+     *         internal form, e.g. <code>Ljavax/servlet/annotation/WebServlet;</code>
+     */
+    String[] getAnnotationTypes() {
+        return annotationTypes;
+    }
+
+
+    boolean hasWebAnnotation() {
+        return hasWebAnnotation(annotationTypes);
+    }
+
+
+    /**
+     * @return The name of the JAR entry of a class with web annotations
+     */
+    String getEntryName() {
+        return entryName;
+    }
+
+
+    /**
+     * @return The parsed class if the class has web annotations and was not
+     *         read from a cache file, otherwise <code>null</code>
+     */
+    JavaClass getJavaClass() {
+        return javaClass;
+    }
+
+
+    static List<ScannedClass> read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != CACHE_FILE_VERSION) {
+                throw new IOException(file.getAbsolutePath());
+            }
+            int count = in.readInt();
+            List<ScannedClass> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String className = in.readUTF();
+                int accessFlags = in.readInt();
+                String superclassName = in.readUTF();
+                String[] interfaceNames = readStrings(in);
+                String[] annotationTypes = readStrings(in);
+                String entryName = in.readBoolean() ? in.readUTF() : null;
+                result.add(new ScannedClass(className, accessFlags, superclassName,
+                        interfaceNames, annotationTypes, entryName));
+            }
+            return result;
+        }
+    }
+
+
+    static void write(File file, List<ScannedClass> scannedClasses) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(CACHE_FILE_VERSION);
+            out.writeInt(scannedClasses.size());
+            for (ScannedClass scannedClass : scannedClasses) {
+                out.writeUTF(scannedClass.className);
+                out.writeInt(scannedClass.accessFlags);
+                out.writeUTF(scannedClass.superclassName);
+                writeStrings(out, scannedClass.interfaceNames);
+                writeStrings(out, scannedClass.annotationTypes);
+                if (scannedClass.entryName == null) {
+                    out.writeBoolean(false);
+                } else {
+                    out.writeBoolean(true);
+                    out.writeUTF(scannedClass.entryName);
+                }
+            }
+        }
+    }
+
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count == 0) {
+            return EMPTY;
+        }
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = in.readUTF();
+        }
+        return result;
+    }
+
+
+    private static void writeStrings(DataOutputStream out, String[] strings)
+            throws IOException {
+        out.writeInt(strings.length);
+        for (String s : strings) {
+            out.writeUTF(s);
+        }
+    }
+
+
+    private static boolean hasWebAnnotation(String[] annotationTypes) {
+        for (String type : annotationTypes) {
+            if ("Ljavax/servlet/annotation/WebServlet;".equals(type) ||
+                    "Ljavax/servlet/annotation/WebFilter;".equals(type) ||
+                    "Ljavax/servlet/annotation/WebListener;".equals(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
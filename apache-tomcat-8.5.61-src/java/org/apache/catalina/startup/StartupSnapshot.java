@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.startup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of configuring a web application that is required to configure
+ * it again without scanning: the effective web.xml after all fragments,
+ * annotations and defaults have been merged, the ordered JARs, the classes
+ * that matched the {@link javax.servlet.annotation.HandlesTypes} of each
+ * {@link javax.servlet.ServletContainerInitializer} and the JARs that provide
+ * static resources. The fingerprint identifies the web application content
+ * the snapshot was created from.
+ */
+final class StartupSnapshot {
+
+    /**
+     * The path of the snapshot within the web application.
+     */
+    static final String PATH = "/WEB-INF/tomcat-startup.snapshot";
+
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final String fingerprint;
+    private final byte[] webXml;
+    private final List<String> orderedLibs;
+    private final Map<String,List<String>> initializers;
+    private final List<String> resourceJars;
+
+
+    StartupSnapshot(String fingerprint, byte[] webXml, List<String> orderedLibs,
+            Map<String,List<String>> initializers, List<String> resourceJars) {
+        this.fingerprint = fingerprint;
+        this.webXml = webXml;
+        this.orderedLibs = orderedLibs;
+        this.initializers = initializers;
+        this.resourceJars = resourceJars;
+    }
+
+
+    String getFingerprint() {
+        return fingerprint;
+    }
+
+
+    /**
+     * @return The effective web.xml encoded with {@link
+     *         org.apache.tomcat.util.descriptor.web.WebXmlCodec}
+     */
+    byte[] getWebXml() {
+        return webXml;
+    }
+
+
+    /**
+     * @return The value for {@link javax.servlet.ServletContext#ORDERED_LIBS}
+     *         which may be <code>null</code>
+     */
+    List<String> getOrderedLibs() {
+        return orderedLibs;
+    }
+
+
+    /**
+     * @return The names of the classes that matched the HandlesTypes of each
+     *         ServletContainerInitializer keyed by the initializer class name
+     *         in the order the initializers were detected
+     */
+    Map<String,List<String>> getInitializers() {
+        return initializers;
+    }
+
+
+    /**
+     * @return The locations of the JARs that provide static resources in the
+     *         order they are to be added. JARs in <code>/WEB-INF/lib</code>
+     *         are recorded by their path within the web application, any
+     *         other JAR by its URL.
+     */
+    List<String> getResourceJars() {
+        return resourceJars;
+    }
+
+
+    static StartupSnapshot read(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+        if (in.readInt() != SNAPSHOT_VERSION) {
+            throw new IOException(PATH);
+        }
+        String fingerprint = in.readUTF();
+        byte[] webXml = new byte[readCount(in)];
+        in.readFully(webXml);
+        List<String> orderedLibs = in.readBoolean() ? readStrings(in) : null;
+        int count = readCount(in);
+        Map<String,List<String>> initializers = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String sciClassName = in.readUTF();
+            initializers.put(sciClassName, readStrings(in));
+        }
+        List<String> resourceJars = readStrings(in);
+        return new StartupSnapshot(fingerprint, webXml, orderedLibs, initializers, resourceJars);
+    }
+
+
+    void write(OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeUTF(fingerprint);
+        out.writeInt(webXml.length);
+        out.write(webXml);
+        if (orderedLibs == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            writeStrings(out, orderedLibs);
+        }
+        out.writeInt(initializers.size());
+        for (Map.Entry<String,List<String>> entry : initializers.entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeStrings(out, entry.getValue());
+        }
+        writeStrings(out, resourceJars);
+        out.flush();
+    }
+
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = readCount(in);
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(in.readUTF());
+        }
+        return result;
+    }
+
+
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException(PATH);
+        }
+        return count;
+    }
+
+
+    private static void writeStrings(DataOutputStream out, List<String> strings)
+            throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.startup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleListener;
+import org.apache.catalina.Server;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Build time tool that configures a web application in the same way as
+ * {@link Tomcat#addWebapp(org.apache.catalina.Host, String, String,
+ * org.apache.catalina.LifecycleListener)} and writes the result to a startup
+ * snapshot. When {@link
+ * org.apache.catalina.core.StandardContext#setUseStartupSnapshot(boolean)} is
+ * enabled, a web application that contains an up to date snapshot is
+ * configured from it without parsing web-fragment.xml files or scanning for
+ * annotations and {@link javax.servlet.annotation.HandlesTypes} matches.
+ * <p>
+ * The configuration of the web application is written to the snapshot
+ * rather than applied so the web application starts without any of its
+ * servlets, filters, listeners or initializers and no application code is
+ * executed. The snapshot has to be generated again whenever the content of
+ * the web application or the configuration of the Context that affects
+ * scanning, such as the JarScanner, changes. A stale snapshot is ignored.
+ * <p>
+ * Usage: <code>java org.apache.catalina.startup.StartupSnapshotGenerator
+ * [-defaultWebXml file] [-output file] docBase</code>
+ */
+public class StartupSnapshotGenerator {
+
+    private static final Log log = LogFactory.getLog(StartupSnapshotGenerator.class);
+    private static final StringManager sm = StringManager.getManager(Constants.Package);
+
+    private String defaultWebXml = null;
+    private File outputFile = null;
+
+
+    /**
+     * Use the given global web.xml rather than the defaults {@link Tomcat}
+     * applies to web applications. The web application must be configured in
+     * the same way when the snapshot is used.
+     *
+     * @param defaultWebXml The path of the global web.xml
+     */
+    public void setDefaultWebXml(String defaultWebXml) {
+        this.defaultWebXml = defaultWebXml;
+    }
+
+
+    /**
+     * Set the file to write the snapshot to. The default is
+     * <code>WEB-INF/tomcat-startup.snapshot</code> in the web application
+     * which requires the web application to be a directory.
+     *
+     * @param outputFile The file to write the snapshot to
+     */
+    public void setOutputFile(File outputFile) {
+        this.outputFile = outputFile;
+    }
+
+
+    /**
+     * Configure the given web application and write its startup snapshot.
+     *
+     * @param docBase The directory or WAR file of the web application
+     *
+     * @throws IOException If the snapshot could not be written
+     * @throws LifecycleException If the embedded server fails
+     */
+    public void generate(File docBase) throws IOException, LifecycleException {
+        File output = outputFile;
+        if (output == null) {
+            if (!docBase.isDirectory()) {
+                throw new IOException(sm.getString(
+                        "startupSnapshotGenerator.noOutput", docBase.getAbsolutePath()));
+            }
+            output = new File(docBase, StartupSnapshot.PATH.substring(1));
+        }
+        // A snapshot left from a previous run is not part of the configuration
+        if (output.exists() && !output.delete()) {
+            throw new IOException(sm.getString(
+                    "startupSnapshotGenerator.deleteFail", output.getAbsolutePath()));
+        }
+
+        File baseDir = Files.createTempDirectory("tomcat-snapshot").toFile();
+        try {
+            Tomcat tomcat = new Tomcat();
+            tomcat.setBaseDir(baseDir.getAbsolutePath());
+
+            ContextConfig config = new ContextConfig();
+            config.setStartupSnapshotFile(output);
+            if (defaultWebXml != null) {
+                tomcat.setAddDefaultWebXmlToWebapp(false);
+                config.setDefaultWebXml(new File(defaultWebXml).getAbsolutePath());
+            }
+            tomcat.addWebapp(tomcat.getHost(), "", docBase.getAbsolutePath(),
+                    (LifecycleListener) config);
+
+            // Start the Server rather than Tomcat so no Connector is created
+            Server server = tomcat.getServer();
+            try {
+                server.start();
+            } finally {
+                server.stop();
+                server.destroy();
+            }
+        } finally {
+            ExpandWar.delete(baseDir);
+        }
+
+        if (!output.isFile()) {
+            throw new IOException(sm.getString(
+                    "startupSnapshotGenerator.fail", docBase.getAbsolutePath()));
+        }
+        log.info(sm.getString("startupSnapshotGenerator.written",
+                output.getAbsolutePath(), docBase.getAbsolutePath()));
+    }
+
+
+    public static void main(String[] args) {
+        StartupSnapshotGenerator generator = new StartupSnapshotGenerator();
+        String docBase = null;
+        boolean usage = false;
+        for (int i = 0; i < args.length && !usage; i++) {
+            if ("-defaultWebXml".equals(args[i]) && i + 1 < args.length) {
+                generator.setDefaultWebXml(args[++i]);
+            } else if ("-output".equals(args[i]) && i + 1 < args.length) {
+                generator.setOutputFile(new File(args[++i]));
+            } else if (docBase == null && !args[i].startsWith("-")) {
+                docBase = args[i];
+            } else {
+                usage = true;
+            }
+        }
+        if (usage || docBase == null) {
+            System.err.println(sm.getString("startupSnapshotGenerator.usage"));
+            System.exit(1);
+        }
+
+        try {
+            generator.generate(new File(docBase));
+        } catch (Exception e) {
+            log.error(sm.getString("startupSnapshotGenerator.fail", docBase), e);
+            System.exit(1);
+        }
+    }
+}
@@ -42,6 +42,7 @@ import org.apache.catalina.Globals;
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleState;
 import org.apache.catalina.Session;
+import org.apache.catalina.SkippableValve;
 import org.apache.catalina.connector.ClientAbortException;
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
@@ -144,7 +145,8 @@ import org.apache.tomcat.util.net.IPv6Utils;
  * @author Takayuki Kaneko
  * @author Peter Rossbach
  */
-public abstract class AbstractAccessLogValve extends ValveBase implements AccessLog {
+public abstract class AbstractAccessLogValve extends ValveBase
+        implements AccessLog, SkippableValve {
 
     private static final Log log = LogFactory.getLog(AbstractAccessLogValve.class);
 
@@ -490,6 +492,13 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
      */
     private boolean tlsAttributeRequired = false;
 
+    /**
+     * Does the class of this Valve override
+     * {@link #invoke(Request, Response)}? If so, invoking it may do more than
+     * cache request data so it is never skipped.
+     */
+    private final boolean invokeOverridden = isInvokeOverridden();
+
 
     // ------------------------------------------------------------- Properties
 
@@ -694,6 +703,35 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
     }
 
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Logging takes place via {@link #log(Request, Response, long)} so this
+     * Valve only needs to be invoked when something has to be captured from
+     * the request before it is processed. Subclasses that override
+     * {@link #invoke(Request, Response)} are always invoked.
+     */
+    @Override
+    public boolean isSkippable(Request request) {
+        if (invokeOverridden || tlsAttributeRequired) {
+            return false;
+        }
+        CachedElement[] cachedElements = this.cachedElements;
+        return cachedElements == null || cachedElements.length == 0;
+    }
+
+
+    private boolean isInvokeOverridden() {
+        try {
+            return getClass().getMethod("invoke", Request.class, Response.class)
+                    .getDeclaringClass() != AbstractAccessLogValve.class;
+        } catch (NoSuchMethodException e) {
+            // Can't happen since invoke() is public
+            return true;
+        }
+    }
+
+
     @Override
     public void log(Request request, Response response, long time) {
         if (!getState().isAvailable() || !getEnabled() || logElements == null
@@ -30,6 +30,7 @@ import javax.servlet.ServletException;
 import org.apache.catalina.AccessLog;
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleState;
+import org.apache.catalina.SkippableValve;
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
 import org.apache.tomcat.util.ExceptionUtils;
@@ -110,7 +111,7 @@ import org.apache.tomcat.util.ExceptionUtils;
  * @author Peter Rossbach
  */
 
-public final class JDBCAccessLogValve extends ValveBase implements AccessLog {
+public final class JDBCAccessLogValve extends ValveBase implements AccessLog, SkippableValve {
 
     // ----------------------------------------------------------- Constructors
 
@@ -457,6 +458,20 @@ public final class JDBCAccessLogValve extends ValveBase implements AccessLog {
     }
 
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Logging takes place via {@link #log(Request, Response, long)} and
+     * {@link #invoke(Request, Response)} only passes the request to the next
+     * Valve. This class is final so that can not change and this Valve never
+     * needs to be invoked.
+     */
+    @Override
+    public boolean isSkippable(Request request) {
+        return true;
+    }
+
+
     @Override
     public void log(Request request, Response response, long time) {
         if (!getState().isAvailable()) {
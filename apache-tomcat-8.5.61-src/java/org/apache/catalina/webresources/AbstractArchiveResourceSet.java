@@ -22,6 +22,7 @@ import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.jar.JarEntry;
@@ -31,7 +32,7 @@ import java.util.jar.Manifest;
 import org.apache.catalina.WebResource;
 import org.apache.catalina.WebResourceRoot;
 import org.apache.catalina.util.ResourceSet;
-import org.apache.tomcat.util.compat.JreCompat;
+import org.apache.tomcat.util.scan.SharedJarFiles;
 
 public abstract class AbstractArchiveResourceSet extends AbstractResourceSet {
 
@@ -300,10 +301,39 @@ public abstract class AbstractArchiveResourceSet extends AbstractResourceSet {
                 sm.getString("abstractArchiveResourceSet.setReadOnlyFalse"));
     }
 
+    /*
+     * Returns the directories, relative to the mount point of this resource
+     * set and without leading or trailing '/', that contain at least one entry
+     * or null if the entries cannot be listed in advance. The empty string
+     * represents the mount point.
+     */
+    Set<String> getDirectories() {
+        if (isMultiRelease()) {
+            // Versioned entries are only resolved when they are looked up
+            return null;
+        }
+        String prefix = getInternalPath();
+        if (prefix.length() > 0) {
+            prefix = prefix.substring(1) + '/';
+        }
+        Set<String> result = new HashSet<>();
+        for (String name : getArchiveEntries(false).keySet()) {
+            if (name.startsWith(prefix)) {
+                int slash = name.lastIndexOf('/', name.length() - 2);
+                if (slash < prefix.length()) {
+                    result.add("");
+                } else {
+                    result.add(name.substring(prefix.length(), slash));
+                }
+            }
+        }
+        return result;
+    }
+
     protected JarFile openJarFile() throws IOException {
         synchronized (archiveLock) {
             if (archive == null) {
-                archive = JreCompat.getInstance().jarFileNewInstance(getBase());
+                archive = SharedJarFiles.acquire(new File(getBase()));
             }
             archiveUseCount++;
             return archive;
@@ -320,11 +350,7 @@ public abstract class AbstractArchiveResourceSet extends AbstractResourceSet {
     public void gc() {
         synchronized (archiveLock) {
             if (archive != null && archiveUseCount == 0) {
-                try {
-                    archive.close();
-                } catch (IOException e) {
-                    // Log at least WARN
-                }
+                SharedJarFiles.release(archive);
                 archive = null;
                 archiveEntries = null;
             }
@@ -241,4 +241,18 @@ public abstract class AbstractFileResourceSet extends AbstractResourceSet {
 
 
     protected abstract void checkType(File file);
+
+
+    /**
+     * Register the files provided by this resource set with the given watcher
+     * so that cache entries for them are removed when they change.
+     *
+     * @param watcher The watcher to register with
+     *
+     * @return <code>true</code> if changes to all the resources provided by
+     *         this resource set will be seen by the watcher
+     */
+    boolean watch(ResourceWatcher watcher) {
+        return false;
+    }
 }
@@ -19,7 +19,6 @@ package org.apache.catalina.webresources;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -28,6 +27,7 @@ import org.apache.catalina.LifecycleException;
 import org.apache.catalina.WebResourceRoot;
 import org.apache.tomcat.util.buf.UriUtil;
 import org.apache.tomcat.util.compat.JreCompat;
+import org.apache.tomcat.util.scan.SharedJarFiles;
 
 /**
  * Base class for a {@link org.apache.catalina.WebResourceSet} based on a
@@ -66,14 +66,11 @@ public abstract class AbstractSingleArchiveResourceSet extends AbstractArchiveRe
         synchronized (archiveLock) {
             if (archiveEntries == null && !single) {
                 JarFile jarFile = null;
-                archiveEntries = new HashMap<>();
                 try {
                     jarFile = openJarFile();
-                    Enumeration<JarEntry> entries = jarFile.entries();
-                    while (entries.hasMoreElements()) {
-                        JarEntry entry = entries.nextElement();
-                        archiveEntries.put(entry.getName(), entry);
-                    }
+                    // Shared with other resource sets for the same content so
+                    // must not be modified
+                    archiveEntries = SharedJarFiles.getEntries(new File(getBase()), jarFile);
                 } catch (IOException ioe) {
                     // Should never happen
                     archiveEntries = null;
@@ -16,42 +16,93 @@
  */
 package org.apache.catalina.webresources;
 
-import java.util.Comparator;
-import java.util.Iterator;
-import java.util.TreeSet;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.catalina.WebResource;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.res.StringManager;
 
+/**
+ * Caches resource metadata and content for a {@link StandardRoot}.
+ * <p>
+ * Entries are kept in three access ordered queues. New entries enter a small
+ * window. When the window is full, its least recently used entry becomes a
+ * candidate for the main space, which is split into a probation segment and a
+ * protected segment. An entry that is used while on probation moves to the
+ * protected segment. When the main space is full, the candidate is only
+ * admitted if it has been used more often recently than the least recently
+ * used entry on probation, which is evicted to make room. Otherwise the
+ * candidate is evicted. Recent use is estimated with a
+ * {@link FrequencySketch}, so a burst of requests for resources that are each
+ * only requested once, such as from a crawler, cannot flush frequently used
+ * resources from the cache.
+ * <p>
+ * Each eviction removes the head of a queue so adding an entry never requires
+ * the cache to be sorted. Cache hits are recorded in a buffer and applied to
+ * the queues in batches by whichever thread obtains the eviction lock.
+ * <p>
+ * Content larger than objectMaxSize is not held on the heap. If an off-heap
+ * limit is configured, such content may instead be held in direct buffers up
+ * to that limit. Off-heap content is not included in the size of the cache.
+ * Space for it is reserved when the content is first read and returned when
+ * the entry is removed.
+ */
 public class Cache {
 
     private static final Log log = LogFactory.getLog(Cache.class);
     protected static final StringManager sm = StringManager.getManager(Cache.class);
 
-    private static final long TARGET_FREE_PERCENT_GET = 5;
-    private static final long TARGET_FREE_PERCENT_BACKGROUND = 10;
-
     // objectMaxSize must be < maxSize/20
     private static final int OBJECT_MAX_SIZE_FACTOR = 20;
 
+    // Share of maxSize used by the window, and share of the remaining main
+    // space used by the protected segment
+    private static final long WINDOW_PERCENT = 1;
+    private static final long PROTECTED_PERCENT = 80;
+
+    // Hits beyond this many waiting to be applied are dropped rather than
+    // making the request thread wait for the eviction lock
+    private static final int HIT_BUFFER_SIZE = 128;
+
     private final StandardRoot root;
     private final AtomicLong size = new AtomicLong(0);
+    private final AtomicLong offHeapSize = new AtomicLong(0);
 
     private long ttl = 5000;
     private long maxSize = 10 * 1024 * 1024;
     private int objectMaxSize = (int) maxSize / OBJECT_MAX_SIZE_FACTOR;
+    private long offHeapMaxSize = 0;
+    private int offHeapObjectMaxSize = 16 * 1024 * 1024;
+
+    // Set while a ResourceWatcher removes entries as the resources change
+    private volatile boolean watched = false;
 
     private AtomicLong lookupCount = new AtomicLong(0);
     private AtomicLong hitCount = new AtomicLong(0);
+    private final AtomicLong admissionCount = new AtomicLong(0);
+    private final AtomicLong rejectionCount = new AtomicLong(0);
+    private final AtomicLong admittedHitCount = new AtomicLong(0);
 
     private final ConcurrentMap<String, CachedResource> resourceCache =
             new ConcurrentHashMap<>();
 
+    // The sketch and the queues are guarded by the eviction lock
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final FrequencySketch sketch = new FrequencySketch();
+    private final AccessQueue window = new AccessQueue();
+    private final AccessQueue probation = new AccessQueue();
+    private final AccessQueue protectedSegment = new AccessQueue();
+
+    private final Queue<CachedResource> hitBuffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger hitBufferSize = new AtomicInteger(0);
+
     public Cache(StandardRoot root) {
         this.root = root;
     }
@@ -75,7 +126,7 @@ public class Cache {
             // Local copy to ensure consistency
             int objectMaxSizeBytes = getObjectMaxSizeBytes();
             CachedResource newCacheEntry = new CachedResource(this, root, path, getTtl(),
-                    objectMaxSizeBytes, useClassLoaderResources);
+                    objectMaxSizeBytes, getOffHeapObjectMaxSizeBytes(), useClassLoaderResources);
 
             // Concurrent callers will end up with the same CachedResource
             // instance
@@ -92,20 +143,7 @@ public class Cache {
                 long delta = cacheEntry.getSize();
                 size.addAndGet(delta);
 
-                if (size.get() > maxSize) {
-                    // Process resources unordered for speed. Trades cache
-                    // efficiency (younger entries may be evicted before older
-                    // ones) for speed since this is on the critical path for
-                    // request processing
-                    long targetSize = maxSize * (100 - TARGET_FREE_PERCENT_GET) / 100;
-                    long newSize = evict(targetSize, resourceCache.values().iterator());
-                    if (newSize > maxSize) {
-                        // Unable to create sufficient space for this resource
-                        // Remove it from the cache
-                        removeCacheEntry(path);
-                        log.warn(sm.getString("cache.addFail", path, root.getContext().getName()));
-                    }
-                }
+                addToEvictionOrder(cacheEntry);
             } else {
                 // Another thread added the entry to the cache
                 if (cacheEntry.usesClassLoaderResources() != useClassLoaderResources) {
@@ -125,12 +163,16 @@ public class Cache {
                     // - it would be rare for an application to need to cache a
                     //   resource for both values of useClassLoaderResources
                     cacheEntry = newCacheEntry;
+                    // The entry will never be removed from the cache so it
+                    // must not use any off-heap space
+                    cacheEntry.releaseContentBuffer();
                 }
                 // Make sure it is validated
                 cacheEntry.validateResource(useClassLoaderResources);
             }
         } else {
             hitCount.incrementAndGet();
+            recordHit(cacheEntry);
         }
 
         return cacheEntry;
@@ -153,7 +195,7 @@ public class Cache {
             // Local copy to ensure consistency
             int objectMaxSizeBytes = getObjectMaxSizeBytes();
             CachedResource newCacheEntry = new CachedResource(this, root, path, getTtl(),
-                    objectMaxSizeBytes, useClassLoaderResources);
+                    objectMaxSizeBytes, getOffHeapObjectMaxSizeBytes(), useClassLoaderResources);
 
             // Concurrent callers will end up with the same CachedResource
             // instance
@@ -168,20 +210,7 @@ public class Cache {
                 long delta = cacheEntry.getSize();
                 size.addAndGet(delta);
 
-                if (size.get() > maxSize) {
-                    // Process resources unordered for speed. Trades cache
-                    // efficiency (younger entries may be evicted before older
-                    // ones) for speed since this is on the critical path for
-                    // request processing
-                    long targetSize = maxSize * (100 - TARGET_FREE_PERCENT_GET) / 100;
-                    long newSize = evict(targetSize, resourceCache.values().iterator());
-                    if (newSize > maxSize) {
-                        // Unable to create sufficient space for this resource
-                        // Remove it from the cache
-                        removeCacheEntry(path);
-                        log.warn(sm.getString("cache.addFail", path));
-                    }
-                }
+                addToEvictionOrder(cacheEntry);
             } else {
                 // Another thread added the entry to the cache
                 // Make sure it is validated
@@ -189,30 +218,28 @@ public class Cache {
             }
         } else {
             hitCount.incrementAndGet();
+            recordHit(cacheEntry);
         }
 
         return cacheEntry.getWebResources();
     }
 
     protected void backgroundProcess() {
-        // Create an ordered set of all cached resources with the least recently
-        // used first. This is a background process so we can afford to take the
-        // time to order the elements first
-        TreeSet<CachedResource> orderedResources =
-                new TreeSet<>(new EvictionOrder());
-        orderedResources.addAll(resourceCache.values());
-
-        Iterator<CachedResource> iter = orderedResources.iterator();
-
-        long targetSize =
-                maxSize * (100 - TARGET_FREE_PERCENT_BACKGROUND) / 100;
-        long newSize = evict(targetSize, iter);
-
-        if (newSize > targetSize) {
-            log.info(sm.getString("cache.backgroundEvictFail",
-                    Long.valueOf(TARGET_FREE_PERCENT_BACKGROUND),
-                    root.getContext().getName(),
-                    Long.valueOf(newSize / 1024)));
+        // Apply any outstanding hits and enforce the size limit in case it
+        // has been reduced. Otherwise, the cache is kept within its size limit
+        // as entries are added.
+        evictionLock.lock();
+        try {
+            drainHits();
+            while (size.get() > maxSize) {
+                CachedResource victim = nextVictim();
+                if (victim == null) {
+                    break;
+                }
+                evict(victim);
+            }
+        } finally {
+            evictionLock.unlock();
         }
     }
 
@@ -228,39 +255,213 @@ public class Cache {
         return false;
     }
 
-    private long evict(long targetSize, Iterator<CachedResource> iter) {
+    void removeCacheEntry(String path) {
+        // With concurrent calls for the same path, the entry is only removed
+        // once and the cache size is only updated (if required) once.
+        CachedResource cachedResource = resourceCache.remove(path);
+        if (cachedResource != null) {
+            long delta = cachedResource.getSize();
+            size.addAndGet(-delta);
+            releaseOffHeapSize(cachedResource.releaseContentBuffer());
+            evictionLock.lock();
+            try {
+                unlink(cachedResource);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /*
+     * Removes the entries for all the paths that start with the given prefix.
+     */
+    void removeCacheEntries(String prefix) {
+        for (String path : resourceCache.keySet()) {
+            if (path.startsWith(prefix)) {
+                removeCacheEntry(path);
+            }
+        }
+    }
+
+    private void addToEvictionOrder(CachedResource entry) {
+        evictionLock.lock();
+        try {
+            drainHits();
+
+            // Another thread may have removed the entry since it was added
+            if (entry.accessQueue != null || resourceCache.get(entry.getWebappPath()) != entry) {
+                return;
+            }
+
+            // Sized for an average entry of 1kB. Growing the sketch loses the
+            // counts so it is only done when the maximum size increases.
+            sketch.ensureCapacity((int) Math.min(maxSize / 1024, Integer.MAX_VALUE));
+            sketch.increment(entry.getWebappPath());
+            entry.accessWeight = entry.getSize();
+            window.addLast(entry);
+
+            long windowMaxSize = maxSize * WINDOW_PERCENT / 100;
+            while (window.weight > windowMaxSize) {
+                CachedResource candidate = window.first;
+                window.remove(candidate);
+                admit(candidate, maxSize - windowMaxSize);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
 
-        long now = System.currentTimeMillis();
+    /*
+     * Moves an entry from the window to probation if it is used more often
+     * than the entries it would displace. Otherwise, evicts it.
+     */
+    private void admit(CachedResource candidate, long mainMaxSize) {
+        if (candidate.accessWeight > mainMaxSize) {
+            evict(candidate);
+            log.warn(sm.getString("cache.addFail", candidate.getWebappPath(),
+                    root.getContext().getName()));
+            return;
+        }
 
-        long newSize = size.get();
+        int candidateFrequency = -1;
+        while (probation.weight + protectedSegment.weight + candidate.accessWeight > mainMaxSize) {
+            CachedResource victim = probation.first;
+            if (victim == null) {
+                victim = protectedSegment.first;
+            }
+            if (candidateFrequency < 0) {
+                candidateFrequency = sketch.frequency(candidate.getWebappPath());
+            }
+            if (candidateFrequency > sketch.frequency(victim.getWebappPath())) {
+                evict(victim);
+            } else {
+                rejectionCount.incrementAndGet();
+                evict(candidate);
+                return;
+            }
+        }
+        if (candidateFrequency >= 0) {
+            admissionCount.incrementAndGet();
+            candidate.admitted = true;
+        }
+        probation.addLast(candidate);
+    }
 
-        while (newSize > targetSize && iter.hasNext()) {
-            CachedResource resource = iter.next();
+    private void recordHit(CachedResource entry) {
+        if (entry.admitted) {
+            admittedHitCount.incrementAndGet();
+        }
+        if (hitBufferSize.incrementAndGet() > HIT_BUFFER_SIZE) {
+            hitBufferSize.decrementAndGet();
+        } else {
+            hitBuffer.offer(entry);
+        }
+        if (hitBufferSize.get() >= HIT_BUFFER_SIZE / 2 && evictionLock.tryLock()) {
+            try {
+                drainHits();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
 
-            // Don't expire anything that has been checked within the TTL
-            if (resource.getNextCheck() > now) {
+    /*
+     * Must be called while holding the eviction lock.
+     */
+    private void drainHits() {
+        CachedResource entry;
+        while ((entry = hitBuffer.poll()) != null) {
+            hitBufferSize.decrementAndGet();
+            AccessQueue queue = entry.accessQueue;
+            if (queue == null) {
+                // Removed since the hit
                 continue;
             }
+            sketch.increment(entry.getWebappPath());
+            queue.remove(entry);
+            if (queue == probation) {
+                protectedSegment.addLast(entry);
+            } else {
+                queue.addLast(entry);
+            }
+        }
 
-            // Remove the entry from the cache
-            removeCacheEntry(resource.getWebappPath());
+        long protectedMaxSize =
+                (maxSize - maxSize * WINDOW_PERCENT / 100) * PROTECTED_PERCENT / 100;
+        while (protectedSegment.weight > protectedMaxSize) {
+            CachedResource demoted = protectedSegment.first;
+            protectedSegment.remove(demoted);
+            probation.addLast(demoted);
+        }
+    }
 
-            newSize = size.get();
+    /*
+     * Must be called while holding the eviction lock.
+     */
+    private CachedResource nextVictim() {
+        if (probation.first != null) {
+            return probation.first;
+        }
+        if (window.first != null) {
+            return window.first;
         }
+        return protectedSegment.first;
+    }
 
-        return newSize;
+    /*
+     * Must be called while holding the eviction lock.
+     */
+    private void evict(CachedResource entry) {
+        unlink(entry);
+        if (resourceCache.remove(entry.getWebappPath(), entry)) {
+            size.addAndGet(-entry.getSize());
+            releaseOffHeapSize(entry.releaseContentBuffer());
+        }
     }
 
-    void removeCacheEntry(String path) {
-        // With concurrent calls for the same path, the entry is only removed
-        // once and the cache size is only updated (if required) once.
-        CachedResource cachedResource = resourceCache.remove(path);
-        if (cachedResource != null) {
-            long delta = cachedResource.getSize();
-            size.addAndGet(-delta);
+    /*
+     * Must be called while holding the eviction lock.
+     */
+    private void unlink(CachedResource entry) {
+        AccessQueue queue = entry.accessQueue;
+        if (queue != null) {
+            queue.remove(entry);
+        }
+    }
+
+    /*
+     * Called by an entry before it loads content into an off-heap buffer.
+     */
+    boolean reserveOffHeapSize(long bytes) {
+        long current;
+        do {
+            current = offHeapSize.get();
+            if (current + bytes > offHeapMaxSize) {
+                return false;
+            }
+        } while (!offHeapSize.compareAndSet(current, current + bytes));
+        return true;
+    }
+
+    void releaseOffHeapSize(long bytes) {
+        if (bytes > 0) {
+            offHeapSize.addAndGet(-bytes);
         }
     }
 
+    /**
+     * @return <code>true</code> if entries are removed as the resources they
+     *         represent change, so they do not need to be checked once their
+     *         TTL has expired
+     */
+    public boolean isWatched() {
+        return watched;
+    }
+
+    void setWatched(boolean watched) {
+        this.watched = watched;
+    }
+
     public long getTtl() {
         return ttl;
     }
@@ -287,6 +488,43 @@ public class Cache {
         return hitCount.get();
     }
 
+    /**
+     * @return the number of times a new entry was kept in place of an
+     *         existing one because it had been used more often recently
+     */
+    public long getAdmissionCount() {
+        return admissionCount.get();
+    }
+
+    /**
+     * @return the number of times a new entry was evicted because it had been
+     *         used less often recently than the entry it would have replaced
+     */
+    public long getRejectionCount() {
+        return rejectionCount.get();
+    }
+
+    /**
+     * @return the number of requests served from entries that were kept in
+     *         place of an existing entry
+     */
+    public long getAdmittedHitCount() {
+        return admittedHitCount.get();
+    }
+
+    /**
+     * @return the number of requests served from entries kept in place of an
+     *         existing entry, per decision made on whether to keep a new
+     *         entry or the entry it would replace
+     */
+    public double getAdmissionHitRate() {
+        long decisions = admissionCount.get() + rejectionCount.get();
+        if (decisions == 0) {
+            return 0;
+        }
+        return (double) admittedHitCount.get() / decisions;
+    }
+
     public void setObjectMaxSize(int objectMaxSize) {
         if (objectMaxSize * 1024L > Integer.MAX_VALUE) {
             log.warn(sm.getString("cache.objectMaxSizeTooBigBytes", Integer.valueOf(objectMaxSize)));
@@ -305,6 +543,51 @@ public class Cache {
         return objectMaxSize;
     }
 
+    public long getOffHeapMaxSize() {
+        // Internally bytes, externally kilobytes
+        return offHeapMaxSize / 1024;
+    }
+
+    /**
+     * Set the maximum total size of resource content that may be cached
+     * outside of the heap. Resources larger than objectMaxSize are only cached
+     * off-heap if this is greater than zero. The default is zero.
+     *
+     * @param offHeapMaxSize The maximum size in kB
+     */
+    public void setOffHeapMaxSize(long offHeapMaxSize) {
+        // Internally bytes, externally kilobytes
+        this.offHeapMaxSize = offHeapMaxSize * 1024;
+    }
+
+    public int getOffHeapObjectMaxSize() {
+        // Internally bytes, externally kilobytes
+        return offHeapObjectMaxSize / 1024;
+    }
+
+    /**
+     * Set the maximum size of the content of a single resource that may be
+     * cached outside of the heap. The default is 16384kB.
+     *
+     * @param offHeapObjectMaxSize The maximum size in kB
+     */
+    public void setOffHeapObjectMaxSize(int offHeapObjectMaxSize) {
+        if (offHeapObjectMaxSize * 1024L > Integer.MAX_VALUE) {
+            log.warn(sm.getString("cache.objectMaxSizeTooBigBytes", Integer.valueOf(offHeapObjectMaxSize)));
+            this.offHeapObjectMaxSize = Integer.MAX_VALUE;
+        } else {
+            // Internally bytes, externally kilobytes
+            this.offHeapObjectMaxSize = offHeapObjectMaxSize * 1024;
+        }
+    }
+
+    public int getOffHeapObjectMaxSizeBytes() {
+        if (offHeapMaxSize <= 0) {
+            return 0;
+        }
+        return (int) Math.min(offHeapObjectMaxSize, offHeapMaxSize);
+    }
+
     void enforceObjectMaxSizeLimit() {
         long limit = maxSize / OBJECT_MAX_SIZE_FACTOR;
         if (limit > Integer.MAX_VALUE) {
@@ -318,30 +601,88 @@ public class Cache {
     }
 
     public void clear() {
-        resourceCache.clear();
-        size.set(0);
+        evictionLock.lock();
+        try {
+            for (CachedResource entry : resourceCache.values()) {
+                releaseOffHeapSize(entry.releaseContentBuffer());
+            }
+            resourceCache.clear();
+            size.set(0);
+            window.clear();
+            probation.clear();
+            protectedSegment.clear();
+            hitBuffer.clear();
+            hitBufferSize.set(0);
+        } finally {
+            evictionLock.unlock();
+        }
     }
 
     public long getSize() {
         return size.get() / 1024;
     }
 
-    private static class EvictionOrder implements Comparator<CachedResource> {
+    /**
+     * @return the size in kB of the resource content currently cached outside
+     *         of the heap
+     */
+    public long getOffHeapSize() {
+        return offHeapSize.get() / 1024;
+    }
 
-        @Override
-        public int compare(CachedResource cr1, CachedResource cr2) {
-            long nc1 = cr1.getNextCheck();
-            long nc2 = cr2.getNextCheck();
+    /**
+     * A doubly linked list of cache entries, least recently used first, that
+     * tracks the total size of the entries. Only accessed while holding the
+     * eviction lock.
+     */
+    static final class AccessQueue {
+
+        private CachedResource first;
+        private CachedResource last;
+        private long weight;
+
+        void addLast(CachedResource entry) {
+            entry.accessQueue = this;
+            entry.accessPrevious = last;
+            entry.accessNext = null;
+            if (last == null) {
+                first = entry;
+            } else {
+                last.accessNext = entry;
+            }
+            last = entry;
+            weight += entry.accessWeight;
+        }
 
-            // Oldest resource should be first (so iterator goes from oldest to
-            // youngest.
-            if (nc1 == nc2) {
-                return 0;
-            } else if (nc1 > nc2) {
-                return -1;
+        void remove(CachedResource entry) {
+            if (entry.accessPrevious == null) {
+                first = entry.accessNext;
+            } else {
+                entry.accessPrevious.accessNext = entry.accessNext;
+            }
+            if (entry.accessNext == null) {
+                last = entry.accessPrevious;
             } else {
-                return 1;
+                entry.accessNext.accessPrevious = entry.accessPrevious;
+            }
+            entry.accessQueue = null;
+            entry.accessPrevious = null;
+            entry.accessNext = null;
+            weight -= entry.accessWeight;
+        }
+
+        void clear() {
+            CachedResource entry = first;
+            while (entry != null) {
+                CachedResource next = entry.accessNext;
+                entry.accessQueue = null;
+                entry.accessPrevious = null;
+                entry.accessNext = null;
+                entry = next;
             }
+            first = null;
+            last = null;
+            weight = 0;
         }
     }
 }
@@ -24,12 +24,17 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
 import java.security.Permission;
 import java.security.cert.Certificate;
 import java.text.Collator;
 import java.util.Arrays;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
@@ -59,6 +64,7 @@ public class CachedResource implements WebResource {
     private final String webAppPath;
     private final long ttl;
     private final int objectMaxSizeBytes;
+    private final int offHeapObjectMaxSizeBytes;
     private final boolean usesClassLoaderResources;
 
     private volatile WebResource webResource;
@@ -74,14 +80,38 @@ public class CachedResource implements WebResource {
     private volatile Boolean cachedIsVirtual = null;
     private volatile Long cachedContentLength = null;
 
+    // Content too large to be held on the heap. Space for it is reserved from
+    // the off-heap limit of the cache and returned when the entry is removed.
+    private final AtomicReference<ByteBuffer> cachedContentBuffer = new AtomicReference<>();
+    private final AtomicBoolean contentBufferLoading = new AtomicBoolean(false);
+    private volatile boolean contentBufferReleased = false;
+
+    // Position of this entry in the eviction order of the cache. Only
+    // accessed while holding the eviction lock of the cache.
+    Cache.AccessQueue accessQueue = null;
+    CachedResource accessPrevious = null;
+    CachedResource accessNext = null;
+    long accessWeight = 0;
+
+    // Set once the admission filter has chosen to keep this entry in place of
+    // another
+    volatile boolean admitted = false;
+
 
     public CachedResource(Cache cache, StandardRoot root, String path, long ttl,
                           int objectMaxSizeBytes, boolean usesClassLoaderResources) {
+        this(cache, root, path, ttl, objectMaxSizeBytes, 0, usesClassLoaderResources);
+    }
+
+    public CachedResource(Cache cache, StandardRoot root, String path, long ttl,
+                          int objectMaxSizeBytes, int offHeapObjectMaxSizeBytes,
+                          boolean usesClassLoaderResources) {
         this.cache = cache;
         this.root = root;
         this.webAppPath = path;
         this.ttl = ttl;
         this.objectMaxSizeBytes = objectMaxSizeBytes;
+        this.offHeapObjectMaxSizeBytes = offHeapObjectMaxSizeBytes;
         this.usesClassLoaderResources = usesClassLoaderResources;
     }
 
@@ -119,7 +149,8 @@ public class CachedResource implements WebResource {
             }
         }
 
-        if (now < nextCheck) {
+        // Entries are removed as soon as a watched resource changes
+        if (now < nextCheck || cache.isWatched()) {
             return true;
         }
 
@@ -163,7 +194,7 @@ public class CachedResource implements WebResource {
             }
         }
 
-        if (now < nextCheck) {
+        if (now < nextCheck || cache.isWatched()) {
             return true;
         }
 
@@ -306,6 +337,10 @@ public class CachedResource implements WebResource {
     public InputStream getInputStream() {
         byte[] content = getContent();
         if (content == null) {
+            ByteBuffer contentBuffer = getContentBuffer();
+            if (contentBuffer != null) {
+                return new ByteBufferInputStream(contentBuffer);
+            }
             // Can't cache InputStreams
             return webResource.getInputStream();
         }
@@ -325,6 +360,88 @@ public class CachedResource implements WebResource {
         return cachedContent;
     }
 
+    /**
+     * Obtain the content of a resource that is too large to be cached as a
+     * byte array. Such content is cached in a direct buffer, outside of the
+     * heap, if it is no larger than the maximum size for off-heap objects and
+     * there is space for it within the off-heap limit of the cache. The buffer
+     * may be written to the network without first being copied.
+     *
+     * @return A read-only view of the content, positioned at the start of the
+     *         content, or <code>null</code> if the content is not cached
+     *         off-heap
+     */
+    public ByteBuffer getContentBuffer() {
+        ByteBuffer contentBuffer = cachedContentBuffer.get();
+        if (contentBuffer == null) {
+            long contentLength = getContentLength();
+            if (contentLength <= objectMaxSizeBytes || contentLength > offHeapObjectMaxSizeBytes ||
+                    contentBufferReleased) {
+                return null;
+            }
+            // Concurrent requests use the InputStream while one request loads
+            // the content
+            if (!contentBufferLoading.compareAndSet(false, true)) {
+                return null;
+            }
+            try {
+                if (!cache.reserveOffHeapSize(contentLength)) {
+                    return null;
+                }
+                contentBuffer = loadContentBuffer((int) contentLength);
+                if (contentBuffer == null) {
+                    cache.releaseOffHeapSize(contentLength);
+                    return null;
+                }
+                cachedContentBuffer.set(contentBuffer);
+                if (contentBufferReleased) {
+                    // Removed from the cache while the content was loading
+                    cache.releaseOffHeapSize(releaseContentBuffer());
+                }
+            } finally {
+                contentBufferLoading.set(false);
+            }
+        }
+        return contentBuffer.duplicate();
+    }
+
+    private ByteBuffer loadContentBuffer(int contentLength) {
+        InputStream is = webResource.getInputStream();
+        if (is == null) {
+            return null;
+        }
+        ByteBuffer contentBuffer = ByteBuffer.allocateDirect(contentLength);
+        try (ReadableByteChannel channel = Channels.newChannel(is)) {
+            while (contentBuffer.hasRemaining() && channel.read(contentBuffer) >= 0) {
+                // Keep reading
+            }
+        } catch (IOException ioe) {
+            log.warn(sm.getString("cachedResource.contentBufferFail", webAppPath), ioe);
+            return null;
+        }
+        if (contentBuffer.hasRemaining()) {
+            // The resource changed after the content length was obtained
+            return null;
+        }
+        contentBuffer.flip();
+        return contentBuffer.asReadOnlyBuffer();
+    }
+
+    /*
+     * Called when this entry is removed from the cache. Content is never
+     * loaded into a buffer after this has been called.
+     *
+     * Returns the number of bytes of off-heap space that were in use.
+     */
+    long releaseContentBuffer() {
+        contentBufferReleased = true;
+        ByteBuffer contentBuffer = cachedContentBuffer.getAndSet(null);
+        if (contentBuffer == null) {
+            return 0;
+        }
+        return contentBuffer.capacity();
+    }
+
     @Override
     public long getCreation() {
         return webResource.getCreation();
@@ -441,6 +558,52 @@ public class CachedResource implements WebResource {
     }
 
 
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            if (n <= 0) {
+                return 0;
+            }
+            int skipped = (int) Math.min(n, buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+
     private static class CachedResourceURLStreamHandler extends URLStreamHandler {
 
         private final URL resourceURL;
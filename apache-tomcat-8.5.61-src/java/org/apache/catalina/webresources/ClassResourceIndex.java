@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.catalina.WebResourceSet;
+import org.apache.tomcat.util.collections.ConcurrentCache;
+
+/**
+ * An index of the class resources (typically the JARs in WEB-INF/lib) of a web
+ * application by the directories, and hence the packages, that they contain.
+ * It allows a lookup to skip every resource set that cannot contain the
+ * requested path rather than asking each one in turn.
+ * <p>
+ * Resource sets that cannot list their entries in advance are included in
+ * every lookup. Archives do not change while they are in use so a bounded
+ * cache of the paths that none of the candidate archives contain allows
+ * repeated misses, such as those caused by frameworks probing for optional
+ * classes, to skip the class resources entirely.
+ * <p>
+ * The index is a snapshot of the class resources when it was created. It must
+ * be replaced whenever the class resources change.
+ */
+final class ClassResourceIndex {
+
+    private static final int NOT_FOUND_CACHE_SIZE = 1000;
+
+    private final Map<String,WebResourceSet[]> resourceSets = new HashMap<>();
+    // Resource sets that could not be indexed
+    private final WebResourceSet[] unindexed;
+    private final ConcurrentCache<String,Boolean> notFound =
+            new ConcurrentCache<>(NOT_FOUND_CACHE_SIZE);
+
+
+    ClassResourceIndex(List<WebResourceSet> classResources) {
+        WebResourceSet[] all = classResources.toArray(new WebResourceSet[0]);
+        Map<String,BitSet> positions = new HashMap<>();
+        BitSet unindexedPositions = new BitSet(all.length);
+
+        for (int i = 0; i < all.length; i++) {
+            Set<String> directories = null;
+            if (all[i] instanceof AbstractArchiveResourceSet) {
+                directories = ((AbstractArchiveResourceSet) all[i]).getDirectories();
+            }
+            if (directories == null) {
+                unindexedPositions.set(i);
+                continue;
+            }
+            String webAppMount = ((AbstractArchiveResourceSet) all[i]).getWebAppMount();
+            for (String directory : directories) {
+                String path = webAppMount;
+                if (directory.length() > 0) {
+                    path = path + '/' + directory;
+                }
+                // Every parent directory is present as well so that
+                // directories without an entry of their own are found
+                while (true) {
+                    BitSet bits = positions.get(path);
+                    if (bits == null) {
+                        bits = new BitSet(all.length);
+                        positions.put(path, bits);
+                    } else if (bits.get(i)) {
+                        // Parents have already been added
+                        break;
+                    }
+                    bits.set(i);
+                    if (path.length() == 0) {
+                        break;
+                    }
+                    path = path.substring(0, path.lastIndexOf('/'));
+                }
+            }
+        }
+
+        unindexed = toArray(all, unindexedPositions);
+        for (Map.Entry<String,BitSet> entry : positions.entrySet()) {
+            BitSet bits = entry.getValue();
+            bits.or(unindexedPositions);
+            resourceSets.put(entry.getKey(), toArray(all, bits));
+        }
+    }
+
+
+    /**
+     * Obtain the class resources that may contain the given path in the order
+     * they should be searched.
+     *
+     * @param path The normalized path of the resource within the web
+     *             application
+     *
+     * @return The resource sets that may contain the resource
+     */
+    WebResourceSet[] getResourceSets(String path) {
+        if (notFound.get(path) != null) {
+            return unindexed;
+        }
+        WebResourceSet[] result = resourceSets.get(getParent(path));
+        if (result == null) {
+            return unindexed;
+        }
+        return result;
+    }
+
+
+    /**
+     * Record that none of the resource sets returned by
+     * {@link #getResourceSets(String)} contain the given path.
+     *
+     * @param path The normalized path of the resource within the web
+     *             application
+     */
+    void notFound(String path) {
+        notFound.put(path, Boolean.TRUE);
+    }
+
+
+    private static String getParent(String path) {
+        int end = path.length();
+        if (end > 1 && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        int slash = path.lastIndexOf('/', end - 1);
+        if (slash < 0) {
+            return "";
+        }
+        return path.substring(0, slash);
+    }
+
+
+    private static WebResourceSet[] toArray(WebResourceSet[] all, BitSet bits) {
+        WebResourceSet[] result = new WebResourceSet[bits.cardinality()];
+        int pos = 0;
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            result[pos++] = all[i];
+        }
+        return result;
+    }
+}
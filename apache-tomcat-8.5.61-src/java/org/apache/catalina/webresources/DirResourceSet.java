@@ -259,6 +259,15 @@ public class DirResourceSet extends AbstractFileResourceSet {
         }
     }
 
+    @Override
+    boolean watch(ResourceWatcher watcher) {
+        File fileBase = getFileBase();
+        if (fileBase == null) {
+            return false;
+        }
+        return watcher.watchDirectory(getWebAppMount(), fileBase);
+    }
+
     //-------------------------------------------------------- Lifecycle methods
     @Override
     protected void initInternal() throws LifecycleException {
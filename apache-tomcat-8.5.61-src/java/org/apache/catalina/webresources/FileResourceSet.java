@@ -173,4 +173,13 @@ public class FileResourceSet extends AbstractFileResourceSet {
                     getBase(), File.separator, getInternalPath()));
         }
     }
+
+    @Override
+    boolean watch(ResourceWatcher watcher) {
+        File fileBase = getFileBase();
+        if (fileBase == null) {
+            return false;
+        }
+        return watcher.watchFile(getWebAppMount(), fileBase);
+    }
 }
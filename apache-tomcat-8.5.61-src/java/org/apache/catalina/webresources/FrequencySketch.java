@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+/**
+ * An approximate count of how often each key has been used recently, used by
+ * the {@link Cache} to decide whether a new entry is worth keeping in place of
+ * an existing one.
+ * <p>
+ * This is a count-min sketch of 4-bit counters. Each key maps to one counter
+ * in each of four rows and its estimated frequency is the smallest of them.
+ * Sixteen counters are packed into each <code>long</code>. Once the number of
+ * increments reaches ten times the number of counters per row, every counter
+ * is halved so that the counts reflect recent use rather than all use since
+ * the sketch was created.
+ * <p>
+ * This class is not thread safe. The cache only uses it while holding its
+ * eviction lock.
+ */
+final class FrequencySketch {
+
+    private static final int ROWS = 4;
+    private static final int MIN_WIDTH = 16;
+
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L };
+
+    // The low bit of each 4-bit counter, and every bit but the top bit of
+    // each counter
+    private static final long LOW_BITS = 0x1111111111111111L;
+    private static final long HALVE_MASK = 0x7777777777777777L;
+
+    private long[] table;
+    private int mask;
+    private int sampleSize;
+    private int additions;
+
+
+    FrequencySketch() {
+        ensureCapacity(MIN_WIDTH);
+    }
+
+
+    /**
+     * Make sure the sketch can usefully track at least the given number of
+     * keys. Growing the sketch discards the current counts.
+     *
+     * @param keys The number of keys the sketch should be able to track
+     */
+    void ensureCapacity(int keys) {
+        int width = MIN_WIDTH;
+        while (width < keys && width < (1 << 30)) {
+            width <<= 1;
+        }
+        if (table != null && table.length >= width) {
+            return;
+        }
+        table = new long[width];
+        mask = width - 1;
+        sampleSize = width * 10;
+        additions = 0;
+    }
+
+
+    int capacity() {
+        return table.length;
+    }
+
+
+    /**
+     * @param key The key
+     *
+     * @return the estimated number of recent uses of the key, at most 15
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int result = Integer.MAX_VALUE;
+        for (int row = 0; row < ROWS; row++) {
+            int shift = counterShift(hash, row);
+            int count = (int) ((table[index(hash, row)] >>> shift) & 0xF);
+            result = Math.min(result, count);
+        }
+        return result;
+    }
+
+
+    /**
+     * Record a use of the key.
+     *
+     * @param key The key
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < ROWS; row++) {
+            int index = index(hash, row);
+            int shift = counterShift(hash, row);
+            if (((table[index] >>> shift) & 0xF) != 0xF) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            halve();
+        }
+    }
+
+
+    private void halve() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & LOW_BITS);
+            table[i] = (table[i] >>> 1) & HALVE_MASK;
+        }
+        // Each row lost half of every odd count to truncation
+        additions = (additions - (odd >>> 2)) >>> 1;
+    }
+
+
+    /*
+     * Each key uses one of the sixteen counters in each long it maps to. The
+     * counter used differs between rows.
+     */
+    private static int counterShift(int hash, int row) {
+        return (((hash >>> (row << 3)) & 0xF)) << 2;
+    }
+
+
+    private int index(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h ^= h >>> 32;
+        return (int) h & mask;
+    }
+
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45D9F3B;
+        x = ((x >>> 16) ^ x) * 0x45D9F3B;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Watches the directories that provide the resources of a web application and
+ * removes the matching entries from the {@link Cache} when a file system event
+ * is reported for them. While the watcher is running, the cache trusts its
+ * entries, including those for resources that do not exist, rather than
+ * checking them against the file system once their TTL has expired.
+ * <p>
+ * Directories created after the watcher has started are watched as they are
+ * reported. If the events for a directory are lost the whole cache is cleared.
+ * If a directory cannot be watched, for example because a limit on the number
+ * of watches has been reached, the cache returns to checking entries once
+ * their TTL has expired.
+ * <p>
+ * Symbolic links are not followed so changes to files reached through a link
+ * to a location outside of a watched directory are not seen.
+ */
+final class ResourceWatcher implements Runnable {
+
+    private static final Log log = LogFactory.getLog(ResourceWatcher.class);
+    private static final StringManager sm = StringManager.getManager(ResourceWatcher.class);
+
+    private final Cache cache;
+    private final String name;
+    private final WatchService watchService;
+
+    // Guarded by this
+    private final Map<WatchKey,List<Watch>> watches = new HashMap<>();
+    private final Map<Path,Watch> directories = new HashMap<>();
+
+    private volatile Thread thread = null;
+
+
+    ResourceWatcher(Cache cache, String name) throws IOException {
+        this.cache = cache;
+        this.name = name;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+
+    /**
+     * Watch a directory and all the directories below it.
+     *
+     * @param webAppPath The path within the web application of the directory.
+     *                   The empty string for the root of the web application.
+     * @param dir        The directory
+     *
+     * @return <code>true</code> if the directory is being watched
+     */
+    synchronized boolean watchDirectory(String webAppPath, File dir) {
+        try {
+            registerTree(webAppPath, dir.getAbsoluteFile().toPath());
+            return true;
+        } catch (IOException | ClosedWatchServiceException e) {
+            log.warn(sm.getString("resourceWatcher.registerFail", dir, name), e);
+            return false;
+        }
+    }
+
+
+    /**
+     * Watch a single file.
+     *
+     * @param webAppPath The path within the web application of the file
+     * @param file       The file
+     *
+     * @return <code>true</code> if the file is being watched
+     */
+    synchronized boolean watchFile(String webAppPath, File file) {
+        Path path = file.getAbsoluteFile().toPath();
+        Path dir = path.getParent();
+        try {
+            register(dir, new Watch(dir, webAppPath, path.getFileName().toString()));
+            return true;
+        } catch (IOException | ClosedWatchServiceException e) {
+            log.warn(sm.getString("resourceWatcher.registerFail", file, name), e);
+            return false;
+        }
+    }
+
+
+    void start() {
+        Thread thread = new Thread(this, "ResourceWatcher[" + name + "]");
+        thread.setDaemon(true);
+        // Don't pin the class loader of whichever thread started the watcher
+        thread.setContextClassLoader(ResourceWatcher.class.getClassLoader());
+        this.thread = thread;
+        thread.start();
+    }
+
+
+    void stop() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+        Thread thread = this.thread;
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                // Ignore
+            }
+        }
+        this.thread = null;
+    }
+
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key;
+                try {
+                    key = watchService.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                synchronized (this) {
+                    try {
+                        processEvents(key);
+                    } catch (ClosedWatchServiceException e) {
+                        throw e;
+                    } catch (Throwable t) {
+                        ExceptionUtils.handleThrowable(t);
+                        log.error(sm.getString("resourceWatcher.processFail", name), t);
+                        // Events may have been missed
+                        cache.clear();
+                    }
+                    if (!key.reset()) {
+                        // The directory is no longer accessible
+                        watches.remove(key);
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+
+
+    private void processEvents(WatchKey key) {
+        List<Watch> keyWatches = watches.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            WatchEvent.Kind<?> kind = event.kind();
+            if (kind == StandardWatchEventKinds.OVERFLOW) {
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("resourceWatcher.overflow", name));
+                }
+                cache.clear();
+                continue;
+            }
+            if (keyWatches == null) {
+                continue;
+            }
+            Path child = (Path) event.context();
+            for (Watch watch : keyWatches) {
+                if (watch.fileName == null) {
+                    processDirectoryEvent(watch, kind, child);
+                } else if (watch.fileName.equals(child.toString())) {
+                    cache.removeCacheEntry(watch.webAppPath);
+                }
+            }
+        }
+    }
+
+
+    private void processDirectoryEvent(Watch watch, WatchEvent.Kind<?> kind, Path child) {
+        String webAppPath = watch.webAppPath + '/' + child.toString();
+        Path path = watch.dir.resolve(child);
+
+        if (kind == StandardWatchEventKinds.ENTRY_CREATE &&
+                Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            // Watch the new directory before invalidating anything below it
+            // so no change can be missed
+            try {
+                registerTree(webAppPath, path);
+            } catch (IOException e) {
+                log.warn(sm.getString("resourceWatcher.registerFail", path, name), e);
+                cache.setWatched(false);
+            }
+            cache.removeCacheEntries(webAppPath + '/');
+        } else if (kind == StandardWatchEventKinds.ENTRY_DELETE && directories.containsKey(path)) {
+            Iterator<Path> iter = directories.keySet().iterator();
+            while (iter.hasNext()) {
+                if (iter.next().startsWith(path)) {
+                    iter.remove();
+                }
+            }
+            cache.removeCacheEntries(webAppPath + '/');
+        }
+
+        cache.removeCacheEntry(webAppPath);
+        cache.removeCacheEntry(webAppPath + '/');
+        // The metadata of the parent directory changes as well
+        if (watch.webAppPath.length() == 0) {
+            cache.removeCacheEntry("/");
+        } else {
+            cache.removeCacheEntry(watch.webAppPath);
+            cache.removeCacheEntry(watch.webAppPath + '/');
+        }
+    }
+
+
+    private void registerTree(final String webAppPath, final Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                    throws IOException {
+                StringBuilder path = new StringBuilder(webAppPath);
+                if (!dir.equals(start)) {
+                    for (Path element : start.relativize(dir)) {
+                        path.append('/');
+                        path.append(element.toString());
+                    }
+                }
+                Watch watch = new Watch(dir, path.toString(), null);
+                register(dir, watch);
+                directories.put(dir, watch);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+
+    private void register(Path dir, Watch watch) throws IOException {
+        WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        List<Watch> keyWatches = watches.get(key);
+        if (keyWatches == null) {
+            keyWatches = new ArrayList<>(1);
+            watches.put(key, keyWatches);
+        }
+        // A directory that is deleted and re-created may return the same key
+        Iterator<Watch> iter = keyWatches.iterator();
+        while (iter.hasNext()) {
+            Watch existing = iter.next();
+            if (existing.webAppPath.equals(watch.webAppPath) &&
+                    (existing.fileName == null ? watch.fileName == null :
+                        existing.fileName.equals(watch.fileName))) {
+                iter.remove();
+            }
+        }
+        keyWatches.add(watch);
+    }
+
+
+    private static class Watch {
+
+        private final Path dir;
+        private final String webAppPath;
+        // null if all entries of the directory are watched
+        private final String fileName;
+
+        Watch(Path dir, String webAppPath, String fileName) {
+            this.dir = dir;
+            this.webAppPath = webAppPath;
+            this.fileName = fileName;
+        }
+    }
+}
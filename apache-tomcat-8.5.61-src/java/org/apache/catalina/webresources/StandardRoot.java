@@ -24,6 +24,7 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -74,9 +75,15 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
     private final List<WebResourceSet> jarResources = new ArrayList<>();
     private final List<WebResourceSet> postResources = new ArrayList<>();
 
+    // Guarded by classResourceIndexLock when written
+    private volatile ClassResourceIndex classResourceIndex = null;
+    private final Object classResourceIndexLock = new Object();
+
     private final Cache cache = new Cache(this);
     private boolean cachingAllowed = true;
+    private boolean cacheWatchResources = false;
     private ObjectName cacheJmxName = null;
+    private volatile ResourceWatcher resourceWatcher = null;
 
     private boolean trackLockedFiles = false;
     private final Set<TrackedWebResource> trackedResources =
@@ -274,8 +281,9 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
         WebResource result = null;
         WebResource virtual = null;
         WebResource mainEmpty = null;
+        ClassResourceIndex classResourceIndex = getClassResourceIndex();
         for (List<WebResourceSet> list : allResources) {
-            for (WebResourceSet webResourceSet : list) {
+            for (WebResourceSet webResourceSet : getResourceSets(list, classResourceIndex, path)) {
                 if (!useClassLoaderResources && !webResourceSet.getClassLoaderOnly() ||
                         useClassLoaderResources && !webResourceSet.getStaticOnly()) {
                     result = webResourceSet.getResource(path);
@@ -293,6 +301,10 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
             }
         }
 
+        if (useClassLoaderResources && classResourceIndex != null) {
+            classResourceIndex.notFound(path);
+        }
+
         // Use the first virtual result if no real result was found
         if (virtual != null) {
             return virtual;
@@ -321,8 +333,9 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
     protected WebResource[] getResourcesInternal(String path,
                                                  boolean useClassLoaderResources) {
         List<WebResource> result = new ArrayList<>();
+        ClassResourceIndex classResourceIndex = getClassResourceIndex();
         for (List<WebResourceSet> list : allResources) {
-            for (WebResourceSet webResourceSet : list) {
+            for (WebResourceSet webResourceSet : getResourceSets(list, classResourceIndex, path)) {
                 if (useClassLoaderResources || !webResourceSet.getClassLoaderOnly()) {
                     WebResource webResource = webResourceSet.getResource(path);
                     if (webResource.exists()) {
@@ -339,6 +352,41 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
         return result.toArray(new WebResource[0]);
     }
 
+    /*
+     * Only the class resources that may contain the path need to be searched.
+     */
+    private Collection<WebResourceSet> getResourceSets(List<WebResourceSet> list,
+            ClassResourceIndex classResourceIndex, String path) {
+        if (list == classResources && classResourceIndex != null) {
+            return Arrays.asList(classResourceIndex.getResourceSets(path));
+        }
+        return list;
+    }
+
+    private ClassResourceIndex getClassResourceIndex() {
+        ClassResourceIndex result = classResourceIndex;
+        if (result == null && getState().isAvailable()) {
+            synchronized (classResourceIndexLock) {
+                result = classResourceIndex;
+                if (result == null) {
+                    result = new ClassResourceIndex(classResources);
+                    classResourceIndex = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Called after the class resources have changed. The index will be
+     * rebuilt on next use.
+     */
+    private void invalidateClassResourceIndex() {
+        synchronized (classResourceIndexLock) {
+            classResourceIndex = null;
+        }
+    }
+
     @Override
     public WebResource[] listResources(String path) {
         return listResources(path, true);
@@ -427,12 +475,17 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
         }
 
         resourceList.add(resourceSet);
+        if (resourceList == classResources) {
+            invalidateClassResourceIndex();
+        }
+        watchAddedResourceSet(resourceSet);
     }
 
     @Override
     public void addPreResources(WebResourceSet webResourceSet) {
         webResourceSet.setRoot(this);
         preResources.add(webResourceSet);
+        watchAddedResourceSet(webResourceSet);
     }
 
     @Override
@@ -444,6 +497,7 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
     public void addJarResources(WebResourceSet webResourceSet) {
         webResourceSet.setRoot(this);
         jarResources.add(webResourceSet);
+        watchAddedResourceSet(webResourceSet);
     }
 
     @Override
@@ -455,6 +509,7 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
     public void addPostResources(WebResourceSet webResourceSet) {
         webResourceSet.setRoot(this);
         postResources.add(webResourceSet);
+        watchAddedResourceSet(webResourceSet);
     }
 
     @Override
@@ -469,6 +524,7 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
     protected void addClassResources(WebResourceSet webResourceSet) {
         webResourceSet.setRoot(this);
         classResources.add(webResourceSet);
+        invalidateClassResourceIndex();
     }
 
     @Override
@@ -489,6 +545,7 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
     public void setCachingAllowed(boolean cachingAllowed) {
         this.cachingAllowed = cachingAllowed;
         if (!cachingAllowed) {
+            stopResourceWatcher();
             cache.clear();
         }
     }
@@ -498,6 +555,39 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
         return cachingAllowed;
     }
 
+    /**
+     * @return <code>true</code> if the directories that provide resources are
+     *         watched for changes rather than cache entries being checked
+     *         against the file system once their TTL has expired
+     */
+    public boolean isCacheWatchResources() {
+        return cacheWatchResources;
+    }
+
+    /**
+     * Configure how cache entries are validated. If enabled, the directories
+     * and files that provide resources are watched for changes when the
+     * resources start and cache entries, including those for resources that
+     * do not exist, are removed when a change is reported. They are not
+     * checked against the file system once their TTL has expired. If any
+     * resource set cannot be watched, cache entries are checked once their
+     * TTL has expired. Changes to this setting take effect when the resources
+     * are next started.
+     *
+     * @param cacheWatchResources <code>true</code> to watch for changes
+     */
+    public void setCacheWatchResources(boolean cacheWatchResources) {
+        this.cacheWatchResources = cacheWatchResources;
+    }
+
+    /**
+     * @return <code>true</code> if cache entries are currently removed as the
+     *         resources change
+     */
+    public boolean isCacheWatched() {
+        return cache.isWatched();
+    }
+
     @Override
     public long getCacheTtl() {
         return cache.getTtl();
@@ -533,6 +623,68 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
         return cache.getObjectMaxSize();
     }
 
+    /**
+     * Set the maximum total size of resource content that may be cached
+     * outside of the heap. Only resources larger than the maximum size of a
+     * cached object are cached off-heap.
+     *
+     * @param cacheOffHeapMaxSize The maximum size in kB. Zero, the default,
+     *                            disables off-heap caching.
+     */
+    public void setCacheOffHeapMaxSize(long cacheOffHeapMaxSize) {
+        cache.setOffHeapMaxSize(cacheOffHeapMaxSize);
+    }
+
+    public long getCacheOffHeapMaxSize() {
+        return cache.getOffHeapMaxSize();
+    }
+
+    /**
+     * Set the maximum size of a single resource that may be cached outside of
+     * the heap.
+     *
+     * @param cacheOffHeapObjectMaxSize The maximum size in kB
+     */
+    public void setCacheOffHeapObjectMaxSize(int cacheOffHeapObjectMaxSize) {
+        cache.setOffHeapObjectMaxSize(cacheOffHeapObjectMaxSize);
+    }
+
+    public int getCacheOffHeapObjectMaxSize() {
+        return cache.getOffHeapObjectMaxSize();
+    }
+
+    /**
+     * @return the size in kB of the resource content currently cached outside
+     *         of the heap
+     */
+    public long getCacheOffHeapSize() {
+        return cache.getOffHeapSize();
+    }
+
+    /**
+     * @return the number of times the cache kept a new entry in place of an
+     *         existing one
+     */
+    public long getCacheAdmissionCount() {
+        return cache.getAdmissionCount();
+    }
+
+    /**
+     * @return the number of times the cache evicted a new entry in favour of
+     *         the existing one it would have replaced
+     */
+    public long getCacheRejectionCount() {
+        return cache.getRejectionCount();
+    }
+
+    /**
+     * @return the number of cache hits served by entries admitted in place of
+     *         an existing entry, per admission decision
+     */
+    public double getCacheAdmissionHitRate() {
+        return cache.getAdmissionHitRate();
+    }
+
     @Override
     public void setTrackLockedFiles(boolean trackLockedFiles) {
         this.trackLockedFiles = trackLockedFiles;
@@ -725,9 +877,76 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
 
         cache.enforceObjectMaxSizeLimit();
 
+        // Build the index now rather than on the first request
+        synchronized (classResourceIndexLock) {
+            classResourceIndex = new ClassResourceIndex(classResources);
+        }
+
+        startResourceWatcher();
+
         setState(LifecycleState.STARTING);
     }
 
+    private void startResourceWatcher() {
+        if (!cacheWatchResources || !cachingAllowed || isPackedWarFile()) {
+            return;
+        }
+        ResourceWatcher watcher;
+        try {
+            watcher = new ResourceWatcher(cache, context.getName());
+        } catch (IOException e) {
+            log.warn(sm.getString("standardRoot.watchFail", context.getName()), e);
+            return;
+        }
+        for (List<WebResourceSet> list : allResources) {
+            for (WebResourceSet webResourceSet : list) {
+                if (!watch(watcher, webResourceSet)) {
+                    watcher.stop();
+                    return;
+                }
+            }
+        }
+        resourceWatcher = watcher;
+        watcher.start();
+        // Entries added before the watches were registered may be stale
+        cache.clear();
+        cache.setWatched(true);
+    }
+
+    private void stopResourceWatcher() {
+        ResourceWatcher watcher = resourceWatcher;
+        if (watcher != null) {
+            cache.setWatched(false);
+            resourceWatcher = null;
+            watcher.stop();
+        }
+    }
+
+    /*
+     * Resource sets added while the resources are running must be watched as
+     * well else their changes would never be seen.
+     */
+    private void watchAddedResourceSet(WebResourceSet webResourceSet) {
+        ResourceWatcher watcher = resourceWatcher;
+        if (watcher != null && !watch(watcher, webResourceSet)) {
+            stopResourceWatcher();
+        }
+    }
+
+    private boolean watch(ResourceWatcher watcher, WebResourceSet webResourceSet) {
+        if (webResourceSet instanceof AbstractFileResourceSet) {
+            if (((AbstractFileResourceSet) webResourceSet).watch(watcher)) {
+                return true;
+            }
+        } else if (webResourceSet instanceof AbstractArchiveResourceSet ||
+                webResourceSet instanceof EmptyResourceSet) {
+            // Archives are not expected to change while they are in use
+            return true;
+        }
+        log.info(sm.getString("standardRoot.watchUnsupported", webResourceSet, context.getName()));
+        return false;
+    }
+
     protected WebResourceSet createMainResourceSet() {
         String docBase = context.getDocBase();
 
@@ -755,6 +974,9 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
 
     @Override
     protected void stopInternal() throws LifecycleException {
+        stopResourceWatcher();
+        invalidateClassResourceIndex();
+
         for (List<WebResourceSet> list : allResources) {
             for (WebResourceSet webResourceSet : list) {
                 webResourceSet.stop();
@@ -447,6 +447,7 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
 
 
     private String server;
+    private byte[] serverBytes;
 
     public String getServer() {
         return server;
@@ -459,6 +460,16 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
      */
     public void setServer(String server) {
         this.server = server;
+        this.serverBytes = Http11OutputBuffer.encodeHeaderValue(server);
+    }
+
+    /**
+     * @return The server header value encoded ready to be written to the
+     *         response or {@code null} if no server header has been
+     *         configured. The returned array must not be modified.
+     */
+    byte[] getServerBytes() {
+        return serverBytes;
     }
 
 
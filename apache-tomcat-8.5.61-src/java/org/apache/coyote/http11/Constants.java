@@ -135,6 +135,20 @@ public final class Constants {
     public static final byte[] _404_BYTES = ByteChunk.convertToBytes("404");
 
 
+    /*
+     * Pre-encoded header names and values that are added to most responses.
+     * These are written to the header buffer as-is, avoiding a per-response
+     * char to byte conversion.
+     */
+    public static final byte[] DATE_BYTES = ByteChunk.convertToBytes("Date");
+    public static final byte[] CONNECTION_BYTES = ByteChunk.convertToBytes(CONNECTION);
+    public static final byte[] CLOSE_VALUE_BYTES = ByteChunk.convertToBytes(CLOSE);
+    public static final byte[] KEEP_ALIVE_VALUE_BYTES =
+            ByteChunk.convertToBytes(KEEP_ALIVE_HEADER_VALUE_TOKEN);
+    public static final byte[] TRANSFERENCODING_BYTES = ByteChunk.convertToBytes(TRANSFERENCODING);
+    public static final byte[] CHUNKED_BYTES = ByteChunk.convertToBytes(CHUNKED);
+
+
     /**
      * Identity filters (input and output).
      */
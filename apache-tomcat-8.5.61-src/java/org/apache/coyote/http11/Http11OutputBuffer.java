@@ -509,16 +509,43 @@ public class Http11OutputBuffer implements HttpOutputBuffer {
         int len = s.length();
         checkLengthBeforeWrite(len);
         for (int i = 0; i < len; i++) {
-            char c = s.charAt(i);
-            // Note: This is clearly incorrect for many strings,
-            // but is the only consistent approach within the current
-            // servlet framework. It must suffice until servlet output
-            // streams properly encode their output.
-            if (((c <= 31) && (c != 9)) || c == 127 || c > 255) {
-                c = ' ';
-            }
-            headerBuffer.put((byte) c);
+            headerBuffer.put(toHeaderByte(s.charAt(i)));
+        }
+    }
+
+
+    /**
+     * Encode a header value once so that it can be written for many responses
+     * without being converted each time. The same filtering is applied as when
+     * a String value is written to the header buffer.
+     *
+     * @param s The header value
+     *
+     * @return The encoded header value or {@code null} if {@code s} is
+     *         {@code null}
+     */
+    static byte[] encodeHeaderValue(String s) {
+        if (s == null) {
+            return null;
+        }
+        int len = s.length();
+        byte[] result = new byte[len];
+        for (int i = 0; i < len; i++) {
+            result[i] = toHeaderByte(s.charAt(i));
+        }
+        return result;
+    }
+
+
+    private static byte toHeaderByte(char c) {
+        // Note: This is clearly incorrect for many strings,
+        // but is the only consistent approach within the current
+        // servlet framework. It must suffice until servlet output
+        // streams properly encode their output.
+        if (((c <= 31) && (c != 9)) || c == 127 || c > 255) {
+            c = ' ';
         }
+        return (byte) c;
     }
 
 
@@ -20,8 +20,11 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -74,6 +77,36 @@ public class Http11Processor extends AbstractProcessor {
      */
     private static final StringManager sm = StringManager.getManager(Http11Processor.class);
 
+    /**
+     * Frequently used Content-Type values, encoded once so they can be written
+     * to the header buffer without a per-response conversion.
+     */
+    private static final Map<String,byte[]> ENCODED_CONTENT_TYPES;
+
+    static {
+        String[] contentTypes = new String[] {
+                "text/html;charset=UTF-8",
+                "text/html;charset=ISO-8859-1",
+                "text/plain;charset=UTF-8",
+                "text/plain;charset=ISO-8859-1",
+                "text/css",
+                "text/javascript",
+                "application/javascript",
+                "application/json",
+                "application/json;charset=UTF-8",
+                "application/xml",
+                "application/octet-stream",
+                "image/png",
+                "image/jpeg",
+                "image/gif",
+                "image/svg+xml"};
+        Map<String,byte[]> encoded = new HashMap<>();
+        for (String contentType : contentTypes) {
+            encoded.put(contentType, ByteChunk.convertToBytes(contentType));
+        }
+        ENCODED_CONTENT_TYPES = Collections.unmodifiableMap(encoded);
+    }
+
 
     private final AbstractHttp11Protocol<?> protocol;
 
@@ -1116,7 +1149,12 @@ public class Http11Processor extends AbstractProcessor {
         if (entityBody || statusCode == HttpServletResponse.SC_NO_CONTENT) {
             String contentType = response.getContentType();
             if (contentType != null) {
-                headers.setValue("Content-Type").setString(contentType);
+                byte[] encoded = ENCODED_CONTENT_TYPES.get(contentType);
+                if (encoded == null) {
+                    headers.setValue("Content-Type").setString(contentType);
+                } else {
+                    headers.setValue("Content-Type").setBytes(encoded, 0, encoded.length);
+                }
             }
             String contentLanguage = response.getContentLanguage();
             if (contentLanguage != null) {
@@ -1137,7 +1175,9 @@ public class Http11Processor extends AbstractProcessor {
             if (http11 && entityBody && !connectionClosePresent) {
                 outputBuffer.addActiveFilter(outputFilters[Constants.CHUNKED_FILTER]);
                 contentDelimitation = true;
-                headers.addValue(Constants.TRANSFERENCODING).setString(Constants.CHUNKED);
+                headers.addValue(Constants.TRANSFERENCODING_BYTES, 0,
+                        Constants.TRANSFERENCODING_BYTES.length).setBytes(
+                                Constants.CHUNKED_BYTES, 0, Constants.CHUNKED_BYTES.length);
             } else {
                 outputBuffer.addActiveFilter(outputFilters[Constants.IDENTITY_FILTER]);
             }
@@ -1150,8 +1190,9 @@ public class Http11Processor extends AbstractProcessor {
         // Add date header unless application has already set one (e.g. in a
         // Caching Filter)
         if (headers.getValue("Date") == null) {
-            headers.addValue("Date").setString(
-                    FastHttpDateFormat.getCurrentDate());
+            byte[] date = FastHttpDateFormat.getCurrentDateBytes();
+            headers.addValue(Constants.DATE_BYTES, 0, Constants.DATE_BYTES.length).setBytes(
+                    date, 0, date.length);
         }
 
         // FIXME: Add transfer encoding header
@@ -1182,12 +1223,11 @@ public class Http11Processor extends AbstractProcessor {
         if (!keepAlive) {
             // Avoid adding the close header twice
             if (!connectionClosePresent) {
-                headers.addValue(Constants.CONNECTION).setString(
-                        Constants.CLOSE);
+                addConnectionHeader(headers, Constants.CLOSE_VALUE_BYTES);
             }
         } else if (!getErrorState().isError()) {
             if (!http11) {
-                headers.addValue(Constants.CONNECTION).setString(Constants.KEEP_ALIVE_HEADER_VALUE_TOKEN);
+                addConnectionHeader(headers, Constants.KEEP_ALIVE_VALUE_BYTES);
             }
 
             if (protocol.getUseKeepAliveResponseHeader()) {
@@ -1206,7 +1246,7 @@ public class Http11Processor extends AbstractProcessor {
                             // else create the header
                             MessageBytes connectionHeaderValue = headers.getValue(Constants.CONNECTION);
                             if (connectionHeaderValue == null) {
-                                headers.addValue(Constants.CONNECTION).setString(Constants.KEEP_ALIVE_HEADER_VALUE_TOKEN);
+                                addConnectionHeader(headers, Constants.KEEP_ALIVE_VALUE_BYTES);
                             } else {
                                 connectionHeaderValue.setString(
                                         connectionHeaderValue.getString() + ", " + Constants.KEEP_ALIVE_HEADER_VALUE_TOKEN);
@@ -1225,7 +1265,8 @@ public class Http11Processor extends AbstractProcessor {
             }
         } else {
             // server always overrides anything the app might set
-            headers.setValue("Server").setString(server);
+            byte[] serverBytes = protocol.getServerBytes();
+            headers.setValue("Server").setBytes(serverBytes, 0, serverBytes.length);
         }
 
         // Build the response header
@@ -1248,6 +1289,12 @@ public class Http11Processor extends AbstractProcessor {
         outputBuffer.commit();
     }
 
+    private static void addConnectionHeader(MimeHeaders headers, byte[] value) {
+        headers.addValue(Constants.CONNECTION_BYTES, 0, Constants.CONNECTION_BYTES.length).setBytes(
+                value, 0, value.length);
+    }
+
+
     private static boolean isConnectionToken(MimeHeaders headers, String token) throws IOException {
         MessageBytes connection = headers.getValue(Constants.CONNECTION);
         if (connection == null) {
@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.el.lang;
+
+/**
+ * Implemented by {@link javax.el.ELResolver}s that allow compiled expressions
+ * to read bean properties directly rather than through the resolver. Compiled
+ * expressions only read properties directly when the resolver of the
+ * {@link javax.el.ELContext} implements this interface.
+ *
+ * @see ExpressionCompiler
+ */
+public interface CompilableELResolver {
+
+    /**
+     * Determines if bean properties are always resolved exactly as
+     * {@link javax.el.BeanELResolver} resolves them. The answer must not
+     * change for the lifetime of the resolver.
+     *
+     * @param type The class of the base object
+     *
+     * @return <code>true</code> if, for every base object of the given class
+     *         and every property name, no other resolver is consulted before
+     *         {@link javax.el.BeanELResolver} when reading the value of the
+     *         property
+     */
+    boolean isBeanPropertyResolver(Class<?> type);
+}
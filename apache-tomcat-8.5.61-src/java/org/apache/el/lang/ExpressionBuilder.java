@@ -54,10 +54,16 @@ public final class ExpressionBuilder implements NodeVisitor {
     private static final String CACHE_SIZE_PROP =
             "org.apache.el.ExpressionBuilder.CACHE_SIZE";
 
+    private static final boolean COMPILE;
+    private static final String COMPILE_PROP =
+            "org.apache.el.ExpressionBuilder.COMPILE";
+
     static {
         String cacheSizeStr;
+        String compileStr;
         if (System.getSecurityManager() == null) {
             cacheSizeStr = System.getProperty(CACHE_SIZE_PROP, "5000");
+            compileStr = System.getProperty(COMPILE_PROP, "false");
         } else {
             cacheSizeStr = AccessController.doPrivileged(
                     new PrivilegedAction<String>() {
@@ -67,8 +73,17 @@ public final class ExpressionBuilder implements NodeVisitor {
                             return System.getProperty(CACHE_SIZE_PROP, "5000");
                         }
                     });
+            compileStr = AccessController.doPrivileged(
+                    new PrivilegedAction<String>() {
+
+                        @Override
+                        public String run() {
+                            return System.getProperty(COMPILE_PROP, "false");
+                        }
+                    });
         }
         CACHE_SIZE = Integer.parseInt(cacheSizeStr);
+        COMPILE = Boolean.parseBoolean(compileStr);
     }
 
     private static final ConcurrentCache<String, Node> expressionCache =
@@ -143,6 +158,9 @@ public final class ExpressionBuilder implements NodeVisitor {
                         || n instanceof AstDynamicExpression) {
                     n = n.jjtGetChild(0);
                 }
+                if (COMPILE) {
+                    n = ExpressionCompiler.compile(n);
+                }
                 expressionCache.put(expr, n);
             } catch (Exception e) {
                 throw new ELException(
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.el.lang;
+
+import org.apache.el.parser.AstBracketSuffix;
+import org.apache.el.parser.AstDotSuffix;
+import org.apache.el.parser.AstString;
+import org.apache.el.parser.AstValue;
+import org.apache.el.parser.CompiledValue;
+import org.apache.el.parser.Node;
+
+/**
+ * Replaces the nodes of a parsed expression that read chains of properties
+ * with {@link CompiledValue} nodes that, once the classes of the beans have
+ * been seen, read the properties without calling the
+ * {@link javax.el.ELResolver}. All other nodes are left unchanged.
+ * <p>
+ * Enabled by setting the system property
+ * <code>org.apache.el.ExpressionBuilder.COMPILE</code> to <code>true</code>.
+ */
+public final class ExpressionCompiler {
+
+    private ExpressionCompiler() {
+        // Utility class. Hide default constructor.
+    }
+
+
+    /**
+     * Compiles the given node and its children.
+     *
+     * @param node The root of the parsed expression
+     *
+     * @return The compiled node to use in place of the given node
+     */
+    public static Node compile(Node node) {
+        for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+            Node child = node.jjtGetChild(i);
+            Node compiled = compile(child);
+            if (compiled != child) {
+                node.jjtAddChild(compiled, i);
+            }
+        }
+
+        if (node instanceof AstValue && !(node instanceof CompiledValue)) {
+            String[] properties = getProperties(node);
+            if (properties != null) {
+                return new CompiledValue((AstValue) node, properties);
+            }
+        }
+        return node;
+    }
+
+
+    /*
+     * Returns the names of the properties read by the given value or null if
+     * the value calls a method or uses a property name that is not a
+     * constant.
+     */
+    private static String[] getProperties(Node value) {
+        String[] properties = new String[value.jjtGetNumChildren() - 1];
+        for (int i = 0; i < properties.length; i++) {
+            Node suffix = value.jjtGetChild(i + 1);
+            if (suffix instanceof AstDotSuffix) {
+                properties[i] = suffix.getImage();
+            } else if (suffix instanceof AstBracketSuffix &&
+                    suffix.jjtGetChild(0) instanceof AstString) {
+                properties[i] = ((AstString) suffix.jjtGetChild(0)).getString();
+            } else {
+                return null;
+            }
+        }
+        return properties;
+    }
+}
@@ -39,7 +39,7 @@ import org.apache.el.util.ReflectionUtil;
 /**
  * @author Jacob Hookom [jacob@hookom.net]
  */
-public final class AstValue extends SimpleNode {
+public class AstValue extends SimpleNode {
 
     private static final Object[] EMPTY_ARRAY = new Object[0];
 
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.el.parser;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.el.ELException;
+import javax.el.ELResolver;
+import javax.el.PropertyNotFoundException;
+
+import org.apache.el.lang.CompilableELResolver;
+import org.apache.el.lang.EvaluationContext;
+import org.apache.el.util.MessageFactory;
+import org.apache.el.util.ReflectionUtil;
+
+/**
+ * A compiled {@link AstValue} that reads a chain of properties with constant
+ * names, such as <code>${a.b['c'].d}</code>. Each property has an inline
+ * cache of the read method for the class of bean seen last. When the class of
+ * the base object and the resolver match the cache the read method is called
+ * directly, otherwise the property is resolved by the {@link ELResolver} as
+ * it would be by {@link AstValue}.
+ * <p>
+ * Read methods are only cached if the resolver implements
+ * {@link CompilableELResolver} and confirms that the class is resolved by
+ * {@link javax.el.BeanELResolver}.
+ * <p>
+ * Parsed expressions are shared by all web applications so the inline cache
+ * only holds weak references to the class, the resolver and the read method.
+ * The read methods are held by the classes they were looked up for. The
+ * inline cache therefore never keeps the class loader of a web application
+ * that has been stopped. A property that saw too many classes stops caching
+ * for the current resolver only, and caching resumes once a different
+ * resolver is used.
+ */
+public final class CompiledValue extends AstValue {
+
+    // Stop caching read methods for properties that see too many classes
+    private static final int MAX_CACHE_UPDATES = 4;
+
+    private static final PropertyReader EMPTY = new PropertyReader(null, null, null, 0);
+
+    // Read methods by property name, held by the class of the bean
+    private static final ClassValue<ConcurrentMap<String,Method>> readMethods =
+            new ClassValue<ConcurrentMap<String,Method>>() {
+                @Override
+                protected ConcurrentMap<String,Method> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
+    private final String[] properties;
+
+    // PropertyReader instances are immutable so they may be safely replaced
+    // without synchronization. A thread that sees an older reader will just
+    // update the cache again.
+    private final PropertyReader[] readers;
+
+    public CompiledValue(AstValue value, String[] properties) {
+        super(value.id);
+        this.properties = properties;
+        this.readers = new PropertyReader[properties.length];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = EMPTY;
+        }
+        setImage(value.getImage());
+        jjtSetParent(value.jjtGetParent());
+        for (int i = 0; i < value.jjtGetNumChildren(); i++) {
+            Node child = value.jjtGetChild(i);
+            child.jjtSetParent(this);
+            jjtAddChild(child, i);
+        }
+    }
+
+    @Override
+    public Object getValue(EvaluationContext ctx) throws ELException {
+        Object base = this.children[0].getValue(ctx);
+        int i = 0;
+        String property = null;
+        ELResolver resolver = ctx.getELResolver();
+        while (base != null && i < properties.length) {
+            property = properties[i];
+            PropertyReader reader = readers[i];
+            Class<?> type = base.getClass();
+            Method m = reader.getMethod(type, resolver);
+            if (m != null) {
+                ctx.setPropertyResolved(base, property);
+                base = read(m, base, property);
+            } else {
+                ctx.setPropertyResolved(false);
+                Object value = resolver.getValue(ctx, base, property);
+                if (ctx.isPropertyResolved() && reader.canUpdate(resolver) &&
+                        resolver instanceof CompilableELResolver &&
+                        ((CompilableELResolver) resolver).isBeanPropertyResolver(type)) {
+                    readers[i] = createReader(reader, type, base, property, resolver);
+                }
+                base = value;
+            }
+            i++;
+        }
+        if (!ctx.isPropertyResolved()) {
+            throw new PropertyNotFoundException(MessageFactory.get(
+                    "error.resolver.unhandled", base, property));
+        }
+        return base;
+    }
+
+
+    private static PropertyReader createReader(PropertyReader current, Class<?> type,
+            Object base, String property, ELResolver resolver) {
+        // Only count the updates for the same resolver so a property that is
+        // shared with another web application is not disabled by it
+        int updates = current.isFor(resolver) ? current.updates + 1 : 1;
+        if (updates == MAX_CACHE_UPDATES) {
+            return new PropertyReader(null, resolver, null, MAX_CACHE_UPDATES);
+        }
+        ConcurrentMap<String,Method> methods = readMethods.get(type);
+        Method m = methods.get(property);
+        if (m == null) {
+            m = ReflectionUtil.getReadMethod(type, base, property);
+            if (m == null) {
+                return new PropertyReader(null, resolver, null, MAX_CACHE_UPDATES);
+            }
+            methods.put(property, m);
+        }
+        return new PropertyReader(type, resolver, m, updates);
+    }
+
+
+    /*
+     * This class duplicates code in javax.el.BeanELResolver. When making
+     * changes keep the code in sync.
+     */
+    private static Object read(Method m, Object base, String property) {
+        try {
+            return m.invoke(base, (Object[]) null);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ThreadDeath) {
+                throw (ThreadDeath) cause;
+            }
+            if (cause instanceof VirtualMachineError) {
+                throw (VirtualMachineError) cause;
+            }
+            throw new ELException(MessageFactory.get("error.property.read",
+                    base.getClass().getName(), property), cause);
+        } catch (Exception e) {
+            throw new ELException(e);
+        }
+    }
+
+
+    private static final class PropertyReader {
+
+        private final WeakReference<Class<?>> type;
+        private final WeakReference<ELResolver> resolver;
+        private final WeakReference<Method> method;
+        private final int updates;
+
+        private PropertyReader(Class<?> type, ELResolver resolver, Method method, int updates) {
+            this.type = type == null ? null : new WeakReference<Class<?>>(type);
+            this.resolver = resolver == null ? null : new WeakReference<>(resolver);
+            this.method = method == null ? null : new WeakReference<>(method);
+            this.updates = updates;
+        }
+
+        private Method getMethod(Class<?> type, ELResolver resolver) {
+            if (this.type == null || this.type.get() != type || !isFor(resolver)) {
+                return null;
+            }
+            return method.get();
+        }
+
+        private boolean isFor(ELResolver resolver) {
+            return this.resolver != null && this.resolver.get() == resolver;
+        }
+
+        private boolean canUpdate(ELResolver resolver) {
+            return updates < MAX_CACHE_UPDATES || !isFor(resolver);
+        }
+    }
+}
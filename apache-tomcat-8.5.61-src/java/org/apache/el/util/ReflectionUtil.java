@@ -16,6 +16,10 @@
  */
 package org.apache.el.util;
 
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -426,6 +430,41 @@ public class ReflectionUtil {
     }
 
 
+    /**
+     * Returns the method that {@link javax.el.BeanELResolver} uses to read the
+     * given property of the given bean.
+     *
+     * @param type     The class of the bean
+     * @param base     The bean
+     * @param property The name of the property
+     *
+     * @return the read method or <code>null</code> if the property is not
+     *         readable or if the method cannot be determined
+     */
+    /*
+     * This class duplicates code in javax.el.BeanELResolver. When making
+     * changes keep the code in sync. The interfaces of the bean are not
+     * searched so the method is only determined when running without a
+     * SecurityManager.
+     */
+    public static Method getReadMethod(Class<?> type, Object base, String property) {
+        if (System.getSecurityManager() != null) {
+            return null;
+        }
+        try {
+            BeanInfo info = Introspector.getBeanInfo(type);
+            for (PropertyDescriptor pd : info.getPropertyDescriptors()) {
+                if (pd.getName().equals(property)) {
+                    return getMethod(type, base, pd.getReadMethod());
+                }
+            }
+        } catch (IntrospectionException e) {
+            // Ignore
+        }
+        return null;
+    }
+
+
     /*
      * This class duplicates code in javax.el.Util. When making changes keep
      * the code in sync.
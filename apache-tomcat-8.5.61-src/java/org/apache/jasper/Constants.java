@@ -156,4 +156,20 @@ public class Constants {
      */
     public static final String XML_BLOCK_EXTERNAL_INIT_PARAM =
             "org.apache.jasper.XML_BLOCK_EXTERNAL";
+
+    /**
+     * Name of the ServletContext init-param that determines if the TLDs parsed
+     * from JARs are stored in the work directory of the web application and
+     * reused while the JARs are unchanged.
+     * <p>
+     * This must be kept in sync with org.apache.catalina.Globals
+     */
+    public static final String CACHE_JAR_TLDS_INIT_PARAM =
+            "org.apache.jasper.CACHE_JAR_TLDS";
+
+    /**
+     * The name of the directory within the work directory of a web application
+     * where the TLDs parsed from JARs are cached.
+     */
+    public static final String JAR_TLD_CACHE_DIR = "tld-cache";
 }
@@ -104,6 +104,12 @@ public final class EmbeddedServletOptions implements Options {
      */
     private boolean genStringAsCharArray = false;
 
+    /**
+     * Is template text that bypasses the buffer of the page to be generated as
+     * pre-encoded byte arrays?
+     */
+    private boolean genStringAsByteArray = false;
+
     private boolean errorOnUseBeanInvalidClassAttribute = true;
 
     /**
@@ -175,6 +181,21 @@ public final class EmbeddedServletOptions implements Options {
      */
     private boolean recompileOnFail = false;
 
+    /**
+     * Are changed JSPs recompiled in the background in development mode?
+     */
+    private boolean backgroundRecompile = false;
+
+    /**
+     * Number of threads used to recompile changed JSPs in the background.
+     */
+    private int backgroundRecompileThreads = 1;
+
+    /**
+     * Are JSPs compiled in memory?
+     */
+    private boolean compileInMemory = false;
+
     /**
      * Is generation of X-Powered-By response header enabled/disabled?
      */
@@ -291,6 +312,30 @@ public final class EmbeddedServletOptions implements Options {
         return recompileOnFail;
     }
 
+    /**
+     * Recompile changed JSPs in the background.
+     */
+    @Override
+    public boolean getBackgroundRecompile() {
+        return backgroundRecompile;
+    }
+
+    /**
+     * Number of background recompilation threads.
+     */
+    @Override
+    public int getBackgroundRecompileThreads() {
+        return backgroundRecompileThreads;
+    }
+
+    /**
+     * Compile JSPs in memory.
+     */
+    @Override
+    public boolean getCompileInMemory() {
+        return compileInMemory;
+    }
+
     /**
      * Is Jasper being used in development mode?
      */
@@ -323,6 +368,14 @@ public final class EmbeddedServletOptions implements Options {
         return this.genStringAsCharArray;
     }
 
+    /**
+     * Is template text to be generated as pre-encoded byte arrays?
+     */
+    @Override
+    public boolean genStringAsByteArray() {
+        return this.genStringAsByteArray;
+    }
+
     /**
      * Class ID for use in the plugin tag when the browser is IE.
      */
@@ -586,6 +639,44 @@ public final class EmbeddedServletOptions implements Options {
                 }
             }
         }
+
+        String backgroundRecompile = config.getInitParameter("backgroundRecompile");
+        if (backgroundRecompile != null) {
+            if (backgroundRecompile.equalsIgnoreCase("true")) {
+                this.backgroundRecompile = true;
+            } else if (backgroundRecompile.equalsIgnoreCase("false")) {
+                this.backgroundRecompile = false;
+            } else {
+                if (log.isWarnEnabled()) {
+                    log.warn(Localizer.getMessage("jsp.warning.backgroundRecompile"));
+                }
+            }
+        }
+
+        String backgroundRecompileThreads = config.getInitParameter("backgroundRecompileThreads");
+        if (backgroundRecompileThreads != null) {
+            try {
+                this.backgroundRecompileThreads = Integer.parseInt(backgroundRecompileThreads);
+            } catch (NumberFormatException ex) {
+                if (log.isWarnEnabled()) {
+                    log.warn(Localizer.getMessage("jsp.warning.backgroundRecompileThreads"));
+                }
+            }
+        }
+
+        String compileInMemory = config.getInitParameter("compileInMemory");
+        if (compileInMemory != null) {
+            if (compileInMemory.equalsIgnoreCase("true")) {
+                this.compileInMemory = true;
+            } else if (compileInMemory.equalsIgnoreCase("false")) {
+                this.compileInMemory = false;
+            } else {
+                if (log.isWarnEnabled()) {
+                    log.warn(Localizer.getMessage("jsp.warning.compileInMemory"));
+                }
+            }
+        }
+
         String development = config.getInitParameter("development");
         if (development != null) {
             if (development.equalsIgnoreCase("true")) {
@@ -638,6 +729,19 @@ public final class EmbeddedServletOptions implements Options {
             }
         }
 
+        String genByteArray = config.getInitParameter("genStringAsByteArray");
+        if (genByteArray != null) {
+            if (genByteArray.equalsIgnoreCase("true")) {
+                genStringAsByteArray = true;
+            } else if (genByteArray.equalsIgnoreCase("false")) {
+                genStringAsByteArray = false;
+            } else {
+                if (log.isWarnEnabled()) {
+                    log.warn(Localizer.getMessage("jsp.warning.genbytearray"));
+                }
+            }
+        }
+
         String errBeanClass =
                 config.getInitParameter("errorOnUseBeanInvalidClassAttribute");
         if (errBeanClass != null) {
@@ -176,6 +176,7 @@ public class JspC extends Task implements Options {
     protected ClassLoader loader = null;
     protected boolean trimSpaces = false;
     protected boolean genStringAsCharArray = false;
+    protected boolean genStringAsByteArray = false;
     protected boolean validateTld;
     protected boolean validateXml;
     protected boolean blockExternal = true;
@@ -628,6 +629,36 @@ public class JspC extends Task implements Options {
     }
 
 
+    /**
+     * In JspC this always returns <code>false</code>.
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean getBackgroundRecompile() {
+        return false;
+    }
+
+
+    /**
+     * In JspC this always returns <code>0</code>.
+     * {@inheritDoc}
+     */
+    @Override
+    public int getBackgroundRecompileThreads() {
+        return 0;
+    }
+
+
+    /**
+     * In JspC this always returns <code>false</code>.
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean getCompileInMemory() {
+        return false;
+    }
+
+
     /**
      * In JspC this always returns <code>false</code>.
      * {@inheritDoc}
@@ -692,6 +723,27 @@ public class JspC extends Task implements Options {
         return genStringAsCharArray;
     }
 
+    /**
+     * Determines whether template text is to be encoded with the character set
+     * of the page when the page is compiled and generated as byte arrays. Only
+     * template text that bypasses the buffer of the page is generated as byte
+     * arrays. See {@link Options#genStringAsByteArray()}.
+     *
+     * @param genStringAsByteArray true if template text is to be generated as
+     *                             byte arrays, false otherwise
+     */
+    public void setGenStringAsByteArray(boolean genStringAsByteArray) {
+        this.genStringAsByteArray = genStringAsByteArray;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean genStringAsByteArray() {
+        return genStringAsByteArray;
+    }
+
     /**
      * Sets the class-id value to be sent to Internet Explorer when using
      * &lt;jsp:plugin&gt; tags.
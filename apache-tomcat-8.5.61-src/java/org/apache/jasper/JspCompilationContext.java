@@ -183,7 +183,8 @@ public class JspCompilationContext {
             jspLoader = new JasperLoader
                     (new URL[]{baseUrl},
                             getClassLoader(),
-                            rctxt.getPermissionCollection());
+                            rctxt.getPermissionCollection(),
+                            rctxt.getCompiledClasses());
         }
         return jspLoader;
     }
@@ -204,6 +204,20 @@ public interface Options {
      */
     public boolean genStringAsCharArray();
 
+    /**
+     * Indicates whether the template text of a page is to be encoded once, with
+     * the character set of the page, and generated as byte arrays so it can be
+     * written to the response without being encoded again for every request.
+     * Text written to the buffer of the page is still encoded when the buffer
+     * is flushed, so only the template text of unbuffered pages and blocks of
+     * template text at least as large as the buffer are generated as byte
+     * arrays. Pages with a buffer larger than 16kB never use byte arrays.
+     *
+     * @return <code>true</code> if template text is to be generated as byte
+     * arrays, <code>false</code> otherwise
+     */
+    public boolean genStringAsByteArray();
+
     /**
      * @return modification test interval.
      */
@@ -215,6 +229,33 @@ public interface Options {
      */
     public boolean getRecompileOnFail();
 
+    /**
+     * In development mode, should JSPs be recompiled by background threads
+     * when the file system reports a change rather than being checked for
+     * modification on access?
+     *
+     * @return <code>true</code> if changed JSPs are recompiled in the
+     *         background
+     */
+    public boolean getBackgroundRecompile();
+
+    /**
+     * @return the number of threads used to recompile changed JSPs in the
+     * background.
+     */
+    public int getBackgroundRecompileThreads();
+
+    /**
+     * Should JSPs be compiled in memory? The generated source is passed
+     * directly to the Java compiler and the resulting classes are loaded from
+     * memory. The source and the classes are only written to the scratch
+     * directory if {@link #getKeepGenerated()} returns <code>true</code>.
+     * Ignored by compilers that do not support it.
+     *
+     * @return <code>true</code> if JSPs are compiled in memory
+     */
+    public boolean getCompileInMemory();
+
     /**
      * @return <code>true</code> is caching is enabled
      * (used for precompilation).
@@ -17,9 +17,11 @@
 
 package org.apache.jasper.compiler;
 
+import java.io.CharArrayWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
@@ -68,6 +70,18 @@ public abstract class Compiler {
 
     protected Node.Nodes pageNodes;
 
+    /**
+     * The generated source when compiling in memory. Only available while
+     * the JSP is being compiled.
+     */
+    private CharArrayWriter generatedSource;
+
+    /**
+     * The last modified time of the JSP when it was compiled in memory or -1
+     * if the classes are not held in memory.
+     */
+    private long compiledLastModified = -1;
+
 
     // ------------------------------------------------------------ Constructor
 
@@ -94,6 +108,42 @@ public abstract class Compiler {
     }
 
 
+    /**
+     * Does this compiler support compiling the generated source without
+     * reading it from the scratch directory and providing the classes to
+     * {@link #storeCompiledClasses(Map)} rather than writing class files?
+     * This implementation returns <code>false</code>.
+     *
+     * @return <code>true</code> if in memory compilation is supported
+     */
+    protected boolean isInMemoryCompilationSupported() {
+        return false;
+    }
+
+
+    /**
+     * @return <code>true</code> if the JSP is compiled in memory
+     */
+    protected boolean isCompileInMemory() {
+        return options.getCompileInMemory() && isInMemoryCompilationSupported();
+    }
+
+
+    /**
+     * Retrieves the generated Java source of the JSP page that is being
+     * compiled in memory.
+     *
+     * @return the generated source or <code>null</code> if the JSP is not
+     *         being compiled in memory
+     */
+    public char[] getGeneratedSource() {
+        if (generatedSource == null) {
+            return null;
+        }
+        return generatedSource.toCharArray();
+    }
+
+
     /**
      * Compile the jsp file into equivalent servlet in .java file
      *
@@ -213,8 +263,9 @@ public abstract class Compiler {
                 // generate prototype .java file for the tag file
                 try (ServletWriter writer = setupContextWriter(javaFileName)) {
                     Generator.generate(writer, this, pageNodes);
-                    return null;
                 }
+                writeGeneratedSource(javaFileName);
+                return null;
             }
 
             // Validate and process attributes - don't re-validate the
@@ -254,6 +305,7 @@ public abstract class Compiler {
             try (ServletWriter writer = setupContextWriter(javaFileName)) {
                 Generator.generate(writer, this, pageNodes);
             }
+            writeGeneratedSource(javaFileName);
 
             // The writer is only used during the compile, dereference
             // it in the JspCompilationContext when done to allow it
@@ -301,6 +353,13 @@ public abstract class Compiler {
         String javaEncoding = ctxt.getOptions().getJavaEncoding();
         OutputStreamWriter osw = null;
 
+        if (isCompileInMemory()) {
+            generatedSource = new CharArrayWriter();
+            writer = new ServletWriter(new PrintWriter(generatedSource));
+            ctxt.setWriter(writer);
+            return writer;
+        }
+
         try {
             osw = new OutputStreamWriter(
                     new FileOutputStream(javaFileName), javaEncoding);
@@ -314,6 +373,46 @@ public abstract class Compiler {
         return writer;
     }
 
+    /*
+     * When compiling in memory the generated source is only written to the
+     * scratch directory if it is to be kept.
+     */
+    private void writeGeneratedSource(String javaFileName)
+            throws IOException {
+        if (generatedSource == null || !ctxt.keepGenerated()) {
+            return;
+        }
+        try (OutputStreamWriter osw = new OutputStreamWriter(new FileOutputStream(javaFileName),
+                ctxt.getOptions().getJavaEncoding())) {
+            generatedSource.writeTo(osw);
+        }
+    }
+
+    /**
+     * Make the classes that were compiled in memory available to the class
+     * loaders of the web application. If the generated files are kept, the
+     * classes are also written to the scratch directory so they can be used
+     * after a restart.
+     *
+     * @param classes The class bytes keyed by class name
+     * @throws IOException Error writing the class files
+     */
+    protected void storeCompiledClasses(Map<String, byte[]> classes)
+            throws IOException {
+        ctxt.getRuntimeContext().getCompiledClasses().putAll(classes);
+        if (!ctxt.keepGenerated()) {
+            return;
+        }
+        String outputDir = options.getScratchDir().getAbsolutePath();
+        for (Entry<String, byte[]> entry : classes.entrySet()) {
+            File classFile = new File(outputDir,
+                    entry.getKey().replace('.', '/') + ".class");
+            try (FileOutputStream fos = new FileOutputStream(classFile)) {
+                fos.write(entry.getValue());
+            }
+        }
+    }
+
     /**
      * Servlet compilation. This compiles the generated sources into
      * Servlets.
@@ -374,7 +473,8 @@ public abstract class Compiler {
             final Long jspLastModified = ctxt.getLastModified(ctxt.getJspFile());
             String[] smap = generateJava();
             File javaFile = new File(ctxt.getServletJavaFileName());
-            if (!javaFile.setLastModified(jspLastModified.longValue())) {
+            if ((generatedSource == null || ctxt.keepGenerated()) &&
+                    !javaFile.setLastModified(jspLastModified.longValue())) {
                 throw new JasperException(Localizer.getMessage("jsp.error.setLastModified", javaFile));
             }
             if (compileClass) {
@@ -382,18 +482,25 @@ public abstract class Compiler {
                 // Fix for bugzilla 41606
                 // Set JspServletWrapper.servletClassLastModifiedTime after successful compile
                 File targetFile = new File(ctxt.getClassFileName());
+                boolean compiled = false;
                 if (targetFile.exists()) {
                     if (!targetFile.setLastModified(jspLastModified.longValue())) {
                         throw new JasperException(
                                 Localizer.getMessage("jsp.error.setLastModified", targetFile));
                     }
-                    if (jsw != null) {
-                        jsw.setServletClassLastModifiedTime(
-                                jspLastModified.longValue());
-                    }
+                    compiled = true;
+                }
+                if (generatedSource != null) {
+                    compiledLastModified = jspLastModified.longValue();
+                    compiled = true;
+                }
+                if (compiled && jsw != null) {
+                    jsw.setServletClassLastModifiedTime(
+                            jspLastModified.longValue());
                 }
             }
         } finally {
+            generatedSource = null;
             if (tfp != null && ctxt.isPrototypeMode()) {
                 tfp.removeProtoTypeFiles(null);
             }
@@ -465,10 +572,16 @@ public abstract class Compiler {
         } else {
             targetFile = new File(ctxt.getServletJavaFileName());
         }
-        if (!targetFile.exists()) {
-            return true;
+        long targetLastModified;
+        if (checkClass && compiledLastModified >= 0) {
+            // Compiled in memory
+            targetLastModified = compiledLastModified;
+        } else {
+            if (!targetFile.exists()) {
+                return true;
+            }
+            targetLastModified = targetFile.lastModified();
         }
-        long targetLastModified = targetFile.lastModified();
         if (checkClass && jsw != null) {
             jsw.setServletClassLastModifiedTime(targetLastModified);
         }
@@ -587,6 +700,10 @@ public abstract class Compiler {
     }
 
     public void removeGeneratedClassFiles() {
+        if (compiledLastModified >= 0 || isCompileInMemory()) {
+            ctxt.getRuntimeContext().removeCompiledClasses(ctxt.getFQCN());
+            compiledLastModified = -1;
+        }
         try {
             File classFile = new File(ctxt.getClassFileName());
             if (log.isDebugEnabled())
@@ -24,6 +24,8 @@ import java.beans.PropertyDescriptor;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -125,6 +127,8 @@ class Generator {
 
     private GenBuffer charArrayBuffer;
 
+    private final Charset templateTextCharset;
+
     private final DateFormat timestampFormat;
 
     private final ELInterpreter elInterpreter;
@@ -927,6 +931,8 @@ class Generator {
 
         private HashMap<String, String> textMap;
 
+        private HashMap<String, String> byteArrayMap;
+
 
         public GenerateVisitor(boolean isTagFile, ServletWriter out,
                                ArrayList<GenBuffer> methodsBuffered,
@@ -2117,6 +2123,73 @@ class Generator {
                 return;
             }
 
+            // Text written to the buffer of the JspWriter is encoded by the
+            // response when the buffer is flushed so only text that bypasses
+            // the buffer is generated as byte arrays
+            int buffer = pageInfo.getBuffer();
+            if (templateTextCharset != null &&
+                    (buffer == 0 || buffer <= 16384 && textSize >= buffer)) {
+                // Generate Strings as byte arrays encoded with the charset of
+                // the page so they are not encoded for every request
+                ServletWriter caOut;
+                if (charArrayBuffer == null) {
+                    charArrayBuffer = new GenBuffer();
+                    caOut = charArrayBuffer.getOut();
+                    caOut.pushIndent();
+                    textMap = new HashMap<>();
+                } else {
+                    caOut = charArrayBuffer.getOut();
+                }
+                if (byteArrayMap == null) {
+                    byteArrayMap = new HashMap<>();
+                    caOut.printin("static final java.nio.charset.Charset _jspx_template_charset = ");
+                    caOut.print("java.nio.charset.Charset.forName(");
+                    caOut.print(quote(templateTextCharset.name()));
+                    caOut.println(");");
+                }
+                // Same limit as for char arrays
+                int textIndex = 0;
+                int textLength = text.length();
+                while (textIndex < textLength) {
+                    int len = 0;
+                    if (textLength - textIndex > 16384) {
+                        len = 16384;
+                    } else {
+                        len = textLength - textIndex;
+                    }
+                    String output = text.substring(textIndex, textIndex + len);
+                    if (buffer != 0 && len < buffer) {
+                        // The last part of the text fits in the buffer
+                        n.setBeginJavaLine(out.getJavaLine());
+                        out.printil("out.write(" + quote(output) + ");");
+                        n.setEndJavaLine(out.getJavaLine());
+                        textIndex = textIndex + len;
+                        continue;
+                    }
+                    String byteArrayName = byteArrayMap.get(output);
+                    if (byteArrayName == null) {
+                        byteArrayName = "_jspx_byte_array_" + charArrayCount++;
+                        byteArrayMap.put(output, byteArrayName);
+                        caOut.printin("static final byte[] ");
+                        caOut.print(byteArrayName);
+                        caOut.print(" = org.apache.jasper.runtime.JspRuntimeLibrary.encodeTemplateText(");
+                        caOut.print(quote(output));
+                        caOut.println(", _jspx_template_charset);");
+                    }
+
+                    n.setBeginJavaLine(out.getJavaLine());
+                    out.printin("org.apache.jasper.runtime.JspRuntimeLibrary.writeTemplateText(out, ");
+                    out.print(quote(output));
+                    out.print(", ");
+                    out.print(byteArrayName);
+                    out.println(", _jspx_template_charset);");
+                    n.setEndJavaLine(out.getJavaLine());
+
+                    textIndex = textIndex + len;
+                }
+                return;
+            }
+
             if (ctxt.getOptions().genStringAsCharArray()) {
                 // Generate Strings as char arrays, for performance
                 ServletWriter caOut;
@@ -3508,7 +3581,7 @@ class Generator {
             out.printMultiLn(fragmentHelperClass.toString());
         }
 
-        // Append char array declarations
+        // Append char and byte array declarations
         if (charArrayBuffer != null) {
             out.printMultiLn(charArrayBuffer.toString());
         }
@@ -3602,6 +3675,11 @@ class Generator {
         beanInfo = pageInfo.getBeanRepository();
         varInfoNames = pageInfo.getVarInfoNames();
         breakAtLF = ctxt.getOptions().getMappedFile();
+        if (ctxt.getOptions().genStringAsByteArray() && !ctxt.isTagFile()) {
+            templateTextCharset = getTemplateTextCharset(pageInfo.getContentType());
+        } else {
+            templateTextCharset = null;
+        }
         if (isPoolingEnabled) {
             tagHandlerPoolNames = new Vector<>();
         } else {
@@ -3611,6 +3689,50 @@ class Generator {
         timestampFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
     }
 
+    /**
+     * Determine the character set template text is to be encoded with. Tag
+     * files have no character set of their own and are not passed to this
+     * method. Only character sets that encode every character independently
+     * of the characters around it are used since the encoded text is mixed
+     * with the output of the response encoder.
+     *
+     * @param contentType The content type of the page
+     * @return The character set or <code>null</code> if template text has to
+     *         be encoded by the response
+     */
+    private static Charset getTemplateTextCharset(String contentType) {
+        // The response uses ISO-8859-1 unless the page declares a charset
+        String charsetName = "ISO-8859-1";
+        int loc = contentType.indexOf("charset=");
+        if (loc != -1) {
+            charsetName = contentType.substring(loc + 8).trim();
+            loc = charsetName.indexOf(';');
+            if (loc != -1) {
+                charsetName = charsetName.substring(0, loc).trim();
+            }
+            if (charsetName.length() > 1 && charsetName.charAt(0) == '"' &&
+                    charsetName.charAt(charsetName.length() - 1) == '"') {
+                charsetName = charsetName.substring(1, charsetName.length() - 1);
+            }
+        }
+
+        Charset charset;
+        try {
+            charset = Charset.forName(charsetName);
+        } catch (IllegalArgumentException e) {
+            // Let the response report it
+            return null;
+        }
+        if (!charset.canEncode()) {
+            return null;
+        }
+        if (StandardCharsets.UTF_8.equals(charset) ||
+                charset.newEncoder().maxBytesPerChar() == 1) {
+            return charset;
+        }
+        return null;
+    }
+
     /**
      * The main entry for Generator.
      *
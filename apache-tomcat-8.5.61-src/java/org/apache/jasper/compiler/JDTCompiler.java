@@ -30,6 +30,7 @@ import java.io.Reader;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.StringTokenizer;
@@ -92,6 +93,17 @@ public class JDTCompiler extends org.apache.jasper.compiler.Compiler {
 
     private final Log log = LogFactory.getLog(JDTCompiler.class); // must not be static
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The generated source is compiled from memory and the class files are
+     * provided by the compiler requestor so they need not be written.
+     */
+    @Override
+    protected boolean isInMemoryCompilationSupported() {
+        return true;
+    }
+
     /**
      * Compile the servlet from .java file to .class file
      */
@@ -113,6 +125,9 @@ public class JDTCompiler extends org.apache.jasper.compiler.Compiler {
         String[] fileNames = new String[]{sourceFile};
         String[] classNames = new String[]{targetClassName};
         final ArrayList<JavacErrorDetail> problemList = new ArrayList<>();
+        final boolean inMemory = isCompileInMemory();
+        // Classes compiled in memory keyed by class name
+        final Map<String, byte[]> compiledClasses = new LinkedHashMap<>();
 
         class CompilationUnit implements ICompilationUnit {
 
@@ -131,6 +146,9 @@ public class JDTCompiler extends org.apache.jasper.compiler.Compiler {
 
             @Override
             public char[] getContents() {
+                if (inMemory) {
+                    return getGeneratedSource();
+                }
                 char[] result = null;
                 try (FileInputStream is = new FileInputStream(sourceFile);
                      InputStreamReader isr = new InputStreamReader(is, ctxt.getOptions().getJavaEncoding());
@@ -491,6 +509,16 @@ public class JDTCompiler extends org.apache.jasper.compiler.Compiler {
                         for (ClassFile classFile : classFiles) {
                             char[][] compoundName =
                                     classFile.getCompoundName();
+                            if (inMemory) {
+                                StringBuilder className = new StringBuilder();
+                                for (int j = 0; j < compoundName.length; j++) {
+                                    if (j > 0)
+                                        className.append('.');
+                                    className.append(compoundName[j]);
+                                }
+                                compiledClasses.put(className.toString(), classFile.getBytes());
+                                continue;
+                            }
                             StringBuilder classFileName = new StringBuilder(outputDir).append('/');
                             for (int j = 0;
                                  j < compoundName.length; j++) {
@@ -546,7 +574,7 @@ public class JDTCompiler extends org.apache.jasper.compiler.Compiler {
                 problemFactory);
         compiler.compile(compilationUnits);
 
-        if (!ctxt.keepGenerated()) {
+        if (!inMemory && !ctxt.keepGenerated()) {
             File javaFile = new File(ctxt.getServletJavaFileName());
             if (!javaFile.delete()) {
                 throw new JasperException(Localizer.getMessage(
@@ -566,6 +594,16 @@ public class JDTCompiler extends org.apache.jasper.compiler.Compiler {
                     + (t2 - t1) + "ms");
         }
 
+        if (inMemory) {
+            // JSR45 Support
+            if (!ctxt.isPrototypeMode() && !options.isSmapSuppressed()) {
+                SmapUtil.installSmap(smap, ctxt.getClassFileName(), targetClassName,
+                        compiledClasses);
+            }
+            storeCompiledClasses(compiledClasses);
+            return;
+        }
+
         if (ctxt.isPrototypeMode()) {
             return;
         }
@@ -18,6 +18,7 @@
 package org.apache.jasper.compiler;
 
 import java.io.BufferedReader;
+import java.io.CharArrayReader;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -100,8 +101,8 @@ public class JavacErrorDetail {
                 // Read both files in, so we can inspect them
                 String[] jspLines = readFile(is);
 
-                try (FileInputStream fis = new FileInputStream(ctxt.getServletJavaFileName())) {
-                    String[] javaLines = readFile(fis);
+                try (BufferedReader javaReader = openJavaFile(ctxt)) {
+                    String[] javaLines = readLines(javaReader);
 
                     if (jspLines.length < jspBeginLineNum) {
                         // Avoid ArrayIndexOutOfBoundsException
@@ -218,7 +219,23 @@ public class JavacErrorDetail {
      * the JSP and generated Java file when generating error messages.
      */
     private String[] readFile(InputStream s) throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(s));
+        return readLines(new BufferedReader(new InputStreamReader(s)));
+    }
+
+    private static BufferedReader openJavaFile(JspCompilationContext ctxt)
+            throws IOException {
+        // The generated source is not written to a file when compiling in
+        // memory
+        Compiler compiler = ctxt.getCompiler();
+        char[] source = (compiler == null) ? null : compiler.getGeneratedSource();
+        if (source != null) {
+            return new BufferedReader(new CharArrayReader(source));
+        }
+        return new BufferedReader(new InputStreamReader(
+                new FileInputStream(ctxt.getServletJavaFileName())));
+    }
+
+    private String[] readLines(BufferedReader reader) throws IOException {
         List<String> lines = new ArrayList<>();
         String line;
 
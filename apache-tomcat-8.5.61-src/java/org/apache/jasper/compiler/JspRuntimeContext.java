@@ -23,14 +23,32 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.CodeSource;
 import java.security.PermissionCollection;
 import java.security.Policy;
 import java.security.cert.Certificate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.ServletContext;
@@ -44,6 +62,7 @@ import org.apache.jasper.servlet.JspServletWrapper;
 import org.apache.jasper.util.FastRemovalDequeue;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.ContextBind;
 
 
 /**
@@ -55,6 +74,11 @@ import org.apache.juli.logging.LogFactory;
  * which included it is recompiled.
  * <p>
  * Only used if a web application context is a directory.
+ * <p>
+ * In development mode, JSP pages may instead be recompiled by a pool of
+ * background threads when a change to the web application directory is
+ * reported by a {@link WatchService}. Requests continue to be served by the
+ * previous version of a page until the new version is ready.
  *
  * @author Glenn L. Nielsen
  */
@@ -89,6 +113,7 @@ public final class JspRuntimeContext {
 
         this.context = context;
         this.options = options;
+        this.contextBind = (ContextBind) context.getAttribute(ContextBind.class.getName());
 
         // Get the parent class loader
         ClassLoader loader = Thread.currentThread().getContextClassLoader();
@@ -143,6 +168,12 @@ public final class JspRuntimeContext {
 
         /* Init parameter is in seconds, locally we use milliseconds */
         jspIdleTimeout = options.getJspIdleTimeout() * 1000;
+
+        if (options.getDevelopment()
+                && appBase != null
+                && options.getBackgroundRecompile()) {
+            startBackgroundRecompile(appBase);
+        }
     }
 
     // ----------------------------------------------------- Instance Variables
@@ -166,6 +197,12 @@ public final class JspRuntimeContext {
      */
     private final Map<String, JspServletWrapper> jsps = new ConcurrentHashMap<>();
 
+    /**
+     * Classes of JSP pages and tag files that were compiled in memory, keyed
+     * by class name.
+     */
+    private final Map<String, byte[]> compiledClasses = new ConcurrentHashMap<>();
+
     /**
      * Keeps JSP pages ordered by last access.
      */
@@ -176,6 +213,42 @@ public final class JspRuntimeContext {
      */
     private volatile boolean compileCheckInProgress = false;
 
+    /**
+     * Delay in milliseconds to wait for further changes before recompiling so
+     * that several files saved together trigger a single check.
+     */
+    private static final long BACKGROUND_RECOMPILE_DELAY = 100;
+
+    /**
+     * The container may cache web application resources (for five seconds by
+     * default in Tomcat) so a change may not be visible to the compiler as
+     * soon as it is reported. JSPs are checked again every
+     * {@link #BACKGROUND_RECHECK_INTERVAL} milliseconds for this many
+     * milliseconds after the last change.
+     */
+    private static final long BACKGROUND_RECHECK_PERIOD = 6000;
+    private static final long BACKGROUND_RECHECK_INTERVAL = 1000;
+
+    /**
+     * Watches the web application directory when changed JSPs are recompiled
+     * in the background.
+     */
+    private WatchService watchService = null;
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private ExecutorService backgroundCompiler = null;
+
+    /**
+     * Binds the web application's class loader and naming context to the
+     * background compilation threads, if the container provides it.
+     */
+    private final ContextBind contextBind;
+
+    /**
+     * JspServletWrappers that are waiting for a background compilation.
+     */
+    private final Set<JspServletWrapper> pendingCompiles =
+            Collections.newSetFromMap(new ConcurrentHashMap<JspServletWrapper, Boolean>());
+
 
     // ------------------------------------------------------ Public Methods
 
@@ -208,6 +281,31 @@ public final class JspRuntimeContext {
         jsps.remove(jspUri);
     }
 
+    /**
+     * Get the classes that were compiled in memory. The class loaders of the
+     * JSP pages and tag files of this web application load classes from here
+     * before looking in the scratch directory.
+     *
+     * @return the class bytes keyed by class name
+     */
+    public Map<String, byte[]> getCompiledClasses() {
+        return compiledClasses;
+    }
+
+    /**
+     * Remove a class that was compiled in memory and its inner classes.
+     *
+     * @param className The name of the class to remove
+     */
+    public void removeCompiledClasses(String className) {
+        String innerClassPrefix = className + '$';
+        for (String name : compiledClasses.keySet()) {
+            if (name.equals(className) || name.startsWith(innerClassPrefix)) {
+                compiledClasses.remove(name);
+            }
+        }
+    }
+
     /**
      * Push a newly compiled JspServletWrapper into the queue at first
      * execution of jsp. Destroy any JSP that has been replaced in the queue.
@@ -290,6 +388,7 @@ public final class JspRuntimeContext {
      * Process a "destroy" event for this web application context.
      */
     public void destroy() {
+        stopBackgroundRecompile();
         for (JspServletWrapper jspServletWrapper : jsps.values()) {
             jspServletWrapper.destroy();
         }
@@ -414,6 +513,23 @@ public final class JspRuntimeContext {
         return compileCheckInProgress;
     }
 
+    /**
+     * @return <code>true</code> if changed JSPs are recompiled in the
+     *         background in which case they need not be checked for
+     *         modification on access
+     */
+    public boolean isBackgroundRecompileEnabled() {
+        return backgroundCompiler != null;
+    }
+
+    /**
+     * @return the means to bind the web application to the current thread
+     *         or <code>null</code> if the container does not provide one
+     */
+    public ContextBind getContextBind() {
+        return contextBind;
+    }
+
     /**
      * @return the classpath that is passed off to the Java compiler.
      */
@@ -554,10 +670,188 @@ public final class JspRuntimeContext {
         return new SecurityHolder(source, permissions);
     }
 
+    private void startBackgroundRecompile(String appBase) {
+        Path root = Paths.get(appBase);
+        try {
+            watchService = root.getFileSystem().newWatchService();
+            registerDirectories(root);
+        } catch (IOException e) {
+            log.warn(Localizer.getMessage("jsp.warning.backgroundRecompileWatch", appBase), e);
+            stopBackgroundRecompile();
+            return;
+        }
+
+        String name = "JspBackgroundRecompile[" + context.getContextPath() + "]-";
+        backgroundCompiler = Executors.newFixedThreadPool(
+                Math.max(1, options.getBackgroundRecompileThreads()),
+                new BackgroundRecompileThreadFactory(name, parentClassLoader));
+        Thread watcher = new BackgroundRecompileThreadFactory(name + "watcher-", parentClassLoader)
+                .newThread(new ChangeWatcher());
+        watcher.start();
+
+        if (log.isDebugEnabled()) {
+            log.debug(Localizer.getMessage("jsp.message.backgroundRecompile",
+                    appBase, context.getContextPath()));
+        }
+    }
+
+
+    private void stopBackgroundRecompile() {
+        if (watchService != null) {
+            try {
+                // Also stops the ChangeWatcher
+                watchService.close();
+            } catch (IOException e) {
+                log.debug(Localizer.getMessage("jsp.warning.backgroundRecompileWatch",
+                        context.getRealPath("/")), e);
+            }
+        }
+        if (backgroundCompiler != null) {
+            backgroundCompiler.shutdown();
+        }
+    }
+
+
+    private void registerDirectories(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                    throws IOException {
+                WatchKey key = dir.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirectories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+
+    /**
+     * Schedule a background compilation of every loaded JSP page. The same
+     * check that is made on access in development mode determines whether a
+     * page, or any file it depends on such as an included file or a tag file,
+     * has changed so only the pages affected by the change are recompiled.
+     */
+    private void scheduleBackgroundRecompile() {
+        for (JspServletWrapper jsw : jsps.values()) {
+            // Tag files are compiled when the pages that use them are compiled
+            if (!jsw.isTagFile() && pendingCompiles.add(jsw)) {
+                try {
+                    backgroundCompiler.execute(new BackgroundRecompile(jsw));
+                } catch (RejectedExecutionException e) {
+                    // Stopping
+                    pendingCompiles.remove(jsw);
+                    return;
+                }
+            }
+        }
+    }
+
+
+    private class ChangeWatcher implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                long recheckUntil = 0;
+                while (true) {
+                    WatchKey key;
+                    if (recheckUntil > System.currentTimeMillis()) {
+                        key = watchService.poll(BACKGROUND_RECHECK_INTERVAL, TimeUnit.MILLISECONDS);
+                    } else {
+                        key = watchService.take();
+                    }
+                    if (key != null) {
+                        // Wait for related changes so they are handled together
+                        while (key != null) {
+                            processEvents(key);
+                            key = watchService.poll(BACKGROUND_RECOMPILE_DELAY, TimeUnit.MILLISECONDS);
+                        }
+                        recheckUntil = System.currentTimeMillis() + BACKGROUND_RECHECK_PERIOD;
+                    }
+                    scheduleBackgroundRecompile();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // Stopped
+            }
+        }
+
+        private void processEvents(WatchKey key) {
+            Path dir = watchedDirectories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (dir != null && event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    Path child = dir.resolve((Path) event.context());
+                    if (Files.isDirectory(child)) {
+                        try {
+                            registerDirectories(child);
+                        } catch (IOException e) {
+                            log.warn(Localizer.getMessage(
+                                    "jsp.warning.backgroundRecompileWatch", child), e);
+                        }
+                    }
+                }
+            }
+            if (!key.reset()) {
+                watchedDirectories.remove(key);
+            }
+        }
+    }
+
+
+    private class BackgroundRecompile implements Runnable {
+
+        private final JspServletWrapper jsw;
+
+        BackgroundRecompile(JspServletWrapper jsw) {
+            this.jsw = jsw;
+        }
+
+        @Override
+        public void run() {
+            // Changes made from now on need another compilation
+            pendingCompiles.remove(jsw);
+            try {
+                jsw.backgroundCompile();
+            } catch (FileNotFoundException ex) {
+                jsw.getJspEngineContext().incrementRemoved();
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                jsw.getServletContext().log(Localizer.getMessage(
+                        "jsp.error.backgroundRecompile", jsw.getJspUri()), t);
+            }
+        }
+    }
+
+
+    private static class BackgroundRecompileThreadFactory implements ThreadFactory {
+
+        private final String namePrefix;
+        private final ClassLoader contextClassLoader;
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        BackgroundRecompileThreadFactory(String namePrefix, ClassLoader contextClassLoader) {
+            this.namePrefix = namePrefix;
+            this.contextClassLoader = contextClassLoader;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, namePrefix + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            t.setContextClassLoader(contextClassLoader);
+            return t;
+        }
+    }
+
+
     private void unloadJspServletWrapper(JspServletWrapper jsw) {
         removeWrapper(jsw.getJspUri());
         synchronized (jsw) {
             jsw.destroy();
+            // The page is compiled again if it is accessed again
+            removeCompiledClasses(jsw.getJspEngineContext().getFQCN());
         }
         jspUnloadCount.incrementAndGet();
     }
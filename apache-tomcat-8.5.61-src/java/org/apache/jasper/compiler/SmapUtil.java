@@ -26,6 +26,7 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -165,6 +166,40 @@ public class SmapUtil {
         }
     }
 
+    /**
+     * Install the SMAPs into classes that were compiled in memory.
+     *
+     * @param smap          The SMAPs as returned by
+     *                      {@link #generateSmap(JspCompilationContext, Node.Nodes)}
+     *                      which are keyed by class file name
+     * @param classFileName The class file name of the main class
+     * @param className     The name of the main class
+     * @param classes       The class bytes keyed by class name. The bytes of
+     *                      each class for which there is a SMAP are replaced.
+     *
+     * @throws IOException Error installing an SMAP
+     */
+    public static void installSmap(String[] smap, String classFileName,
+            String className, Map<String, byte[]> classes) throws IOException {
+        if (smap == null) {
+            return;
+        }
+
+        // Inner class files are named after the class file of the main class
+        String classFilePrefix = classFileName.substring(0, classFileName.indexOf(".class"));
+        for (int i = 0; i < smap.length; i += 2) {
+            String name = className + smap[i].substring(
+                    classFilePrefix.length(), smap[i].length() - ".class".length());
+            byte[] bytes = classes.get(name);
+            if (bytes == null) {
+                throw new FileNotFoundException("no such class: " + name);
+            }
+            SDEInstaller installer = new SDEInstaller(bytes,
+                    smap[i + 1].getBytes(StandardCharsets.ISO_8859_1));
+            classes.put(name, installer.install());
+        }
+    }
+
     //*********************************************************************
     // Private utilities
 
@@ -219,6 +254,17 @@ public class SmapUtil {
             gen = new byte[orig.length + sdeAttr.length + 100];
         }
 
+        SDEInstaller(byte[] inClass, byte[] sdeAttr) {
+            this.sdeAttr = sdeAttr;
+            orig = inClass;
+            gen = new byte[orig.length + sdeAttr.length + 100];
+        }
+
+        byte[] install() throws IOException {
+            addSDE();
+            return Arrays.copyOf(gen, genPos);
+        }
+
         void install(File outClassFile) throws IOException {
             // do it
             addSDE();
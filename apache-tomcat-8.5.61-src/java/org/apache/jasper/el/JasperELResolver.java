@@ -18,11 +18,14 @@
 package org.apache.jasper.el;
 
 import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.el.ArrayELResolver;
 import javax.el.BeanELResolver;
 import javax.el.CompositeELResolver;
+import javax.el.ELClass;
 import javax.el.ELContext;
 import javax.el.ELException;
 import javax.el.ELResolver;
@@ -34,21 +37,27 @@ import javax.el.StaticFieldELResolver;
 import javax.servlet.jsp.el.ImplicitObjectELResolver;
 import javax.servlet.jsp.el.ScopedAttributeELResolver;
 
+import org.apache.el.lang.CompilableELResolver;
+import org.apache.el.stream.StreamELResolverImpl;
+
 /**
  * Jasper-specific CompositeELResolver that optimizes certain functions to avoid
  * unnecessary resolver calls.
  */
-public class JasperELResolver extends CompositeELResolver {
+public class JasperELResolver extends CompositeELResolver implements CompilableELResolver {
 
     private static final int STANDARD_RESOLVERS_COUNT = 9;
 
     private AtomicInteger resolversSize = new AtomicInteger(0);
     private volatile ELResolver[] resolvers;
     private final int appResolversSize;
+    private final boolean standardResolversOnly;
 
     public JasperELResolver(List<ELResolver> appResolvers,
                             ELResolver streamResolver) {
         appResolversSize = appResolvers.size();
+        standardResolversOnly = appResolversSize == 0 &&
+                streamResolver instanceof StreamELResolverImpl;
         resolvers = new ELResolver[appResolversSize + STANDARD_RESOLVERS_COUNT];
 
         add(new ImplicitObjectELResolver());
@@ -119,6 +128,24 @@ public class JasperELResolver extends CompositeELResolver {
         return null;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Bean properties are resolved by {@link BeanELResolver} if there are no
+     * application resolvers and the class is not handled by one of the
+     * collection-based resolvers (map, resource, list and array) or by the
+     * static resolver.
+     */
+    @Override
+    public boolean isBeanPropertyResolver(Class<?> type) {
+        return standardResolversOnly &&
+                !Map.class.isAssignableFrom(type) &&
+                !ResourceBundle.class.isAssignableFrom(type) &&
+                !List.class.isAssignableFrom(type) &&
+                !type.isArray() &&
+                !ELClass.class.isAssignableFrom(type);
+    }
+
     @Override
     public Object invoke(ELContext context, Object base, Object method,
                          Class<?>[] paramTypes, Object[] params) {
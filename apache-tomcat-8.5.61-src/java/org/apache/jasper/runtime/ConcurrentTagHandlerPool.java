@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jasper.runtime;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.jsp.JspException;
+import javax.servlet.jsp.tagext.Tag;
+
+import org.apache.jasper.compiler.Localizer;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+/**
+ * Pool of tag handlers that can be reused without locking. Enable it by
+ * setting the {@link TagHandlerPool#OPTION_TAGPOOL} option to the name of
+ * this class.
+ * <p>
+ * Each thread has a preferred slot, selected by its ID, that holds a single
+ * tag handler so a thread normally gets back the handler it returned last.
+ * Handlers that do not fit in the slot, for example because the tag is nested
+ * in itself or because another thread shares the slot, go to a shared
+ * lock-free queue limited to {@link TagHandlerPool#OPTION_MAXSIZE} handlers.
+ * The slots are not thread locals so all pooled handlers can be released
+ * when the servlet is destroyed.
+ */
+public class ConcurrentTagHandlerPool extends TagHandlerPool {
+
+    private static final Log log = LogFactory.getLog(ConcurrentTagHandlerPool.class);
+
+    // Keep the slots and counters used by different threads in different
+    // cache lines
+    private static final int STRIDE = 16;
+
+    private static final int SLOT_HITS = 0;
+    private static final int SHARED_HITS = 1;
+    private static final int MISSES = 2;
+
+    private final ConcurrentLinkedQueue<Tag> shared = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger sharedSize = new AtomicInteger();
+
+    private AtomicReferenceArray<Tag> slots;
+    private AtomicLongArray counters;
+    private int mask;
+    private int maxSharedSize;
+    private volatile String handlerClassName;
+
+
+    @Override
+    protected void init(ServletConfig config) {
+        int slotCount = 1;
+        while (slotCount < 2 * Runtime.getRuntime().availableProcessors()) {
+            slotCount <<= 1;
+        }
+        mask = slotCount - 1;
+        slots = new AtomicReferenceArray<>(slotCount * STRIDE);
+        counters = new AtomicLongArray(slotCount * STRIDE);
+        maxSharedSize = getMaxSize(config);
+        instanceManager = InstanceManagerFactory.getInstanceManager(config);
+    }
+
+
+    @Override
+    public Tag get(Class<? extends Tag> handlerClass) throws JspException {
+        int slot = getSlot();
+
+        Tag handler = null;
+        if (slots.get(slot) != null) {
+            handler = slots.getAndSet(slot, null);
+        }
+        if (handler != null) {
+            counters.incrementAndGet(slot + SLOT_HITS);
+            return handler;
+        }
+
+        handler = shared.poll();
+        if (handler != null) {
+            sharedSize.decrementAndGet();
+            counters.incrementAndGet(slot + SHARED_HITS);
+            return handler;
+        }
+
+        counters.incrementAndGet(slot + MISSES);
+        if (handlerClassName == null) {
+            handlerClassName = handlerClass.getName();
+        }
+        return newHandler(handlerClass);
+    }
+
+
+    @Override
+    public void reuse(Tag handler) {
+        int slot = getSlot();
+        if (slots.get(slot) == null && slots.compareAndSet(slot, null, handler)) {
+            return;
+        }
+
+        if (sharedSize.incrementAndGet() <= maxSharedSize) {
+            shared.offer(handler);
+            return;
+        }
+        sharedSize.decrementAndGet();
+        JspRuntimeLibrary.releaseTag(handler, instanceManager);
+    }
+
+
+    @Override
+    public void release() {
+        for (int slot = 0; slot < slots.length(); slot += STRIDE) {
+            Tag handler = slots.getAndSet(slot, null);
+            if (handler != null) {
+                JspRuntimeLibrary.releaseTag(handler, instanceManager);
+            }
+        }
+        Tag handler;
+        while ((handler = shared.poll()) != null) {
+            sharedSize.decrementAndGet();
+            JspRuntimeLibrary.releaseTag(handler, instanceManager);
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug(Localizer.getMessage("jsp.tagHandlerPool.stats", handlerClassName,
+                    Long.toString(getSlotHitCount()), Long.toString(getSharedHitCount()),
+                    Long.toString(getMissCount())));
+        }
+    }
+
+
+    /**
+     * @return The number of tag handlers that were obtained from the slot of
+     *         the requesting thread
+     */
+    public long getSlotHitCount() {
+        return getCount(SLOT_HITS);
+    }
+
+
+    /**
+     * @return The number of tag handlers that were obtained from the shared
+     *         queue
+     */
+    public long getSharedHitCount() {
+        return getCount(SHARED_HITS);
+    }
+
+
+    /**
+     * @return The number of tag handlers that had to be instantiated
+     */
+    public long getMissCount() {
+        return getCount(MISSES);
+    }
+
+
+    /**
+     * @return The fraction of requests for a tag handler that were served
+     *         from the pool or zero if no tag handler has been requested
+     */
+    public double getHitRate() {
+        long hits = getSlotHitCount() + getSharedHitCount();
+        long total = hits + getMissCount();
+        if (total == 0) {
+            return 0;
+        }
+        return (double) hits / total;
+    }
+
+
+    private int getSlot() {
+        return ((int) Thread.currentThread().getId() & mask) * STRIDE;
+    }
+
+
+    private long getCount(int counter) {
+        long result = 0;
+        for (int slot = 0; slot < counters.length(); slot += STRIDE) {
+            result += counters.get(slot + counter);
+        }
+        return result;
+    }
+}
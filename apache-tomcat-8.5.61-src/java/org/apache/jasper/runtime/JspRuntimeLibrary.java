@@ -22,6 +22,10 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
 import java.util.Enumeration;
 
 import javax.servlet.RequestDispatcher;
@@ -940,6 +944,53 @@ public class JspRuntimeLibrary {
     }
 
 
+    /**
+     * Encode template text for use with
+     * {@link #writeTemplateText(JspWriter, String, byte[], Charset)}.
+     *
+     * @param text    The template text
+     * @param charset The character set of the page
+     *
+     * @return The encoded text or <code>null</code> if the text cannot be
+     *         encoded with the given character set
+     */
+    public static byte[] encodeTemplateText(String text, Charset charset) {
+        if (!charset.canEncode()) {
+            return null;
+        }
+        try {
+            ByteBuffer bb = charset.newEncoder().encode(CharBuffer.wrap(text));
+            byte[] result = new byte[bb.remaining()];
+            bb.get(result);
+            return result;
+        } catch (CharacterCodingException e) {
+            // Unmappable characters are left to the response encoder
+            return null;
+        }
+    }
+
+
+    /**
+     * Write template text, using its encoded form if the writer is able to.
+     *
+     * @param out     The current writer
+     * @param text    The template text
+     * @param bytes   The text encoded with the given character set, may be
+     *                <code>null</code>
+     * @param charset The character set of the page
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public static void writeTemplateText(JspWriter out, String text, byte[] bytes,
+            Charset charset) throws IOException {
+        if (bytes != null && out instanceof JspWriterImpl) {
+            ((JspWriterImpl) out).write(text, bytes, charset);
+        } else {
+            out.write(text);
+        }
+    }
+
+
     public static void releaseTag(Tag tag, InstanceManager instanceManager, boolean reused) {
         // Caller ensures pool is non-null if reuse is true
         if (!reused) {
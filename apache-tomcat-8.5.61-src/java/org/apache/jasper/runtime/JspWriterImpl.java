@@ -19,6 +19,7 @@ package org.apache.jasper.runtime;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.charset.Charset;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 
@@ -28,6 +29,7 @@ import javax.servlet.jsp.JspWriter;
 import org.apache.jasper.Constants;
 import org.apache.jasper.compiler.Localizer;
 import org.apache.jasper.security.SecurityUtil;
+import org.apache.tomcat.PreEncodedWriter;
 
 /**
  * Write text to a character-output stream, buffering characters so as
@@ -331,6 +333,40 @@ public class JspWriterImpl extends JspWriter {
         }
     }
 
+    /**
+     * Write a String for which the encoded form is already known. If the
+     * String would be written directly to the underlying stream, because
+     * this writer is unbuffered or the String is at least as large as the
+     * buffer, and the underlying stream is a {@link PreEncodedWriter} using
+     * the same character set, the bytes are written rather than the
+     * characters.
+     *
+     * @param s       String to be written
+     * @param bytes   The String encoded with the given character set
+     * @param charset The character set used to encode the String
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public void write(String s, byte[] bytes, Charset charset) throws IOException {
+        ensureOpen();
+        int len = s.length();
+        if (bufferSize == 0 || len >= bufferSize) {
+            if (bufferSize != 0) {
+                if (autoFlush)
+                    flushBuffer();
+                else
+                    bufferOverflow();
+            }
+            initOut();
+            if (!(out instanceof PreEncodedWriter) ||
+                    !((PreEncodedWriter) out).writeEncoded(bytes, 0, bytes.length, charset)) {
+                out.write(s, 0, len);
+            }
+            return;
+        }
+        write(s, 0, len);
+    }
+
 
     /**
      * Write a line separator.  The line separator string is defined by the
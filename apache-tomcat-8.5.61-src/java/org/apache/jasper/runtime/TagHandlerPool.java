@@ -61,19 +61,7 @@ public class TagHandlerPool {
     }
 
     protected void init(ServletConfig config) {
-        int maxSize = -1;
-        String maxSizeS = getOption(config, OPTION_MAXSIZE, null);
-        if (maxSizeS != null) {
-            try {
-                maxSize = Integer.parseInt(maxSizeS);
-            } catch (Exception ex) {
-                maxSize = -1;
-            }
-        }
-        if (maxSize < 0) {
-            maxSize = Constants.MAX_POOL_SIZE;
-        }
-        this.handlers = new Tag[maxSize];
+        this.handlers = new Tag[getMaxSize(config)];
         this.current = -1;
         instanceManager = InstanceManagerFactory.getInstanceManager(config);
     }
@@ -105,6 +93,17 @@ public class TagHandlerPool {
 
         // Out of sync block - there is no need for other threads to
         // wait for us to construct a tag for this thread.
+        return newHandler(handlerClass);
+    }
+
+    /**
+     * Instantiates a new tag handler.
+     *
+     * @param handlerClass Tag handler class
+     * @return Newly instantiated tag handler
+     * @throws JspException if a tag handler cannot be instantiated
+     */
+    protected Tag newHandler(Class<? extends Tag> handlerClass) throws JspException {
         try {
             if (Constants.USE_INSTANCE_MANAGER_FOR_TAGS) {
                 return (Tag) instanceManager.newInstance(
@@ -150,6 +149,27 @@ public class TagHandlerPool {
     }
 
 
+    /**
+     * @param config The configuration of the servlet that uses the pool
+     * @return The configured maximum number of tag handlers to pool
+     */
+    protected static int getMaxSize(ServletConfig config) {
+        int maxSize = -1;
+        String maxSizeS = getOption(config, OPTION_MAXSIZE, null);
+        if (maxSizeS != null) {
+            try {
+                maxSize = Integer.parseInt(maxSizeS);
+            } catch (Exception ex) {
+                maxSize = -1;
+            }
+        }
+        if (maxSize < 0) {
+            maxSize = Constants.MAX_POOL_SIZE;
+        }
+        return maxSize;
+    }
+
+
     protected static String getOption(ServletConfig config, String name,
                                       String defaultV) {
         if (config == null)
@@ -16,6 +16,7 @@
  */
 package org.apache.jasper.servlet;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Set;
 
@@ -33,6 +34,7 @@ import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.InstanceManager;
 import org.apache.tomcat.SimpleInstanceManager;
+import org.apache.tomcat.util.descriptor.JarDescriptorCache;
 import org.xml.sax.SAXException;
 
 /**
@@ -97,11 +99,24 @@ public class JasperInitializer implements ServletContainerInitializer {
 
         // scan the application for TLDs
         TldScanner scanner = newTldScanner(context, true, validate, blockExternal);
+        JarDescriptorCache jarDescriptorCache = null;
+        if (Boolean.parseBoolean(context.getInitParameter(Constants.CACHE_JAR_TLDS_INIT_PARAM))) {
+            Object tempDir = context.getAttribute(ServletContext.TEMPDIR);
+            if (tempDir instanceof File) {
+                jarDescriptorCache = JarDescriptorCache.create(
+                        new File((File) tempDir, Constants.JAR_TLD_CACHE_DIR), ".tlds",
+                        validate, blockExternal);
+                scanner.setJarDescriptorCache(jarDescriptorCache);
+            }
+        }
         try {
             scanner.scan();
         } catch (IOException | SAXException e) {
             throw new ServletException(e);
         }
+        if (jarDescriptorCache != null) {
+            jarDescriptorCache.removeUnused();
+        }
 
         // add any listeners defined in TLDs
         for (String listener : scanner.getListeners()) {
@@ -17,12 +17,15 @@
 
 package org.apache.jasper.servlet;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.security.CodeSource;
 import java.security.PermissionCollection;
+import java.security.cert.Certificate;
+import java.util.Map;
 
 import org.apache.jasper.Constants;
 
@@ -37,12 +40,33 @@ public class JasperLoader extends URLClassLoader {
 
     private final PermissionCollection permissionCollection;
     private final SecurityManager securityManager;
+    private final Map<String, byte[]> compiledClasses;
+    private final CodeSource codeSource;
 
     public JasperLoader(URL[] urls, ClassLoader parent,
                         PermissionCollection permissionCollection) {
+        this(urls, parent, permissionCollection, null);
+    }
+
+    /**
+     * Create a class loader that loads classes compiled in memory before
+     * looking for class files in the given locations.
+     *
+     * @param urls                 The locations of the class files
+     * @param parent               The parent class loader
+     * @param permissionCollection The permissions of the loaded classes
+     * @param compiledClasses      The classes compiled in memory keyed by
+     *                             class name, may be <code>null</code>
+     */
+    public JasperLoader(URL[] urls, ClassLoader parent,
+                        PermissionCollection permissionCollection,
+                        Map<String, byte[]> compiledClasses) {
         super(urls, parent);
         this.permissionCollection = permissionCollection;
         this.securityManager = System.getSecurityManager();
+        this.compiledClasses = compiledClasses;
+        this.codeSource = (urls.length > 0) ?
+                new CodeSource(urls[0], (Certificate[]) null) : null;
     }
 
     /**
@@ -128,13 +152,36 @@ public class JasperLoader extends URLClassLoader {
 
 
     /**
-     * Delegate to parent
+     * Define the class from the classes compiled in memory, if present, else
+     * find the class file in the locations of this class loader.
+     */
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        if (compiledClasses != null) {
+            byte[] bytes = compiledClasses.get(name);
+            if (bytes != null) {
+                return defineClass(name, bytes, 0, bytes.length, codeSource);
+            }
+        }
+        return super.findClass(name);
+    }
+
+
+    /**
+     * Delegate to parent, then look for classes compiled in memory.
      *
      * @see java.lang.ClassLoader#getResourceAsStream(java.lang.String)
      */
     @Override
     public InputStream getResourceAsStream(String name) {
         InputStream is = getParent().getResourceAsStream(name);
+        if (is == null && compiledClasses != null && name.endsWith(".class")) {
+            byte[] bytes = compiledClasses.get(
+                    name.substring(0, name.length() - 6).replace('/', '.'));
+            if (bytes != null) {
+                is = new ByteArrayInputStream(bytes);
+            }
+        }
         if (is == null) {
             URL url = findResource(name);
             if (url != null) {
@@ -21,6 +21,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.RequestDispatcher;
 import javax.servlet.Servlet;
@@ -46,6 +47,7 @@ import org.apache.jasper.runtime.JspSourceDependent;
 import org.apache.jasper.util.FastRemovalDequeue;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.ContextBind;
 import org.apache.tomcat.InstanceManager;
 import org.apache.tomcat.Jar;
 
@@ -78,10 +80,22 @@ public class JspServletWrapper {
         ALWAYS_OUTDATED_DEPENDENCIES.put("/WEB-INF/web.xml", Long.valueOf(-1));
     }
 
+    /*
+     * Maximum time in milliseconds to wait for the requests using a servlet
+     * replaced by a background compilation to complete before it is destroyed.
+     */
+    private static final long BACKGROUND_DESTROY_DELAY = 2000;
+
     // Logger
     private final Log log = LogFactory.getLog(JspServletWrapper.class); // must not be static
 
     private volatile Servlet theServlet;
+    /*
+     * Requests in service with theServlet. Replaced, after theServlet, when a
+     * background compilation replaces the servlet so that the previous one is
+     * only destroyed once the requests using it have completed.
+     */
+    private volatile AtomicInteger servletRequests = new AtomicInteger();
     private final String jspUri;
     private volatile Class<?> tagHandlerClass;
     private final JspCompilationContext ctxt;
@@ -98,6 +112,12 @@ public class JspServletWrapper {
     private volatile boolean mustCompile = true;
     /* Whether the servlet/tag file needs reloading on next access */
     private volatile boolean reload = true;
+    /*
+     * Whether the servlet is being recompiled in the background. Requests
+     * ignore the reload flag while this is in progress and continue to use the
+     * current servlet.
+     */
+    private volatile boolean backgroundCompileInProgress = false;
     private final boolean isTagFile;
     private int tripCount;
     private JasperException compileException;
@@ -164,7 +184,8 @@ public class JspServletWrapper {
     }
 
     private boolean getReloadInternal() {
-        return reload && !ctxt.getRuntimeContext().isCompileCheckInProgress();
+        return reload && !backgroundCompileInProgress &&
+                !ctxt.getRuntimeContext().isCompileCheckInProgress();
     }
 
     public Servlet getServlet() throws ServletException {
@@ -185,19 +206,7 @@ public class JspServletWrapper {
                     // This is to maintain the original protocol.
                     destroy();
 
-                    final Servlet servlet;
-
-                    try {
-                        InstanceManager instanceManager = InstanceManagerFactory.getInstanceManager(config);
-                        servlet = (Servlet) instanceManager.newInstance(ctxt.getFQCN(), ctxt.getJspLoader());
-                    } catch (Exception e) {
-                        Throwable t = ExceptionUtils
-                                .unwrapInvocationTargetException(e);
-                        ExceptionUtils.handleThrowable(t);
-                        throw new JasperException(t);
-                    }
-
-                    servlet.init(config);
+                    final Servlet servlet = createServlet();
 
                     if (theServlet != null) {
                         ctxt.getRuntimeContext().incrementJspReloadCount();
@@ -212,6 +221,104 @@ public class JspServletWrapper {
         return theServlet;
     }
 
+    private Servlet createServlet() throws ServletException {
+        final Servlet servlet;
+
+        try {
+            InstanceManager instanceManager = InstanceManagerFactory.getInstanceManager(config);
+            servlet = (Servlet) instanceManager.newInstance(ctxt.getFQCN(), ctxt.getJspLoader());
+        } catch (Exception e) {
+            Throwable t = ExceptionUtils
+                    .unwrapInvocationTargetException(e);
+            ExceptionUtils.handleThrowable(t);
+            throw new JasperException(t);
+        }
+
+        servlet.init(config);
+        return servlet;
+    }
+
+    /**
+     * Compile the JSP if it is out of date and replace the servlet with an
+     * instance of the newly compiled class. Unlike {@link #getServlet()}, the
+     * new servlet is initialised before it replaces the current one so
+     * concurrent requests continue to be served by the previous version until
+     * the new one is ready. The previous version is destroyed once the
+     * requests using it have completed, waiting for them in the same way as a
+     * Servlet that is unloaded by the container. Used by
+     * {@link JspRuntimeContext} to recompile changed JSPs in the background,
+     * with the web application bound to the compiling thread.
+     * <p>
+     * Nothing is done if the servlet has not been loaded yet as that happens
+     * on first access. If compilation fails, the next request compiles the
+     * JSP again so the error is reported in the usual way.
+     *
+     * @throws ServletException Error compiling or loading the JSP
+     * @throws FileNotFoundException The JSP has been removed
+     */
+    public void backgroundCompile() throws ServletException, FileNotFoundException {
+        Servlet previous;
+        AtomicInteger previousRequests;
+        ContextBind contextBind = ctxt.getRuntimeContext().getContextBind();
+        ClassLoader oldCL = null;
+        if (contextBind != null) {
+            oldCL = contextBind.bind(false, null);
+        }
+        try {
+            synchronized (this) {
+                if (isTagFile || mustCompile || theServlet == null) {
+                    return;
+                }
+                backgroundCompileInProgress = true;
+                try {
+                    // A change has been reported so ignore modificationTestInterval
+                    lastModificationTest = -1;
+                    ctxt.compile();
+                    if (!reload) {
+                        return;
+                    }
+                    Servlet servlet = createServlet();
+                    previous = theServlet;
+                    previousRequests = servletRequests;
+                    // Must be set before servletRequests. See service()
+                    theServlet = servlet;
+                    servletRequests = new AtomicInteger();
+                    reload = false;
+                    ctxt.getRuntimeContext().incrementJspReloadCount();
+                } catch (JasperException e) {
+                    mustCompile = true;
+                    lastModificationTest = -1;
+                    throw e;
+                } finally {
+                    backgroundCompileInProgress = false;
+                }
+            }
+
+            // Loaf a while if the previous servlet is still in service
+            if (previousRequests.get() > 0) {
+                int nRetries = 0;
+                long delay = BACKGROUND_DESTROY_DELAY / 20;
+                while ((nRetries < 21) && (previousRequests.get() > 0)) {
+                    if ((nRetries % 10) == 0) {
+                        log.info(Localizer.getMessage("jsp.message.backgroundRecompileWaiting",
+                                previousRequests.toString(), jspUri));
+                    }
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                    nRetries++;
+                }
+            }
+            destroy(previous);
+        } finally {
+            if (contextBind != null) {
+                contextBind.unbind(false, oldCL);
+            }
+        }
+    }
+
     public ServletContext getServletContext() {
         return ctxt.getServletContext();
     }
@@ -371,6 +478,22 @@ public class JspServletWrapper {
                         boolean precompile)
             throws ServletException, IOException, FileNotFoundException {
 
+        // Read before theServlet so that a request that uses a servlet being
+        // replaced by backgroundCompile() is counted against that servlet
+        AtomicInteger requests = servletRequests;
+        requests.incrementAndGet();
+        try {
+            doService(request, response, precompile);
+        } finally {
+            requests.decrementAndGet();
+        }
+    }
+
+    private void doService(HttpServletRequest request,
+                           HttpServletResponse response,
+                           boolean precompile)
+            throws ServletException, IOException, FileNotFoundException {
+
         Servlet servlet;
 
         try {
@@ -395,9 +518,9 @@ public class JspServletWrapper {
             /*
              * (1) Compile
              */
-            if (options.getDevelopment() || mustCompile) {
+            if (isCompileCheckOnAccess() || mustCompile) {
                 synchronized (this) {
-                    if (options.getDevelopment() || mustCompile) {
+                    if (isCompileCheckOnAccess() || mustCompile) {
                         // The following sets reload to true, if necessary
                         ctxt.compile();
                         mustCompile = false;
@@ -520,17 +643,30 @@ public class JspServletWrapper {
         }
     }
 
+    /*
+     * In development mode JSPs are checked for modification on access unless
+     * changes are detected and compiled in the background.
+     */
+    private boolean isCompileCheckOnAccess() {
+        return options.getDevelopment() &&
+                !ctxt.getRuntimeContext().isBackgroundRecompileEnabled();
+    }
+
     public void destroy() {
-        if (theServlet != null) {
+        destroy(theServlet);
+    }
+
+    private void destroy(Servlet servlet) {
+        if (servlet != null) {
             try {
-                theServlet.destroy();
+                servlet.destroy();
             } catch (Throwable t) {
                 ExceptionUtils.handleThrowable(t);
                 log.error(Localizer.getMessage("jsp.error.servlet.destroy.failed"), t);
             }
             InstanceManager instanceManager = InstanceManagerFactory.getInstanceManager(config);
             try {
-                instanceManager.destroyInstance(theServlet);
+                instanceManager.destroyInstance(servlet);
             } catch (Exception e) {
                 Throwable t = ExceptionUtils.unwrapInvocationTargetException(e);
                 ExceptionUtils.handleThrowable(t);
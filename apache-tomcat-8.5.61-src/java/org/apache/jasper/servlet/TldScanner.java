@@ -16,6 +16,10 @@
  */
 package org.apache.jasper.servlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
@@ -27,6 +31,7 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -44,7 +49,9 @@ import org.apache.tomcat.Jar;
 import org.apache.tomcat.JarScanType;
 import org.apache.tomcat.JarScanner;
 import org.apache.tomcat.JarScannerCallback;
+import org.apache.tomcat.util.descriptor.JarDescriptorCache;
 import org.apache.tomcat.util.descriptor.tld.TaglibXml;
+import org.apache.tomcat.util.descriptor.tld.TaglibXmlCodec;
 import org.apache.tomcat.util.descriptor.tld.TldParser;
 import org.apache.tomcat.util.descriptor.tld.TldResourcePath;
 import org.xml.sax.SAXException;
@@ -62,6 +69,7 @@ public class TldScanner {
     private final Map<String, TldResourcePath> uriTldResourcePathMap = new HashMap<>();
     private final Map<TldResourcePath, TaglibXml> tldResourcePathTaglibXmlMap = new HashMap<>();
     private final List<String> listeners = new ArrayList<>();
+    private JarDescriptorCache jarDescriptorCache = null;
 
     /**
      * Initialise with the application's ServletContext.
@@ -143,6 +151,17 @@ public class TldScanner {
         tldParser.setClassLoader(classLoader);
     }
 
+    /**
+     * Set the cache used to store the TLDs parsed from JARs so they do not
+     * have to be parsed again while the JARs are unchanged.
+     *
+     * @param jarDescriptorCache The cache to use or <code>null</code> to parse
+     *                           the TLDs in every JAR
+     */
+    public void setJarDescriptorCache(JarDescriptorCache jarDescriptorCache) {
+        this.jarDescriptorCache = jarDescriptorCache;
+    }
+
     /**
      * Scan for TLDs required by the platform specification.
      */
@@ -273,7 +292,10 @@ public class TldScanner {
     }
 
     protected void parseTld(TldResourcePath path) throws IOException, SAXException {
-        TaglibXml tld = tldParser.parse(path);
+        addTld(path, tldParser.parse(path));
+    }
+
+    private void addTld(TldResourcePath path, TaglibXml tld) {
         String uri = tld.getUri();
         if (uri != null) {
             if (!uriTldResourcePathMap.containsKey(uri)) {
@@ -301,21 +323,43 @@ public class TldScanner {
         public void scan(Jar jar, String webappPath, boolean isWebapp) throws IOException {
             boolean found = false;
             URL jarFileUrl = jar.getJarFileURL();
-            jar.nextEntry();
-            for (String entryName = jar.getEntryName();
-                 entryName != null;
-                 jar.nextEntry(), entryName = jar.getEntryName()) {
-                if (!(entryName.startsWith("META-INF/") &&
-                        entryName.endsWith(TLD_EXT))) {
-                    continue;
+            File cacheFile = null;
+            if (jarDescriptorCache != null) {
+                cacheFile = jarDescriptorCache.getFile(jarFileUrl);
+            }
+            Map<String, TaglibXml> tlds = null;
+            if (cacheFile != null) {
+                tlds = readCacheFile(cacheFile, jarFileUrl);
+            }
+            if (tlds != null) {
+                for (Map.Entry<String, TaglibXml> entry : tlds.entrySet()) {
+                    found = true;
+                    addTld(new TldResourcePath(jarFileUrl, webappPath, entry.getKey()),
+                            entry.getValue());
+                }
+            } else {
+                tlds = new LinkedHashMap<>();
+                jar.nextEntry();
+                for (String entryName = jar.getEntryName();
+                     entryName != null;
+                     jar.nextEntry(), entryName = jar.getEntryName()) {
+                    if (!(entryName.startsWith("META-INF/") &&
+                            entryName.endsWith(TLD_EXT))) {
+                        continue;
+                    }
+                    found = true;
+                    TldResourcePath tldResourcePath =
+                            new TldResourcePath(jarFileUrl, webappPath, entryName);
+                    try {
+                        TaglibXml tld = tldParser.parse(tldResourcePath);
+                        addTld(tldResourcePath, tld);
+                        tlds.put(entryName, tld);
+                    } catch (SAXException e) {
+                        throw new IOException(e);
+                    }
                 }
-                found = true;
-                TldResourcePath tldResourcePath =
-                        new TldResourcePath(jarFileUrl, webappPath, entryName);
-                try {
-                    parseTld(tldResourcePath);
-                } catch (SAXException e) {
-                    throw new IOException(e);
+                if (cacheFile != null) {
+                    writeCacheFile(cacheFile, jarFileUrl, tlds);
                 }
             }
             if (found) {
@@ -413,5 +457,48 @@ public class TldScanner {
         boolean scanFoundNoTLDs() {
             return foundJarWithoutTld;
         }
+
+
+        private Map<String, TaglibXml> readCacheFile(File cacheFile, URL jarFileUrl) {
+            byte[] content = jarDescriptorCache.read(cacheFile);
+            if (content == null) {
+                return null;
+            }
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(content))) {
+                int count = in.readInt();
+                Map<String, TaglibXml> result = new LinkedHashMap<>();
+                for (int i = 0; i < count; i++) {
+                    String entryName = in.readUTF();
+                    result.put(entryName, TaglibXmlCodec.read(in));
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug(Localizer.getMessage("jsp.tldCache.jarCacheHit",
+                            jarFileUrl.toString(), cacheFile.getAbsolutePath()));
+                }
+                return result;
+            } catch (IOException e) {
+                log.warn(Localizer.getMessage("jsp.tldCache.jarCacheReadFail",
+                        jarFileUrl.toString(), cacheFile.getAbsolutePath()), e);
+                return null;
+            }
+        }
+
+
+        private void writeCacheFile(File cacheFile, URL jarFileUrl, Map<String, TaglibXml> tlds) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(baos)) {
+                out.writeInt(tlds.size());
+                for (Map.Entry<String, TaglibXml> entry : tlds.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    TaglibXmlCodec.write(out, entry.getValue());
+                }
+            } catch (IOException e) {
+                // Most likely a value that is too long to be written
+                log.warn(Localizer.getMessage("jsp.tldCache.jarCacheWriteFail",
+                        jarFileUrl.toString()), e);
+                return;
+            }
+            jarDescriptorCache.write(cacheFile, baos.toByteArray());
+        }
     }
 }
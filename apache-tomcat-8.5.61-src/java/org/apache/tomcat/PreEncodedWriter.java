@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Specifies a response writer that accepts characters that have already been
+ * encoded so static content, such as the template text of a JSP, does not
+ * have to be encoded again for every response. Currently only
+ * {@link org.apache.catalina.connector.CoyoteWriter} implements this
+ * interface.
+ */
+public interface PreEncodedWriter {
+
+    /**
+     * Write characters that have already been encoded with the given
+     * character set. The bytes are only written if they are exactly the bytes
+     * this writer would have produced for the characters, i.e. if the writer
+     * uses the same character set and is not part way through encoding a
+     * character. Characters written previously are written before the bytes.
+     *
+     * @param b       The encoded characters
+     * @param off     The offset of the first byte to write
+     * @param len     The number of bytes to write
+     * @param charset The character set the bytes were encoded with
+     *
+     * @return <code>true</code> if the bytes were written,
+     *         <code>false</code> if the caller has to write the characters
+     *         instead
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    boolean writeEncoded(byte[] b, int off, int len, Charset charset) throws IOException;
+}
@@ -87,6 +87,7 @@ public class B2CConverter {
 
 
     private final CharsetDecoder decoder;
+    private final int fastPathLimit;
     private ByteBuffer bb = null;
     private CharBuffer cb = null;
 
@@ -118,6 +119,7 @@ public class B2CConverter {
         }
         decoder.onMalformedInput(action);
         decoder.onUnmappableCharacter(action);
+        fastPathLimit = CharsetFastPath.getLimit(charset);
     }
 
     /**
@@ -173,6 +175,9 @@ public class B2CConverter {
             bb.position(bc.getStart());
             leftovers.position(0);
         }
+        // Convert any leading single byte chars directly, leaving the rest to
+        // the decoder
+        decodeFastPath();
         // Do the decoding and get the results into the byte chunk and the char
         // chunk
         result = decoder.decode(bb, cb, endOfInput);
@@ -248,6 +253,9 @@ public class B2CConverter {
             bb.position(bc.position());
             leftovers.position(0);
         }
+        // Convert any leading single byte chars directly, leaving the rest to
+        // the decoder
+        decodeFastPath();
         // Do the decoding and get the results into the byte chunk and the char
         // chunk
         result = decoder.decode(bb, cb, endOfInput);
@@ -272,6 +280,19 @@ public class B2CConverter {
     }
 
 
+    private void decodeFastPath() {
+        if (fastPathLimit == CharsetFastPath.NONE) {
+            return;
+        }
+        int bbOffset = bb.arrayOffset();
+        int cbOffset = cb.arrayOffset();
+        int n = CharsetFastPath.decode(bb.array(), bbOffset + bb.position(), bbOffset + bb.limit(),
+                cb.array(), cbOffset + cb.position(), cbOffset + cb.limit(), fastPathLimit);
+        bb.position(bb.position() + n);
+        cb.position(cb.position() + n);
+    }
+
+
     public Charset getCharset() {
         return decoder.charset();
     }
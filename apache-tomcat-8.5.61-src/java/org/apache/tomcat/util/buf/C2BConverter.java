@@ -30,6 +30,7 @@ import java.nio.charset.CodingErrorAction;
 public final class C2BConverter {
 
     private final CharsetEncoder encoder;
+    private final int fastPathLimit;
     private ByteBuffer bb = null;
     private CharBuffer cb = null;
 
@@ -44,6 +45,7 @@ public final class C2BConverter {
                 .onMalformedInput(CodingErrorAction.REPLACE);
         char[] left = new char[4];
         leftovers = CharBuffer.wrap(left);
+        fastPathLimit = CharsetFastPath.getLimit(charset);
     }
 
     /**
@@ -100,9 +102,12 @@ public final class C2BConverter {
             cb.position(cc.getStart());
             leftovers.position(0);
         }
+        // Convert any leading single byte chars directly, leaving the rest to
+        // the encoder
+        encodeFastPath();
         // Do the decoding and get the results into the byte chunk and the char
         // chunk
-        result = encoder.encode(cb, bb, false);
+        result = cb.hasRemaining() ? encoder.encode(cb, bb, false) : CoderResult.UNDERFLOW;
         if (result.isError() || result.isMalformed()) {
             result.throwException();
         } else if (result.isOverflow()) {
@@ -164,9 +169,12 @@ public final class C2BConverter {
             cb.position(cc.position());
             leftovers.position(0);
         }
+        // Convert any leading single byte chars directly, leaving the rest to
+        // the encoder
+        encodeFastPath();
         // Do the decoding and get the results into the byte chunk and the char
         // chunk
-        result = encoder.encode(cb, bb, false);
+        result = cb.hasRemaining() ? encoder.encode(cb, bb, false) : CoderResult.UNDERFLOW;
         if (result.isError() || result.isMalformed()) {
             result.throwException();
         } else if (result.isOverflow()) {
@@ -186,6 +194,18 @@ public final class C2BConverter {
         }
     }
 
+    private void encodeFastPath() {
+        if (fastPathLimit == CharsetFastPath.NONE) {
+            return;
+        }
+        int cbOffset = cb.arrayOffset();
+        int bbOffset = bb.arrayOffset();
+        int n = CharsetFastPath.encode(cb.array(), cbOffset + cb.position(), cbOffset + cb.limit(),
+                bb.array(), bbOffset + bb.position(), bbOffset + bb.limit(), fastPathLimit);
+        cb.position(cb.position() + n);
+        bb.position(bb.position() + n);
+    }
+
     public Charset getCharset() {
         return encoder.charset();
     }
@@ -0,0 +1,156 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.buf;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Direct array based conversion for the ranges of UTF-8, ISO-8859-1 and
+ * US-ASCII where a char maps to exactly one byte. The converters use these to
+ * process runs of such characters (typically all of an HTML or JSON body)
+ * without going through a {@link java.nio.charset.CharsetEncoder} or
+ * {@link java.nio.charset.CharsetDecoder}, handing over to the NIO coder as
+ * soon as a character outside that range is found.
+ */
+final class CharsetFastPath {
+
+    /**
+     * Marker for a charset that has no direct conversion range.
+     */
+    static final int NONE = 0;
+
+
+    private CharsetFastPath() {
+        // Utility class. Hide default constructor.
+    }
+
+
+    /**
+     * Determine the exclusive upper bound of the chars that the given charset
+     * encodes as a single byte of the same value.
+     *
+     * @param charset The charset
+     *
+     * @return {@code 0x80}, {@code 0x100} or {@link #NONE}
+     */
+    static int getLimit(Charset charset) {
+        if (StandardCharsets.UTF_8.equals(charset) || StandardCharsets.US_ASCII.equals(charset)) {
+            return 0x80;
+        } else if (StandardCharsets.ISO_8859_1.equals(charset)) {
+            return 0x100;
+        }
+        return NONE;
+    }
+
+
+    /**
+     * Copy chars to bytes until either array runs out of space or a char at or
+     * above {@code limit} is found.
+     *
+     * @param src     Source chars
+     * @param srcPos  Index of first char to convert
+     * @param srcEnd  Index after the last char available for conversion
+     * @param dst     Destination bytes
+     * @param dstPos  Index of first byte to write
+     * @param dstEnd  Index after the last byte available for writing
+     * @param limit   Either {@code 0x80} or {@code 0x100}
+     *
+     * @return The number of chars converted, which is also the number of bytes
+     *         written
+     */
+    static int encode(char[] src, int srcPos, int srcEnd, byte[] dst, int dstPos, int dstEnd,
+            int limit) {
+        int n = Math.min(srcEnd - srcPos, dstEnd - dstPos);
+        int i = 0;
+        // Four chars per iteration as long as none of them need the NIO
+        // encoder. limit is a power of two so OR-ing the chars is sufficient.
+        for (; i + 4 <= n; i += 4) {
+            char c0 = src[srcPos + i];
+            char c1 = src[srcPos + i + 1];
+            char c2 = src[srcPos + i + 2];
+            char c3 = src[srcPos + i + 3];
+            if ((c0 | c1 | c2 | c3) >= limit) {
+                break;
+            }
+            dst[dstPos + i] = (byte) c0;
+            dst[dstPos + i + 1] = (byte) c1;
+            dst[dstPos + i + 2] = (byte) c2;
+            dst[dstPos + i + 3] = (byte) c3;
+        }
+        for (; i < n; i++) {
+            char c = src[srcPos + i];
+            if (c >= limit) {
+                break;
+            }
+            dst[dstPos + i] = (byte) c;
+        }
+        return i;
+    }
+
+
+    /**
+     * Copy bytes to chars until either array runs out of space or a byte at or
+     * above {@code limit} (treating bytes as unsigned) is found.
+     *
+     * @param src     Source bytes
+     * @param srcPos  Index of first byte to convert
+     * @param srcEnd  Index after the last byte available for conversion
+     * @param dst     Destination chars
+     * @param dstPos  Index of first char to write
+     * @param dstEnd  Index after the last char available for writing
+     * @param limit   Either {@code 0x80} or {@code 0x100}
+     *
+     * @return The number of bytes converted, which is also the number of chars
+     *         written
+     */
+    static int decode(byte[] src, int srcPos, int srcEnd, char[] dst, int dstPos, int dstEnd,
+            int limit) {
+        int n = Math.min(srcEnd - srcPos, dstEnd - dstPos);
+        int i = 0;
+        if (limit > 0xFF) {
+            // Every byte is a valid char
+            for (; i < n; i++) {
+                dst[dstPos + i] = (char) (src[srcPos + i] & 0xFF);
+            }
+            return i;
+        }
+        // Four bytes per iteration as long as none of them has the high bit
+        // set (i.e. is negative).
+        for (; i + 4 <= n; i += 4) {
+            byte b0 = src[srcPos + i];
+            byte b1 = src[srcPos + i + 1];
+            byte b2 = src[srcPos + i + 2];
+            byte b3 = src[srcPos + i + 3];
+            if ((b0 | b1 | b2 | b3) < 0) {
+                break;
+            }
+            dst[dstPos + i] = (char) b0;
+            dst[dstPos + i + 1] = (char) b1;
+            dst[dstPos + i + 2] = (char) b2;
+            dst[dstPos + i + 3] = (char) b3;
+        }
+        for (; i < n; i++) {
+            byte b = src[srcPos + i];
+            if (b < 0) {
+                break;
+            }
+            dst[dstPos + i] = (char) b;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.descriptor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.res.StringManager;
+import org.apache.tomcat.util.scan.SharedJarFiles;
+
+/**
+ * A directory of files that hold the result of parsing the descriptors (TLDs,
+ * web-fragment.xml) in JAR files so they do not have to be parsed again while
+ * the JARs are unchanged. Files are named after the content of the JAR they
+ * were created from so a JAR that has been replaced never uses the results for
+ * the old JAR. Only JARs that are files on the file system are supported.
+ * The names also record whether the descriptors were validated and whether
+ * external entities were blocked when they were parsed, so a change to either
+ * setting causes the descriptors to be parsed again.
+ * <p>
+ * The directory must not be used for anything else since files that are not
+ * used during a scan are deleted by {@link #removeUnused()}.
+ */
+public class JarDescriptorCache {
+
+    private static final Log log = LogFactory.getLog(JarDescriptorCache.class);
+    private static final StringManager sm =
+            StringManager.getManager(Constants.PACKAGE_NAME);
+
+    private final File dir;
+    private final String suffix;
+    private final Set<String> used =
+            Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+
+
+    private JarDescriptorCache(File dir, String suffix) {
+        this.dir = dir;
+        this.suffix = suffix;
+    }
+
+
+    /**
+     * Create a cache in the given directory.
+     *
+     * @param dir           The directory, which will be created if necessary
+     * @param suffix        The suffix of the names of the cache files
+     * @param validation    Are the descriptors validated when they are parsed?
+     * @param blockExternal Are external entities blocked when the descriptors
+     *                      are parsed?
+     *
+     * @return The cache or <code>null</code> if the directory could not be
+     *         created
+     */
+    public static JarDescriptorCache create(File dir, String suffix, boolean validation,
+            boolean blockExternal) {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            log.warn(sm.getString("jarDescriptorCache.dirFail", dir.getAbsolutePath()));
+            return null;
+        }
+        return new JarDescriptorCache(dir, "-validation-" + validation +
+                "-blockExternal-" + blockExternal + suffix);
+    }
+
+
+    /**
+     * Obtain the cache file for the given JAR. The file may not exist yet.
+     *
+     * @param jarFileUrl The URL of the JAR file
+     *
+     * @return The cache file or <code>null</code> if the results for the JAR
+     *         cannot be cached
+     */
+    public File getFile(URL jarFileUrl) {
+        if (!"file".equals(jarFileUrl.getProtocol()) ||
+                !jarFileUrl.getPath().endsWith(".jar")) {
+            return null;
+        }
+        try {
+            String key = SharedJarFiles.getContentKey(new File(jarFileUrl.toURI()));
+            if (key == null) {
+                return null;
+            }
+            String name = key + suffix;
+            used.add(name);
+            return new File(dir, name);
+        } catch (IOException | URISyntaxException e) {
+            log.warn(sm.getString("jarDescriptorCache.keyFail", jarFileUrl), e);
+            return null;
+        }
+    }
+
+
+    /**
+     * Read a cache file.
+     *
+     * @param file The cache file
+     *
+     * @return The content of the file or <code>null</code> if the file does not
+     *         exist or cannot be read
+     */
+    public byte[] read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            log.warn(sm.getString("jarDescriptorCache.readFail", file.getAbsolutePath()), e);
+            return null;
+        }
+    }
+
+
+    /**
+     * Write a cache file. The content is written to a temporary file first
+     * so a partially written file is never read.
+     *
+     * @param file    The cache file
+     * @param content The new content of the file
+     */
+    public void write(File file, byte[] content) {
+        File tmp = null;
+        try {
+            // A JAR may be present more than once
+            tmp = File.createTempFile(file.getName(), ".tmp", dir);
+            try (OutputStream os = new FileOutputStream(tmp)) {
+                os.write(content);
+            }
+            if (!tmp.renameTo(file) && !file.isFile()) {
+                throw new IOException(tmp.getAbsolutePath());
+            }
+        } catch (IOException e) {
+            log.warn(sm.getString("jarDescriptorCache.writeFail", file.getAbsolutePath()), e);
+        } finally {
+            if (tmp != null && tmp.exists() && !tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+        }
+    }
+
+
+    /**
+     * Delete the cache files that have not been obtained from
+     * {@link #getFile(URL)} since this cache was created. Files for JARs that
+     * have been removed or changed would otherwise accumulate.
+     */
+    public void removeUnused() {
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            if (!used.contains(name)) {
+                File file = new File(dir, name);
+                if (!file.delete() && log.isDebugEnabled()) {
+                    log.debug(sm.getString("jarDescriptorCache.deleteFail",
+                            file.getAbsolutePath()));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.descriptor.tld;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+
+import javax.servlet.jsp.tagext.FunctionInfo;
+import javax.servlet.jsp.tagext.TagAttributeInfo;
+import javax.servlet.jsp.tagext.TagVariableInfo;
+
+/**
+ * Converts a parsed {@link TaglibXml} to and from a compact binary form so
+ * that the result of parsing a TLD can be stored and reused without parsing
+ * the TLD again.
+ */
+public final class TaglibXmlCodec {
+
+    private TaglibXmlCodec() {
+        // Utility class. Hide default constructor
+    }
+
+
+    public static void write(DataOutput out, TaglibXml taglibXml) throws IOException {
+        writeString(out, taglibXml.getTlibVersion());
+        writeString(out, taglibXml.getJspVersion());
+        writeString(out, taglibXml.getShortName());
+        writeString(out, taglibXml.getUri());
+        writeString(out, taglibXml.getInfo());
+
+        ValidatorXml validator = taglibXml.getValidator();
+        out.writeBoolean(validator != null);
+        if (validator != null) {
+            writeString(out, validator.getValidatorClass());
+            out.writeInt(validator.getInitParams().size());
+            for (Map.Entry<String,String> entry : validator.getInitParams().entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+
+        out.writeInt(taglibXml.getTags().size());
+        for (TagXml tag : taglibXml.getTags()) {
+            writeTag(out, tag);
+        }
+
+        out.writeInt(taglibXml.getTagFiles().size());
+        for (TagFileXml tagFile : taglibXml.getTagFiles()) {
+            writeString(out, tagFile.getName());
+            writeString(out, tagFile.getPath());
+            writeString(out, tagFile.getDisplayName());
+            writeString(out, tagFile.getSmallIcon());
+            writeString(out, tagFile.getLargeIcon());
+            writeString(out, tagFile.getInfo());
+        }
+
+        out.writeInt(taglibXml.getListeners().size());
+        for (String listener : taglibXml.getListeners()) {
+            writeString(out, listener);
+        }
+
+        out.writeInt(taglibXml.getFunctions().size());
+        for (FunctionInfo function : taglibXml.getFunctions()) {
+            writeString(out, function.getName());
+            writeString(out, function.getFunctionClass());
+            writeString(out, function.getFunctionSignature());
+        }
+    }
+
+
+    public static TaglibXml read(DataInput in) throws IOException {
+        TaglibXml taglibXml = new TaglibXml();
+        taglibXml.setTlibVersion(readString(in));
+        taglibXml.setJspVersion(readString(in));
+        taglibXml.setShortName(readString(in));
+        taglibXml.setUri(readString(in));
+        taglibXml.setInfo(readString(in));
+
+        if (in.readBoolean()) {
+            ValidatorXml validator = new ValidatorXml();
+            validator.setValidatorClass(readString(in));
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                validator.addInitParam(readString(in), readString(in));
+            }
+            taglibXml.setValidator(validator);
+        }
+
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            taglibXml.addTag(readTag(in));
+        }
+
+        count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            TagFileXml tagFile = new TagFileXml();
+            tagFile.setName(readString(in));
+            tagFile.setPath(readString(in));
+            tagFile.setDisplayName(readString(in));
+            tagFile.setSmallIcon(readString(in));
+            tagFile.setLargeIcon(readString(in));
+            tagFile.setInfo(readString(in));
+            taglibXml.addTagFile(tagFile);
+        }
+
+        count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            taglibXml.addListener(readString(in));
+        }
+
+        count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            taglibXml.addFunction(readString(in), readString(in), readString(in));
+        }
+        return taglibXml;
+    }
+
+
+    private static void writeTag(DataOutput out, TagXml tag) throws IOException {
+        writeString(out, tag.getName());
+        writeString(out, tag.getTagClass());
+        writeString(out, tag.getTeiClass());
+        writeString(out, tag.getBodyContent());
+        writeString(out, tag.getDisplayName());
+        writeString(out, tag.getSmallIcon());
+        writeString(out, tag.getLargeIcon());
+        writeString(out, tag.getInfo());
+        out.writeBoolean(tag.hasDynamicAttributes());
+
+        out.writeInt(tag.getAttributes().size());
+        for (TagAttributeInfo attribute : tag.getAttributes()) {
+            writeString(out, attribute.getName());
+            out.writeBoolean(attribute.isRequired());
+            writeString(out, attribute.getTypeName());
+            out.writeBoolean(attribute.canBeRequestTime());
+            out.writeBoolean(attribute.isFragment());
+            writeString(out, attribute.getDescription());
+            out.writeBoolean(attribute.isDeferredValue());
+            out.writeBoolean(attribute.isDeferredMethod());
+            writeString(out, attribute.getExpectedTypeName());
+            writeString(out, attribute.getMethodSignature());
+        }
+
+        out.writeInt(tag.getVariables().size());
+        for (TagVariableInfo variable : tag.getVariables()) {
+            writeString(out, variable.getNameGiven());
+            writeString(out, variable.getNameFromAttribute());
+            writeString(out, variable.getClassName());
+            out.writeBoolean(variable.getDeclare());
+            out.writeInt(variable.getScope());
+        }
+    }
+
+
+    private static TagXml readTag(DataInput in) throws IOException {
+        TagXml tag = new TagXml();
+        tag.setName(readString(in));
+        tag.setTagClass(readString(in));
+        tag.setTeiClass(readString(in));
+        tag.setBodyContent(readString(in));
+        tag.setDisplayName(readString(in));
+        tag.setSmallIcon(readString(in));
+        tag.setLargeIcon(readString(in));
+        tag.setInfo(readString(in));
+        tag.setDynamicAttributes(in.readBoolean());
+
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = readString(in);
+            boolean required = in.readBoolean();
+            String type = readString(in);
+            boolean reqTime = in.readBoolean();
+            boolean fragment = in.readBoolean();
+            String description = readString(in);
+            boolean deferredValue = in.readBoolean();
+            boolean deferredMethod = in.readBoolean();
+            String expectedTypeName = readString(in);
+            String methodSignature = readString(in);
+            tag.getAttributes().add(new TagAttributeInfo(name, required, type, reqTime,
+                    fragment, description, deferredValue, deferredMethod,
+                    expectedTypeName, methodSignature));
+        }
+
+        count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String nameGiven = readString(in);
+            String nameFromAttribute = readString(in);
+            String className = readString(in);
+            boolean declare = in.readBoolean();
+            int scope = in.readInt();
+            tag.getVariables().add(new TagVariableInfo(
+                    nameGiven, nameFromAttribute, className, declare, scope));
+        }
+        return tag;
+    }
+
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            out.writeUTF(s);
+        }
+    }
+
+
+    private static String readString(DataInput in) throws IOException {
+        if (in.readBoolean()) {
+            return in.readUTF();
+        }
+        return null;
+    }
+}
@@ -24,8 +24,12 @@ import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.Jar;
 import org.apache.tomcat.JarScannerCallback;
+import org.apache.tomcat.util.descriptor.JarDescriptorCache;
+import org.apache.tomcat.util.res.StringManager;
 import org.xml.sax.InputSource;
 
 /**
@@ -35,11 +39,15 @@ public class FragmentJarScannerCallback implements JarScannerCallback {
 
     private static final String FRAGMENT_LOCATION =
             "META-INF/web-fragment.xml";
+    private static final StringManager sm =
+            StringManager.getManager(Constants.PACKAGE_NAME);
+    private final Log log = LogFactory.getLog(FragmentJarScannerCallback.class); // must not be static
     private final WebXmlParser webXmlParser;
     private final boolean delegate;
     private final boolean parseRequired;
     private final Map<String, WebXml> fragments = new HashMap<>();
     private boolean ok = true;
+    private JarDescriptorCache jarDescriptorCache = null;
 
     public FragmentJarScannerCallback(WebXmlParser webXmlParser, boolean delegate,
                                       boolean parseRequired) {
@@ -49,6 +57,18 @@ public class FragmentJarScannerCallback implements JarScannerCallback {
     }
 
 
+    /**
+     * Set the cache used to store the web-fragment.xml files parsed from JARs
+     * so they do not have to be parsed again while the JARs are unchanged.
+     *
+     * @param jarDescriptorCache The cache to use or <code>null</code> to parse
+     *                           the web-fragment.xml file in every JAR
+     */
+    public void setJarDescriptorCache(JarDescriptorCache jarDescriptorCache) {
+        this.jarDescriptorCache = jarDescriptorCache;
+    }
+
+
     @Override
     public void scan(Jar jar, String webappPath, boolean isWebapp) throws IOException {
 
@@ -66,24 +86,79 @@ public class FragmentJarScannerCallback implements JarScannerCallback {
                 is = jar.getInputStream(FRAGMENT_LOCATION);
             }
 
+            File cacheFile = null;
+            if (is != null && jarDescriptorCache != null) {
+                cacheFile = jarDescriptorCache.getFile(jar.getJarFileURL());
+            }
+            WebXml cached = null;
+            if (cacheFile != null) {
+                cached = readCacheFile(cacheFile, jar.getJarFileURL());
+            }
+
             if (is == null) {
                 // If there is no web.xml, normal JAR no impact on
                 // distributable
                 fragment.setDistributable(true);
+            } else if (cached != null) {
+                fragment = cached;
+                fragment.setWebappJar(isWebapp);
+                fragment.setDelegate(delegate);
             } else {
                 String fragmentUrl = jar.getURL(FRAGMENT_LOCATION);
                 InputSource source = new InputSource(fragmentUrl);
                 source.setByteStream(is);
                 if (!webXmlParser.parseWebXml(source, fragment, true)) {
                     ok = false;
+                } else if (cacheFile != null) {
+                    // Only successfully parsed fragments are cached
+                    writeCacheFile(cacheFile, jar.getJarFileURL(), fragment);
                 }
             }
         } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
             addFragment(fragment, jar.getJarFileURL());
         }
     }
 
 
+    private WebXml readCacheFile(File cacheFile, URL jarFileUrl) {
+        byte[] content = jarDescriptorCache.read(cacheFile);
+        if (content == null) {
+            return null;
+        }
+        try {
+            WebXml result = WebXmlCodec.decode(content);
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("fragmentJarScannerCallback.cacheHit",
+                        jarFileUrl, cacheFile.getAbsolutePath()));
+            }
+            return result;
+        } catch (IOException e) {
+            log.warn(sm.getString("fragmentJarScannerCallback.cacheReadFail",
+                    jarFileUrl, cacheFile.getAbsolutePath()), e);
+            return null;
+        }
+    }
+
+
+    private void writeCacheFile(File cacheFile, URL jarFileUrl, WebXml fragment) {
+        byte[] content;
+        try {
+            content = WebXmlCodec.encode(fragment);
+        } catch (IOException e) {
+            log.warn(sm.getString("fragmentJarScannerCallback.cacheWriteFail", jarFileUrl), e);
+            return;
+        }
+        jarDescriptorCache.write(cacheFile, content);
+    }
+
+
     private String extractJarFileName(URL input) {
         String url = input.toString();
         if (url.endsWith("!/")) {
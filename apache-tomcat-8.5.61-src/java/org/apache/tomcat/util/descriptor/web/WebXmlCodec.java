@@ -0,0 +1,413 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.descriptor.web;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.SessionTrackingMode;
+
+/**
+ * Converts the result of parsing a web.xml or web-fragment.xml file to and
+ * from a binary form so that the file does not have to be parsed again.
+ * <p>
+ * {@link WebXml} is not {@link Serializable} and the content of a number of
+ * its fields is validated or adjusted as it is added. The elements parsed from
+ * the XML source are therefore written individually and restored using the
+ * same methods the parser uses. Attributes that are not defined by the XML
+ * source, such as the URL of the JAR or whether the JAR is part of the web
+ * application, are not included and must be set by the caller.
+ */
+public final class WebXmlCodec {
+
+    private static final int VERSION = 1;
+
+    private static final Set<String> ALLOWED_CLASSES = new HashSet<>();
+
+    static {
+        ALLOWED_CLASSES.add(ArrayList.class.getName());
+        ALLOWED_CLASSES.add(Boolean.class.getName());
+        ALLOWED_CLASSES.add(HashMap.class.getName());
+        ALLOWED_CLASSES.add(HashSet.class.getName());
+        ALLOWED_CLASSES.add(Integer.class.getName());
+        ALLOWED_CLASSES.add(Number.class.getName());
+        ALLOWED_CLASSES.add(String.class.getName());
+        ALLOWED_CLASSES.add(String[].class.getName());
+    }
+
+    private WebXmlCodec() {
+        // Utility class. Hide default constructor
+    }
+
+
+    public static byte[] encode(WebXml webXml) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(baos)) {
+            out.writeInt(VERSION);
+            out.writeUTF(webXml.getCharset().name());
+            out.writeObject(webXml.getName());
+            out.writeObject(webXml.getPublicId());
+            out.writeUTF(webXml.getVersion());
+            out.writeBoolean(webXml.isMetadataComplete());
+            out.writeBoolean(webXml.isDistributable());
+            out.writeBoolean(webXml.getDenyUncoveredHttpMethods());
+            out.writeObject(webXml.getDisplayName());
+
+            out.writeObject(toList(webXml.getAbsoluteOrdering()));
+            out.writeObject(toList(webXml.getAfterOrdering()));
+            out.writeObject(toList(webXml.getBeforeOrdering()));
+
+            out.writeObject(toMap(webXml.getContextParams()));
+            out.writeObject(toList(webXml.getFilters().values()));
+            out.writeObject(toList(webXml.getFilterMappings()));
+            out.writeObject(toList(webXml.getListeners()));
+            out.writeObject(toList(webXml.getServlets().values()));
+            out.writeObject(toMap(webXml.getServletMappings()));
+            writeSessionConfig(out, webXml.getSessionConfig());
+            out.writeObject(toMap(webXml.getMimeMappings()));
+            out.writeObject(toList(webXml.getWelcomeFiles()));
+            out.writeObject(toList(webXml.getErrorPages().values()));
+            out.writeObject(toMap(webXml.getTaglibs()));
+            out.writeInt(webXml.getJspPropertyGroups().size());
+            for (JspPropertyGroup jspPropertyGroup : webXml.getJspPropertyGroups()) {
+                writeJspPropertyGroup(out, jspPropertyGroup);
+            }
+            out.writeObject(toList(webXml.getSecurityConstraints()));
+            out.writeObject(webXml.getLoginConfig());
+            out.writeObject(toList(webXml.getSecurityRoles()));
+
+            out.writeObject(toList(webXml.getEnvEntries().values()));
+            out.writeObject(toList(webXml.getEjbRefs().values()));
+            out.writeObject(toList(webXml.getEjbLocalRefs().values()));
+            out.writeObject(toList(webXml.getServiceRefs().values()));
+            out.writeObject(toList(webXml.getResourceRefs().values()));
+            out.writeObject(toList(webXml.getResourceEnvRefs().values()));
+            out.writeObject(toList(webXml.getMessageDestinationRefs().values()));
+            out.writeObject(toList(webXml.getMessageDestinations().values()));
+
+            out.writeObject(toMap(webXml.getLocaleEncodingMappings()));
+            out.writeObject(toMap(webXml.getPostConstructMethods()));
+            out.writeObject(toMap(webXml.getPreDestroyMethods()));
+        }
+        return baos.toByteArray();
+    }
+
+
+    public static WebXml decode(byte[] content) throws IOException {
+        try (ObjectInputStream in = new WebXmlObjectInputStream(
+                new ByteArrayInputStream(content))) {
+            if (in.readInt() != VERSION) {
+                throw new InvalidClassException(WebXmlCodec.class.getName());
+            }
+            WebXml webXml = new WebXml();
+            // Must be set first as some elements use it as they are added
+            webXml.setCharset(Charset.forName(in.readUTF()));
+            webXml.setName((String) in.readObject());
+            String publicId = (String) in.readObject();
+            String version = in.readUTF();
+            if (publicId == null) {
+                webXml.setVersion(version);
+            } else {
+                webXml.setPublicId(publicId);
+            }
+            webXml.setMetadataComplete(in.readBoolean());
+            webXml.setDistributable(in.readBoolean());
+            webXml.setDenyUncoveredHttpMethods(in.readBoolean());
+            webXml.setDisplayName((String) in.readObject());
+
+            List<String> absoluteOrdering = readList(in);
+            if (absoluteOrdering != null) {
+                webXml.createAbsoluteOrdering();
+                for (String fragmentName : absoluteOrdering) {
+                    webXml.addAbsoluteOrdering(fragmentName);
+                }
+            }
+            for (String fragmentName : WebXmlCodec.<String>readList(in)) {
+                webXml.addAfterOrdering(fragmentName);
+            }
+            for (String fragmentName : WebXmlCodec.<String>readList(in)) {
+                webXml.addBeforeOrdering(fragmentName);
+            }
+
+            for (Map.Entry<String,String> entry : readMap(in).entrySet()) {
+                webXml.addContextParam(entry.getKey(), entry.getValue());
+            }
+            for (FilterDef filterDef : WebXmlCodec.<FilterDef>readList(in)) {
+                webXml.addFilter(filterDef);
+            }
+            for (FilterMap filterMap : WebXmlCodec.<FilterMap>readList(in)) {
+                webXml.addFilterMapping(filterMap);
+            }
+            for (String listener : WebXmlCodec.<String>readList(in)) {
+                webXml.addListener(listener);
+            }
+            for (ServletDef servletDef : WebXmlCodec.<ServletDef>readList(in)) {
+                webXml.addServlet(servletDef);
+            }
+            for (Map.Entry<String,String> entry : readMap(in).entrySet()) {
+                webXml.addServletMappingDecoded(entry.getKey(), entry.getValue());
+            }
+            webXml.setSessionConfig(readSessionConfig(in));
+            for (Map.Entry<String,String> entry : readMap(in).entrySet()) {
+                webXml.addMimeMapping(entry.getKey(), entry.getValue());
+            }
+            for (String welcomeFile : WebXmlCodec.<String>readList(in)) {
+                webXml.addWelcomeFile(welcomeFile);
+            }
+            for (ErrorPage errorPage : WebXmlCodec.<ErrorPage>readList(in)) {
+                webXml.addErrorPage(errorPage);
+            }
+            for (Map.Entry<String,String> entry : readMap(in).entrySet()) {
+                webXml.addTaglib(entry.getKey(), entry.getValue());
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                webXml.addJspPropertyGroup(readJspPropertyGroup(in));
+            }
+            for (SecurityConstraint constraint : WebXmlCodec.<SecurityConstraint>readList(in)) {
+                webXml.addSecurityConstraint(constraint);
+            }
+            LoginConfig loginConfig = (LoginConfig) in.readObject();
+            if (loginConfig != null) {
+                webXml.setLoginConfig(loginConfig);
+            }
+            for (String securityRole : WebXmlCodec.<String>readList(in)) {
+                webXml.addSecurityRole(securityRole);
+            }
+
+            for (ContextEnvironment envEntry : WebXmlCodec.<ContextEnvironment>readList(in)) {
+                webXml.addEnvEntry(envEntry);
+            }
+            for (ContextEjb ejbRef : WebXmlCodec.<ContextEjb>readList(in)) {
+                webXml.addEjbRef(ejbRef);
+            }
+            for (ContextLocalEjb ejbLocalRef : WebXmlCodec.<ContextLocalEjb>readList(in)) {
+                webXml.addEjbLocalRef(ejbLocalRef);
+            }
+            for (ContextService serviceRef : WebXmlCodec.<ContextService>readList(in)) {
+                webXml.addServiceRef(serviceRef);
+            }
+            for (ContextResource resourceRef : WebXmlCodec.<ContextResource>readList(in)) {
+                webXml.addResourceRef(resourceRef);
+            }
+            for (ContextResourceEnvRef resourceEnvRef :
+                    WebXmlCodec.<ContextResourceEnvRef>readList(in)) {
+                webXml.addResourceEnvRef(resourceEnvRef);
+            }
+            for (MessageDestinationRef messageDestinationRef :
+                    WebXmlCodec.<MessageDestinationRef>readList(in)) {
+                webXml.addMessageDestinationRef(messageDestinationRef);
+            }
+            for (MessageDestination messageDestination :
+                    WebXmlCodec.<MessageDestination>readList(in)) {
+                webXml.addMessageDestination(messageDestination);
+            }
+
+            for (Map.Entry<String,String> entry : readMap(in).entrySet()) {
+                webXml.addLocaleEncodingMapping(entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<String,String> entry : readMap(in).entrySet()) {
+                webXml.addPostConstructMethods(entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<String,String> entry : readMap(in).entrySet()) {
+                webXml.addPreDestroyMethods(entry.getKey(), entry.getValue());
+            }
+            return webXml;
+        } catch (ClassNotFoundException | ClassCastException | IllegalArgumentException e) {
+            throw new IOException(e);
+        }
+    }
+
+
+    private static void writeSessionConfig(ObjectOutputStream out, SessionConfig sessionConfig)
+            throws IOException {
+        out.writeObject(sessionConfig.getSessionTimeout());
+        out.writeObject(sessionConfig.getCookieName());
+        out.writeObject(sessionConfig.getCookieDomain());
+        out.writeObject(sessionConfig.getCookiePath());
+        out.writeObject(sessionConfig.getCookieComment());
+        out.writeObject(sessionConfig.getCookieHttpOnly());
+        out.writeObject(sessionConfig.getCookieSecure());
+        out.writeObject(sessionConfig.getCookieMaxAge());
+        out.writeInt(sessionConfig.getSessionTrackingModes().size());
+        for (SessionTrackingMode mode : sessionConfig.getSessionTrackingModes()) {
+            out.writeUTF(mode.name());
+        }
+    }
+
+
+    private static SessionConfig readSessionConfig(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        SessionConfig sessionConfig = new SessionConfig();
+        // The setters parse their values so only call them for values that
+        // were present in the XML source
+        Object value = in.readObject();
+        if (value != null) {
+            sessionConfig.setSessionTimeout(value.toString());
+        }
+        sessionConfig.setCookieName((String) in.readObject());
+        sessionConfig.setCookieDomain((String) in.readObject());
+        sessionConfig.setCookiePath((String) in.readObject());
+        sessionConfig.setCookieComment((String) in.readObject());
+        value = in.readObject();
+        if (value != null) {
+            sessionConfig.setCookieHttpOnly(value.toString());
+        }
+        value = in.readObject();
+        if (value != null) {
+            sessionConfig.setCookieSecure(value.toString());
+        }
+        value = in.readObject();
+        if (value != null) {
+            sessionConfig.setCookieMaxAge(value.toString());
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            sessionConfig.addSessionTrackingMode(in.readUTF());
+        }
+        return sessionConfig;
+    }
+
+
+    private static void writeJspPropertyGroup(ObjectOutputStream out,
+            JspPropertyGroup jspPropertyGroup) throws IOException {
+        out.writeObject(jspPropertyGroup.getDeferredSyntax());
+        out.writeObject(jspPropertyGroup.getElIgnored());
+        out.writeObject(toList(jspPropertyGroup.getIncludeCodas()));
+        out.writeObject(toList(jspPropertyGroup.getIncludePreludes()));
+        out.writeObject(jspPropertyGroup.getIsXml());
+        out.writeObject(jspPropertyGroup.getPageEncoding());
+        out.writeObject(jspPropertyGroup.getScriptingInvalid());
+        out.writeObject(jspPropertyGroup.getTrimWhitespace());
+        out.writeObject(toList(jspPropertyGroup.getUrlPatterns()));
+        out.writeObject(jspPropertyGroup.getDefaultContentType());
+        out.writeObject(jspPropertyGroup.getBuffer());
+        out.writeObject(jspPropertyGroup.getErrorOnUndeclaredNamespace());
+    }
+
+
+    private static JspPropertyGroup readJspPropertyGroup(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        JspPropertyGroup jspPropertyGroup = new JspPropertyGroup();
+        // The setters parse their values so only call them for values that
+        // were present in the XML source
+        Object value = in.readObject();
+        if (value != null) {
+            jspPropertyGroup.setDeferredSyntax(value.toString());
+        }
+        value = in.readObject();
+        if (value != null) {
+            jspPropertyGroup.setElIgnored(value.toString());
+        }
+        for (String includeCoda : WebXmlCodec.<String>readList(in)) {
+            jspPropertyGroup.addIncludeCoda(includeCoda);
+        }
+        for (String includePrelude : WebXmlCodec.<String>readList(in)) {
+            jspPropertyGroup.addIncludePrelude(includePrelude);
+        }
+        value = in.readObject();
+        if (value != null) {
+            jspPropertyGroup.setIsXml(value.toString());
+        }
+        jspPropertyGroup.setPageEncoding((String) in.readObject());
+        value = in.readObject();
+        if (value != null) {
+            jspPropertyGroup.setScriptingInvalid(value.toString());
+        }
+        value = in.readObject();
+        if (value != null) {
+            jspPropertyGroup.setTrimWhitespace(value.toString());
+        }
+        for (String urlPattern : WebXmlCodec.<String>readList(in)) {
+            jspPropertyGroup.addUrlPatternDecoded(urlPattern);
+        }
+        jspPropertyGroup.setDefaultContentType((String) in.readObject());
+        jspPropertyGroup.setBuffer((String) in.readObject());
+        value = in.readObject();
+        if (value != null) {
+            jspPropertyGroup.setErrorOnUndeclaredNamespace(value.toString());
+        }
+        return jspPropertyGroup;
+    }
+
+
+    private static <T> ArrayList<T> toList(Collection<T> collection) {
+        if (collection == null) {
+            return null;
+        }
+        return new ArrayList<>(collection);
+    }
+
+
+    private static HashMap<String,String> toMap(Map<String,String> map) {
+        return new HashMap<>(map);
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> readList(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        return (List<T>) in.readObject();
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private static Map<String,String> readMap(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        return (Map<String,String>) in.readObject();
+    }
+
+
+    /*
+     * Only permits the classes that may be written by this codec.
+     */
+    private static class WebXmlObjectInputStream extends ObjectInputStream {
+
+        private static final String PACKAGE = WebXml.class.getPackage().getName() + '.';
+        private static final String PACKAGE_ARRAY = "[L" + PACKAGE;
+
+        WebXmlObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc)
+                throws IOException, ClassNotFoundException {
+            String name = desc.getName();
+            if (!ALLOWED_CLASSES.contains(name) && !name.startsWith(PACKAGE) &&
+                    !name.startsWith(PACKAGE_ARRAY)) {
+                throw new InvalidClassException(name);
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
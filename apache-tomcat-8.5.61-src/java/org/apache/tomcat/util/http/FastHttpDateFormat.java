@@ -16,6 +16,7 @@
  */
 package org.apache.tomcat.util.http;
 
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.util.Date;
@@ -71,15 +72,10 @@ public final class FastHttpDateFormat {
     }
 
     /**
-     * Instant on which the currentDate object was generated.
+     * Current formatted date, together with its encoded form and the instant
+     * on which it was generated.
      */
-    private static volatile long currentDateGenerated = 0L;
-
-
-    /**
-     * Current formatted date.
-     */
-    private static String currentDate = null;
+    private static volatile CurrentDate currentDate = new CurrentDate(0L, null);
 
 
     /**
@@ -103,12 +99,30 @@ public final class FastHttpDateFormat {
      * @return the HTTP date
      */
     public static final String getCurrentDate() {
+        return getCurrent().value;
+    }
+
+
+    /**
+     * Get the current date in HTTP format, encoded using ISO-8859-1 so that it
+     * may be written directly to a response header. The returned array is
+     * shared and must not be modified by the caller.
+     *
+     * @return the HTTP date as bytes
+     */
+    public static final byte[] getCurrentDateBytes() {
+        return getCurrent().bytes;
+    }
+
+
+    private static CurrentDate getCurrent() {
         long now = System.currentTimeMillis();
-        if ((now - currentDateGenerated) > 1000) {
-            currentDate = FORMAT_RFC5322.format(new Date(now));
-            currentDateGenerated = now;
+        CurrentDate current = currentDate;
+        if ((now - current.generated) > 1000) {
+            current = new CurrentDate(now, FORMAT_RFC5322.format(new Date(now)));
+            currentDate = current;
         }
-        return currentDate;
+        return current;
     }
 
 
@@ -218,4 +232,20 @@ public final class FastHttpDateFormat {
     }
 
 
+    /**
+     * Immutable holder so the String and byte forms of the current date are
+     * always published together.
+     */
+    private static final class CurrentDate {
+
+        private final long generated;
+        private final String value;
+        private final byte[] bytes;
+
+        private CurrentDate(long generated, String value) {
+            this.generated = generated;
+            this.value = value;
+            this.bytes = (value == null) ? null : value.getBytes(StandardCharsets.ISO_8859_1);
+        }
+    }
 }
@@ -0,0 +1,492 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.modeler;
+
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.IntrospectionException;
+import javax.management.InvalidAttributeValueException;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.NotCompliantMBeanException;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+import javax.management.OperationsException;
+import javax.management.QueryExp;
+import javax.management.ReflectionException;
+import javax.management.loading.ClassLoaderRepository;
+
+/**
+ * An {@link MBeanServer} that forwards to the MBeanServer used by the
+ * {@link Registry} and holds back the components the Registry was asked to
+ * register until they are first accessed. Creating the model MBean, loading
+ * the descriptors for its package and registering it with the MBeanServer is
+ * then done for the accessed components only. Queries with a pattern register
+ * the matching components first, except that {@link #queryNames(ObjectName,
+ * QueryExp)} without a query expression only needs their names.
+ */
+final class DeferredRegistrationMBeanServer implements MBeanServer {
+
+    private final Registry registry;
+    private final MBeanServer server;
+
+    /*
+     * Components waiting to be registered in the order the Registry received
+     * them. Guarded by itself. Registration takes place while holding the lock
+     * so a component can't be unregistered while it is being registered.
+     */
+    private final Map<ObjectName,DeferredComponent> deferred = new LinkedHashMap<>();
+    // Avoids the lock when there is nothing to register
+    private volatile boolean empty = true;
+
+
+    DeferredRegistrationMBeanServer(Registry registry, MBeanServer server) {
+        this.registry = registry;
+        this.server = server;
+    }
+
+
+    void defer(Object bean, ObjectName oname, String type) {
+        synchronized (deferred) {
+            deferred.put(oname, new DeferredComponent(bean, type));
+            empty = false;
+        }
+    }
+
+
+    /**
+     * Register the deferred components that match the given name.
+     *
+     * @param name The name or pattern to match, <code>null</code> to register
+     *             all deferred components
+     */
+    void registerDeferred(ObjectName name) {
+        if (empty) {
+            return;
+        }
+        synchronized (deferred) {
+            if (name != null && !name.isPattern()) {
+                DeferredComponent component = deferred.remove(name);
+                if (component != null) {
+                    component.register(name);
+                }
+            } else {
+                Iterator<Map.Entry<ObjectName,DeferredComponent>> iter =
+                        deferred.entrySet().iterator();
+                while (iter.hasNext()) {
+                    Map.Entry<ObjectName,DeferredComponent> entry = iter.next();
+                    if (name == null || name.apply(entry.getKey())) {
+                        iter.remove();
+                        entry.getValue().register(entry.getKey());
+                    }
+                }
+            }
+            empty = deferred.isEmpty();
+        }
+    }
+
+
+    private boolean removeDeferred(ObjectName name) {
+        if (empty) {
+            return false;
+        }
+        synchronized (deferred) {
+            boolean removed = deferred.remove(name) != null;
+            empty = deferred.isEmpty();
+            return removed;
+        }
+    }
+
+
+    private boolean isDeferred(ObjectName name) {
+        if (empty) {
+            return false;
+        }
+        synchronized (deferred) {
+            return deferred.containsKey(name);
+        }
+    }
+
+
+    private List<ObjectName> getDeferredNames(ObjectName name) {
+        List<ObjectName> result = new ArrayList<>();
+        if (empty) {
+            return result;
+        }
+        synchronized (deferred) {
+            for (ObjectName deferredName : deferred.keySet()) {
+                if (name == null || name.apply(deferredName)) {
+                    result.add(deferredName);
+                }
+            }
+        }
+        return result;
+    }
+
+
+    // ------------------------------------------------ Registration and queries
+
+    @Override
+    public ObjectInstance createMBean(String className, ObjectName name)
+            throws ReflectionException, InstanceAlreadyExistsException,
+            MBeanRegistrationException, MBeanException, NotCompliantMBeanException {
+        registerDeferred(name);
+        return server.createMBean(className, name);
+    }
+
+
+    @Override
+    public ObjectInstance createMBean(String className, ObjectName name, ObjectName loaderName)
+            throws ReflectionException, InstanceAlreadyExistsException,
+            MBeanRegistrationException, MBeanException, NotCompliantMBeanException,
+            InstanceNotFoundException {
+        registerDeferred(name);
+        registerDeferred(loaderName);
+        return server.createMBean(className, name, loaderName);
+    }
+
+
+    @Override
+    public ObjectInstance createMBean(String className, ObjectName name, Object[] params,
+            String[] signature) throws ReflectionException, InstanceAlreadyExistsException,
+            MBeanRegistrationException, MBeanException, NotCompliantMBeanException {
+        registerDeferred(name);
+        return server.createMBean(className, name, params, signature);
+    }
+
+
+    @Override
+    public ObjectInstance createMBean(String className, ObjectName name, ObjectName loaderName,
+            Object[] params, String[] signature) throws ReflectionException,
+            InstanceAlreadyExistsException, MBeanRegistrationException, MBeanException,
+            NotCompliantMBeanException, InstanceNotFoundException {
+        registerDeferred(name);
+        registerDeferred(loaderName);
+        return server.createMBean(className, name, loaderName, params, signature);
+    }
+
+
+    @Override
+    public ObjectInstance registerMBean(Object object, ObjectName name)
+            throws InstanceAlreadyExistsException, MBeanRegistrationException,
+            NotCompliantMBeanException {
+        registerDeferred(name);
+        return server.registerMBean(object, name);
+    }
+
+
+    @Override
+    public void unregisterMBean(ObjectName name)
+            throws InstanceNotFoundException, MBeanRegistrationException {
+        // A component that was never registered does not need to be
+        if (!removeDeferred(name)) {
+            server.unregisterMBean(name);
+        }
+    }
+
+
+    @Override
+    public ObjectInstance getObjectInstance(ObjectName name) throws InstanceNotFoundException {
+        registerDeferred(name);
+        return server.getObjectInstance(name);
+    }
+
+
+    @Override
+    public Set<ObjectInstance> queryMBeans(ObjectName name, QueryExp query) {
+        registerDeferred(name);
+        return server.queryMBeans(name, query);
+    }
+
+
+    @Override
+    public Set<ObjectName> queryNames(ObjectName name, QueryExp query) {
+        if (query != null) {
+            // The query needs the MBeans
+            registerDeferred(name);
+            return server.queryNames(name, query);
+        }
+        Set<ObjectName> result = new HashSet<>(server.queryNames(name, null));
+        result.addAll(getDeferredNames(name));
+        return result;
+    }
+
+
+    @Override
+    public boolean isRegistered(ObjectName name) {
+        return isDeferred(name) || server.isRegistered(name);
+    }
+
+
+    @Override
+    public Integer getMBeanCount() {
+        int count = server.getMBeanCount().intValue();
+        if (!empty) {
+            synchronized (deferred) {
+                count += deferred.size();
+            }
+        }
+        return Integer.valueOf(count);
+    }
+
+
+    @Override
+    public String getDefaultDomain() {
+        return server.getDefaultDomain();
+    }
+
+
+    @Override
+    public String[] getDomains() {
+        Set<String> domains = new HashSet<>();
+        for (String domain : server.getDomains()) {
+            domains.add(domain);
+        }
+        for (ObjectName name : getDeferredNames(null)) {
+            domains.add(name.getDomain());
+        }
+        return domains.toArray(new String[0]);
+    }
+
+
+    // ---------------------------------------------- Access to a single MBean
+
+    @Override
+    public Object getAttribute(ObjectName name, String attribute) throws MBeanException,
+            AttributeNotFoundException, InstanceNotFoundException, ReflectionException {
+        registerDeferred(name);
+        return server.getAttribute(name, attribute);
+    }
+
+
+    @Override
+    public AttributeList getAttributes(ObjectName name, String[] attributes)
+            throws InstanceNotFoundException, ReflectionException {
+        registerDeferred(name);
+        return server.getAttributes(name, attributes);
+    }
+
+
+    @Override
+    public void setAttribute(ObjectName name, Attribute attribute)
+            throws InstanceNotFoundException, AttributeNotFoundException,
+            InvalidAttributeValueException, MBeanException, ReflectionException {
+        registerDeferred(name);
+        server.setAttribute(name, attribute);
+    }
+
+
+    @Override
+    public AttributeList setAttributes(ObjectName name, AttributeList attributes)
+            throws InstanceNotFoundException, ReflectionException {
+        registerDeferred(name);
+        return server.setAttributes(name, attributes);
+    }
+
+
+    @Override
+    public Object invoke(ObjectName name, String operationName, Object[] params,
+            String[] signature)
+            throws InstanceNotFoundException, MBeanException, ReflectionException {
+        registerDeferred(name);
+        return server.invoke(name, operationName, params, signature);
+    }
+
+
+    @Override
+    public MBeanInfo getMBeanInfo(ObjectName name) throws InstanceNotFoundException,
+            IntrospectionException, ReflectionException {
+        registerDeferred(name);
+        return server.getMBeanInfo(name);
+    }
+
+
+    @Override
+    public boolean isInstanceOf(ObjectName name, String className)
+            throws InstanceNotFoundException {
+        registerDeferred(name);
+        return server.isInstanceOf(name, className);
+    }
+
+
+    @Override
+    public void addNotificationListener(ObjectName name, NotificationListener listener,
+            NotificationFilter filter, Object handback) throws InstanceNotFoundException {
+        registerDeferred(name);
+        server.addNotificationListener(name, listener, filter, handback);
+    }
+
+
+    @Override
+    public void addNotificationListener(ObjectName name, ObjectName listener,
+            NotificationFilter filter, Object handback) throws InstanceNotFoundException {
+        registerDeferred(name);
+        registerDeferred(listener);
+        server.addNotificationListener(name, listener, filter, handback);
+    }
+
+
+    @Override
+    public void removeNotificationListener(ObjectName name, ObjectName listener)
+            throws InstanceNotFoundException, ListenerNotFoundException {
+        registerDeferred(name);
+        server.removeNotificationListener(name, listener);
+    }
+
+
+    @Override
+    public void removeNotificationListener(ObjectName name, ObjectName listener,
+            NotificationFilter filter, Object handback)
+            throws InstanceNotFoundException, ListenerNotFoundException {
+        registerDeferred(name);
+        server.removeNotificationListener(name, listener, filter, handback);
+    }
+
+
+    @Override
+    public void removeNotificationListener(ObjectName name, NotificationListener listener)
+            throws InstanceNotFoundException, ListenerNotFoundException {
+        registerDeferred(name);
+        server.removeNotificationListener(name, listener);
+    }
+
+
+    @Override
+    public void removeNotificationListener(ObjectName name, NotificationListener listener,
+            NotificationFilter filter, Object handback)
+            throws InstanceNotFoundException, ListenerNotFoundException {
+        registerDeferred(name);
+        server.removeNotificationListener(name, listener, filter, handback);
+    }
+
+
+    // ---------------------------------------------------- Class loading
+
+    @Override
+    public Object instantiate(String className) throws ReflectionException, MBeanException {
+        return server.instantiate(className);
+    }
+
+
+    @Override
+    public Object instantiate(String className, ObjectName loaderName)
+            throws ReflectionException, MBeanException, InstanceNotFoundException {
+        registerDeferred(loaderName);
+        return server.instantiate(className, loaderName);
+    }
+
+
+    @Override
+    public Object instantiate(String className, Object[] params, String[] signature)
+            throws ReflectionException, MBeanException {
+        return server.instantiate(className, params, signature);
+    }
+
+
+    @Override
+    public Object instantiate(String className, ObjectName loaderName, Object[] params,
+            String[] signature)
+            throws ReflectionException, MBeanException, InstanceNotFoundException {
+        registerDeferred(loaderName);
+        return server.instantiate(className, loaderName, params, signature);
+    }
+
+
+    @Override
+    @Deprecated
+    public ObjectInputStream deserialize(ObjectName name, byte[] data)
+            throws InstanceNotFoundException, OperationsException {
+        registerDeferred(name);
+        return server.deserialize(name, data);
+    }
+
+
+    @Override
+    @Deprecated
+    public ObjectInputStream deserialize(String className, byte[] data)
+            throws OperationsException, ReflectionException {
+        return server.deserialize(className, data);
+    }
+
+
+    @Override
+    @Deprecated
+    public ObjectInputStream deserialize(String className, ObjectName loaderName, byte[] data)
+            throws InstanceNotFoundException, OperationsException, ReflectionException {
+        registerDeferred(loaderName);
+        return server.deserialize(className, loaderName, data);
+    }
+
+
+    @Override
+    public ClassLoader getClassLoaderFor(ObjectName mbeanName)
+            throws InstanceNotFoundException {
+        registerDeferred(mbeanName);
+        return server.getClassLoaderFor(mbeanName);
+    }
+
+
+    @Override
+    public ClassLoader getClassLoader(ObjectName loaderName) throws InstanceNotFoundException {
+        registerDeferred(loaderName);
+        return server.getClassLoader(loaderName);
+    }
+
+
+    @Override
+    public ClassLoaderRepository getClassLoaderRepository() {
+        return server.getClassLoaderRepository();
+    }
+
+
+    private class DeferredComponent {
+
+        private final Object bean;
+        private final String type;
+
+        DeferredComponent(Object bean, String type) {
+            this.bean = bean;
+            this.type = type;
+        }
+
+        void register(ObjectName oname) {
+            try {
+                registry.registerComponentNow(bean, oname, type);
+            } catch (Exception e) {
+                // Logged by the Registry. Nothing else can be done as the
+                // caller that registered the component has moved on.
+            }
+        }
+    }
+}
@@ -90,6 +90,14 @@ public class Registry implements RegistryMBean, MBeanRegistration {
     private volatile MBeanServer server = null;
     private final Object serverLock = new Object();
 
+    /**
+     * Should the registration of components be deferred until they are first
+     * accessed through the MBeanServer returned by {@link #getMBeanServer()}?
+     */
+    private volatile boolean deferRegistration = Boolean.parseBoolean(System.getProperty(
+            "org.apache.tomcat.util.modeler.Registry.DEFER_REGISTRATION", "false"));
+    private volatile DeferredRegistrationMBeanServer deferredServer = null;
+
     /**
      * The set of ManagedBean instances for the beans this registry knows about,
      * keyed by name.
@@ -142,6 +150,49 @@ public class Registry implements RegistryMBean, MBeanRegistration {
     }
 
 
+    /**
+     * Configure whether components passed to {@link #registerComponent(Object,
+     * ObjectName, String)} are registered immediately or when they are first
+     * accessed. Deferring the registration avoids the cost of creating MBeans,
+     * and of loading the descriptors for them, that are never used. Deferred
+     * components are only visible through the MBeanServer returned by {@link
+     * #getMBeanServer()}, not to clients that access the MBeanServer directly.
+     * The default is taken from the system property
+     * <code>org.apache.tomcat.util.modeler.Registry.DEFER_REGISTRATION</code>.
+     * Disabling the deferral registers all components that are still waiting.
+     *
+     * @param deferRegistration <code>true</code> to defer the registration of
+     *                          components
+     */
+    public void setDeferRegistration(boolean deferRegistration) {
+        this.deferRegistration = deferRegistration;
+        if (!deferRegistration && deferredServer != null) {
+            deferredServer.registerDeferred(null);
+        }
+    }
+
+
+    /**
+     * @return <code>true</code> if the registration of components is deferred
+     *         until they are first accessed
+     */
+    public boolean getDeferRegistration() {
+        return deferRegistration;
+    }
+
+
+    /**
+     * Register all components whose registration has been deferred, e.g.
+     * before the MBeanServer is made available to clients that do not use the
+     * MBeanServer returned by {@link #getMBeanServer()}.
+     */
+    public void registerDeferredComponents() {
+        if (deferredServer != null) {
+            deferredServer.registerDeferred(null);
+        }
+    }
+
+
     /**
      * Lifecycle method - clean up the registry metadata.
      * Called from resetMetadata().
@@ -431,6 +482,30 @@ public class Registry implements RegistryMBean, MBeanRegistration {
      * @return the MBean server
      */
     public MBeanServer getMBeanServer() {
+        MBeanServer platformServer = getPlatformServer();
+        if (deferRegistration || deferredServer != null) {
+            return getDeferredServer(platformServer);
+        }
+        return platformServer;
+    }
+
+
+    private DeferredRegistrationMBeanServer getDeferredServer(MBeanServer platformServer) {
+        if (deferredServer == null) {
+            synchronized (serverLock) {
+                if (deferredServer == null) {
+                    deferredServer = new DeferredRegistrationMBeanServer(this, platformServer);
+                }
+            }
+        }
+        return deferredServer;
+    }
+
+
+    /*
+     * The MBeanServer components are registered with, without deferral.
+     */
+    private MBeanServer getPlatformServer() {
         if (server == null) {
             synchronized (serverLock) {
                 if (server == null) {
@@ -612,6 +687,22 @@ public class Registry implements RegistryMBean, MBeanRegistration {
             return;
         }
 
+        if (deferRegistration) {
+            getDeferredServer(getPlatformServer()).defer(bean, oname, type);
+            return;
+        }
+
+        registerComponentNow(bean, oname, type);
+    }
+
+
+    /*
+     * Creates the model MBean for the component and registers it, bypassing
+     * any deferral.
+     */
+    void registerComponentNow(Object bean, ObjectName oname, String type) throws Exception {
+        MBeanServer platformServer = getPlatformServer();
+
         try {
             if (type == null) {
                 type = bean.getClass().getName();
@@ -622,14 +713,14 @@ public class Registry implements RegistryMBean, MBeanRegistration {
             // The real mbean is created and registered
             DynamicMBean mbean = managed.createMBean(bean);
 
-            if (getMBeanServer().isRegistered(oname)) {
+            if (platformServer.isRegistered(oname)) {
                 if (log.isDebugEnabled()) {
                     log.debug("Unregistering existing component " + oname);
                 }
-                getMBeanServer().unregisterMBean(oname);
+                platformServer.unregisterMBean(oname);
             }
 
-            getMBeanServer().registerMBean(mbean, oname);
+            platformServer.registerMBean(mbean, oname);
         } catch (Exception ex) {
             log.error("Error registering " + oname, ex);
             throw ex;
@@ -551,11 +551,23 @@ public abstract class SocketWrapperBase<E> {
      * Depending on the size of the data to write, there may be multiple writes
      * to the network. On completion of this method there will always be space
      * remaining in the socket write buffer.
+     * <p>
+     * A direct buffer that is at least as large as the socket write buffer is
+     * written to the network directly, after any data already in the socket
+     * write buffer, rather than being copied into the socket write buffer.
      *
      * @param from The ByteBuffer containing the data to be written
      * @throws IOException If an IO error occurs during the write
      */
     protected void writeBlocking(ByteBuffer from) throws IOException {
+        if (from.isDirect() &&
+                from.remaining() >= socketBufferHandler.getWriteBuffer().capacity()) {
+            if (!socketBufferHandler.isWriteBufferEmpty()) {
+                doWrite(true);
+            }
+            doWrite(true, from);
+            return;
+        }
         if (from.hasRemaining()) {
             socketBufferHandler.configureWriteBufferForWrite();
             transfer(from, socketBufferHandler.getWriteBuffer());
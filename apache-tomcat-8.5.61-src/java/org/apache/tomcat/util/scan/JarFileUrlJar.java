@@ -42,6 +42,8 @@ public class JarFileUrlJar implements Jar {
 
     private final JarFile jarFile;
     private final URL jarFileURL;
+    private final boolean shared;
+    private boolean released = false;
     private final boolean multiRelease;
     private Enumeration<JarEntry> entries;
     private Set<String> entryNamesSeen;
@@ -54,6 +56,7 @@ public class JarFileUrlJar implements Jar {
             jarConn.setUseCaches(false);
             jarFile = jarConn.getJarFile();
             jarFileURL = jarConn.getJarFileURL();
+            shared = false;
         } else {
             // file:...
             File f;
@@ -62,8 +65,9 @@ public class JarFileUrlJar implements Jar {
             } catch (URISyntaxException e) {
                 throw new IOException(e);
             }
-            jarFile = JreCompat.getInstance().jarFileNewInstance(f);
+            jarFile = SharedJarFiles.acquire(f);
             jarFileURL = url;
+            shared = true;
         }
         multiRelease = JreCompat.getInstance().jarFileIsMultiRelease(jarFile);
     }
@@ -122,7 +126,14 @@ public class JarFileUrlJar implements Jar {
 
     @Override
     public void close() {
-        if (jarFile != null) {
+        if (shared) {
+            // Other users of the JarFile must not be affected by repeated
+            // calls
+            if (!released) {
+                released = true;
+                SharedJarFiles.release(jarFile);
+            }
+        } else if (jarFile != null) {
             try {
                 jarFile.close();
             } catch (IOException e) {
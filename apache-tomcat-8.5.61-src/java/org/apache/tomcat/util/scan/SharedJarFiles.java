@@ -0,0 +1,327 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.scan;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.apache.tomcat.util.buf.HexUtils;
+import org.apache.tomcat.util.compat.JreCompat;
+
+/**
+ * A JVM wide registry of open JAR files and of the indexes of their entries
+ * that allows the web applications that use the same JARs to share them.
+ * <p>
+ * An open {@link JarFile} is shared by everything that acquires the same file
+ * while it has the same size and last modified time. The file is opened by
+ * the first call to {@link #acquire(File)} and closed once every acquisition
+ * has been released. Both the archive based resource sets of the web
+ * resources implementation and {@link JarFileUrlJar}, and therefore
+ * {@link ReferenceCountedJar}, obtain their {@link JarFile}s here so scanning
+ * a JAR that is already open to serve resources does not open it again.
+ * <p>
+ * An index of entries is shared by all JAR files with identical content, such
+ * as copies of the same library in the WEB-INF/lib directories of many web
+ * applications. Content is identified by the size of the file and a digest of
+ * its central directory, which records the name, size and CRC of every entry.
+ * The entries in a shared index are not associated with any one open
+ * {@link JarFile} so entries must be looked up by name in a user's own
+ * {@link JarFile} before their content is read. An index is retained for as
+ * long as one of its users holds a reference to it.
+ */
+public final class SharedJarFiles {
+
+    // Size of the end of central directory record without the comment
+    private static final int EOCD_LENGTH = 22;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+    // Guarded by openJarFiles
+    private static final Map<String,OpenJarFile> openJarFiles = new HashMap<>();
+    private static final Map<JarFile,OpenJarFile> openJarFilesByInstance = new IdentityHashMap<>();
+
+    private static final ConcurrentMap<String,IndexReference> indexesByFile =
+            new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String,IndexReference> indexesByContent =
+            new ConcurrentHashMap<>();
+    private static final ReferenceQueue<HashMap<String,JarEntry>> staleIndexes =
+            new ReferenceQueue<>();
+
+
+    private SharedJarFiles() {
+        // Utility class. Hide default constructor
+    }
+
+
+    /**
+     * Obtain an open {@link JarFile} for the given file. Each call must be
+     * matched by a call to {@link #release(JarFile)}. The {@link JarFile} may
+     * be in use by other callers so it must not be closed directly.
+     *
+     * @param file The JAR file
+     *
+     * @return The open JAR file
+     *
+     * @throws IOException If the file cannot be opened
+     */
+    public static JarFile acquire(File file) throws IOException {
+        String key = getFileKey(file);
+        synchronized (openJarFiles) {
+            OpenJarFile openJarFile = openJarFiles.get(key);
+            if (openJarFile != null) {
+                openJarFile.count++;
+                return openJarFile.jarFile;
+            }
+        }
+
+        // Don't hold the lock while the central directory is read
+        JarFile jarFile = JreCompat.getInstance().jarFileNewInstance(file);
+        JarFile result;
+        synchronized (openJarFiles) {
+            OpenJarFile openJarFile = openJarFiles.get(key);
+            if (openJarFile == null) {
+                openJarFile = new OpenJarFile(key, jarFile);
+                openJarFiles.put(key, openJarFile);
+                openJarFilesByInstance.put(jarFile, openJarFile);
+                openJarFile.count++;
+                return jarFile;
+            }
+            openJarFile.count++;
+            result = openJarFile.jarFile;
+        }
+        // Opened concurrently by another caller
+        close(jarFile);
+        return result;
+    }
+
+
+    /**
+     * Release a {@link JarFile} obtained from {@link #acquire(File)}. The file
+     * is closed once it has been released by every caller that acquired it.
+     *
+     * @param jarFile The JAR file to release
+     */
+    public static void release(JarFile jarFile) {
+        synchronized (openJarFiles) {
+            OpenJarFile openJarFile = openJarFilesByInstance.get(jarFile);
+            if (openJarFile != null && --openJarFile.count > 0) {
+                return;
+            }
+            if (openJarFile != null) {
+                openJarFiles.remove(openJarFile.key);
+                openJarFilesByInstance.remove(jarFile);
+            }
+        }
+        close(jarFile);
+    }
+
+
+    /**
+     * Obtain the index of the entries of the given JAR file. The returned map
+     * may be shared with other users of the same content and must not be
+     * modified.
+     *
+     * @param file    The JAR file
+     * @param jarFile The open JAR file to use if a new index has to be built
+     *
+     * @return The entries of the JAR file mapped to their names
+     *
+     * @throws IOException If the JAR file cannot be read
+     */
+    public static HashMap<String,JarEntry> getEntries(File file, JarFile jarFile)
+            throws IOException {
+        expungeStaleIndexes();
+
+        String fileKey = getFileKey(file);
+        HashMap<String,JarEntry> entries = get(indexesByFile, fileKey);
+        if (entries != null) {
+            return entries;
+        }
+
+        String contentKey = getContentKey(file);
+        if (contentKey != null) {
+            entries = get(indexesByContent, contentKey);
+        }
+        if (entries == null) {
+            entries = buildIndex(jarFile);
+            if (contentKey != null) {
+                IndexReference reference =
+                        new IndexReference(entries, contentKey, indexesByContent);
+                while (true) {
+                    IndexReference existing = indexesByContent.putIfAbsent(contentKey, reference);
+                    if (existing == null) {
+                        break;
+                    }
+                    HashMap<String,JarEntry> existingEntries = existing.get();
+                    if (existingEntries != null) {
+                        // Built concurrently by another caller
+                        entries = existingEntries;
+                        break;
+                    }
+                    indexesByContent.remove(contentKey, existing);
+                }
+            }
+        }
+        indexesByFile.put(fileKey, new IndexReference(entries, fileKey, indexesByFile));
+        return entries;
+    }
+
+
+    /**
+     * Obtain a key that identifies the content of a JAR file without reading
+     * the whole file. JAR files with the same key have the same entries with
+     * the same sizes and CRCs.
+     *
+     * @param file The JAR file
+     *
+     * @return The key or <code>null</code> if the content of the file cannot
+     *         be identified this way, e.g. because it is a ZIP64 archive
+     *
+     * @throws IOException If the file cannot be read
+     */
+    public static String getContentKey(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            int tailLength = (int) Math.min(length, EOCD_LENGTH + MAX_COMMENT_LENGTH);
+            byte[] tail = new byte[tailLength];
+            raf.seek(length - tailLength);
+            raf.readFully(tail);
+
+            for (int i = tailLength - EOCD_LENGTH; i >= 0; i--) {
+                if (tail[i] == 0x50 && tail[i + 1] == 0x4b && tail[i + 2] == 0x05 &&
+                        tail[i + 3] == 0x06) {
+                    long cdLength = readUnsignedInt(tail, i + 12);
+                    long cdOffset = readUnsignedInt(tail, i + 16);
+                    if (cdLength == 0xFFFFFFFFL || cdOffset == 0xFFFFFFFFL ||
+                            cdOffset + cdLength > length) {
+                        // ZIP64 or not a valid archive. Only share the index
+                        // between users of this file.
+                        return null;
+                    }
+                    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                    byte[] buffer = new byte[8192];
+                    raf.seek(cdOffset);
+                    long remaining = cdLength;
+                    while (remaining > 0) {
+                        int read = raf.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (read < 0) {
+                            return null;
+                        }
+                        digest.update(buffer, 0, read);
+                        remaining -= read;
+                    }
+                    return Long.toString(length) + '-' + HexUtils.toHexString(digest.digest());
+                }
+            }
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private static HashMap<String,JarEntry> buildIndex(JarFile jarFile) {
+        HashMap<String,JarEntry> entries = new HashMap<>();
+        Enumeration<JarEntry> enumeration = jarFile.entries();
+        while (enumeration.hasMoreElements()) {
+            JarEntry entry = enumeration.nextElement();
+            // Copy so the index does not refer to this JarFile
+            entries.put(entry.getName(), new JarEntry(entry));
+        }
+        return entries;
+    }
+
+
+    private static String getFileKey(File file) throws IOException {
+        return file.getCanonicalPath() + '*' + file.length() + '*' + file.lastModified();
+    }
+
+
+    private static HashMap<String,JarEntry> get(ConcurrentMap<String,IndexReference> indexes,
+            String key) {
+        IndexReference reference = indexes.get(key);
+        if (reference == null) {
+            return null;
+        }
+        return reference.get();
+    }
+
+
+    private static void expungeStaleIndexes() {
+        Reference<? extends HashMap<String,JarEntry>> reference;
+        while ((reference = staleIndexes.poll()) != null) {
+            IndexReference indexReference = (IndexReference) reference;
+            indexReference.indexes.remove(indexReference.key, indexReference);
+        }
+    }
+
+
+    private static long readUnsignedInt(byte[] b, int off) {
+        return (b[off] & 0xFFL) | (b[off + 1] & 0xFFL) << 8 | (b[off + 2] & 0xFFL) << 16 |
+                (b[off + 3] & 0xFFL) << 24;
+    }
+
+
+    private static void close(JarFile jarFile) {
+        try {
+            jarFile.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+
+    private static class OpenJarFile {
+
+        private final String key;
+        private final JarFile jarFile;
+        private int count = 0;
+
+        OpenJarFile(String key, JarFile jarFile) {
+            this.key = key;
+            this.jarFile = jarFile;
+        }
+    }
+
+
+    private static class IndexReference extends WeakReference<HashMap<String,JarEntry>> {
+
+        private final String key;
+        private final ConcurrentMap<String,IndexReference> indexes;
+
+        IndexReference(HashMap<String,JarEntry> entries, String key,
+                ConcurrentMap<String,IndexReference> indexes) {
+            super(entries, staleIndexes);
+            this.key = key;
+            this.indexes = indexes;
+        }
+    }
+}
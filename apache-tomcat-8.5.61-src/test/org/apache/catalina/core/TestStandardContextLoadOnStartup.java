@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.core;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Container;
+
+public class TestStandardContextLoadOnStartup {
+
+    @Test
+    public void testParallel() throws Exception {
+        StandardContext context = createContext();
+        try {
+            List<String> loaded = new CopyOnWriteArrayList<>();
+            // Both servlets with the same value must be loading at the same
+            // time for either of them to complete
+            CyclicBarrier barrier = new CyclicBarrier(2);
+            Container[] children = new Container[] {
+                    new TesterWrapper("late", 2, loaded, null, false),
+                    new TesterWrapper("a", 1, loaded, barrier, false),
+                    new TesterWrapper("b", 1, loaded, barrier, false) };
+
+            Assert.assertTrue(context.loadOnStartup(children));
+
+            Assert.assertEquals(3, loaded.size());
+            Assert.assertEquals("late", loaded.get(2));
+        } finally {
+            context.startStopExecutor.shutdownNow();
+        }
+    }
+
+
+    @Test
+    public void testParallelFailure() throws Exception {
+        StandardContext context = createContext();
+        try {
+            List<String> loaded = new CopyOnWriteArrayList<>();
+            Container[] children = new Container[] {
+                    new TesterWrapper("a", 1, loaded, null, true),
+                    new TesterWrapper("b", 1, loaded, null, false),
+                    new TesterWrapper("late", 2, loaded, null, false) };
+
+            // Failures are not fatal by default
+            Assert.assertTrue(context.loadOnStartup(children));
+            Assert.assertEquals(2, loaded.size());
+
+            loaded.clear();
+            context.setFailCtxIfServletStartFails(Boolean.TRUE);
+            Assert.assertFalse(context.loadOnStartup(children));
+            // The other servlet with the same value is still loaded
+            Assert.assertEquals(1, loaded.size());
+            Assert.assertEquals("b", loaded.get(0));
+        } finally {
+            context.startStopExecutor.shutdownNow();
+        }
+    }
+
+
+    private static StandardContext createContext() {
+        StandardContext context = new StandardContext();
+        context.setName("test");
+        context.setParallelLoadOnStartup(true);
+        context.startStopExecutor = new ThreadPoolExecutor(2, 2, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        return context;
+    }
+
+
+    private static class TesterWrapper extends StandardWrapper {
+
+        private final List<String> loaded;
+        private final CyclicBarrier barrier;
+        private final boolean fail;
+
+        TesterWrapper(String name, int loadOnStartup, List<String> loaded,
+                CyclicBarrier barrier, boolean fail) {
+            setName(name);
+            setLoadOnStartup(loadOnStartup);
+            this.loaded = loaded;
+            this.barrier = barrier;
+            this.fail = fail;
+        }
+
+        @Override
+        public synchronized void load() throws ServletException {
+            if (barrier != null) {
+                try {
+                    barrier.await(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new ServletException(e);
+                }
+            }
+            if (fail) {
+                throw new ServletException(getName());
+            }
+            loaded.add(getName());
+        }
+    }
+}
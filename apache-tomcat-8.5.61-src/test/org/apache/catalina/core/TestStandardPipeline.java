@@ -0,0 +1,155 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.catalina.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.ServletException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.SkippableValve;
+import org.apache.catalina.Valve;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+
+public class TestStandardPipeline {
+
+    @Test
+    public void testSkippableValveNotInvoked() throws Exception {
+        List<String> invoked = new ArrayList<>();
+        StandardPipeline pipeline = createPipeline(invoked, true);
+
+        pipeline.getFirst().invoke(null, null);
+
+        Assert.assertEquals("[a, basic]", invoked.toString());
+    }
+
+
+    @Test
+    public void testNonSkippableValveInvoked() throws Exception {
+        List<String> invoked = new ArrayList<>();
+        StandardPipeline pipeline = createPipeline(invoked, false);
+
+        pipeline.getFirst().invoke(null, null);
+
+        Assert.assertEquals("[a, b, basic]", invoked.toString());
+    }
+
+
+    @Test
+    public void testGetValvesUnaffectedByLinks() throws Exception {
+        List<String> invoked = new ArrayList<>();
+        StandardPipeline pipeline = createPipeline(invoked, true);
+        pipeline.setInstrumented(true);
+
+        Valve[] valves = pipeline.getValves();
+        Assert.assertEquals(3, valves.length);
+        for (Valve valve : valves) {
+            Assert.assertTrue(valve instanceof TesterValve);
+        }
+
+        pipeline.removeValve(valves[1]);
+        pipeline.getFirst().invoke(null, null);
+        Assert.assertEquals("[a, basic]", invoked.toString());
+        Assert.assertEquals(2, pipeline.getValves().length);
+    }
+
+
+    @Test
+    public void testInstrumentation() throws Exception {
+        List<String> invoked = new ArrayList<>();
+        StandardPipeline pipeline = createPipeline(invoked, true);
+        Assert.assertEquals(0, pipeline.getValveStatistics().length);
+
+        pipeline.setInstrumented(true);
+        for (int i = 0; i < 5; i++) {
+            pipeline.getFirst().invoke(null, null);
+        }
+
+        String[] statistics = pipeline.getValveStatistics();
+        Assert.assertEquals(3, statistics.length);
+        Assert.assertTrue(statistics[0], statistics[0].contains("invocations=5,"));
+        Assert.assertTrue(statistics[1], statistics[1].contains("invocations=0,"));
+        Assert.assertTrue(statistics[1], statistics[1].contains("skipped=5,"));
+        Assert.assertTrue(statistics[2], statistics[2].contains("invocations=5,"));
+
+        pipeline.resetValveStatistics();
+        Assert.assertTrue(pipeline.getValveStatistics()[0].contains("invocations=0,"));
+
+        pipeline.setInstrumented(false);
+        Assert.assertEquals(0, pipeline.getValveStatistics().length);
+        pipeline.getFirst().invoke(null, null);
+        Assert.assertEquals(12, invoked.size());
+    }
+
+
+    private StandardPipeline createPipeline(List<String> invoked, boolean skippable) {
+        StandardPipeline pipeline = new StandardPipeline(new StandardEngine());
+        pipeline.setBasic(new TesterValve("basic", invoked));
+        pipeline.addValve(new TesterValve("a", invoked));
+        if (skippable) {
+            pipeline.addValve(new TesterSkippableValve("b", invoked));
+        } else {
+            pipeline.addValve(new TesterValve("b", invoked));
+        }
+        return pipeline;
+    }
+
+
+    private static class TesterValve extends ValveBase {
+
+        private final String name;
+        private final List<String> invoked;
+
+        public TesterValve(String name, List<String> invoked) {
+            this.name = name;
+            this.invoked = invoked;
+        }
+
+        @Override
+        public void invoke(Request request, Response response) throws IOException,
+                ServletException {
+            invoked.add(name);
+            if (getNext() != null) {
+                getNext().invoke(request, response);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+
+    private static class TesterSkippableValve extends TesterValve implements SkippableValve {
+
+        public TesterSkippableValve(String name, List<String> invoked) {
+            super(name, invoked);
+        }
+
+        @Override
+        public boolean isSkippable(Request request) {
+            return true;
+        }
+    }
+}
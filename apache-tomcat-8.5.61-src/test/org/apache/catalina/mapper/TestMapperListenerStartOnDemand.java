@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.mapper;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleListener;
+import org.apache.catalina.LifecycleState;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.buf.ByteChunk;
+
+public class TestMapperListenerStartOnDemand extends TomcatBaseTest {
+
+    @Test
+    public void testStartOnDemand() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        final Context ctx = tomcat.addContext("/test", null);
+        ctx.setStartOnDemand(true);
+        // Servlets added directly are removed when the Context stops so add
+        // the servlet each time the Context starts
+        ctx.addLifecycleListener(new LifecycleListener() {
+            @Override
+            public void lifecycleEvent(LifecycleEvent event) {
+                if (Lifecycle.CONFIGURE_START_EVENT.equals(event.getType())) {
+                    Tomcat.addServlet(ctx, "hello", new HelloWorldServlet());
+                    ctx.addServletMappingDecoded("/", "hello");
+                }
+            }
+        });
+
+        tomcat.start();
+
+        // Mapped but not started
+        Assert.assertFalse(ctx.getState().isAvailable());
+
+        ByteChunk res = getUrl("http://localhost:" + getPort() + "/test/");
+        Assert.assertEquals(HelloWorldServlet.RESPONSE_TEXT, res.toString());
+        Assert.assertEquals(LifecycleState.STARTED, ctx.getState());
+
+        // Stopping leaves the context mapped so the next request restarts it
+        ctx.stop();
+        res = getUrl("http://localhost:" + getPort() + "/test/");
+        Assert.assertEquals(HelloWorldServlet.RESPONSE_TEXT, res.toString());
+        Assert.assertEquals(LifecycleState.STARTED, ctx.getState());
+    }
+
+
+    @Test
+    public void testRemoveNotStarted() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        Context ctx = tomcat.addContext("/test", null);
+        ctx.setStartOnDemand(true);
+
+        tomcat.start();
+
+        tomcat.getHost().removeChild(ctx);
+
+        int rc = getUrl("http://localhost:" + getPort() + "/test/", new ByteChunk(), null);
+        Assert.assertEquals(404, rc);
+    }
+}
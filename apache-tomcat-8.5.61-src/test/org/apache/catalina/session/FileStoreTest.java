@@ -26,6 +26,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import org.apache.catalina.Manager;
+import org.apache.catalina.Session;
 import org.apache.tomcat.unittest.TesterContext;
 import org.apache.tomcat.unittest.TesterServletContext;
 import org.apache.tomcat.util.http.fileupload.FileUtils;
@@ -98,4 +99,26 @@ public class FileStoreTest {
         fileStore.remove("tmp1");
         Assert.assertEquals(1, fileStore.getSize());
     }
+
+
+    @Test
+    public void saveAll() throws Exception {
+        // More sessions than are saved in one group
+        Session[] sessions = new Session[150];
+        for (int i = 0; i < sessions.length; i++) {
+            StandardSession session = new StandardSession(manager);
+            session.setValid(true);
+            session.setId("batch" + i, false);
+            session.setAttribute("index", Integer.valueOf(i));
+            sessions[i] = session;
+        }
+        fileStore.saveAll(sessions);
+
+        Assert.assertEquals(sessions.length + 2, fileStore.getSize());
+        for (int i = 0; i < sessions.length; i += 37) {
+            Session session = fileStore.load("batch" + i);
+            Assert.assertEquals(Integer.valueOf(i),
+                    session.getSession().getAttribute("index"));
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.SessionEvent;
+import org.apache.catalina.SessionListener;
+import org.apache.catalina.core.StandardContext;
+
+public class TestCompactSession {
+
+    @Test
+    public void testManagerCreatesCompactSessions() {
+        StandardManager manager = new StandardManager();
+        manager.setContext(new StandardContext());
+
+        Assert.assertFalse(manager.createEmptySession() instanceof CompactSession);
+        manager.setCompactSessions(true);
+        Assert.assertTrue(manager.createEmptySession() instanceof CompactSession);
+    }
+
+
+    @Test
+    public void testLazyNotesAndListeners() {
+        CompactSession session = new CompactSession(createManager());
+        Assert.assertNull(session.notes);
+        Assert.assertNull(session.listeners);
+
+        Assert.assertNull(session.getNote("missing"));
+        Assert.assertFalse(session.getNoteNames().hasNext());
+        session.removeNote("missing");
+        session.fireSessionEvent("test", null);
+        Assert.assertNull(session.notes);
+        Assert.assertNull(session.listeners);
+
+        session.setNote("note", "value");
+        Assert.assertEquals("value", session.getNote("note"));
+
+        final int[] events = new int[1];
+        session.addSessionListener(new SessionListener() {
+            @Override
+            public void sessionEvent(SessionEvent event) {
+                events[0]++;
+            }
+        });
+        session.fireSessionEvent("test", null);
+        Assert.assertEquals(1, events[0]);
+
+        session.recycle();
+        Assert.assertNull(session.getNote("note"));
+    }
+
+
+    @Test
+    public void testSerialization() throws Exception {
+        CompactSession s1 = new CompactSession(createManager());
+        s1.setValid(true);
+        s1.setAttribute("attr01", "value01");
+        s1.setAttribute("attr02", Integer.valueOf(2));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        s1.writeObjectData(oos);
+        oos.close();
+
+        CompactSession s2 = new CompactSession(s1.getManager());
+        ObjectInputStream ois = new ObjectInputStream(
+                new ByteArrayInputStream(baos.toByteArray()));
+        s2.readObjectData(ois);
+
+        Assert.assertTrue(s2.attributes instanceof CompactAttributeMap);
+        Assert.assertEquals("value01", s2.getAttribute("attr01"));
+        Assert.assertEquals(Integer.valueOf(2), s2.getAttribute("attr02"));
+        Assert.assertNull(s2.notes);
+        Assert.assertNull(s2.listeners);
+    }
+
+
+    @Test
+    public void testAttributeMapSmall() {
+        CompactAttributeMap<String,Object> map = new CompactAttributeMap<>();
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertNull(map.put("a", "1"));
+        Assert.assertNull(map.putIfAbsent("b", "2"));
+        Assert.assertEquals("2", map.putIfAbsent("b", "x"));
+        Assert.assertEquals("1", map.put("a", "3"));
+        Assert.assertEquals(2, map.size());
+        Assert.assertEquals("3", map.get("a"));
+        Assert.assertTrue(map.containsKey("b"));
+
+        Assert.assertFalse(map.replace("a", "1", "4"));
+        Assert.assertTrue(map.replace("a", "3", "4"));
+        Assert.assertEquals("4", map.replace("a", "5"));
+        Assert.assertNull(map.replace("c", "5"));
+        Assert.assertFalse(map.remove("a", "4"));
+        Assert.assertTrue(map.remove("a", "5"));
+        Assert.assertEquals("2", map.remove("b"));
+        Assert.assertNull(map.remove("b"));
+        Assert.assertTrue(map.isEmpty());
+    }
+
+
+    @Test
+    public void testAttributeMapGrowAndIterate() {
+        CompactAttributeMap<String,Object> map = new CompactAttributeMap<>();
+        int count = CompactAttributeMap.MAX_FLAT_SIZE * 2;
+        for (int i = 0; i < count; i++) {
+            map.put("key" + i, Integer.valueOf(i));
+            // Switching form must not lose any mappings
+            Assert.assertEquals(i + 1, map.size());
+            Assert.assertEquals(Integer.valueOf(0), map.get("key0"));
+        }
+
+        Set<String> keys = new HashSet<>();
+        for (Map.Entry<String,Object> entry : map.entrySet()) {
+            keys.add(entry.getKey());
+            Assert.assertEquals(entry.getKey(), "key" + entry.getValue());
+        }
+        Assert.assertEquals(count, keys.size());
+
+        map.clear();
+        Assert.assertTrue(map.isEmpty());
+        map.put("a", "1");
+        map.put("b", "2");
+        Iterator<String> iter = map.keySet().iterator();
+        Assert.assertEquals("a", iter.next());
+        // Iterators work on a snapshot
+        map.put("c", "3");
+        iter.remove();
+        Assert.assertEquals("b", iter.next());
+        Assert.assertFalse(iter.hasNext());
+        Assert.assertEquals(2, map.size());
+        Assert.assertNull(map.get("a"));
+    }
+
+
+    @Test(expected=NullPointerException.class)
+    public void testAttributeMapNullValue() {
+        new CompactAttributeMap<String,Object>().put("a", null);
+    }
+
+
+    private static StandardManager createManager() {
+        StandardManager manager = new StandardManager();
+        manager.setContext(new StandardContext());
+        return manager;
+    }
+}
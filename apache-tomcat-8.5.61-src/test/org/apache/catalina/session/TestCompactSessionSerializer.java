@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.core.StandardContext;
+
+public class TestCompactSessionSerializer {
+
+    @Test
+    public void testValues() throws Exception {
+        List<Object> values = new ArrayList<>();
+        values.add(null);
+        values.add("");
+        values.add("value é中");
+        values.add(Boolean.TRUE);
+        values.add(Boolean.FALSE);
+        values.add(Integer.valueOf(Integer.MIN_VALUE));
+        values.add(Integer.valueOf(-1));
+        values.add(Long.valueOf(Long.MAX_VALUE));
+        values.add(Short.valueOf((short) -300));
+        values.add(Byte.valueOf((byte) -2));
+        values.add(Character.valueOf('x'));
+        values.add(Float.valueOf(1.5f));
+        values.add(Double.valueOf(-2.25));
+        values.add(new Date(1234567890123L));
+        values.add(new BigInteger("-123456789012345678901234567890"));
+        values.add(new BigDecimal("12345.6789"));
+        // Subclasses of table types must keep their type
+        values.add(new Timestamp(1234567890123L));
+        // Types outside the table use Java serialization
+        values.add(new ArrayList<>(values.subList(1, 4)));
+
+        CompactSessionSerializer serializer = new CompactSessionSerializer();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            for (Object value : values) {
+                serializer.writeObject(oos, value);
+            }
+            serializer.writeObject(oos, new byte[] { 1, 2, 3 });
+            serializer.writeObject(oos, new int[] { -1, 0, Integer.MAX_VALUE });
+            serializer.writeObject(oos, new long[] { Long.MIN_VALUE, 300 });
+            serializer.writeObject(oos, new String[] { "a", null, "b" });
+        }
+
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new ByteArrayInputStream(baos.toByteArray()))) {
+            for (Object value : values) {
+                Object read = serializer.readObject(ois);
+                Assert.assertEquals(value, read);
+                if (value != null) {
+                    Assert.assertEquals(value.getClass(), read.getClass());
+                }
+            }
+            Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) serializer.readObject(ois));
+            Assert.assertArrayEquals(new int[] { -1, 0, Integer.MAX_VALUE },
+                    (int[]) serializer.readObject(ois));
+            Assert.assertArrayEquals(new long[] { Long.MIN_VALUE, 300 },
+                    (long[]) serializer.readObject(ois));
+            Assert.assertArrayEquals(new String[] { "a", null, "b" },
+                    (String[]) serializer.readObject(ois));
+        }
+    }
+
+
+    @Test
+    public void testSession() throws Exception {
+        StandardManager manager = createManager();
+        manager.setSessionSerializerClass(CompactSessionSerializer.class.getName());
+
+        StandardSession s1 = new StandardSession(manager);
+        s1.setValid(true);
+        s1.setMaxInactiveInterval(-1);
+        s1.setAttribute("attr01", "value01");
+        s1.setAttribute("attr02", Long.valueOf(2));
+        s1.setAttribute("attr03", new ArrayList<>());
+        byte[] compact = write(s1);
+
+        StandardSession s2 = new StandardSession(manager);
+        read(s2, compact);
+        assertSessionEquals(s1, s2);
+
+        // A manager using Java serialization can read the compact form
+        StandardSession s3 = new StandardSession(createManager());
+        read(s3, compact);
+        assertSessionEquals(s1, s3);
+
+        // A manager using the compact form can read Java serialization
+        byte[] java = write(s3);
+        StandardSession s4 = new StandardSession(manager);
+        read(s4, java);
+        assertSessionEquals(s1, s4);
+
+        Assert.assertTrue(compact.length < java.length);
+    }
+
+
+    @Test
+    public void testNotSerializableAttribute() throws Exception {
+        StandardManager manager = createManager();
+        manager.setSessionSerializerClass(CompactSessionSerializer.class.getName());
+
+        StandardSession s1 = new StandardSession(manager);
+        s1.setValid(true);
+        s1.setAttribute("attr01", "value01");
+        // Only found to be not serializable once it is being written
+        HashMap<String,Object> nested = new HashMap<>();
+        nested.put("nested", new Object());
+        s1.setAttribute("attr02", nested);
+        s1.setAttribute("attr03", "value03");
+
+        StandardSession s2 = new StandardSession(manager);
+        read(s2, write(s1));
+        Assert.assertEquals("value01", s2.getAttribute("attr01"));
+        Assert.assertNull(s2.getAttribute("attr02"));
+        Assert.assertEquals("value03", s2.getAttribute("attr03"));
+    }
+
+
+    private static void assertSessionEquals(StandardSession expected, StandardSession actual) {
+        Assert.assertEquals(expected.getIdInternal(), actual.getIdInternal());
+        Assert.assertEquals(expected.getCreationTimeInternal(), actual.getCreationTimeInternal());
+        Assert.assertEquals(expected.getLastAccessedTimeInternal(),
+                actual.getLastAccessedTimeInternal());
+        Assert.assertEquals(expected.getMaxInactiveInterval(), actual.getMaxInactiveInterval());
+        Assert.assertEquals(expected.attributes, actual.attributes);
+    }
+
+
+    private static byte[] write(StandardSession session) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            session.writeObjectData(oos);
+        }
+        return baos.toByteArray();
+    }
+
+
+    private static void read(StandardSession session, byte[] data) throws Exception {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            session.readObjectData(ois);
+        }
+    }
+
+
+    private static StandardManager createManager() {
+        StandardManager manager = new StandardManager();
+        manager.setContext(new StandardContext());
+        return manager;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Manager;
+import org.apache.catalina.Session;
+import org.apache.tomcat.unittest.TesterContext;
+import org.apache.tomcat.unittest.TesterServletContext;
+
+public class TestJDBCStore {
+
+    @Test
+    public void testSerializeFailure() throws Exception {
+        TesterContext context = new TesterContext();
+        context.setServletContext(new TesterServletContext());
+        Manager manager = new StandardManager();
+        manager.setContext(context);
+        JDBCStore store = new JDBCStore();
+        store.setManager(manager);
+
+        Session[] sessions = new Session[3];
+        for (int i = 0; i < sessions.length; i++) {
+            StandardSession session = new StandardSession(manager);
+            session.setValid(true);
+            session.setId("session" + i, false);
+            sessions[i] = session;
+        }
+        sessions[1].getSession().setAttribute("failing", new FailingAttribute());
+
+        byte[][] data = store.serialize(sessions);
+
+        Assert.assertNotNull(data[0]);
+        Assert.assertNull(data[1]);
+        Assert.assertNotNull(data[2]);
+        try {
+            store.checkSerialized(data);
+            Assert.fail();
+        } catch (IOException expected) {
+            // Expected
+        }
+
+        store.checkSerialized(new byte[][] { data[0], data[2] });
+    }
+
+
+    private static class FailingAttribute implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private void writeObject(@SuppressWarnings("unused") ObjectOutputStream out)
+                throws IOException {
+            throw new IOException();
+        }
+    }
+}
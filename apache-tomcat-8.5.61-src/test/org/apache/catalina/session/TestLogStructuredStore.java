@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Manager;
+import org.apache.tomcat.unittest.TesterContext;
+import org.apache.tomcat.unittest.TesterServletContext;
+import org.apache.tomcat.util.http.fileupload.FileUtils;
+
+public class TestLogStructuredStore {
+
+    private static final File dir = new File("SESS_LOG").getAbsoluteFile();
+
+    private Manager manager;
+    private LogStructuredStore store;
+
+
+    @Before
+    public void setup() throws LifecycleException {
+        TesterContext testerContext = new TesterContext();
+        testerContext.setServletContext(new TesterServletContext());
+        manager = new StandardManager();
+        manager.setContext(testerContext);
+        store = createStore();
+    }
+
+
+    @After
+    public void cleanup() throws Exception {
+        store.stop();
+        FileUtils.deleteDirectory(dir);
+    }
+
+
+    @Test
+    public void testSaveLoadRemove() throws Exception {
+        store.save(createSession("s1", "a"));
+        store.save(createSession("s2", "b"));
+        store.save(createSession("s1", "c"));
+
+        Assert.assertEquals(2, store.getSize());
+        String[] keys = store.keys();
+        Arrays.sort(keys);
+        Assert.assertArrayEquals(new String[] { "s1", "s2" }, keys);
+        Assert.assertEquals("c", store.load("s1").getSession().getAttribute("value"));
+        Assert.assertEquals("b", store.load("s2").getSession().getAttribute("value"));
+
+        store.remove("s1");
+        Assert.assertNull(store.load("s1"));
+        Assert.assertEquals(1, store.getSize());
+
+        store.clear();
+        Assert.assertEquals(0, store.getSize());
+        Assert.assertNull(store.load("s2"));
+    }
+
+
+    @Test
+    public void testRecovery() throws Exception {
+        store.setSegmentSize(4096);
+        for (int i = 0; i < 50; i++) {
+            store.save(createSession("s" + (i % 10), "v" + i));
+        }
+        store.remove("s3");
+        Assert.assertTrue(store.getSegmentCount() > 1);
+        store.stop();
+
+        store = createStore();
+        Assert.assertEquals(9, store.getSize());
+        Assert.assertNull(store.load("s3"));
+        for (int i = 0; i < 10; i++) {
+            if (i != 3) {
+                Assert.assertEquals("v" + (40 + i),
+                        store.load("s" + i).getSession().getAttribute("value"));
+            }
+        }
+    }
+
+
+    @Test
+    public void testRecoveryTornWrite() throws Exception {
+        store.save(createSession("s1", "a"));
+        store.save(createSession("s2", "b"));
+        store.stop();
+
+        // Lose the end of the last record, as a crash part way through the
+        // write would
+        File[] segments = dir.listFiles();
+        Assert.assertEquals(1, segments.length);
+        try (RandomAccessFile raf = new RandomAccessFile(segments[0], "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+
+        store = createStore();
+        Assert.assertEquals(1, store.getSize());
+        Assert.assertEquals("a", store.load("s1").getSession().getAttribute("value"));
+        Assert.assertNull(store.load("s2"));
+
+        // New records are readable after the truncated ones
+        store.save(createSession("s2", "c"));
+        store.stop();
+        store = createStore();
+        Assert.assertEquals("c", store.load("s2").getSession().getAttribute("value"));
+    }
+
+
+    @Test
+    public void testCompaction() throws Exception {
+        store.setSegmentSize(4096);
+        for (int i = 0; i < 200; i++) {
+            store.save(createSession("s" + (i % 5), "v" + i));
+        }
+        int before = store.getSegmentCount();
+        long totalBefore = store.getTotalBytes();
+        Assert.assertTrue(before > 2);
+        Assert.assertTrue(store.getLiveBytes() < totalBefore / 2);
+
+        Assert.assertTrue(store.compact(false));
+        Assert.assertTrue(store.getSegmentCount() < before);
+        Assert.assertTrue(store.getTotalBytes() < totalBefore);
+        Assert.assertEquals(5, store.getSize());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals("v" + (195 + i),
+                    store.load("s" + i).getSession().getAttribute("value"));
+        }
+
+        // Nothing more to do
+        Assert.assertFalse(store.compact(false));
+
+        store.stop();
+        store = createStore();
+        Assert.assertEquals(5, store.getSize());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals("v" + (195 + i),
+                    store.load("s" + i).getSession().getAttribute("value"));
+        }
+    }
+
+
+    @Test
+    public void testClearDuringCompaction() throws Exception {
+        store.setSegmentSize(4096);
+        for (int run = 0; run < 20; run++) {
+            for (int i = 0; i < 500; i++) {
+                store.save(createSession("s" + (i % 100), "v" + i));
+            }
+            final LogStructuredStore compacted = store;
+            Thread compaction = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        compacted.compact(true);
+                    } catch (Exception e) {
+                        // Ignore
+                    }
+                }
+            };
+            compaction.start();
+            store.clear();
+            compaction.join();
+
+            Assert.assertEquals(0, store.getSize());
+            // The sessions must not be recovered from the compacted segments
+            store.stop();
+            store = createStore();
+            Assert.assertEquals(0, store.getSize());
+        }
+    }
+
+
+    @Test
+    public void testInterruptedCompaction() throws Exception {
+        store.save(createSession("s1", "a"));
+        store.stop();
+
+        // Left behind by a compaction that did not complete
+        File temp = new File(dir, "segment-99.log.tmp");
+        Assert.assertTrue(temp.createNewFile());
+
+        store = createStore();
+        Assert.assertEquals(1, store.getSize());
+        Assert.assertFalse(temp.exists());
+    }
+
+
+    @Test
+    public void testExpiredKeys() throws Exception {
+        StandardSession session = createSession("s1", "a");
+        session.setMaxInactiveInterval(1);
+        session.thisAccessedTime = System.currentTimeMillis() - 5000;
+        store.save(session);
+        store.save(createSession("s2", "b"));
+
+        Assert.assertArrayEquals(new String[] { "s1" }, store.expiredKeys());
+    }
+
+
+    private LogStructuredStore createStore() throws LifecycleException {
+        LogStructuredStore store = new LogStructuredStore();
+        store.setDirectory(dir.getPath());
+        store.setManager(manager);
+        store.start();
+        return store;
+    }
+
+
+    private StandardSession createSession(String id, String value) {
+        StandardSession session = new StandardSession(manager);
+        session.setValid(true);
+        session.setCreationTime(System.currentTimeMillis());
+        session.setMaxInactiveInterval(1800);
+        session.setId(id, false);
+        session.setAttribute("value", value, false);
+        return session;
+    }
+}
@@ -16,15 +16,19 @@
  */
 package org.apache.catalina.session;
 
+import java.io.IOException;
+import java.io.Serializable;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSessionActivationListener;
 import javax.servlet.http.HttpSessionEvent;
 import javax.servlet.http.HttpSessionListener;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import org.apache.catalina.BatchStore;
 import org.apache.catalina.Context;
 import org.apache.catalina.Host;
 import org.apache.catalina.Manager;
@@ -70,6 +74,120 @@ public class TestPersistentManager {
         Assert.assertEquals(3, manager.getActiveSessionsFull());
     }
 
+    @Test
+    public void testWriteBehindSwapOut() throws Exception {
+        TesterBatchStore store = new TesterBatchStore();
+        PersistentManager manager = createWriteBehindManager(store);
+
+        manager.setMaxActiveSessions(2);
+        manager.setMinIdleSwap(0);
+
+        manager.start();
+
+        Session s1 = manager.createSession(null);
+        Session s2 = manager.createSession(null);
+
+        // One session is swapped out but not yet written
+        manager.processPersistenceChecks();
+        Assert.assertEquals(1, manager.getActiveSessions());
+        Assert.assertEquals(1, manager.getWriteBehindPending());
+        Assert.assertEquals(0, store.getSavedIds().size());
+        Assert.assertEquals(2, manager.getSessionIdsFull().size());
+
+        // It can still be found, and is reclaimed from the queue
+        Session swapped = manager.sessions.containsKey(s1.getIdInternal()) ? s2 : s1;
+        String swappedId = swapped.getIdInternal();
+        Assert.assertSame(swapped, manager.findSession(swappedId));
+        Assert.assertEquals(2, manager.getActiveSessions());
+        Assert.assertEquals(0, manager.getWriteBehindPending());
+
+        // Both sessions are written as a single batch on stop
+        manager.stop();
+        Assert.assertEquals(1, store.getBatchCount());
+        Assert.assertEquals(2, store.getSavedIds().size());
+        Assert.assertNotNull(store.load(swappedId));
+    }
+
+    @Test
+    public void testWriteBehindCoalesce() throws Exception {
+        TesterBatchStore store = new TesterBatchStore();
+        PersistentManager manager = createWriteBehindManager(store);
+
+        manager.setMaxIdleBackup(0);
+
+        manager.start();
+
+        Session session = manager.createSession(null);
+        manager.processPersistenceChecks();
+        Assert.assertEquals(1, manager.getWriteBehindPending());
+
+        // A second back up before the first is written replaces it
+        Thread.sleep(10);
+        session.access();
+        session.endAccess();
+        manager.processPersistenceChecks();
+        Assert.assertEquals(1, manager.getWriteBehindPending());
+        Assert.assertEquals(1, manager.getWriteBehindCoalescedCount());
+
+        // Invalidated sessions are not written
+        session.expire();
+        Assert.assertEquals(0, manager.getWriteBehindPending());
+
+        manager.stop();
+        Assert.assertEquals(0, store.getSavedIds().size());
+    }
+
+    @Test
+    public void testWriteBehindFailure() throws Exception {
+        TesterBatchStore store = new TesterBatchStore();
+        store.setFail(true);
+        PersistentManager manager = createWriteBehindManager(store);
+        manager.setWriteBehindFlushInterval(10);
+
+        manager.setMaxActiveSessions(2);
+        manager.setMinIdleSwap(0);
+
+        manager.start();
+
+        TesterActivationListener l1 = new TesterActivationListener();
+        TesterActivationListener l2 = new TesterActivationListener();
+        manager.createSession(null).getSession().setAttribute("listener", l1);
+        manager.createSession(null).getSession().setAttribute("listener", l2);
+
+        // One session is swapped out and the write fails
+        manager.processPersistenceChecks();
+        int count = 0;
+        while (count < 100 && (manager.getWriteBehindPending() > 0 ||
+                manager.getActiveSessions() < 2)) {
+            Thread.sleep(50);
+            count++;
+        }
+
+        // The session is back in memory and active again
+        Assert.assertEquals(2, manager.getActiveSessions());
+        Assert.assertEquals(0, store.getSavedIds().size());
+        Assert.assertEquals(1, l1.passivated.get() + l2.passivated.get());
+        Assert.assertEquals(1, l1.activated.get() + l2.activated.get());
+
+        store.setFail(false);
+        manager.stop();
+    }
+
+    private static PersistentManager createWriteBehindManager(Store store) {
+        PersistentManager manager = new PersistentManager();
+        manager.setStore(store);
+        manager.setWriteBehind(true);
+        manager.setWriteBehindBatchSize(10);
+        // Long enough that nothing is written before the Manager stops
+        manager.setWriteBehindFlushInterval(60000);
+
+        Host host = new TesterHost();
+        Context context = new TesterContext();
+        context.setParent(host);
+        manager.setContext(context);
+        return manager;
+    }
+
     @Test
     public void testBug62175() throws Exception {
         final PersistentManager manager = new PersistentManager();
@@ -125,6 +243,50 @@ public class TestPersistentManager {
 
     }
 
+    private static class TesterBatchStore extends TesterStore implements BatchStore {
+
+        private int batchCount = 0;
+        private volatile boolean fail = false;
+
+        int getBatchCount() {
+            return batchCount;
+        }
+
+        void setFail(boolean fail) {
+            this.fail = fail;
+        }
+
+        @Override
+        public synchronized void saveAll(Session[] sessions) throws IOException {
+            if (fail) {
+                throw new IOException();
+            }
+            batchCount++;
+            for (Session session : sessions) {
+                save(session);
+            }
+        }
+    }
+
+    private static class TesterActivationListener
+            implements HttpSessionActivationListener, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final AtomicInteger passivated = new AtomicInteger();
+        private final AtomicInteger activated = new AtomicInteger();
+
+        @Override
+        public void sessionWillPassivate(HttpSessionEvent se) {
+            passivated.incrementAndGet();
+        }
+
+        @Override
+        public void sessionDidActivate(HttpSessionEvent se) {
+            activated.incrementAndGet();
+        }
+    }
+
     private static class RequestCachingSessionListener implements HttpSessionListener {
 
         private HttpServletRequest request;
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.core.StandardContext;
+
+public class TestSessionExpiryIndex {
+
+    @Test
+    public void testPollDue() {
+        StandardManager manager = new StandardManager();
+        SessionExpiryIndex index = new SessionExpiryIndex(1000, 16, 0);
+
+        StandardSession s1 = new StandardSession(manager);
+        StandardSession s2 = new StandardSession(manager);
+        index.file(s1, 2500);
+        index.file(s2, 5000);
+
+        Assert.assertEquals(0, index.pollDue(1999).size());
+        List<StandardSession> due = index.pollDue(2000);
+        Assert.assertEquals(1, due.size());
+        Assert.assertSame(s1, due.get(0));
+        Assert.assertEquals(0, s1.expiryIndexBucket);
+
+        // Re-filing moves rather than duplicates
+        index.file(s2, 9000);
+        Assert.assertEquals(0, index.pollDue(8999).size());
+        Assert.assertEquals(1, index.pollDue(9000).size());
+    }
+
+
+    @Test
+    public void testRemove() {
+        StandardManager manager = new StandardManager();
+        SessionExpiryIndex index = new SessionExpiryIndex(1000, 16, 0);
+
+        StandardSession s1 = new StandardSession(manager);
+        index.file(s1, 2000);
+        index.remove(s1);
+        Assert.assertEquals(0, s1.expiryIndexBucket);
+        Assert.assertEquals(0, index.pollDue(20000).size());
+    }
+
+
+    @Test
+    public void testWrap() {
+        StandardManager manager = new StandardManager();
+        SessionExpiryIndex index = new SessionExpiryIndex(1000, 16, 0);
+
+        // Due well beyond the span of the wheel so seen early and re-filed
+        StandardSession s1 = new StandardSession(manager);
+        index.file(s1, 20000);
+        Assert.assertEquals(1, index.pollDue(4000).size());
+
+        // Filing in the past is treated as due on the next tick
+        index.file(s1, 1000);
+        Assert.assertEquals(1, index.pollDue(5000).size());
+    }
+
+
+    @Test
+    public void testManagerExpiresOnlyDueSessions() {
+        StandardManager manager = new StandardManager();
+        manager.setContext(new StandardContext());
+        manager.setUseExpiryIndex(true);
+
+        long now = System.currentTimeMillis();
+        StandardSession idle = createSession(manager, "idle", now - 10000, 5);
+        StandardSession active = createSession(manager, "active", now, 3600);
+        StandardSession eternal = createSession(manager, "eternal", now - 10000, -1);
+
+        Assert.assertEquals(2, manager.getExpiryIndexSize());
+
+        manager.processExpires();
+
+        Assert.assertEquals(1, manager.getLastExpiryCheckCount());
+        Assert.assertFalse(idle.isValidInternal());
+        Assert.assertTrue(active.isValidInternal());
+        Assert.assertTrue(eternal.isValidInternal());
+        Assert.assertEquals(2, manager.getActiveSessions());
+        Assert.assertEquals(1, manager.getExpiryIndexSize());
+
+        // Shortening the interval brings the expiry forward
+        active.setMaxInactiveInterval(0);
+        Assert.assertEquals(0, manager.getExpiryIndexSize());
+        active.setMaxInactiveInterval(3600);
+        Assert.assertEquals(1, manager.getExpiryIndexSize());
+
+        manager.setUseExpiryIndex(false);
+        Assert.assertEquals(0, active.expiryIndexBucket);
+        manager.processExpires();
+        Assert.assertEquals(2, manager.getLastExpiryCheckCount());
+    }
+
+
+    @Test
+    public void testPersistentManagerExpiresOnlyDueSessions() {
+        PersistentManager manager = new PersistentManager();
+        manager.setContext(new StandardContext());
+        manager.setStore(new TesterStore());
+        manager.setUseExpiryIndex(true);
+
+        long now = System.currentTimeMillis();
+        StandardSession idle = createSession(manager, "idle", now - 10000, 5);
+        StandardSession active = createSession(manager, "active", now, 3600);
+
+        manager.processExpires();
+
+        Assert.assertEquals(1, manager.getLastExpiryCheckCount());
+        Assert.assertFalse(idle.isValidInternal());
+        Assert.assertTrue(active.isValidInternal());
+        Assert.assertEquals(1, manager.getActiveSessions());
+    }
+
+
+    private static StandardSession createSession(ManagerBase manager, String id,
+            long creationTime, int maxInactiveInterval) {
+        StandardSession session = new StandardSession(manager);
+        session.setValid(true);
+        session.setCreationTime(creationTime);
+        session.setMaxInactiveInterval(maxInactiveInterval);
+        session.setId(id, false);
+        return session;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Session;
+import org.apache.catalina.core.StandardContext;
+
+public class TestStandardManagerChunked {
+
+    private static final int SESSION_COUNT = 100;
+
+
+    @Test
+    public void testChunked() throws Exception {
+        doTestUnloadLoad(4, 4);
+    }
+
+
+    @Test
+    public void testChunkedReadBySingleThread() throws Exception {
+        doTestUnloadLoad(4, 1);
+    }
+
+
+    @Test
+    public void testSingleStreamReadByManyThreads() throws Exception {
+        doTestUnloadLoad(1, 4);
+    }
+
+
+    @Test
+    public void testCorruptChunk() throws Exception {
+        File file = createFile();
+        StandardManager manager = createManager(file, 4);
+        populate(manager);
+        manager.unload();
+
+        // Corrupt the body of the first chunk, after the file and chunk headers
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(16 + 12 + 10);
+            int b = raf.read();
+            raf.seek(16 + 12 + 10);
+            raf.write(b ^ 0xFF);
+        }
+
+        manager.load();
+        // Only the corrupt chunk is lost. All chunks are the same size.
+        Assert.assertEquals(SESSION_COUNT - manager.getSessionsPerChunk(), manager.getActiveSessions());
+        Assert.assertFalse(file.exists());
+    }
+
+
+    private void doTestUnloadLoad(int unloadThreads, int loadThreads) throws Exception {
+        File file = createFile();
+        StandardManager manager = createManager(file, unloadThreads);
+        populate(manager);
+
+        manager.unload();
+        Assert.assertEquals(0, manager.getActiveSessions());
+        Assert.assertEquals(SESSION_COUNT, manager.getPersistenceSessionCount());
+        Assert.assertEquals(SESSION_COUNT, manager.getPersistenceSessionsProcessed());
+
+        manager.setPersistenceThreads(loadThreads);
+        manager.load();
+        Assert.assertFalse(file.exists());
+        Assert.assertEquals(SESSION_COUNT, manager.getActiveSessions());
+        Assert.assertEquals(SESSION_COUNT, manager.getPersistenceSessionsProcessed());
+        for (int i = 0; i < SESSION_COUNT; i++) {
+            Session session = manager.findSession("session" + i);
+            Assert.assertEquals(Integer.valueOf(i), session.getSession().getAttribute("index"));
+        }
+    }
+
+
+    private static void populate(StandardManager manager) {
+        for (int i = 0; i < SESSION_COUNT; i++) {
+            StandardSession session = new StandardSession(manager);
+            session.setValid(true);
+            session.setMaxInactiveInterval(-1);
+            session.setId("session" + i);
+            session.setAttribute("index", Integer.valueOf(i));
+        }
+        Assert.assertEquals(SESSION_COUNT, manager.getActiveSessions());
+    }
+
+
+    private static File createFile() throws Exception {
+        File file = File.createTempFile("sessions", ".ser");
+        file.deleteOnExit();
+        return file;
+    }
+
+
+    private static StandardManager createManager(File file, int threads) {
+        StandardManager manager = new StandardManager();
+        manager.setContext(new StandardContext());
+        manager.setPathname(file.getAbsolutePath());
+        manager.setPersistenceThreads(threads);
+        manager.setSessionsPerChunk(10);
+        return manager;
+    }
+}
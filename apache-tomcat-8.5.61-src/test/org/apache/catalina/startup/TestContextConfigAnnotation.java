@@ -18,12 +18,17 @@ package org.apache.catalina.startup;
 
 import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 
 import javax.servlet.DispatcherType;
 import javax.servlet.Servlet;
@@ -318,6 +323,78 @@ public class TestContextConfigAnnotation {
         Assert.assertEquals(4, config.initializerClassMap.get(sciObject).size());
     }
 
+    @Test
+    public void testProcessAnnotationsParallelCached() throws Exception {
+        File dir = Files.createTempDirectory("test-annotation-scan").toFile();
+        try {
+            File jar1 = createJar(new File(dir, "jar1.jar"),
+                    "org/apache/catalina/startup/ParamServlet",
+                    "org/apache/catalina/startup/ParamFilter");
+            File jar2 = createJar(new File(dir, "jar2.jar"),
+                    "org/apache/catalina/startup/TesterServlet");
+            File workDir = new File(dir, "work");
+            Assert.assertTrue(workDir.mkdir());
+
+            // The first scan populates the cache, the second uses it
+            for (int i = 0; i < 2; i++) {
+                ContextConfig config = new ContextConfig();
+                config.handlesTypesNonAnnotations = true;
+
+                StandardContext context = new StandardContext();
+                context.setLoader(new TesterLoader());
+                context.setParallelAnnotationScanning(true);
+                context.setCacheAnnotationScanResults(true);
+                context.setWorkDir(workDir.getAbsolutePath());
+                config.context = context;
+
+                SCI sciServlet = new SCI();
+                config.initializerClassMap.put(sciServlet, new HashSet<Class<?>>());
+                config.typeInitializerMap.put(Servlet.class,
+                        new HashSet<ServletContainerInitializer>());
+                config.typeInitializerMap.get(Servlet.class).add(sciServlet);
+
+                WebXml fragment1 = createFragment(jar1);
+                WebXml fragment2 = createFragment(jar2);
+                Set<WebXml> fragments = new LinkedHashSet<>();
+                fragments.add(fragment1);
+                fragments.add(fragment2);
+
+                config.processAnnotations(fragments, false,
+                        new HashMap<String, JavaClassCacheEntry>());
+
+                Assert.assertNotNull(fragment1.getServlets().get("param"));
+                Assert.assertNotNull(fragment1.getFilters().get("paramFilter"));
+                Assert.assertEquals(0, fragment2.getServlets().size());
+                Assert.assertEquals(2, config.initializerClassMap.get(sciServlet).size());
+
+                String[] cached = new File(workDir, "annotation-scan").list();
+                Assert.assertNotNull(cached);
+                Assert.assertEquals(2, cached.length);
+            }
+        } finally {
+            ExpandWar.delete(dir);
+        }
+    }
+
+    private File createJar(File jar, String... classNames) throws Exception {
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (String className : classNames) {
+                out.putNextEntry(new JarEntry(className + ".class"));
+                out.write(Files.readAllBytes(paramClassResource(className).toPath()));
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private static WebXml createFragment(File jar) throws Exception {
+        WebXml fragment = new WebXml();
+        fragment.setName(jar.getName());
+        fragment.setURL(jar.toURI().toURL());
+        fragment.setWebappJar(true);
+        return fragment;
+    }
+
     private static final class SCI implements ServletContainerInitializer {
         @Override
         public void onStartup(Set<Class<?>> c, ServletContext ctx)
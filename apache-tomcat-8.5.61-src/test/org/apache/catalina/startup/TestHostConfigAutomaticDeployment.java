@@ -1977,4 +1977,33 @@ public class TestHostConfigAutomaticDeployment extends TomcatBaseTest {
 
         Assert.assertNotEquals("Timestamp hasn't changed", lastModified, newLastModified);
     }
+
+
+    @Test
+    public void testStartOnDemandContextXmlOverride() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        StandardHost host = (StandardHost) tomcat.getHost();
+        host.setStartContextsOnDemand(true);
+        host.setDeployOnStartup(true);
+
+        // Uses the Host's setting
+        File onDemand = new File(host.getAppBaseFile(), "ondemand");
+        Assert.assertTrue(onDemand.mkdirs());
+
+        // Overrides the Host's setting
+        File eager = new File(host.getAppBaseFile(), "eager/META-INF");
+        Assert.assertTrue(eager.mkdirs());
+        Files.write(new File(eager, "context.xml").toPath(),
+                "<Context startOnDemand=\"false\" />".getBytes(StandardCharsets.UTF_8));
+
+        tomcat.start();
+
+        Context ctxt = (Context) host.findChild("/ondemand");
+        Assert.assertTrue(ctxt.getStartOnDemand());
+        Assert.assertFalse(ctxt.getState().isAvailable());
+
+        ctxt = (Context) host.findChild("/eager");
+        Assert.assertFalse(ctxt.getStartOnDemand());
+        Assert.assertEquals(LifecycleState.STARTED, ctxt.getState());
+    }
 }
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.startup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestStartupSnapshot {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Map<String,List<String>> initializers = new LinkedHashMap<>();
+        initializers.put("b.Sci", Arrays.asList("b.Impl1", "b.Impl2"));
+        initializers.put("a.Sci", Collections.<String>emptyList());
+        List<String> resourceJars = Arrays.asList("/WEB-INF/lib/a.jar", "file:/tmp/b.jar");
+
+        StartupSnapshot expected = new StartupSnapshot("fingerprint", new byte[] { 1, 2, 3 },
+                Arrays.asList("a.jar"), initializers, resourceJars);
+        StartupSnapshot actual = StartupSnapshot.read(new ByteArrayInputStream(write(expected)));
+
+        Assert.assertEquals("fingerprint", actual.getFingerprint());
+        Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, actual.getWebXml());
+        Assert.assertEquals(Arrays.asList("a.jar"), actual.getOrderedLibs());
+        Assert.assertEquals(initializers, actual.getInitializers());
+        // Order of the initializers is retained
+        Assert.assertEquals("b.Sci", actual.getInitializers().keySet().iterator().next());
+        Assert.assertEquals(resourceJars, actual.getResourceJars());
+    }
+
+
+    @Test
+    public void testNoOrderedLibs() throws Exception {
+        StartupSnapshot expected = new StartupSnapshot("fingerprint", new byte[0], null,
+                Collections.<String,List<String>>emptyMap(), Collections.<String>emptyList());
+        StartupSnapshot actual = StartupSnapshot.read(new ByteArrayInputStream(write(expected)));
+
+        Assert.assertNull(actual.getOrderedLibs());
+        Assert.assertTrue(actual.getInitializers().isEmpty());
+        Assert.assertTrue(actual.getResourceJars().isEmpty());
+    }
+
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws Exception {
+        StartupSnapshot snapshot = new StartupSnapshot("fingerprint", new byte[] { 1, 2, 3 },
+                null, Collections.<String,List<String>>emptyMap(),
+                Collections.<String>emptyList());
+        byte[] content = write(snapshot);
+        StartupSnapshot.read(new ByteArrayInputStream(Arrays.copyOf(content, content.length / 2)));
+    }
+
+
+    private static byte[] write(StartupSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        snapshot.write(baos);
+        return baos.toByteArray();
+    }
+}
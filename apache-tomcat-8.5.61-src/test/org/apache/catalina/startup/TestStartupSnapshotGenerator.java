@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.startup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.logging.Level;
+import java.util.zip.ZipEntry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.core.StandardContext;
+import org.apache.tomcat.unittest.TesterLogValidationFilter;
+import org.apache.tomcat.util.buf.ByteChunk;
+
+public class TestStartupSnapshotGenerator extends TomcatBaseTest {
+
+    private static final String WEB_XML =
+            "<web-app xmlns=\"http://xmlns.jcp.org/xml/ns/javaee\" version=\"3.1\">\n" +
+            "  <servlet>\n" +
+            "    <servlet-name>hello</servlet-name>\n" +
+            "    <servlet-class>" + TesterServlet.class.getName() + "</servlet-class>\n" +
+            "  </servlet>\n" +
+            "  <servlet-mapping>\n" +
+            "    <servlet-name>hello</servlet-name>\n" +
+            "    <url-pattern>/hello</url-pattern>\n" +
+            "  </servlet-mapping>\n" +
+            "</web-app>";
+
+    private static final String SERVLET_CLASS =
+            "WEB-INF/classes/" + TesterServlet.class.getName().replace('.', '/') + ".class";
+
+
+    @Test
+    public void testGenerate() throws Exception {
+        File appDir = createWebapp();
+        File snapshotFile = new File(appDir, StartupSnapshot.PATH);
+
+        new StartupSnapshotGenerator().generate(appDir);
+
+        Assert.assertTrue(snapshotFile.isFile());
+        StartupSnapshot snapshot;
+        try (InputStream is = new FileInputStream(snapshotFile)) {
+            snapshot = StartupSnapshot.read(is);
+        }
+        Assert.assertEquals(Arrays.asList("/WEB-INF/lib/resources2.jar"),
+                snapshot.getResourceJars());
+    }
+
+
+    @Test
+    public void testSnapshotUsed() throws Exception {
+        File appDir = createWebapp();
+        new StartupSnapshotGenerator().generate(appDir);
+
+        doTestStartup(appDir, true);
+    }
+
+
+    @Test
+    public void testSnapshotStaleLib() throws Exception {
+        File appDir = createWebapp();
+        new StartupSnapshotGenerator().generate(appDir);
+
+        File lib = new File(appDir, "WEB-INF/lib/resources2.jar");
+        try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(lib))) {
+            jos.putNextEntry(new ZipEntry("META-INF/resources/changed.txt"));
+            jos.write("changed".getBytes(StandardCharsets.ISO_8859_1));
+            jos.closeEntry();
+        }
+
+        doTestStartup(appDir, false);
+    }
+
+
+    @Test
+    public void testSnapshotStaleClasses() throws Exception {
+        File appDir = createWebapp();
+        new StartupSnapshotGenerator().generate(appDir);
+
+        // A class that was compiled again
+        File servletClass = new File(appDir, SERVLET_CLASS);
+        Assert.assertTrue(servletClass.setLastModified(servletClass.lastModified() + 10000));
+
+        doTestStartup(appDir, false);
+    }
+
+
+    @Test
+    public void testSnapshotInitializerMismatch() throws Exception {
+        File appDir = createWebapp();
+        new StartupSnapshotGenerator().generate(appDir);
+
+        // Same content but an initializer that is not present
+        File snapshotFile = new File(appDir, StartupSnapshot.PATH);
+        StartupSnapshot snapshot;
+        try (InputStream is = new FileInputStream(snapshotFile)) {
+            snapshot = StartupSnapshot.read(is);
+        }
+        Map<String,List<String>> initializers = new LinkedHashMap<>(snapshot.getInitializers());
+        initializers.put("org.apache.tomcat.MissingInitializer",
+                Collections.<String>emptyList());
+        try (OutputStream os = new FileOutputStream(snapshotFile)) {
+            new StartupSnapshot(snapshot.getFingerprint(), snapshot.getWebXml(),
+                    snapshot.getOrderedLibs(), initializers,
+                    snapshot.getResourceJars()).write(os);
+        }
+
+        doTestStartup(appDir, false);
+    }
+
+
+    private void doTestStartup(File appDir, boolean expectHit) throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        StandardContext ctx = (StandardContext) tomcat.addWebapp(
+                null, "/test", appDir.getAbsolutePath());
+        ctx.setUseStartupSnapshot(true);
+
+        TesterLogValidationFilter f = TesterLogValidationFilter.add(Level.INFO,
+                expectHit ? "from the startup snapshot" : "does not match the current content",
+                null, ContextConfig.class.getName());
+
+        tomcat.start();
+
+        Assert.assertEquals(1, f.getMessageCount());
+
+        // The web application is configured the same way in both cases
+        ByteChunk res = getUrl("http://localhost:" + getPort() + "/test/hello");
+        Assert.assertEquals("OK", res.toString());
+    }
+
+
+    private File createWebapp() throws IOException {
+        File appDir = new File(getTemporaryDirectory(), "snapshot");
+        addDeleteOnTearDown(appDir);
+        File lib = new File(appDir, "WEB-INF/lib");
+        File servletClass = new File(appDir, SERVLET_CLASS);
+        Assert.assertTrue(lib.mkdirs());
+        Assert.assertTrue(servletClass.getParentFile().mkdirs());
+
+        writeFile(new File(appDir, "WEB-INF/web.xml"), WEB_XML);
+        Files.copy(new File("test/webapp-fragments/WEB-INF/lib/resources2.jar").toPath(),
+                new File(lib, "resources2.jar").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        try (InputStream is = TesterServlet.class.getResourceAsStream(
+                TesterServlet.class.getSimpleName() + ".class")) {
+            Files.copy(is, servletClass.toPath());
+        }
+        return appDir;
+    }
+
+
+    private static void writeFile(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -16,14 +16,20 @@
  */
 package org.apache.catalina.valves;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
 
+import javax.servlet.ServletException;
+
 import org.junit.Assert;
 import org.junit.Test;
 
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+
 public class TestAccessLogValve {
 
     // Note that there is a similar test:
@@ -91,4 +97,33 @@ public class TestAccessLogValve {
     private String generateExpected(SimpleDateFormat sdf, long secs) {
         return sdf.format(new Date(secs * 1000));
     }
+
+
+    @Test
+    public void testSkippable() {
+        AccessLogValve valve = new AccessLogValve();
+        valve.setPattern("%s %b");
+        Assert.assertTrue(valve.isSkippable(null));
+
+        // The remote address is cached before the request is processed
+        valve.setPattern("%a");
+        Assert.assertFalse(valve.isSkippable(null));
+
+        Assert.assertTrue(new JDBCAccessLogValve().isSkippable(null));
+    }
+
+
+    @Test
+    public void testSkippableInvokeOverridden() {
+        AccessLogValve valve = new AccessLogValve() {
+            @Override
+            public void invoke(Request request, Response response)
+                    throws IOException, ServletException {
+                request.setAttribute("invoked", Boolean.TRUE);
+                super.invoke(request, response);
+            }
+        };
+        valve.setPattern("%s %b");
+        Assert.assertFalse(valve.isSkippable(null));
+    }
 }
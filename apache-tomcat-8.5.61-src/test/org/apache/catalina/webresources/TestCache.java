@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.startup.ExpandWar;
+
+public class TestCache {
+
+    private static final int HOT_COUNT = 50;
+
+
+    @Test
+    public void testScanResistance() {
+        Cache cache = createCache();
+
+        // Make the hot set frequently used
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < HOT_COUNT; j++) {
+                cache.getResource("/hot/" + j, false);
+            }
+        }
+
+        // A crawler requests several times as many resources as the cache
+        // can hold, once each
+        for (int i = 0; i < 1000; i++) {
+            cache.getResource("/crawl/" + i, false);
+            Assert.assertTrue(cache.getSize() <= cache.getMaxSize());
+        }
+        Assert.assertTrue(cache.getRejectionCount() > 0);
+
+        // The hot set is still cached
+        long hits = cache.getHitCount();
+        for (int j = 0; j < HOT_COUNT; j++) {
+            cache.getResource("/hot/" + j, false);
+        }
+        Assert.assertEquals(hits + HOT_COUNT, cache.getHitCount());
+    }
+
+
+    @Test
+    public void testFrequentNewEntryIsAdmitted() {
+        Cache cache = createCache();
+        for (int i = 0; i < 1000; i++) {
+            cache.getResource("/once/" + i, false);
+        }
+
+        // Each rejected request still counts towards admission
+        long hits = cache.getHitCount();
+        for (int i = 0; i < 5; i++) {
+            cache.getResource("/popular", false);
+        }
+        Assert.assertTrue(cache.getHitCount() > hits);
+        Assert.assertTrue(cache.getAdmissionCount() > 0);
+    }
+
+
+    @Test
+    public void testRemoveAndClear() {
+        Cache cache = createCache();
+        cache.getResource("/a", false);
+        cache.getResource("/b", false);
+
+        cache.removeCacheEntry("/a");
+        long hits = cache.getHitCount();
+        cache.getResource("/a", false);
+        Assert.assertEquals(hits, cache.getHitCount());
+        cache.getResource("/b", false);
+        Assert.assertEquals(hits + 1, cache.getHitCount());
+
+        cache.clear();
+        Assert.assertEquals(0, cache.getSize());
+        cache.getResource("/b", false);
+        Assert.assertEquals(hits + 1, cache.getHitCount());
+    }
+
+
+    @Test
+    public void testBackgroundProcessEnforcesReducedSize() {
+        Cache cache = createCache();
+        for (int i = 0; i < 1000; i++) {
+            cache.getResource("/entry/" + i, false);
+        }
+        cache.setMaxSize(20);
+        cache.backgroundProcess();
+        Assert.assertTrue(cache.getSize() <= 20);
+    }
+
+
+    @Test
+    public void testOffHeapContent() throws Exception {
+        File dir = Files.createTempDirectory("test-cache").toFile();
+        try {
+            byte[] large = createFile(dir, "large1.bin", 64 * 1024);
+            createFile(dir, "large2.bin", 64 * 1024);
+            createFile(dir, "small.bin", 1024);
+
+            StandardRoot root = new TesterWebResourceRoot();
+            root.setMainResources(new DirResourceSet(root, "/", dir.getAbsolutePath(), "/"));
+            Cache cache = new Cache(root);
+            cache.setMaxSize(1024);
+            cache.setObjectMaxSize(16);
+            // Space for one of the large resources
+            cache.setOffHeapMaxSize(100);
+
+            CachedResource resource1 = (CachedResource) cache.getResource("/large1.bin", false);
+            Assert.assertNull(resource1.getContent());
+            ByteBuffer buffer = resource1.getContentBuffer();
+            Assert.assertTrue(buffer.isDirect());
+            Assert.assertTrue(buffer.isReadOnly());
+            byte[] content = new byte[buffer.remaining()];
+            buffer.get(content);
+            Assert.assertArrayEquals(large, content);
+            Assert.assertArrayEquals(large, read(resource1.getInputStream()));
+            Assert.assertEquals(64, cache.getOffHeapSize());
+
+            // No space remaining but the content can still be read
+            CachedResource resource2 = (CachedResource) cache.getResource("/large2.bin", false);
+            Assert.assertNull(resource2.getContentBuffer());
+            Assert.assertEquals(64 * 1024, read(resource2.getInputStream()).length);
+
+            // Small content is held on the heap
+            CachedResource small = (CachedResource) cache.getResource("/small.bin", false);
+            Assert.assertNotNull(small.getContent());
+            Assert.assertNull(small.getContentBuffer());
+
+            // Removing an entry frees its space
+            cache.removeCacheEntry("/large1.bin");
+            Assert.assertEquals(0, cache.getOffHeapSize());
+            Assert.assertNull(resource1.getContentBuffer());
+            Assert.assertNotNull(resource2.getContentBuffer());
+            Assert.assertEquals(64, cache.getOffHeapSize());
+
+            cache.clear();
+            Assert.assertEquals(0, cache.getOffHeapSize());
+        } finally {
+            ExpandWar.delete(dir);
+        }
+    }
+
+
+    private static byte[] createFile(File dir, String name, int length) throws Exception {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        try (OutputStream os = new FileOutputStream(new File(dir, name))) {
+            os.write(content);
+        }
+        return content;
+    }
+
+
+    private static byte[] read(InputStream is) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (InputStream in = is) {
+            byte[] buf = new byte[1000];
+            int len;
+            while ((len = in.read(buf)) > 0) {
+                baos.write(buf, 0, len);
+            }
+        }
+        return baos.toByteArray();
+    }
+
+
+    private static Cache createCache() {
+        StandardRoot root = new StandardRoot();
+        root.setMainResources(new EmptyResourceSet(root));
+        Cache cache = new Cache(root);
+        cache.setMaxSize(100);
+        return cache;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.WebResourceSet;
+
+public class TestClassResourceIndex {
+
+    @Test
+    public void testLookup() {
+        WebResourceRoot root = new TesterWebResourceRoot();
+        WebResourceSet jar = new JarResourceSet(root, "/WEB-INF/classes",
+                new File("test/webresources/dir1.jar").getAbsolutePath(), "/");
+        WebResourceSet jarInternal = new JarResourceSet(root, "/WEB-INF/classes",
+                new File("test/webresources/dir1-internal.jar").getAbsolutePath(), "/dir1");
+        WebResourceSet jarOther = new JarResourceSet(root, "/WEB-INF/classes",
+                new File("test/webresources/non-static-resources.jar").getAbsolutePath(), "/");
+        WebResourceSet dir = new DirResourceSet(root, "/WEB-INF/classes",
+                new File("test/webresources/dir2").getAbsolutePath(), "/");
+
+        ClassResourceIndex index = new ClassResourceIndex(
+                Arrays.asList(jar, jarInternal, dir, jarOther));
+
+        // Directories are always searched
+        Assert.assertArrayEquals(new WebResourceSet[] { jar, jarInternal, dir },
+                index.getResourceSets("/WEB-INF/classes/d1/d1-f1.txt"));
+        Assert.assertArrayEquals(new WebResourceSet[] { dir, jarOther },
+                index.getResourceSets("/WEB-INF/classes/META-INF/MANIFEST.MF"));
+        Assert.assertArrayEquals(new WebResourceSet[] { dir },
+                index.getResourceSets("/WEB-INF/classes/com/example/Missing.class"));
+
+        // Directories with no entries of their own and the mount point
+        Assert.assertArrayEquals(new WebResourceSet[] { dir, jarOther },
+                index.getResourceSets("/WEB-INF/classes/META-INF/resources/WEB-INF/"));
+        Assert.assertArrayEquals(new WebResourceSet[] { jar, jarInternal, dir, jarOther },
+                index.getResourceSets("/WEB-INF/classes/f1.txt"));
+        Assert.assertArrayEquals(new WebResourceSet[] { jar, jarInternal, dir, jarOther },
+                index.getResourceSets("/WEB-INF/classes"));
+
+        index.notFound("/WEB-INF/classes/Missing.class");
+        Assert.assertArrayEquals(new WebResourceSet[] { dir },
+                index.getResourceSets("/WEB-INF/classes/Missing.class"));
+    }
+
+
+    @Test
+    public void testClassLoaderResources() {
+        StandardRoot root = new TesterWebResourceRoot();
+        root.setMainResources(new DirResourceSet(root, "/",
+                new File("test/webresources/dir2").getAbsolutePath(), "/"));
+        root.addClassResources(new JarResourceSet(root, "/WEB-INF/classes",
+                new File("test/webresources/dir1.jar").getAbsolutePath(), "/"));
+        root.addClassResources(new JarResourceSet(root, "/WEB-INF/classes",
+                new File("test/webresources/non-static-resources.jar").getAbsolutePath(), "/"));
+
+        Assert.assertTrue(root.getClassLoaderResource("/d1/d1-f1.txt").exists());
+        Assert.assertTrue(root.getClassLoaderResource("/META-INF/MANIFEST.MF").exists());
+        Assert.assertFalse(root.getClassLoaderResource("/d1/Missing.class").exists());
+        // Cached miss
+        Assert.assertFalse(root.getClassLoaderResource("/d1/Missing.class").exists());
+        Assert.assertEquals(1, root.getClassLoaderResources("/f1.txt").length);
+        Assert.assertTrue(root.getClassLoaderResource("/d2").isDirectory());
+    }
+}
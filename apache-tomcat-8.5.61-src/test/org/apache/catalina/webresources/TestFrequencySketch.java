@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestFrequencySketch {
+
+    @Test
+    public void testIncrement() {
+        FrequencySketch sketch = new FrequencySketch();
+        sketch.ensureCapacity(512);
+        Assert.assertEquals(0, sketch.frequency("/a"));
+        for (int i = 1; i < 20; i++) {
+            sketch.increment("/a");
+            // Counters saturate at 15
+            Assert.assertEquals(Math.min(i, 15), sketch.frequency("/a"));
+        }
+        Assert.assertEquals(0, sketch.frequency("/b"));
+    }
+
+
+    @Test
+    public void testAging() {
+        FrequencySketch sketch = new FrequencySketch();
+        sketch.ensureCapacity(64);
+        for (int i = 0; i < 10; i++) {
+            sketch.increment("/old");
+        }
+        // Enough other increments to trigger at least one halving
+        for (int i = 0; i < sketch.capacity() * 10; i++) {
+            sketch.increment("/other/" + i);
+        }
+        Assert.assertTrue(sketch.frequency("/old") < 10);
+    }
+
+
+    @Test
+    public void testEnsureCapacity() {
+        FrequencySketch sketch = new FrequencySketch();
+        sketch.ensureCapacity(1000);
+        Assert.assertEquals(1024, sketch.capacity());
+        // Never shrinks
+        sketch.ensureCapacity(10);
+        Assert.assertEquals(1024, sketch.capacity());
+    }
+}
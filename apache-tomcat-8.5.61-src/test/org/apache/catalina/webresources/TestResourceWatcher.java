@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.WebResource;
+import org.apache.catalina.startup.ExpandWar;
+
+public class TestResourceWatcher {
+
+    @Test
+    public void testInvalidation() throws Exception {
+        File dir = Files.createTempDirectory("test-watcher").toFile();
+        StandardRoot root = new TesterWebResourceRoot();
+        root.setMainResources(new DirResourceSet(root, "/", dir.getAbsolutePath(), "/"));
+        Cache cache = new Cache(root);
+        // Entries must not expire during the test
+        cache.setTtl(Long.MAX_VALUE / 2);
+        ResourceWatcher watcher = new ResourceWatcher(cache, "test");
+        try {
+            Assert.assertTrue(watcher.watchDirectory("", dir));
+            watcher.start();
+            cache.setWatched(true);
+
+            // Negative lookups are cached until the file is created
+            Assert.assertFalse(cache.getResource("/a.txt", false).exists());
+            write(new File(dir, "a.txt"), "a");
+            waitForExists(cache, "/a.txt", true);
+
+            // Modification
+            WebResource resource = cache.getResource("/a.txt", false);
+            Assert.assertEquals(1, resource.getContentLength());
+            write(new File(dir, "a.txt"), "abc");
+            waitForLength(cache, "/a.txt", 3);
+
+            // A new directory is watched as well, including anything created
+            // in it before it was registered
+            Assert.assertFalse(cache.getResource("/sub/b.txt", false).exists());
+            File sub = new File(dir, "sub");
+            Assert.assertTrue(sub.mkdir());
+            write(new File(sub, "b.txt"), "b");
+            waitForExists(cache, "/sub/b.txt", true);
+            write(new File(sub, "c.txt"), "c");
+            Assert.assertFalse(cache.getResource("/sub/d.txt", false).exists());
+            write(new File(sub, "d.txt"), "d");
+            waitForExists(cache, "/sub/d.txt", true);
+
+            // Deletion of a directory removes the entries below it
+            ExpandWar.delete(sub);
+            waitForExists(cache, "/sub/b.txt", false);
+            waitForExists(cache, "/sub/c.txt", false);
+        } finally {
+            watcher.stop();
+            ExpandWar.delete(dir);
+        }
+    }
+
+
+    private static void waitForExists(Cache cache, String path, boolean exists) throws Exception {
+        for (int i = 0; i < 200; i++) {
+            if (cache.getResource(path, false).exists() == exists) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        Assert.fail(path);
+    }
+
+
+    private static void waitForLength(Cache cache, String path, long length) throws Exception {
+        for (int i = 0; i < 200; i++) {
+            if (cache.getResource(path, false).getContentLength() == length) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        Assert.fail(path);
+    }
+
+
+    private static void write(File file, String content) throws Exception {
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(content.getBytes("UTF-8"));
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.el.lang;
+
+import java.io.StringReader;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.el.ELContext;
+import javax.el.ELResolver;
+import javax.el.EvaluationListener;
+import javax.el.ExpressionFactory;
+import javax.el.MapELResolver;
+import javax.el.PropertyNotFoundException;
+import javax.el.ValueExpression;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.el.TesterBeanA;
+import org.apache.el.TesterBeanB;
+import org.apache.el.ValueExpressionImpl;
+import org.apache.el.parser.AstValue;
+import org.apache.el.parser.CompiledValue;
+import org.apache.el.parser.ELParser;
+import org.apache.el.parser.Node;
+import org.apache.el.stream.StreamELResolverImpl;
+import org.apache.jasper.el.ELContextImpl;
+import org.apache.jasper.el.JasperELResolver;
+
+public class TestExpressionCompiler {
+
+    private final ExpressionFactory factory = ExpressionFactory.newInstance();
+
+    @Test
+    public void testPropertiesReadDirectly() throws Exception {
+        TesterResolver resolver = new TesterResolver();
+        ELContext context = new ELContextImpl(resolver);
+        setVariable(context, "beanA", createBeanA("Tomcat"));
+
+        ValueExpression ve = createValueExpression(context, "${beanA.bean['name']}");
+        Assert.assertEquals("Tomcat", ve.getValue(context));
+        Assert.assertEquals(2, resolver.count);
+
+        Assert.assertEquals("Tomcat", ve.getValue(context));
+        Assert.assertEquals(2, resolver.count);
+    }
+
+
+    @Test
+    public void testClassChange() throws Exception {
+        TesterResolver resolver = new TesterResolver();
+        ELContext context = new ELContextImpl(resolver);
+        TesterBeanA beanA = createBeanA("B");
+        beanA.setName("A");
+
+        ValueExpression ve = createValueExpression(context, "${bean.name}");
+        setVariable(context, "bean", beanA);
+        Assert.assertEquals("A", ve.getValue(context));
+        Assert.assertEquals(1, resolver.count);
+
+        setVariable(context, "bean", beanA.getBean());
+        Assert.assertEquals("B", ve.getValue(context));
+        Assert.assertEquals(2, resolver.count);
+
+        // The cache is updated for the new class
+        Assert.assertEquals("B", ve.getValue(context));
+        Assert.assertEquals(2, resolver.count);
+
+        setVariable(context, "bean", beanA);
+        Assert.assertEquals("A", ve.getValue(context));
+        Assert.assertEquals(3, resolver.count);
+    }
+
+
+    @Test
+    public void testMap() throws Exception {
+        TesterResolver resolver = new TesterResolver();
+        ELContext context = new ELContextImpl(resolver);
+        Map<String, String> map = new HashMap<>();
+        map.put("name", "Tomcat");
+        setVariable(context, "map", map);
+
+        ValueExpression ve = createValueExpression(context, "${map.name}");
+        Assert.assertEquals("Tomcat", ve.getValue(context));
+        Assert.assertEquals("Tomcat", ve.getValue(context));
+        Assert.assertEquals(2, resolver.count);
+    }
+
+
+    @Test
+    public void testApplicationResolver() throws Exception {
+        List<ELResolver> appResolvers = new ArrayList<>();
+        appResolvers.add(new MapELResolver());
+        TesterResolver resolver = new TesterResolver(appResolvers);
+        ELContext context = new ELContextImpl(resolver);
+        setVariable(context, "beanA", createBeanA("Tomcat"));
+
+        ValueExpression ve = createValueExpression(context, "${beanA.bean.name}");
+        Assert.assertEquals("Tomcat", ve.getValue(context));
+        Assert.assertEquals("Tomcat", ve.getValue(context));
+        Assert.assertEquals(4, resolver.count);
+    }
+
+
+    @Test
+    public void testNull() throws Exception {
+        TesterResolver resolver = new TesterResolver();
+        ELContext context = new ELContextImpl(resolver);
+        TesterBeanA beanA = createBeanA("Tomcat");
+        setVariable(context, "beanA", beanA);
+
+        ValueExpression ve = createValueExpression(context, "${beanA.bean.name}");
+        Assert.assertEquals("Tomcat", ve.getValue(context));
+
+        beanA.setBean(null);
+        Assert.assertNull(ve.getValue(context));
+    }
+
+
+    @Test(expected=PropertyNotFoundException.class)
+    public void testPropertyNotFound() throws Exception {
+        ELContext context = new ELContextImpl(new TesterResolver());
+        setVariable(context, "beanA", createBeanA("Tomcat"));
+
+        ValueExpression ve = createValueExpression(context, "${beanA.foo}");
+        ve.getValue(context);
+    }
+
+
+    @Test
+    public void testListener() throws Exception {
+        ELContext context = new ELContextImpl(new TesterResolver());
+        setVariable(context, "beanA", createBeanA("Tomcat"));
+        final List<Object> resolved = new ArrayList<>();
+        context.addEvaluationListener(new EvaluationListener() {
+            @Override
+            public void propertyResolved(ELContext ctx, Object base, Object property) {
+                resolved.add(property);
+            }
+        });
+
+        ValueExpression ve = createValueExpression(context, "${beanA.bean.name}");
+        ve.getValue(context);
+        ve.getValue(context);
+        Assert.assertEquals(4, resolved.size());
+        Assert.assertEquals("bean", resolved.get(2));
+        Assert.assertEquals("name", resolved.get(3));
+    }
+
+
+    @Test
+    public void testResolverChange() throws Exception {
+        // As seen by an expression shared by two web applications
+        ValueExpression ve = createValueExpression("${beanA.bean.name}");
+        TesterResolver resolverA = new TesterResolver();
+        ELContext contextA = new ELContextImpl(resolverA);
+        TesterResolver resolverB = new TesterResolver();
+        ELContext contextB = new ELContextImpl(resolverB);
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("Tomcat", ve.getValue(contextA));
+            Assert.assertEquals("Tomcat", ve.getValue(contextB));
+        }
+        Assert.assertEquals(20, resolverA.count);
+
+        // The cache is still used for the resolver seen last
+        Assert.assertEquals("Tomcat", ve.getValue(contextB));
+        Assert.assertEquals("Tomcat", ve.getValue(contextB));
+        Assert.assertEquals(20, resolverB.count);
+    }
+
+
+    @Test
+    public void testResolverNotRetained() throws Exception {
+        ValueExpression ve = createValueExpression("${beanA.bean.name}");
+        WeakReference<ELResolver> resolverRef = evaluate(ve);
+
+        for (int i = 0; i < 10 && resolverRef.get() != null; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        Assert.assertNull(resolverRef.get());
+    }
+
+
+    private static WeakReference<ELResolver> evaluate(ValueExpression ve) {
+        TesterResolver resolver = new TesterResolver();
+        ELContext context = new ELContextImpl(resolver);
+        Assert.assertEquals("Tomcat", ve.getValue(context));
+        Assert.assertEquals("Tomcat", ve.getValue(context));
+        Assert.assertEquals(2, resolver.count);
+        return new WeakReference<ELResolver>(resolver);
+    }
+
+
+    private ValueExpression createValueExpression(String expr) throws Exception {
+        // The variables are held by the expression
+        ELContext context = new ELContextImpl(new TesterResolver());
+        setVariable(context, "beanA", createBeanA("Tomcat"));
+        return createValueExpression(context, expr);
+    }
+
+
+    @Test
+    public void testCompile() throws Exception {
+        Assert.assertTrue(compile("${beanA.bean.name}") instanceof CompiledValue);
+        Assert.assertTrue(compile("${beanA.bean['name']}") instanceof CompiledValue);
+
+        Node n = compile("${beanA.bean[name]}");
+        Assert.assertTrue(n instanceof AstValue);
+        Assert.assertFalse(n instanceof CompiledValue);
+
+        n = compile("${beanA.bean.sayHello()}");
+        Assert.assertFalse(n instanceof CompiledValue);
+
+        n = compile("${beanA.name == beanA.bean.name}");
+        Assert.assertTrue(n.jjtGetChild(0) instanceof CompiledValue);
+        Assert.assertTrue(n.jjtGetChild(1) instanceof CompiledValue);
+        Assert.assertSame(n, n.jjtGetChild(0).jjtGetParent());
+        Assert.assertSame(n.jjtGetChild(0), n.jjtGetChild(0).jjtGetChild(0).jjtGetParent());
+    }
+
+
+    private void setVariable(ELContext context, String name, Object value) {
+        context.getVariableMapper().setVariable(name,
+                factory.createValueExpression(value, Object.class));
+    }
+
+
+    private static ValueExpression createValueExpression(ELContext context, String expr)
+            throws Exception {
+        return new ValueExpressionImpl(expr, compile(expr), null, context.getVariableMapper(),
+                Object.class);
+    }
+
+
+    private static Node compile(String expr) throws Exception {
+        ELParser parser = new ELParser(new StringReader(expr));
+        // Composite -> Dynamic -> expression
+        Node n = parser.CompositeExpression().jjtGetChild(0).jjtGetChild(0);
+        return ExpressionCompiler.compile(n);
+    }
+
+
+    private static TesterBeanA createBeanA(String name) {
+        TesterBeanB beanB = new TesterBeanB();
+        beanB.setName(name);
+        TesterBeanA beanA = new TesterBeanA();
+        beanA.setBean(beanB);
+        return beanA;
+    }
+
+
+    private static class TesterResolver extends JasperELResolver {
+
+        private int count;
+
+        TesterResolver() {
+            this(Collections.<ELResolver>emptyList());
+        }
+
+        TesterResolver(List<ELResolver> appResolvers) {
+            super(appResolvers, new StreamELResolverImpl());
+        }
+
+        @Override
+        public Object getValue(ELContext context, Object base, Object property) {
+            if (base != null) {
+                count++;
+            }
+            return super.getValue(context, base, property);
+        }
+    }
+}
@@ -23,10 +23,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
+import javax.servlet.ServletContext;
+
 import org.junit.Assert;
 import org.junit.Test;
 
 import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleListener;
+import org.apache.catalina.Wrapper;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
 import org.apache.tomcat.util.buf.ByteChunk;
@@ -201,6 +207,35 @@ public class TestCompiler extends TomcatBaseTest {
         Assert.assertTrue(coda.matcher(result).matches());
     }
 
+    @Test
+    public void testCompileInMemory() throws Exception {
+        Tomcat tomcat = getTomcatInstanceTestWebapp(false, false);
+        final Context ctx = (Context) tomcat.getHost().findChild("/test");
+        // The JSP servlet is added when the Context starts
+        ctx.addLifecycleListener(new LifecycleListener() {
+            @Override
+            public void lifecycleEvent(LifecycleEvent event) {
+                if (Lifecycle.CONFIGURE_START_EVENT.equals(event.getType())) {
+                    Wrapper jsp = (Wrapper) ctx.findChild("jsp");
+                    jsp.addInitParameter("compileInMemory", "true");
+                    jsp.addInitParameter("keepgenerated", "false");
+                }
+            }
+        });
+        tomcat.start();
+
+        // Uses a tag file so the page is compiled against a class that was
+        // also compiled in memory
+        ByteChunk res = getUrl("http://localhost:" + getPort() +
+                "/test/bug5nnnn/bug52335.jsp");
+        assertEcho(res.toString(), "02 - <p>Foo</p><%");
+
+        File scratchDir = (File) ctx.getServletContext().getAttribute(ServletContext.TEMPDIR);
+        Assert.assertFalse(new File(scratchDir, "org/apache/jsp/bug5nnnn/bug52335_jsp.class").exists());
+        Assert.assertFalse(new File(scratchDir, "org/apache/jsp/bug5nnnn/bug52335_jsp.java").exists());
+        Assert.assertFalse(new File(scratchDir, "org/apache/jsp/tag/web/echo_tag.class").exists());
+    }
+
     /**
      * Assertion for text printed by tags:echo
      */
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jasper.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.jasper.servlet.JasperInitializer;
+import org.apache.tomcat.util.buf.ByteChunk;
+
+public class TestJspRuntimeContext extends TomcatBaseTest {
+
+    @Test
+    public void testBackgroundRecompile() throws Exception {
+        File appDir = new File(getTemporaryDirectory(), "background-recompile");
+        Assert.assertTrue(appDir.mkdirs());
+        addDeleteOnTearDown(appDir);
+        File jsp = new File(appDir, "index.jsp");
+        writeJsp(jsp, "v1");
+
+        Tomcat tomcat = getTomcatInstance();
+        Context ctx = tomcat.addContext("", appDir.getAbsolutePath());
+        ctx.addServletContainerInitializer(new JasperInitializer(), null);
+        Wrapper w = Tomcat.addServlet(ctx, "jsp", "org.apache.jasper.servlet.JspServlet");
+        w.addInitParameter("backgroundRecompile", "true");
+        ctx.addServletMappingDecoded("*.jsp", "jsp");
+
+        tomcat.start();
+
+        String url = "http://localhost:" + getPort() + "/index.jsp";
+        Assert.assertEquals("v1", getUrl(url).toString().trim());
+
+        // Make sure the modification time changes
+        Thread.sleep(1100);
+        writeJsp(jsp, "v2");
+
+        // The previous version is served until the new one is ready
+        String result = getUrl(url).toString().trim();
+        int count = 0;
+        while (!"v2".equals(result) && count < 200) {
+            Assert.assertEquals("v1", result);
+            Thread.sleep(100);
+            result = getUrl(url).toString().trim();
+            count++;
+        }
+        Assert.assertEquals("v2", result);
+    }
+
+
+    @Test
+    public void testBackgroundRecompileInService() throws Exception {
+        File appDir = new File(getTemporaryDirectory(), "background-recompile");
+        Assert.assertTrue(appDir.mkdirs());
+        addDeleteOnTearDown(appDir);
+        File jsp = new File(appDir, "index.jsp");
+        // The request with the wait parameter is still in service when the
+        // new version has been initialised
+        writeJsp(jsp, "<%! public void jspDestroy() {\n" +
+                "getServletContext().setAttribute(\"v1Destroyed\", \"true\"); } %>\n" +
+                "<% if (request.getParameter(\"wait\") != null) {\n" +
+                "  for (int i = 0; i < 200 && application.getAttribute(\"v2Loader\") == null; i++) {\n" +
+                "    Thread.sleep(100); }\n" +
+                "  Thread.sleep(500); } %>\n" +
+                "v1 <%= application.getAttribute(\"v1Destroyed\") %>");
+
+        Tomcat tomcat = getTomcatInstance();
+        final Context ctx = tomcat.addContext("", appDir.getAbsolutePath());
+        ctx.addServletContainerInitializer(new JasperInitializer(), null);
+        Wrapper w = Tomcat.addServlet(ctx, "jsp", "org.apache.jasper.servlet.JspServlet");
+        w.addInitParameter("backgroundRecompile", "true");
+        ctx.addServletMappingDecoded("*.jsp", "jsp");
+
+        tomcat.start();
+
+        final String url = "http://localhost:" + getPort() + "/index.jsp";
+        Assert.assertEquals("v1 null", getUrl(url).toString().trim());
+
+        final StringBuilder inService = new StringBuilder();
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    inService.append(getUrl(url + "?wait=true").toString().trim());
+                } catch (IOException e) {
+                    inService.append(e);
+                }
+            }
+        };
+        t.start();
+
+        // Make sure the modification time changes
+        Thread.sleep(1100);
+        writeJsp(jsp, "<%! public void jspInit() {\n" +
+                "getServletContext().setAttribute(\"v2Loader\",\n" +
+                "    Thread.currentThread().getContextClassLoader()); } %>v2");
+
+        String result = getUrl(url).toString().trim();
+        int count = 0;
+        while (!"v2".equals(result) && count < 200) {
+            Thread.sleep(100);
+            result = getUrl(url).toString().trim();
+            count++;
+        }
+        Assert.assertEquals("v2", result);
+
+        // The new version was initialised with the web application bound
+        Assert.assertSame(ctx.getLoader().getClassLoader(),
+                ctx.getServletContext().getAttribute("v2Loader"));
+
+        // The previous version was not destroyed while it was in service
+        t.join();
+        Assert.assertEquals("v1 null", inService.toString());
+        count = 0;
+        while (ctx.getServletContext().getAttribute("v1Destroyed") == null && count < 50) {
+            Thread.sleep(100);
+            count++;
+        }
+        Assert.assertEquals("true", ctx.getServletContext().getAttribute("v1Destroyed"));
+    }
+
+
+    private static void writeJsp(File jsp, String content) throws Exception {
+        Files.write(jsp.toPath(), ("<%@ page contentType=\"text/plain\"%>" + content)
+                .getBytes(StandardCharsets.UTF_8));
+    }
+}
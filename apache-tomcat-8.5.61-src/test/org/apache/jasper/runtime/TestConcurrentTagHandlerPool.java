@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jasper.runtime;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.jsp.tagext.Tag;
+import javax.servlet.jsp.tagext.TagSupport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.tomcat.InstanceManager;
+import org.apache.tomcat.SimpleInstanceManager;
+import org.apache.tomcat.unittest.TesterServletContext;
+
+public class TestConcurrentTagHandlerPool {
+
+    @Test
+    public void testReuse() throws Exception {
+        TagHandlerPool pool = getPool("2");
+        Assert.assertTrue(pool instanceof ConcurrentTagHandlerPool);
+        ConcurrentTagHandlerPool concurrentPool = (ConcurrentTagHandlerPool) pool;
+
+        Tag first = pool.get(TesterTag.class);
+        Tag nested = pool.get(TesterTag.class);
+        Assert.assertNotSame(first, nested);
+        pool.reuse(nested);
+        pool.reuse(first);
+
+        // The last handler returned by a thread is in its slot
+        Assert.assertSame(nested, pool.get(TesterTag.class));
+        Assert.assertSame(first, pool.get(TesterTag.class));
+
+        Assert.assertEquals(1, concurrentPool.getSlotHitCount());
+        Assert.assertEquals(1, concurrentPool.getSharedHitCount());
+        Assert.assertEquals(2, concurrentPool.getMissCount());
+        Assert.assertEquals(0.5, concurrentPool.getHitRate(), 0.001);
+    }
+
+
+    @Test
+    public void testRelease() throws Exception {
+        TagHandlerPool pool = getPool("1");
+
+        TesterTag[] handlers = new TesterTag[3];
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i] = (TesterTag) pool.get(TesterTag.class);
+        }
+        for (TesterTag handler : handlers) {
+            pool.reuse(handler);
+        }
+
+        // One handler fits in the slot and one in the shared queue
+        Assert.assertEquals(0, handlers[0].releaseCount.get());
+        Assert.assertEquals(0, handlers[1].releaseCount.get());
+        Assert.assertEquals(1, handlers[2].releaseCount.get());
+
+        pool.release();
+        for (TesterTag handler : handlers) {
+            Assert.assertEquals(1, handler.releaseCount.get());
+        }
+    }
+
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final TagHandlerPool pool = getPool("16");
+        final AtomicBoolean failed = new AtomicBoolean();
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 10000; j++) {
+                            TesterTag outer = (TesterTag) pool.get(TesterTag.class);
+                            TesterTag inner = (TesterTag) pool.get(TesterTag.class);
+                            if (!outer.inUse.compareAndSet(false, true) ||
+                                    !inner.inUse.compareAndSet(false, true)) {
+                                failed.set(true);
+                            }
+                            inner.inUse.set(false);
+                            pool.reuse(inner);
+                            outer.inUse.set(false);
+                            pool.reuse(outer);
+                        }
+                    } catch (Exception e) {
+                        failed.set(true);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertFalse(failed.get());
+        Assert.assertTrue(((ConcurrentTagHandlerPool) pool).getHitRate() > 0.9);
+    }
+
+
+    private static TagHandlerPool getPool(String maxSize) {
+        return TagHandlerPool.getTagHandlerPool(new TesterServletConfig(maxSize));
+    }
+
+
+    public static class TesterTag extends TagSupport {
+
+        private static final long serialVersionUID = 1L;
+
+        private final AtomicInteger releaseCount = new AtomicInteger();
+        private final AtomicBoolean inUse = new AtomicBoolean();
+
+        @Override
+        public void release() {
+            releaseCount.incrementAndGet();
+        }
+    }
+
+
+    private static class TesterServletConfig implements ServletConfig {
+
+        private final String maxSize;
+        private final ServletContext servletContext = new TesterServletContext() {
+            private final InstanceManager instanceManager = new SimpleInstanceManager();
+
+            @Override
+            public Object getAttribute(String name) {
+                if (InstanceManager.class.getName().equals(name)) {
+                    return instanceManager;
+                }
+                return null;
+            }
+
+            @Override
+            public String getInitParameter(String name) {
+                return null;
+            }
+        };
+
+        TesterServletConfig(String maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public String getServletName() {
+            return "jsp";
+        }
+
+        @Override
+        public ServletContext getServletContext() {
+            return servletContext;
+        }
+
+        @Override
+        public String getInitParameter(String name) {
+            if (TagHandlerPool.OPTION_TAGPOOL.equals(name)) {
+                return ConcurrentTagHandlerPool.class.getName();
+            }
+            if (TagHandlerPool.OPTION_MAXSIZE.equals(name)) {
+                return maxSize;
+            }
+            return null;
+        }
+
+        @Override
+        public Enumeration<String> getInitParameterNames() {
+            return Collections.emptyEnumeration();
+        }
+    }
+}
@@ -16,12 +16,20 @@
  */
 package org.apache.jasper.runtime;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
 import javax.servlet.http.HttpServletResponse;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import org.apache.catalina.Context;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.jasper.servlet.JasperInitializer;
 import org.apache.tomcat.util.buf.ByteChunk;
 
 public class TestJspWriterImpl extends TomcatBaseTest {
@@ -54,4 +62,45 @@ public class TestJspWriterImpl extends TomcatBaseTest {
         Assert.assertEquals(res.toString(),
                 HttpServletResponse.SC_INTERNAL_SERVER_ERROR, rc);
     }
+
+    @Test
+    public void testGenStringAsByteArray() throws Exception {
+        File appDir = new File(getTemporaryDirectory(), "gen-byte-array");
+        Assert.assertTrue(appDir.mkdirs());
+        addDeleteOnTearDown(appDir);
+        // Unbuffered so the encoded template text is written
+        writeJsp(new File(appDir, "a.jsp"),
+                "<%@ page contentType=\"text/plain;charset=UTF-8\" buffer=\"none\"%>" +
+                "caf\u00e9 <%= \"\\uD83D\" %><%= \"\\uDE00\" %> \u20ac end");
+        // The charset of the page is not the charset of the response
+        writeJsp(new File(appDir, "b.jsp"),
+                "<%@ page contentType=\"text/plain;charset=UTF-8\" buffer=\"none\"%>" +
+                "<% response.setCharacterEncoding(\"ISO-8859-1\"); %>caf\u00e9 caf\u00e9");
+
+        Tomcat tomcat = getTomcatInstance();
+        Context ctx = tomcat.addContext("", appDir.getAbsolutePath());
+        ctx.addServletContainerInitializer(new JasperInitializer(), null);
+        Wrapper w = Tomcat.addServlet(ctx, "jsp", "org.apache.jasper.servlet.JspServlet");
+        w.addInitParameter("genStringAsByteArray", "true");
+        ctx.addServletMappingDecoded("*.jsp", "jsp");
+
+        tomcat.start();
+
+        ByteChunk res = new ByteChunk();
+        int rc = getUrl("http://localhost:" + getPort() + "/a.jsp", res, null);
+        Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+        res.setCharset(StandardCharsets.UTF_8);
+        Assert.assertEquals("caf\u00e9 \uD83D\uDE00 \u20ac end", res.toString());
+
+        res.recycle();
+        rc = getUrl("http://localhost:" + getPort() + "/b.jsp", res, null);
+        Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+        res.setCharset(StandardCharsets.ISO_8859_1);
+        Assert.assertEquals("caf\u00e9 caf\u00e9", res.toString());
+    }
+
+
+    private static void writeJsp(File jsp, String content) throws Exception {
+        Files.write(jsp.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
 }
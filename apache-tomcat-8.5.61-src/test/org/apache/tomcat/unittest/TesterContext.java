@@ -1338,4 +1338,12 @@ public class TesterContext implements Context {
     public boolean getCreateUploadTargets() {
         return false;
     }
+
+    @Override
+    public void setStartOnDemand(boolean startOnDemand) { /* NO-OP */ }
+
+    @Override
+    public boolean getStartOnDemand() {
+        return false;
+    }
 }
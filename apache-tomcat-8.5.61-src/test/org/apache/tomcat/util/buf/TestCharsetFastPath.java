@@ -0,0 +1,118 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.buf;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/*
+ * Checks that the direct conversion used by C2BConverter and B2CConverter for
+ * single byte ranges produces the same output as the NIO coders, including
+ * where the direct run is interrupted part way through.
+ */
+public class TestCharsetFastPath {
+
+    private static final String ASCII = "{\"id\":12345,\"name\":\"<b>value</b>\"}";
+    private static final String LATIN1 = ASCII + "éÿ" + ASCII;
+    private static final String MIXED = ASCII + "é€😀x" + ASCII;
+
+
+    @Test
+    public void testEncodeUtf8Ascii() throws Exception {
+        doTestEncode(StandardCharsets.UTF_8, ASCII);
+    }
+
+    @Test
+    public void testEncodeUtf8Mixed() throws Exception {
+        doTestEncode(StandardCharsets.UTF_8, MIXED);
+    }
+
+    @Test
+    public void testEncodeIso88591() throws Exception {
+        doTestEncode(StandardCharsets.ISO_8859_1, LATIN1);
+    }
+
+    @Test
+    public void testEncodeIso88591Unmappable() throws Exception {
+        doTestEncode(StandardCharsets.ISO_8859_1, MIXED);
+    }
+
+    @Test
+    public void testDecodeUtf8Mixed() throws Exception {
+        doTestDecode(StandardCharsets.UTF_8, MIXED);
+    }
+
+    @Test
+    public void testDecodeIso88591() throws Exception {
+        doTestDecode(StandardCharsets.ISO_8859_1, LATIN1);
+    }
+
+
+    private void doTestEncode(Charset charset, String input) throws Exception {
+        byte[] expected = input.getBytes(charset);
+        // Vary the output buffer size so overflow happens at every position
+        for (int size = 4; size <= expected.length + 4; size++) {
+            C2BConverter conv = new C2BConverter(charset);
+            CharBuffer cb = CharBuffer.wrap(input.toCharArray());
+            ByteBuffer bb = ByteBuffer.allocate(size);
+            bb.limit(0);
+            ByteBuffer result = ByteBuffer.allocate(expected.length * 2);
+            while (cb.hasRemaining() || conv.isUndeflow()) {
+                conv.convert(cb, bb);
+                result.put(bb.array(), 0, bb.limit());
+                if (!cb.hasRemaining() && bb.limit() == 0) {
+                    break;
+                }
+                bb.limit(0);
+            }
+            Assert.assertArrayEquals("Buffer size " + size, expected,
+                    Arrays.copyOf(result.array(), result.position()));
+        }
+    }
+
+
+    private void doTestDecode(Charset charset, String input) throws Exception {
+        byte[] bytes = input.getBytes(charset);
+        // Feed the bytes in two parts so decoding restarts mid-stream. Only
+        // split within the leading ASCII so no multi-byte sequence is split.
+        for (int split = 0; split <= ASCII.length(); split++) {
+            B2CConverter conv = new B2CConverter(charset);
+            CharChunk cc = new CharChunk(bytes.length);
+            cc.setLimit(-1);
+            ByteChunk bc = new ByteChunk();
+            bc.setBytes(bytes, 0, split);
+            conv.convert(bc, cc, false);
+            bc.setBytes(bytes, split, bytes.length - split);
+            conv.convert(bc, cc, true);
+            Assert.assertEquals("Split " + split, input, cc.toString());
+        }
+    }
+
+
+    @Test
+    public void testGetLimit() {
+        Assert.assertEquals(0x80, CharsetFastPath.getLimit(StandardCharsets.UTF_8));
+        Assert.assertEquals(0x100, CharsetFastPath.getLimit(StandardCharsets.ISO_8859_1));
+        Assert.assertEquals(CharsetFastPath.NONE, CharsetFastPath.getLimit(StandardCharsets.UTF_16));
+    }
+}
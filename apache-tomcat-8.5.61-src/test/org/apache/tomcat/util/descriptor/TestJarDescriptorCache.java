@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.descriptor;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.tomcat.util.http.fileupload.FileUtils;
+
+public class TestJarDescriptorCache {
+
+    private static final File JAR = new File("test/webapp-fragments/WEB-INF/lib/resources2.jar");
+
+
+    @Test
+    public void testParserSettings() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "jar-descriptor-cache");
+        try {
+            URL url = JAR.toURI().toURL();
+
+            JarDescriptorCache cache = JarDescriptorCache.create(dir, ".tlds", false, true);
+            File file = cache.getFile(url);
+            cache.write(file, "cached".getBytes(StandardCharsets.UTF_8));
+            Assert.assertArrayEquals("cached".getBytes(StandardCharsets.UTF_8),
+                    cache.read(file));
+
+            // Same settings
+            cache = JarDescriptorCache.create(dir, ".tlds", false, true);
+            Assert.assertEquals(file, cache.getFile(url));
+
+            // Descriptors parsed with different settings are not used
+            cache = JarDescriptorCache.create(dir, ".tlds", true, true);
+            Assert.assertNull(cache.read(cache.getFile(url)));
+            cache = JarDescriptorCache.create(dir, ".tlds", false, false);
+            Assert.assertNull(cache.read(cache.getFile(url)));
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.descriptor.tld;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+
+import javax.servlet.jsp.tagext.FunctionInfo;
+import javax.servlet.jsp.tagext.TagAttributeInfo;
+import javax.servlet.jsp.tagext.TagVariableInfo;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestTaglibXmlCodec {
+
+    @Test
+    public void testTld() throws Exception {
+        doTestRoundTrip("test/tld/test.tld");
+    }
+
+
+    @Test
+    public void testTld12() throws Exception {
+        doTestRoundTrip("test/tld/tags12.tld");
+    }
+
+
+    @Test
+    public void testListener() throws Exception {
+        TaglibXml result = doTestRoundTrip("test/tld/listener.tld");
+        Assert.assertEquals(1, result.getListeners().size());
+    }
+
+
+    private TaglibXml doTestRoundTrip(String path) throws Exception {
+        TldParser parser = new TldParser(true, false, new TldRuleSet(), true);
+        File file = new File(path);
+        TaglibXml expected = parser.parse(new TldResourcePath(file.toURI().toURL(), null));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            TaglibXmlCodec.write(out, expected);
+        }
+        TaglibXml actual;
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(baos.toByteArray()))) {
+            actual = TaglibXmlCodec.read(in);
+        }
+
+        Assert.assertEquals(expected.getTlibVersion(), actual.getTlibVersion());
+        Assert.assertEquals(expected.getJspVersion(), actual.getJspVersion());
+        Assert.assertEquals(expected.getShortName(), actual.getShortName());
+        Assert.assertEquals(expected.getUri(), actual.getUri());
+        Assert.assertEquals(expected.getInfo(), actual.getInfo());
+        Assert.assertEquals(expected.getListeners(), actual.getListeners());
+
+        if (expected.getValidator() == null) {
+            Assert.assertNull(actual.getValidator());
+        } else {
+            Assert.assertEquals(expected.getValidator().getValidatorClass(),
+                    actual.getValidator().getValidatorClass());
+            Assert.assertEquals(expected.getValidator().getInitParams(),
+                    actual.getValidator().getInitParams());
+        }
+
+        Assert.assertEquals(expected.getTags().size(), actual.getTags().size());
+        for (int i = 0; i < expected.getTags().size(); i++) {
+            assertTagEquals(expected.getTags().get(i), actual.getTags().get(i));
+        }
+
+        Assert.assertEquals(expected.getTagFiles().size(), actual.getTagFiles().size());
+        for (int i = 0; i < expected.getTagFiles().size(); i++) {
+            TagFileXml e = expected.getTagFiles().get(i);
+            TagFileXml a = actual.getTagFiles().get(i);
+            Assert.assertEquals(e.getName(), a.getName());
+            Assert.assertEquals(e.getPath(), a.getPath());
+            Assert.assertEquals(e.getDisplayName(), a.getDisplayName());
+            Assert.assertEquals(e.getInfo(), a.getInfo());
+        }
+
+        Assert.assertEquals(expected.getFunctions().size(), actual.getFunctions().size());
+        for (int i = 0; i < expected.getFunctions().size(); i++) {
+            FunctionInfo e = expected.getFunctions().get(i);
+            FunctionInfo a = actual.getFunctions().get(i);
+            Assert.assertEquals(e.getName(), a.getName());
+            Assert.assertEquals(e.getFunctionClass(), a.getFunctionClass());
+            Assert.assertEquals(e.getFunctionSignature(), a.getFunctionSignature());
+        }
+        return actual;
+    }
+
+
+    private static void assertTagEquals(TagXml expected, TagXml actual) {
+        Assert.assertEquals(expected.getName(), actual.getName());
+        Assert.assertEquals(expected.getTagClass(), actual.getTagClass());
+        Assert.assertEquals(expected.getTeiClass(), actual.getTeiClass());
+        Assert.assertEquals(expected.getBodyContent(), actual.getBodyContent());
+        Assert.assertEquals(expected.getDisplayName(), actual.getDisplayName());
+        Assert.assertEquals(expected.getSmallIcon(), actual.getSmallIcon());
+        Assert.assertEquals(expected.getLargeIcon(), actual.getLargeIcon());
+        Assert.assertEquals(expected.getInfo(), actual.getInfo());
+        Assert.assertEquals(Boolean.valueOf(expected.hasDynamicAttributes()),
+                Boolean.valueOf(actual.hasDynamicAttributes()));
+
+        Assert.assertEquals(expected.getAttributes().size(), actual.getAttributes().size());
+        for (int i = 0; i < expected.getAttributes().size(); i++) {
+            // TagAttributeInfo.toString() includes every field but the description
+            TagAttributeInfo e = expected.getAttributes().get(i);
+            TagAttributeInfo a = actual.getAttributes().get(i);
+            Assert.assertEquals(e.toString(), a.toString());
+            Assert.assertEquals(e.getDescription(), a.getDescription());
+        }
+
+        Assert.assertEquals(expected.getVariables().size(), actual.getVariables().size());
+        for (int i = 0; i < expected.getVariables().size(); i++) {
+            TagVariableInfo e = expected.getVariables().get(i);
+            TagVariableInfo a = actual.getVariables().get(i);
+            Assert.assertEquals(e.getNameGiven(), a.getNameGiven());
+            Assert.assertEquals(e.getNameFromAttribute(), a.getNameFromAttribute());
+            Assert.assertEquals(e.getClassName(), a.getClassName());
+            Assert.assertEquals(Boolean.valueOf(e.getDeclare()), Boolean.valueOf(a.getDeclare()));
+            Assert.assertEquals(e.getScope(), a.getScope());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.descriptor.web;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestWebXmlCodec {
+
+    @Test
+    public void testWebXml() throws Exception {
+        doTestRoundTrip("test/webapp/WEB-INF/web.xml", false);
+    }
+
+
+    @Test
+    public void testWebFragment() throws Exception {
+        WebXml result = doTestRoundTrip(
+                "test/org/apache/catalina/startup/web-fragment-1ordering.xml", true);
+        Assert.assertTrue(result.isMetadataComplete());
+        Assert.assertTrue(result.getBeforeOrdering().contains("bar"));
+    }
+
+
+    @Test(expected = IOException.class)
+    public void testInvalid() throws Exception {
+        byte[] content = WebXmlCodec.encode(new WebXml());
+        WebXmlCodec.decode(Arrays.copyOf(content, content.length / 2));
+    }
+
+
+    private WebXml doTestRoundTrip(String path, boolean fragment) throws Exception {
+        WebXmlParser parser = new WebXmlParser(true, false, true);
+        WebXml webXml = new WebXml();
+        Assert.assertTrue(parser.parseWebXml(
+                new File(path).toURI().toURL(), webXml, fragment));
+
+        WebXml result = WebXmlCodec.decode(WebXmlCodec.encode(webXml));
+
+        Assert.assertEquals(webXml.toXml(), result.toXml());
+        Assert.assertEquals(webXml.getVersion(), result.getVersion());
+        Assert.assertEquals(webXml.getCharset(), result.getCharset());
+        Assert.assertEquals(webXml.getServlets().keySet(), result.getServlets().keySet());
+        Assert.assertEquals(webXml.getFilterMappings().size(),
+                result.getFilterMappings().size());
+        return result;
+    }
+}
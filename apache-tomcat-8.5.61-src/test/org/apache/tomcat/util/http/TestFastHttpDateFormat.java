@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.http;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestFastHttpDateFormat {
+
+    @Test
+    public void testCurrentDateBytesMatchString() {
+        String date = FastHttpDateFormat.getCurrentDate();
+        byte[] dateBytes = FastHttpDateFormat.getCurrentDateBytes();
+        // The cached value may roll over between the two calls
+        if (!date.equals(FastHttpDateFormat.getCurrentDate())) {
+            date = FastHttpDateFormat.getCurrentDate();
+            dateBytes = FastHttpDateFormat.getCurrentDateBytes();
+        }
+        Assert.assertEquals(date, new String(dateBytes, StandardCharsets.ISO_8859_1));
+        Assert.assertTrue(date.endsWith("GMT"));
+    }
+
+
+    @Test
+    public void testCurrentDateBytesCached() {
+        byte[] first = FastHttpDateFormat.getCurrentDateBytes();
+        byte[] second = FastHttpDateFormat.getCurrentDateBytes();
+        // Same instance unless the second boundary was crossed
+        if (first != second) {
+            Assert.assertNotEquals(new String(first, StandardCharsets.ISO_8859_1),
+                    new String(second, StandardCharsets.ISO_8859_1));
+        }
+    }
+}
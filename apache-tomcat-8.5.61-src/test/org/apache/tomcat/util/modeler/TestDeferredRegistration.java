@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.modeler;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestDeferredRegistration {
+
+    private static final String DOMAIN = "TestDeferredRegistration";
+
+    @Test
+    public void testRegisterOnAccess() throws Exception {
+        Registry registry = createRegistry();
+        MBeanServer platform = ManagementFactory.getPlatformMBeanServer();
+        MBeanServer server = registry.getMBeanServer();
+        ObjectName a = new ObjectName(DOMAIN + ":name=a");
+        ObjectName b = new ObjectName(DOMAIN + ":name=b");
+        try {
+            registry.registerComponent(new TesterBean("a"), a, null);
+            registry.registerComponent(new TesterBean("b"), b, null);
+
+            Assert.assertFalse(platform.isRegistered(a));
+            Assert.assertTrue(server.isRegistered(a));
+            // Names are available without registering the components
+            Assert.assertEquals(2, server.queryNames(new ObjectName(DOMAIN + ":*"), null).size());
+            Assert.assertFalse(platform.isRegistered(a));
+
+            Assert.assertEquals("a", server.getAttribute(a, "value"));
+            Assert.assertTrue(platform.isRegistered(a));
+            Assert.assertFalse(platform.isRegistered(b));
+
+            Assert.assertEquals(1, server.queryMBeans(b, null).size());
+            Assert.assertTrue(platform.isRegistered(b));
+        } finally {
+            registry.unregisterComponent(a);
+            registry.unregisterComponent(b);
+        }
+        Assert.assertFalse(platform.isRegistered(a));
+        Assert.assertFalse(platform.isRegistered(b));
+    }
+
+
+    @Test
+    public void testUnregisterBeforeAccess() throws Exception {
+        Registry registry = createRegistry();
+        ObjectName a = new ObjectName(DOMAIN + ":name=a");
+
+        registry.registerComponent(new TesterBean("a"), a, null);
+        registry.getMBeanServer().unregisterMBean(a);
+
+        Assert.assertFalse(registry.getMBeanServer().isRegistered(a));
+        registry.registerDeferredComponents();
+        Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(a));
+    }
+
+
+    @Test
+    public void testDisableDeferral() throws Exception {
+        Registry registry = createRegistry();
+        MBeanServer platform = ManagementFactory.getPlatformMBeanServer();
+        ObjectName a = new ObjectName(DOMAIN + ":name=a");
+        try {
+            registry.registerComponent(new TesterBean("a"), a, null);
+            Assert.assertFalse(platform.isRegistered(a));
+
+            registry.setDeferRegistration(false);
+            Assert.assertTrue(platform.isRegistered(a));
+        } finally {
+            registry.unregisterComponent(a);
+        }
+    }
+
+
+    private static Registry createRegistry() {
+        Registry registry = new Registry();
+        registry.setDeferRegistration(true);
+        return registry;
+    }
+
+
+    public static class TesterBean {
+
+        private final String value;
+
+        public TesterBean(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+}
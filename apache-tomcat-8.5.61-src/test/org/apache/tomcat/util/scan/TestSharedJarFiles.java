@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.scan;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.startup.ExpandWar;
+
+public class TestSharedJarFiles {
+
+    private static final File SOURCE = new File("test/webresources/dir1.jar");
+
+
+    @Test
+    public void testSharedIndex() throws Exception {
+        File dir = Files.createTempDirectory("test-shared-jar").toFile();
+        try {
+            File copy1 = copy(dir, "copy1.jar");
+            File copy2 = copy(dir, "copy2.jar");
+
+            Assert.assertNotNull(SharedJarFiles.getContentKey(copy1));
+            Assert.assertEquals(SharedJarFiles.getContentKey(copy1),
+                    SharedJarFiles.getContentKey(copy2));
+
+            JarFile jarFile1 = SharedJarFiles.acquire(copy1);
+            JarFile jarFile2 = SharedJarFiles.acquire(copy2);
+            try {
+                Assert.assertNotSame(jarFile1, jarFile2);
+                HashMap<String,JarEntry> entries1 = SharedJarFiles.getEntries(copy1, jarFile1);
+                HashMap<String,JarEntry> entries2 = SharedJarFiles.getEntries(copy2, jarFile2);
+                Assert.assertSame(entries1, entries2);
+
+                JarEntry entry = entries2.get("f1.txt");
+                Assert.assertNotNull(entry);
+                Assert.assertNotNull(jarFile2.getInputStream(entry));
+            } finally {
+                SharedJarFiles.release(jarFile1);
+                SharedJarFiles.release(jarFile2);
+            }
+        } finally {
+            ExpandWar.delete(dir);
+        }
+    }
+
+
+    @Test
+    public void testSharedJarFile() throws Exception {
+        File dir = Files.createTempDirectory("test-shared-jar").toFile();
+        try {
+            File file = copy(dir, "test.jar");
+
+            JarFile jarFile1 = SharedJarFiles.acquire(file);
+            JarFile jarFile2 = SharedJarFiles.acquire(file);
+            Assert.assertSame(jarFile1, jarFile2);
+
+            SharedJarFiles.release(jarFile1);
+            // Still open for the second user
+            Assert.assertNotNull(jarFile2.getEntry("f1.txt"));
+            Assert.assertNotNull(jarFile2.entries().nextElement());
+
+            SharedJarFiles.release(jarFile2);
+            try {
+                jarFile2.entries();
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                // Expected: closed
+            }
+
+            JarFile jarFile3 = SharedJarFiles.acquire(file);
+            Assert.assertNotSame(jarFile1, jarFile3);
+            SharedJarFiles.release(jarFile3);
+        } finally {
+            ExpandWar.delete(dir);
+        }
+    }
+
+
+    private static File copy(File dir, String name) throws Exception {
+        File file = new File(dir, name);
+        Files.copy(SOURCE.toPath(), file.toPath());
+        return file;
+    }
+}